@@ -0,0 +1,297 @@
+package application;
+
+import com.google.common.util.concurrent.SettableFuture;
+import data.DailyRollup;
+import data.FetchPriority;
+import data.Forecast;
+import data.Observation;
+import data.Station;
+import data.WeatherRepository;
+import forecasts.ForecastsViewModel;
+import observations.ObservationsViewModel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Exports PNG charts of stations without the window, for running on a schedule.
+ *
+ * Each station gets its own chart and chart model, built from its observations and forecasts the
+ * same way the views build the shared chart, so stations can be charted in parallel on a bounded
+ * pool without touching the main window. Only needs {@code java.awt.headless=true}.
+ *
+ * @author michael
+ */
+public class ChartExporter {
+
+    private static final Logger logger = LogManager.getLogger(application.ChartExporter.class);
+    public static final int DEFAULT_WIDTH = 1024;
+    public static final int DEFAULT_HEIGHT = 600;
+    private static final int MAX_THREADS = 4;
+    private static final long FETCH_TIMEOUT_SECONDS = 60;
+
+    private final WeatherRepository mWeatherRepository;
+    private final File mDirectory;
+    private final int mThreads;
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * The outcome of an export.
+     */
+    public static class Result {
+        private final int mExported;
+        private final int mFailed;
+        private final long mElapsedNanos;
+
+        Result(int exported, int failed, long elapsedNanos) {
+            mExported = exported;
+            mFailed = failed;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return how many charts were written.
+         */
+        public int getExported() {
+            return mExported;
+        }
+
+        /**
+         * @return how many stations could not be charted.
+         */
+        public int getFailed() {
+            return mFailed;
+        }
+
+        /**
+         * @return how long the export took, in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * @return the charts written per second of the export.
+         */
+        public double getChartsPerSecond() {
+            return mElapsedNanos == 0 ? 0 : mExported * 1e9 / mElapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Exported %d charts (%d failed) in %.2f s, %.2f charts/s", mExported, mFailed,
+                    mElapsedNanos / 1e9, getChartsPerSecond());
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param weatherRepository the repository to get stations' data from.
+     * @param directory the directory to write the charts to.
+     * @param threads how many charts to build and render at once.
+     * @param width the chart width in pixels.
+     * @param height the chart height in pixels.
+     */
+    public ChartExporter(WeatherRepository weatherRepository, File directory, int threads, int width, int height) {
+        checkArgument(threads > 0);
+        checkArgument(width > 0 && height > 0);
+        mWeatherRepository = checkNotNull(weatherRepository);
+        mDirectory = checkNotNull(directory);
+        mThreads = threads;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * @return the default number of export threads, one per processor up to a small limit.
+     */
+    public static int defaultThreads() {
+        return Math.min(MAX_THREADS, Math.max(1, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Export a chart for each of the user's favourite stations.
+     *
+     * @return the outcome.
+     * @throws IOException if the favourites can't be loaded or the directory can't be made.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Result exportFavourites() throws IOException, InterruptedException {
+        final SettableFuture<List<Station>> favourites = SettableFuture.create();
+        mWeatherRepository.getFavouriteStations(new WeatherRepository.LoadFavouritesCallback() {
+            @Override
+            public void onFavouritesLoaded(List<Station> stations) {
+                favourites.set(stations);
+            }
+        });
+        List<Station> stations = await(favourites);
+        if (stations == null) {
+            throw new IOException("Cannot load favourite stations");
+        }
+        return export(stations);
+    }
+
+    /**
+     * Export a chart for each station, in parallel on a bounded pool.
+     *
+     * @param stations the stations to chart.
+     * @return the outcome.
+     * @throws IOException if the directory can't be made.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Result export(List<Station> stations) throws IOException, InterruptedException {
+        checkNotNull(stations);
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "chart-export-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long start = System.nanoTime();
+        int exported = 0;
+        int failed = 0;
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(stations.size());
+            for (final Station station : stations) {
+                results.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return export(station);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    if (results.get(i).get()) {
+                        exported++;
+                    } else {
+                        failed++;
+                    }
+                } catch (ExecutionException e) {
+                    logger.error("Cannot export chart for " + stations.get(i), e.getCause());
+                    failed++;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Result result = new Result(exported, failed, System.nanoTime() - start);
+        logger.info(result);
+        return result;
+    }
+
+    /**
+     * Build a station's chart and write it out.
+     *
+     * @param station the station.
+     * @return true if the chart was written, false if the station has no data.
+     */
+    boolean export(Station station) throws IOException, InterruptedException {
+        ObservationsViewModel observations = loadObservations(station);
+        ForecastsViewModel forecasts = loadForecasts(station);
+        if (observations == null && forecasts == null) {
+            logger.warn("No data to chart for " + station);
+            return false;
+        }
+        JFreeChart chart = ChartModel.createChart();
+        ChartModel chartModel = new ChartModel(chart);
+        chartModel.beginUpdate();
+        if (observations != null) {
+            observations.chart(chartModel, station, mWidth);
+        }
+        if (forecasts != null) {
+            forecasts.chart(chartModel, station);
+        }
+        chartModel.show(station);
+        chartModel.endUpdate();
+        ChartUtilities.saveChartAsPNG(fileFor(station), chart, mWidth, mHeight);
+        return true;
+    }
+
+    /**
+     * @param station a station.
+     * @return the file the station's chart is written to, named after the station.
+     */
+    File fileFor(Station station) {
+        return new File(mDirectory, station.getCity().replaceAll("[^A-Za-z0-9-]+", "_") + ".png");
+    }
+
+    private ObservationsViewModel loadObservations(Station station) throws InterruptedException {
+        final SettableFuture<List<Observation>> observations = SettableFuture.create();
+        // Always fetched, as the disk cache can be as old as the last run
+        mWeatherRepository.revalidateObservations(station, new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> loaded) {
+                observations.set(loaded);
+            }
+        });
+        List<Observation> loaded = await(observations);
+        if (loaded == null || loaded.isEmpty()) {
+            return null;
+        }
+        final SettableFuture<List<DailyRollup>> rollups = SettableFuture.create();
+        mWeatherRepository.getDailyRollups(station, new WeatherRepository.LoadDailyRollupsCallback() {
+            @Override
+            public void onDailyRollupsLoaded(List<DailyRollup> loaded) {
+                rollups.set(loaded);
+            }
+        });
+        List<DailyRollup> days = await(rollups);
+        long asOf = mWeatherRepository.getObservationsLoadedAt(station);
+        return ObservationsViewModel.build(loaded, days == null ? new ArrayList<DailyRollup>() : days,
+                asOf > 0 ? asOf : System.currentTimeMillis());
+    }
+
+    private ForecastsViewModel loadForecasts(Station station) throws InterruptedException {
+        final SettableFuture<List<Forecast>> forecasts = SettableFuture.create();
+        mWeatherRepository.getForecasts(station, FetchPriority.FAVOURITE, new WeatherRepository.LoadForecastsCallback() {
+            @Override
+            public void onForecastsLoaded(List<Forecast> loaded) {
+                forecasts.set(loaded);
+            }
+        });
+        List<Forecast> loaded = await(forecasts);
+        if (loaded == null || loaded.isEmpty()) {
+            return null;
+        }
+        return ForecastsViewModel.build(loaded);
+    }
+
+    /**
+     * Wait for a repository callback, treating a timeout or failure as no data.
+     */
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("No answer from the repository", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package application;
+
+import data.Station;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.chart.JFreeChart;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Rendered images of the temperature chart, so a station the user returns to can be painted at
+ * once instead of drawing the chart again.
+ *
+ * Each station keeps its latest image, which only stands in for the chart while the station's data
+ * version and the chart's size are the ones it was rendered at. Images are rendered from a
+ * snapshot of the chart on a worker thread, so the live chart can keep changing meanwhile. The
+ * cache is bounded by a budget of image bytes, dropping the least recently used images first.
+ *
+ * @author michael
+ */
+public class ChartImageCache {
+
+    private static final Logger logger = LogManager.getLogger(application.ChartImageCache.class);
+    public static final long DEFAULT_BUDGET_BYTES = 32 * 1024 * 1024;
+
+    private final long mBudgetBytes;
+    private final Map<Station, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Constructor.
+     *
+     * @param budgetBytes the most bytes of images to keep.
+     */
+    public ChartImageCache(long budgetBytes) {
+        checkArgument(budgetBytes > 0);
+        mBudgetBytes = budgetBytes;
+    }
+
+    /**
+     * Get a station's image if it was rendered at the data version and size asked for.
+     *
+     * @param station the station.
+     * @param version the station's data version in the chart model.
+     * @param width the chart's width in pixels.
+     * @param height the chart's height in pixels.
+     * @return the image, or null if there is none that matches.
+     */
+    public synchronized BufferedImage get(Station station, long version, int width, int height) {
+        BufferedImage image = find(station, version, width, height);
+        if (image == null) {
+            mMisses++;
+        } else {
+            mHits++;
+        }
+        return image;
+    }
+
+    /**
+     * @param station the station.
+     * @param version the station's data version in the chart model.
+     * @param width the chart's width in pixels.
+     * @param height the chart's height in pixels.
+     * @return true if the station has an image at the data version and size, without counting a
+     * lookup.
+     */
+    public synchronized boolean contains(Station station, long version, int width, int height) {
+        return find(station, version, width, height) != null;
+    }
+
+    /**
+     * Keep a station's image, replacing any earlier one.
+     *
+     * @param station the station.
+     * @param version the station's data version the image was rendered at.
+     * @param image the rendered chart.
+     */
+    public synchronized void put(Station station, long version, BufferedImage image) {
+        checkNotNull(station);
+        checkNotNull(image);
+        Entry old = mEntries.remove(station);
+        if (old != null) {
+            mBytes -= old.mBytes;
+        }
+        Entry entry = new Entry(version, image);
+        if (entry.mBytes > mBudgetBytes) {
+            return;
+        }
+        mEntries.put(station, entry);
+        mBytes += entry.mBytes;
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mBytes > mBudgetBytes && iterator.hasNext()) {
+            mBytes -= iterator.next().mBytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Render a snapshot of the chart on a worker and keep the image for the station.
+     *
+     * @param station the station the chart shows.
+     * @param version the station's data version the snapshot was taken at.
+     * @param snapshot a copy of the chart that nothing else changes.
+     * @param width the width to render at.
+     * @param height the height to render at.
+     * @param workers the executor to render on.
+     */
+    public void render(final Station station, final long version, final JFreeChart snapshot, final int width,
+                       final int height, Executor workers) {
+        checkNotNull(station);
+        checkNotNull(snapshot);
+        checkArgument(width > 0 && height > 0);
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                BufferedImage image;
+                try {
+                    image = snapshot.createBufferedImage(width, height);
+                } catch (RuntimeException e) {
+                    logger.error("Cannot render chart for " + station, e);
+                    return;
+                }
+                put(station, version, image);
+                logger.debug("Rendered chart for " + station + " in "
+                        + (System.nanoTime() - start) / 1000000 + " ms");
+            }
+        });
+    }
+
+    /**
+     * @return how many bytes of images are kept.
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return how many lookups found a matching image.
+     */
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return how many lookups found no matching image.
+     */
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    private BufferedImage find(Station station, long version, int width, int height) {
+        Entry entry = mEntries.get(checkNotNull(station));
+        if (entry == null || entry.mVersion != version || entry.mImage.getWidth() != width
+                || entry.mImage.getHeight() != height) {
+            return null;
+        }
+        return entry.mImage;
+    }
+
+    /**
+     * A station's image and the data version it was rendered at.
+     */
+    private static class Entry {
+        private final long mVersion;
+        private final BufferedImage mImage;
+        private final long mBytes;
+
+        Entry(long version, BufferedImage image) {
+            mVersion = version;
+            mImage = image;
+            // Charts are rendered with four bytes a pixel
+            mBytes = 4L * image.getWidth() * image.getHeight();
+        }
+    }
+}
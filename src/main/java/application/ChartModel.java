@@ -0,0 +1,362 @@
+package application;
+
+import data.Station;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.DateAxis;
+import org.jfree.chart.labels.StandardXYItemLabelGenerator;
+import org.jfree.chart.labels.XYItemLabelGenerator;
+import org.jfree.chart.plot.IntervalMarker;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYItemRenderer;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.time.Hour;
+import org.jfree.data.time.Minute;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesCollection;
+import org.jfree.data.time.TimeSeriesDataItem;
+import org.jfree.ui.HorizontalAlignment;
+import org.jfree.ui.Layer;
+
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The data behind the temperature chart shared by the observations and forecasts views.
+ *
+ * Each station keeps its own dataset for as long as it is one of the most recently shown, so
+ * returning to a station or refreshing it only adds the points that are new. The chart is drawn
+ * by a single chart panel that views reuse. Changes made between {@link #beginUpdate()} and
+ * {@link #endUpdate()} redraw the chart once.
+ *
+ * Each station's data version goes up whenever newer observations or a different forecast period
+ * are added, so images of the chart can tell when they are out of date. Refilling a series at
+ * another resolution does not count as new data.
+ *
+ * @author michael
+ */
+public class ChartModel {
+
+    private static final Logger logger = LogManager.getLogger(application.ChartModel.class);
+
+    public static final String TEMP = "Temp";
+    public static final String MIN = "Min";
+    public static final String MAX = "Max";
+    public static final String NINE_AM = "9am";
+    public static final String THREE_PM = "3pm";
+    private static final int MAX_STATIONS = 16;
+
+    private final JFreeChart mChart;
+    private final Map<Station, StationData> mStations = new LinkedHashMap<Station, StationData>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Station, StationData> eldest) {
+            return size() > MAX_STATIONS;
+        }
+    };
+    private ChartPanel mChartPanel;
+    private StationData mShown;
+    private int mUpdateDepth;
+
+    /**
+     * Constructor. Styles the chart.
+     *
+     * @param chart the chart to show station data in.
+     */
+    public ChartModel(JFreeChart chart) {
+        mChart = checkNotNull(chart);
+        style(chart);
+    }
+
+    /**
+     * Create the temperature chart, without a dataset. Needs no window, so charts can also be made
+     * headless.
+     *
+     * @return the chart.
+     */
+    public static JFreeChart createChart() {
+        String chtTitle = "Temperature observations and forecasts";
+        String chtXAxisLabel = "Date and time";
+        String chtYAxisLabel = "Temperature " + Main.getSymboldegree() + "C";
+        return ChartFactory.createTimeSeriesChart(chtTitle, chtXAxisLabel, chtYAxisLabel, null, true,
+                true, false);
+    }
+
+    /**
+     * @return the one panel that draws the chart, created the first time it is needed.
+     */
+    public ChartPanel getChartPanel() {
+        if (mChartPanel == null) {
+            mChartPanel = new ChartPanel(mChart);
+        }
+        return mChartPanel;
+    }
+
+    public JFreeChart getChart() {
+        return mChart;
+    }
+
+    /**
+     * Show a station's dataset in the chart, along with its forecast period.
+     *
+     * @param station the station to show.
+     */
+    public void show(Station station) {
+        StationData data = data(station);
+        if (data == mShown) {
+            return;
+        }
+        XYPlot plot = mChart.getXYPlot();
+        if (mShown != null && mShown.mForecastMarker != null) {
+            plot.removeDomainMarker(mShown.mForecastMarker, Layer.BACKGROUND);
+        }
+        mShown = data;
+        plot.setDataset(data.mDataset);
+        if (data.mForecastMarker != null) {
+            plot.addDomainMarker(data.mForecastMarker, Layer.BACKGROUND);
+        }
+    }
+
+    /**
+     * Get one of a station's series.
+     *
+     * @param station the station.
+     * @param name the series name, one of the name constants.
+     * @return the series.
+     */
+    public TimeSeries getSeries(Station station, String name) {
+        TimeSeriesCollection dataset = data(station).mDataset;
+        return dataset.getSeries(dataset.indexOf(name));
+    }
+
+    /**
+     * @param station the station.
+     * @return the latest observation time added for the station, or Long.MIN_VALUE if none.
+     */
+    public long getObservedUpTo(Station station) {
+        return data(station).mObservedUpTo;
+    }
+
+    /**
+     * @param station the station.
+     * @param time the latest observation time added for the station.
+     */
+    public void setObservedUpTo(Station station, long time) {
+        StationData data = data(station);
+        if (time > data.mObservedUpTo) {
+            data.mObservedUpTo = time;
+            data.mVersion++;
+        }
+    }
+
+    /**
+     * @param station the station.
+     * @return the station's data version, which goes up when it has new data.
+     */
+    public long getDataVersion(Station station) {
+        return data(station).mVersion;
+    }
+
+    /**
+     * Copy the chart as it is now, with copies of the shown station's series, so it can be
+     * rendered on another thread while this one keeps changing.
+     *
+     * @return the copy, or null if the chart cannot be copied.
+     */
+    public JFreeChart snapshot() {
+        try {
+            JFreeChart copy = (JFreeChart) mChart.clone();
+            if (mShown != null) {
+                TimeSeriesCollection dataset = new TimeSeriesCollection();
+                for (int i = 0; i < mShown.mDataset.getSeriesCount(); i++) {
+                    dataset.addSeries((TimeSeries) mShown.mDataset.getSeries(i).clone());
+                }
+                // Also stops the copy listening to the shown dataset
+                copy.getXYPlot().setDataset(dataset);
+            }
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            logger.error("Cannot copy the chart", e);
+            return null;
+        }
+    }
+
+    /**
+     * Set the station's forecast period, replacing any earlier one.
+     *
+     * @param station the station.
+     * @param marker the marker spanning the forecast period.
+     */
+    public void setForecastMarker(Station station, IntervalMarker marker) {
+        StationData data = data(station);
+        if (data.mForecastMarker == null || data.mForecastMarker.getStartValue() != marker.getStartValue()
+                || data.mForecastMarker.getEndValue() != marker.getEndValue()) {
+            data.mVersion++;
+        }
+        XYPlot plot = mChart.getXYPlot();
+        if (data == mShown && data.mForecastMarker != null) {
+            plot.removeDomainMarker(data.mForecastMarker, Layer.BACKGROUND);
+        }
+        data.mForecastMarker = marker;
+        if (data == mShown) {
+            plot.addDomainMarker(marker, Layer.BACKGROUND);
+        }
+    }
+
+    /**
+     * Hold back chart redraws until the matching {@link #endUpdate()}.
+     */
+    public void beginUpdate() {
+        if (mUpdateDepth++ == 0) {
+            mChart.setNotify(false);
+        }
+    }
+
+    /**
+     * Redraw the chart once for every change since {@link #beginUpdate()}.
+     */
+    public void endUpdate() {
+        if (--mUpdateDepth == 0) {
+            mChart.setNotify(true);
+        }
+    }
+
+    /**
+     * Add or update points in a series without firing an event for each, then fire one event if
+     * anything changed.
+     *
+     * @param series the series.
+     * @param periods the periods of the points, of the series' period class.
+     * @param values the values of the points.
+     * @param count how many points to use from the start of the arrays.
+     * @return true if the series changed.
+     */
+    public static boolean merge(TimeSeries series, RegularTimePeriod[] periods, double[] values, int count) {
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            int index = series.getIndex(periods[i]);
+            if (index < 0) {
+                series.add(periods[i], values[i], false);
+                changed = true;
+            } else {
+                TimeSeriesDataItem item = series.getDataItem(index);
+                if (item.getValue() == null || item.getValue().doubleValue() != values[i]) {
+                    item.setValue(values[i]);
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            series.fireSeriesChanged();
+        }
+        return changed;
+    }
+
+    /**
+     * Add or update points in a series, firing one event if anything changed.
+     *
+     * @param series the series.
+     * @param points the points, of the series' period class.
+     * @return true if the series changed.
+     */
+    public static boolean merge(TimeSeries series, ChartPoints points) {
+        return merge(series, points.getPeriods(), points.getValues(), points.size());
+    }
+
+    /**
+     * Replace every point in a series, firing one event.
+     *
+     * @param series the series.
+     * @param periods the periods of the points, of the series' period class.
+     * @param values the values of the points.
+     * @param count how many points to use from the start of the arrays.
+     */
+    public static void replace(TimeSeries series, RegularTimePeriod[] periods, double[] values, int count) {
+        series.setNotify(false);
+        series.clear();
+        for (int i = 0; i < count; i++) {
+            series.addOrUpdate(periods[i], values[i]);
+        }
+        series.setNotify(true);
+    }
+
+    /**
+     * Replace every point in a series, firing one event.
+     *
+     * @param series the series.
+     * @param points the points, of the series' period class.
+     */
+    public static void replace(TimeSeries series, ChartPoints points) {
+        replace(series, points.getPeriods(), points.getValues(), points.size());
+    }
+
+    private StationData data(Station station) {
+        StationData data = mStations.get(checkNotNull(station));
+        if (data == null) {
+            data = new StationData();
+            mStations.put(station, data);
+        }
+        return data;
+    }
+
+    /**
+     * Style the chart once rather than on every update.
+     */
+    private static void style(JFreeChart chart) {
+        XYPlot plot = chart.getXYPlot();
+        plot.setBackgroundPaint(Main.getColorlight());
+        XYItemRenderer r = plot.getRenderer();
+        if (r instanceof XYLineAndShapeRenderer) {
+            XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) r;
+            for (int i = 1; i < 5; i++) {
+                renderer.setSeriesShapesVisible(i, true);
+                renderer.setSeriesShapesFilled(i, true);
+                renderer.setSeriesLinesVisible(i, false);
+            }
+
+            NumberFormat format = NumberFormat.getNumberInstance();
+            format.setMaximumFractionDigits(2);
+            XYItemLabelGenerator generator =
+                    new StandardXYItemLabelGenerator("{0} {2}", format, format);
+            renderer.setBaseItemLabelGenerator(generator);
+            renderer.setBaseItemLabelsVisible(true);
+            renderer.setSeriesItemLabelsVisible(0, false);
+            renderer.setSeriesItemLabelsVisible(1, false);
+            renderer.setSeriesItemLabelsVisible(2, false);
+            renderer.setSeriesPaint(3, Main.getColordark());
+        }
+
+        chart.getTitle().setHorizontalAlignment(HorizontalAlignment.LEFT);
+        chart.getTitle().setFont(Main.getFontnormalbold());
+        chart.setBackgroundPaint(Main.getColorlight());
+        plot.getDomainAxis().setLabelFont(Main.getFontsmall());
+        plot.getRangeAxis().setLabelFont(Main.getFontsmall());
+        DateAxis axis = (DateAxis) plot.getDomainAxis();
+        axis.setDateFormatOverride(new SimpleDateFormat("hh:mm a dd-MM-yy"));
+    }
+
+    /**
+     * A station's dataset, with the series always in the same order for the renderer.
+     */
+    private static class StationData {
+        private final TimeSeriesCollection mDataset = new TimeSeriesCollection();
+        private long mObservedUpTo = Long.MIN_VALUE;
+        private IntervalMarker mForecastMarker;
+        private long mVersion;
+
+        StationData() {
+            mDataset.addSeries(new TimeSeries(TEMP, Minute.class));
+            mDataset.addSeries(new TimeSeries(MIN, Minute.class));
+            mDataset.addSeries(new TimeSeries(MAX, Minute.class));
+            mDataset.addSeries(new TimeSeries(NINE_AM, Hour.class));
+            mDataset.addSeries(new TimeSeries(THREE_PM, Hour.class));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package application;
+
+import org.jfree.data.time.RegularTimePeriod;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The points of one chart series, worked out ahead of time so they can be merged or replaced in a
+ * {@link ChartModel} series on the event dispatch thread without any further parsing.
+ *
+ * Nothing changes once built; the arrays are shared rather than copied, and must not be modified.
+ *
+ * @author michael
+ */
+public final class ChartPoints {
+
+    private final RegularTimePeriod[] mPeriods;
+    private final double[] mValues;
+
+    private ChartPoints(RegularTimePeriod[] periods, double[] values) {
+        mPeriods = periods;
+        mValues = values;
+    }
+
+    /**
+     * @return the periods of the points, in the order they were added.
+     */
+    public RegularTimePeriod[] getPeriods() {
+        return mPeriods;
+    }
+
+    /**
+     * @return the values of the points, in the same order as their periods.
+     */
+    public double[] getValues() {
+        return mValues;
+    }
+
+    public int size() {
+        return mPeriods.length;
+    }
+
+    /**
+     * Collects points for one series.
+     */
+    public static class Builder {
+        private RegularTimePeriod[] mPeriods;
+        private double[] mValues;
+        private int mCount;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity how many points to expect.
+         */
+        public Builder(int capacity) {
+            mPeriods = new RegularTimePeriod[Math.max(capacity, 1)];
+            mValues = new double[mPeriods.length];
+        }
+
+        /**
+         * @param period the period of the point.
+         * @param value the value of the point.
+         * @return this builder.
+         */
+        public Builder add(RegularTimePeriod period, double value) {
+            if (mCount == mPeriods.length) {
+                mPeriods = Arrays.copyOf(mPeriods, mCount * 2);
+                mValues = Arrays.copyOf(mValues, mCount * 2);
+            }
+            mPeriods[mCount] = checkNotNull(period);
+            mValues[mCount++] = value;
+            return this;
+        }
+
+        public ChartPoints build() {
+            return new ChartPoints(Arrays.copyOf(mPeriods, mCount), Arrays.copyOf(mValues, mCount));
+        }
+    }
+}
@@ -4,7 +4,6 @@ import data.WeatherRepositories;
 import data.WeatherServiceApiImpl;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 
 import stations.StationsContract;
@@ -16,6 +15,8 @@ import javax.swing.border.EmptyBorder;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.StringTokenizer;
 import java.util.prefs.Preferences;
 
@@ -55,11 +56,26 @@ public class Main {
     /**
      * Creates and updates the Stations view on the event dispatch thread.
      *
+     * With {@code --export-charts <directory>}, exports a PNG chart of each favourite station to
+     * the directory instead, without showing the window, then exits. With
+     * {@code --export-observations}, streams the observations of the stations picked by
+     * {@code --all}, {@code --state <name>} or {@code --stations <name,...>} to standard output or
+     * {@code --output <file>} as {@code --format csv} or {@code ndjson}, then exits; see
+     * {@link ObservationBatch}.
+     *
      * @param args
      * Standard command arguments for main()
      */
     public static void main(String[] args) {
         logger.trace("Entering main method.");
+        if (args.length > 0 && args[0].equals("--export-charts")) {
+            System.exit(exportCharts(args));
+        }
+        if (args.length > 0 && args[0].equals("--export-observations")) {
+            System.setProperty("java.awt.headless", "true");
+            System.exit(ObservationBatch.run(WeatherRepositories.getInMemoryRepoInstance(new WeatherServiceApiImpl()),
+                    args, System.out, System.err));
+        }
         // Start the app on the event dispatch thread
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
@@ -74,6 +90,35 @@ public class Main {
         logger.trace("Exiting main method.");
     }
 
+    /**
+     * Export a chart of each favourite station, headless, and report how fast it went.
+     *
+     * @param args {@code --export-charts <directory>}
+     * @return the exit status, 0 if every chart was written.
+     */
+    private static int exportCharts(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: --export-charts <directory>");
+            return 2;
+        }
+        System.setProperty("java.awt.headless", "true");
+        ChartExporter exporter = new ChartExporter(WeatherRepositories.getInMemoryRepoInstance(
+                new WeatherServiceApiImpl()), new File(args[1]), ChartExporter.defaultThreads(),
+                ChartExporter.DEFAULT_WIDTH, ChartExporter.DEFAULT_HEIGHT);
+        try {
+            ChartExporter.Result result = exporter.exportFavourites();
+            System.out.println(result);
+            return result.getFailed() == 0 ? 0 : 1;
+        } catch (IOException e) {
+            logger.error("Chart export failed", e);
+            System.err.println(e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
     /**
      * Getters for the application constants.
      */
@@ -151,6 +196,9 @@ public class Main {
         private JButton btnRemove;
 
         private JFreeChart chart;
+        private ChartModel chartModel;
+        private final UiUpdateScheduler updateScheduler = new UiUpdateScheduler(UiUpdateScheduler.FRAME_MILLIS);
+        private final ChartImageCache chartImageCache = new ChartImageCache(ChartImageCache.DEFAULT_BUDGET_BYTES);
         
         
         /**
@@ -210,11 +258,8 @@ public class Main {
             weatherPanel.add(stationName, BorderLayout.NORTH);
             
             
-            String chtTitle = "Temperature observations and forecasts";
-            String chtXAxisLabel = "Date and time";
-            String chtYAxisLabel = "Temperature " + Main.getSymboldegree() + "C";
-            chart = ChartFactory.createTimeSeriesChart(chtTitle, chtXAxisLabel, chtYAxisLabel, null, true,
-                    true, false);
+            chart = ChartModel.createChart();
+            chartModel = new ChartModel(chart);
             
             // Observations panel - callable directly from observations view
             createObservationsPanel();
@@ -584,6 +629,24 @@ public class Main {
     	public void setChart(JFreeChart chart) {
     		this.chart = chart;
     	}
+
+        public ChartModel getChartModel() {
+            return chartModel;
+        }
+
+        /**
+         * @return the scheduler views mark repaints and layout changes with.
+         */
+        public UiUpdateScheduler getUpdateScheduler() {
+            return updateScheduler;
+        }
+
+        /**
+         * @return the rendered chart images stations are painted with when the user returns to them.
+         */
+        public ChartImageCache getChartImageCache() {
+            return chartImageCache;
+        }
         
         public static JPanel getForecastsPanel() {
 			return forecastsPanel;
@@ -0,0 +1,458 @@
+package application;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.stream.JsonWriter;
+import data.Observation;
+import data.State;
+import data.Station;
+import data.WeatherRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Fetches the observations of many stations without the window and streams them out as CSV or
+ * newline-delimited JSON, for bulk data collection on servers.
+ *
+ * Stations are fetched concurrently through the repository by a fixed number of workers, which
+ * take the next station as they finish the last. Each station is always fetched from the service,
+ * never served from the disk cache, so a batch writes current observations. Its rows are written
+ * and flushed as soon as they arrive, and then everything the repository holds in memory for the
+ * station is evicted, so only as many stations' data as there are workers are held at once,
+ * however many are fetched. Progress and timing are reported as stations finish.
+ *
+ * @author michael
+ */
+public class ObservationBatch {
+
+    private static final Logger logger = LogManager.getLogger(application.ObservationBatch.class);
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_PARTIAL = 3;
+    static final String USAGE = "Usage: --export-observations (--all | --state <name>... | --stations <name,name,...>)"
+            + " [--format csv|ndjson] [--output <file>] [--threads <n>]";
+    private static final int DEFAULT_THREADS = 4;
+    private static final long FETCH_TIMEOUT_SECONDS = 120;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String[] COLUMNS = {"station", "state", "local_date_time", "utc_date_time", "air_temp",
+            "apparent_t", "dewpt", "rel_hum", "delta_t", "cloud", "rain_trace", "wind_dir", "wind_spd_kmh",
+            "gust_kmh", "wind_spd_kt", "gust_kt", "press_qnh", "press_msl"};
+
+    /**
+     * The formats observations can be written in.
+     */
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private final WeatherRepository mWeatherRepository;
+    private final Writer mOut;
+    private final Format mFormat;
+    private final int mThreads;
+    private final PrintStream mProgress;
+    private final AtomicInteger mNext = new AtomicInteger();
+    private int mDone;
+    private int mFailed;
+    private long mRows;
+    private long mStart;
+    private long mLastProgress;
+
+    /**
+     * The outcome of a batch.
+     */
+    public static class Result {
+        private final int mStations;
+        private final int mFailed;
+        private final long mRows;
+        private final long mElapsedNanos;
+
+        Result(int stations, int failed, long rows, long elapsedNanos) {
+            mStations = stations;
+            mFailed = failed;
+            mRows = rows;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return how many stations were fetched, including those that failed.
+         */
+        public int getStations() {
+            return mStations;
+        }
+
+        /**
+         * @return how many stations could not be fetched.
+         */
+        public int getFailed() {
+            return mFailed;
+        }
+
+        /**
+         * @return how many observations were written.
+         */
+        public long getRows() {
+            return mRows;
+        }
+
+        /**
+         * @return how long the batch took, in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * @return the exit status for the batch.
+         */
+        public int getExitStatus() {
+            if (mFailed == 0) {
+                return EXIT_OK;
+            }
+            return mFailed < mStations ? EXIT_PARTIAL : EXIT_FAILED;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = mElapsedNanos / 1e9;
+            return String.format("Fetched %d stations (%d failed), %d observations in %.2f s, %.2f stations/s",
+                    mStations, mFailed, mRows, seconds, seconds == 0 ? 0 : mStations / seconds);
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param weatherRepository the repository to fetch observations through.
+     * @param out where to write the observations.
+     * @param format the format to write them in.
+     * @param threads how many stations to fetch at once.
+     * @param progress where to report progress.
+     */
+    public ObservationBatch(WeatherRepository weatherRepository, Writer out, Format format, int threads,
+                            PrintStream progress) {
+        checkArgument(threads > 0);
+        mWeatherRepository = checkNotNull(weatherRepository);
+        mOut = checkNotNull(out);
+        mFormat = checkNotNull(format);
+        mThreads = threads;
+        mProgress = checkNotNull(progress);
+    }
+
+    /**
+     * Run a batch from the command line arguments that follow {@code --export-observations}.
+     *
+     * @param weatherRepository the repository to fetch observations through.
+     * @param args the command line arguments.
+     * @param stdout where to write the observations if no output file is given.
+     * @param stderr where to report progress and errors.
+     * @return the exit status.
+     */
+    public static int run(WeatherRepository weatherRepository, String[] args, PrintStream stdout, PrintStream stderr) {
+        boolean all = false;
+        List<String> states = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Format format = Format.CSV;
+        String output = null;
+        int threads = DEFAULT_THREADS;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--all")) {
+                    all = true;
+                } else if (arg.equals("--state")) {
+                    states.add(args[++i]);
+                } else if (arg.equals("--stations")) {
+                    for (String name : args[++i].split(",")) {
+                        if (!name.trim().isEmpty()) {
+                            names.add(name.trim());
+                        }
+                    }
+                } else if (arg.equals("--format")) {
+                    format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else if (arg.equals("--output")) {
+                    output = args[++i];
+                } else if (arg.equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                    checkArgument(threads > 0);
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            stderr.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (!all && states.isEmpty() && names.isEmpty()) {
+            stderr.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        try {
+            List<Station> stations = selectStations(weatherRepository, all, states, names, stderr);
+            if (stations == null) {
+                return EXIT_USAGE;
+            }
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    output == null || output.equals("-") ? stdout : new FileOutputStream(output),
+                    StandardCharsets.UTF_8));
+            try {
+                Result result = new ObservationBatch(weatherRepository, out, format, threads, stderr).run(stations);
+                stderr.println(result);
+                return result.getExitStatus();
+            } finally {
+                if (output == null || output.equals("-")) {
+                    out.flush();
+                } else {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Observation batch failed", e);
+            stderr.println(e.getMessage());
+            return EXIT_FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+    }
+
+    /**
+     * Fetch each station's observations and write them out.
+     *
+     * @param stations the stations to fetch.
+     * @return the outcome.
+     * @throws IOException if the observations can't be written.
+     * @throws InterruptedException if interrupted while waiting for the workers.
+     */
+    public Result run(final List<Station> stations) throws IOException, InterruptedException {
+        checkNotNull(stations);
+        if (mFormat == Format.CSV) {
+            writeCsvRow(COLUMNS);
+        }
+        mStart = System.nanoTime();
+        mLastProgress = mStart;
+        final IOException[] writeFailure = new IOException[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(mThreads, Math.max(1, stations.size())); i++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int next = mNext.getAndIncrement(); next < stations.size(); next = mNext.getAndIncrement()) {
+                            fetch(stations.get(next));
+                        }
+                    } catch (IOException e) {
+                        synchronized (ObservationBatch.this) {
+                            writeFailure[0] = e;
+                        }
+                        // Stop the other workers too
+                        mNext.set(stations.size());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "observation-batch-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        mOut.flush();
+        synchronized (this) {
+            if (writeFailure[0] != null) {
+                throw writeFailure[0];
+            }
+            return new Result(mDone, mFailed, mRows, System.nanoTime() - mStart);
+        }
+    }
+
+    /**
+     * Fetch a station's current observations, write them and evict the station from the
+     * repository's memory.
+     */
+    private void fetch(Station station) throws IOException, InterruptedException {
+        final SettableFuture<List<Observation>> future = SettableFuture.create();
+        mWeatherRepository.revalidateObservations(station, new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> observations) {
+                future.set(observations);
+            }
+        });
+        List<Observation> observations;
+        try {
+            observations = future.get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("No observations for " + station, e);
+            observations = null;
+        }
+        // The service answers a failed fetch with no observations
+        String rows = observations == null || observations.isEmpty() ? null : format(station, observations);
+        mWeatherRepository.evictStation(station);
+        synchronized (this) {
+            if (rows != null) {
+                mOut.write(rows);
+                mOut.flush();
+                mRows += observations.size();
+            } else {
+                mFailed++;
+            }
+            mDone++;
+            long now = System.nanoTime();
+            if (now - mLastProgress >= PROGRESS_INTERVAL_NANOS) {
+                mLastProgress = now;
+                mProgress.println(String.format("%d stations (%d failed), %d observations, %.1f s", mDone, mFailed,
+                        mRows, (now - mStart) / 1e9));
+            }
+        }
+    }
+
+    /**
+     * Format a station's observations as rows, outside the lock on the output.
+     */
+    private String format(Station station, List<Observation> observations) throws IOException {
+        StringWriter rows = new StringWriter();
+        for (Observation obs : observations) {
+            String[] values = {station.getCity(), station.getState(), obs.getmDateTime(), obs.getmAifstimeUtc(),
+                    obs.getmAirtemp(), obs.getmApparentTemp(), obs.getmDewpt(), obs.getmHumidity(),
+                    obs.getmDelta_t(), obs.getmCloud(), obs.getmRain(), obs.getmWindDir(), obs.getmWindSpdKmh(),
+                    obs.getmGustKmh(), obs.getmWindSpdKt(), obs.getmGustKt(), obs.getmPressQnh(),
+                    obs.getmPressMsl()};
+            if (mFormat == Format.CSV) {
+                rows.write(csvRow(values));
+            } else {
+                JsonWriter json = new JsonWriter(rows);
+                json.beginObject();
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    json.name(COLUMNS[i]).value(values[i]);
+                }
+                json.endObject();
+                json.flush();
+                rows.write('\n');
+            }
+        }
+        return rows.toString();
+    }
+
+    private synchronized void writeCsvRow(String[] values) throws IOException {
+        mOut.write(csvRow(values));
+    }
+
+    /**
+     * Quote values that hold a separator, quote or line break, doubling their quotes.
+     */
+    static String csvRow(String[] values) {
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                row.append(',');
+            }
+            String value = values[i] == null ? "" : values[i];
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                    || value.indexOf('\r') >= 0) {
+                row.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                row.append(value);
+            }
+        }
+        return row.append('\n').toString();
+    }
+
+    /**
+     * Pick stations from the catalog by state or name, or all of them.
+     *
+     * @return the stations, or null if a state or station name is unknown.
+     */
+    static List<Station> selectStations(WeatherRepository weatherRepository, boolean all, List<String> states,
+                                        List<String> names, PrintStream stderr) throws IOException, InterruptedException {
+        List<String> stateNames = new ArrayList<>();
+        if (all || !names.isEmpty()) {
+            List<State> catalog = await(loadStates(weatherRepository));
+            if (catalog == null) {
+                throw new IOException("Cannot load the station catalog");
+            }
+            for (State state : catalog) {
+                stateNames.add(state.toString());
+            }
+        } else {
+            stateNames.addAll(states);
+        }
+        // Keep the catalog's order, and each station once
+        Map<String, Station> selected = new LinkedHashMap<>();
+        Map<String, Station> byName = new LinkedHashMap<>();
+        for (String state : stateNames) {
+            List<Station> stations = await(loadStations(weatherRepository, state));
+            if (stations == null) {
+                stderr.println("Unknown state: " + state);
+                return null;
+            }
+            for (Station station : stations) {
+                byName.put(station.getCity().toLowerCase(Locale.ROOT), station);
+                if (all || states.contains(state)) {
+                    selected.put(station.getCity(), station);
+                }
+            }
+        }
+        for (String name : names) {
+            Station station = byName.get(name.toLowerCase(Locale.ROOT));
+            if (station == null) {
+                stderr.println("Unknown station: " + name);
+                return null;
+            }
+            selected.put(station.getCity(), station);
+        }
+        return new ArrayList<>(selected.values());
+    }
+
+    private static SettableFuture<List<State>> loadStates(WeatherRepository weatherRepository) {
+        final SettableFuture<List<State>> future = SettableFuture.create();
+        weatherRepository.getStates(new WeatherRepository.LoadStatesCallback() {
+            @Override
+            public void onStatesLoaded(List<State> states) {
+                future.set(states);
+            }
+        });
+        return future;
+    }
+
+    private static SettableFuture<List<Station>> loadStations(WeatherRepository weatherRepository, String state) {
+        final SettableFuture<List<Station>> future = SettableFuture.create();
+        weatherRepository.getStations(state, new WeatherRepository.LoadStationsCallback() {
+            @Override
+            public void onStationsLoaded(List<Station> stations) {
+                future.set(stations);
+            }
+        });
+        return future;
+    }
+
+    private static <T> T await(SettableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Cannot load the station catalog", e);
+        }
+    }
+}
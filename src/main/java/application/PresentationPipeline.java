@@ -0,0 +1,208 @@
+package application;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.swing.*;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Prepares what views show away from the event dispatch thread.
+ *
+ * Repository callbacks land on whichever thread fetched the data. Presenters hand the pipeline a
+ * builder that parses, aggregates and formats the data into an immutable view model on a worker
+ * pool, and a binder that gives the finished model to the view. Each update is handed to the event
+ * dispatch thread with a single {@code invokeLater}, so views only ever bind ready-made data and
+ * Swing is only touched from the one thread.
+ *
+ * Updates are made for a target, usually the view. An update still being built when a newer one
+ * for the same target is started is dropped rather than bound, so a slow build can never overwrite
+ * a later one. Updates can also be ordered by the age of their data, so that data fetched earlier
+ * never replaces data fetched later, whichever arrives last.
+ *
+ * @author michael
+ */
+public class PresentationPipeline implements Executor {
+
+    private static final Logger logger = LogManager.getLogger(application.PresentationPipeline.class);
+    private static final int MAX_WORKERS = 4;
+    private static PresentationPipeline sInstance;
+
+    private final Executor mWorkers;
+    private final Executor mEventDispatchThread;
+    private final AtomicLong mSequence = new AtomicLong();
+    // The latest update started for each target, guarded by itself. Presenters start a new target
+    // for each station shown, so a target's entry goes once nothing can present to it any more.
+    private final Map<Object, Update> mLatest = new WeakHashMap<>();
+
+    /**
+     * Builds a view model. Called on a worker thread.
+     *
+     * @param <M> the view model type.
+     */
+    public interface Builder<M> {
+        M build();
+    }
+
+    /**
+     * Binds a view model to a view. Called on the event dispatch thread.
+     *
+     * @param <M> the view model type.
+     */
+    public interface Binder<M> {
+        void bind(M model);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param workers the executor to build view models on.
+     * @param eventDispatchThread the executor to bind view models on.
+     */
+    public PresentationPipeline(Executor workers, Executor eventDispatchThread) {
+        mWorkers = checkNotNull(workers);
+        mEventDispatchThread = checkNotNull(eventDispatchThread);
+    }
+
+    /**
+     * @return the pipeline shared by the app's presenters, with a small pool of daemon workers.
+     */
+    public static synchronized PresentationPipeline getInstance() {
+        if (sInstance == null) {
+            final AtomicInteger count = new AtomicInteger();
+            int workers = Math.min(MAX_WORKERS, Math.max(1, Runtime.getRuntime().availableProcessors()));
+            Executor pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "presentation-worker-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sInstance = new PresentationPipeline(pool, new Executor() {
+                @Override
+                public void execute(Runnable runnable) {
+                    SwingUtilities.invokeLater(runnable);
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    /**
+     * Build a view model on a worker and then bind it on the event dispatch thread, unless a newer
+     * update for the same target has been started by then. A model that cannot be built is bound
+     * as null, so the view can still stop waiting for it.
+     *
+     * @param target what the update is for, usually the view.
+     * @param builder builds the view model.
+     * @param binder binds the view model to the view.
+     * @param <M> the view model type.
+     */
+    public <M> void present(Object target, Builder<M> builder, Binder<M> binder) {
+        start(target, null, builder, binder);
+    }
+
+    /**
+     * Like {@link #present(Object, Builder, Binder)}, for data of a known age. An update whose
+     * data is older than that of the newest update started for the target is dropped without being
+     * built, so it can only supersede updates of the same or older data.
+     *
+     * @param target what the update is for, usually the view.
+     * @param dataTime when the update's data was fetched.
+     * @param builder builds the view model.
+     * @param binder binds the view model to the view.
+     * @param <M> the view model type.
+     */
+    public <M> void present(Object target, long dataTime, Builder<M> builder, Binder<M> binder) {
+        start(target, dataTime, builder, binder);
+    }
+
+    private <M> void start(final Object target, Long dataTime, final Builder<M> builder, final Binder<M> binder) {
+        checkNotNull(target);
+        checkNotNull(builder);
+        checkNotNull(binder);
+        final long sequence = mSequence.incrementAndGet();
+        synchronized (mLatest) {
+            Update latest = mLatest.get(target);
+            if (dataTime != null && latest != null && latest.mDataTime != null && latest.mDataTime > dataTime) {
+                logger.debug("Dropping update of older data");
+                return;
+            }
+            mLatest.put(target, new Update(sequence, dataTime));
+        }
+        mWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isSuperseded(target, sequence)) {
+                    return;
+                }
+                M built;
+                try {
+                    built = builder.build();
+                } catch (RuntimeException e) {
+                    logger.error("Cannot build view model", e);
+                    built = null;
+                }
+                final M model = built;
+                mEventDispatchThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isSuperseded(target, sequence)) {
+                            logger.debug("Dropping superseded update");
+                            return;
+                        }
+                        binder.bind(model);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Run work that loads data, such as a repository call that may read from disk, on a worker.
+     *
+     * @param work the work to run.
+     */
+    @Override
+    public void execute(Runnable work) {
+        mWorkers.execute(checkNotNull(work));
+    }
+
+    /**
+     * @return how many targets the latest update is still tracked for.
+     */
+    int getTargetCount() {
+        synchronized (mLatest) {
+            return mLatest.size();
+        }
+    }
+
+    private boolean isSuperseded(Object target, long sequence) {
+        synchronized (mLatest) {
+            Update latest = mLatest.get(target);
+            return latest != null && latest.mSequence != sequence;
+        }
+    }
+
+    /**
+     * The order an update was started in, and when its data was fetched if that is known.
+     */
+    private static class Update {
+        private final long mSequence;
+        private final Long mDataTime;
+
+        Update(long sequence, Long dataTime) {
+            mSequence = sequence;
+            mDataTime = dataTime;
+        }
+    }
+}
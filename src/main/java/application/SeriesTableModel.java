@@ -0,0 +1,162 @@
+package application;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Read-only table model over a station's series of observations or forecasts.
+ *
+ * Cells are read straight from the items, which the repository keeps unique and ordered by time,
+ * and formatted the first time the table asks for them. A table only asks for the rows it paints,
+ * so only visible rows are ever formatted, however long the series. When the series is replaced,
+ * rows are matched by time and only the rows added or dropped at either end are reported, keeping
+ * the formatting already done for the rest.
+ *
+ * @param <T> the item type, one per row.
+ * @author michael
+ */
+public abstract class SeriesTableModel<T> extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+    private final String[] mColumnNames;
+    private List<T> mItems = ImmutableList.of();
+    private final List<String[]> mFormatted = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param columnNames the column headings.
+     */
+    protected SeriesTableModel(String[] columnNames) {
+        mColumnNames = checkNotNull(columnNames).clone();
+    }
+
+    /**
+     * @param item an item.
+     * @return the item's time, which is unique within a series.
+     */
+    protected abstract String key(T item);
+
+    /**
+     * @param item an item.
+     * @param column the column index.
+     * @return the text to show in the item's cell for the column.
+     */
+    protected abstract String format(T item, int column);
+
+    /**
+     * Show a new version of the series.
+     *
+     * @param items the items, ordered by time like the items already shown.
+     */
+    public void setItems(List<T> items) {
+        List<T> old = mItems;
+        mItems = checkNotNull(items);
+        int dropped = indexOfKey(old, items.isEmpty() ? null : key(items.get(0)));
+        int added = dropped < 0 ? indexOfKey(items, old.isEmpty() ? null : key(old.get(0))) : 0;
+        if (dropped < 0 && added < 0) {
+            dropped = 0;
+            added = 0;
+        }
+        dropped = Math.max(dropped, 0);
+        added = Math.max(added, 0);
+        int overlap = Math.min(old.size() - dropped, items.size() - added);
+        if (overlap <= 0 || !key(old.get(dropped + overlap - 1)).equals(key(items.get(added + overlap - 1)))) {
+            // Nothing lines up, so start again
+            mFormatted.clear();
+            mFormatted.addAll(Collections.<String[]>nCopies(items.size(), null));
+            fireTableDataChanged();
+            return;
+        }
+        if (dropped > 0) {
+            mFormatted.subList(0, dropped).clear();
+            fireTableRowsDeleted(0, dropped - 1);
+        }
+        if (added > 0) {
+            mFormatted.addAll(0, Collections.<String[]>nCopies(added, null));
+            fireTableRowsInserted(0, added - 1);
+        }
+        int end = added + overlap;
+        if (mFormatted.size() > end) {
+            int size = mFormatted.size();
+            mFormatted.subList(end, size).clear();
+            fireTableRowsDeleted(end, size - 1);
+        }
+        if (items.size() > end) {
+            mFormatted.addAll(Collections.<String[]>nCopies(items.size() - end, null));
+            fireTableRowsInserted(end, items.size() - 1);
+        }
+    }
+
+    /**
+     * @return the items shown.
+     */
+    public List<T> getItems() {
+        return mItems;
+    }
+
+    @Override
+    public int getRowCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return mColumnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return mColumnNames[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        String[] cells = mFormatted.get(row);
+        if (cells == null) {
+            cells = new String[mColumnNames.length];
+            mFormatted.set(row, cells);
+        }
+        if (cells[column] == null) {
+            String value = format(mItems.get(row), column);
+            cells[column] = value == null ? "" : value;
+        }
+        return cells[column];
+    }
+
+    /**
+     * @return how many rows have any cells formatted.
+     */
+    int getFormattedRowCount() {
+        int count = 0;
+        for (String[] cells : mFormatted) {
+            if (cells != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int indexOfKey(List<T> items, String key) {
+        if (key == null) {
+            return -1;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (key.equals(key(items.get(i)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,184 @@
+package application;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.swing.*;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Collects repaints and layout invalidations from all views and applies them together at most once
+ * per frame on the event dispatch thread.
+ *
+ * A view that changes several components while binding an update marks each one here instead of
+ * calling {@code revalidate()} or {@code repaint()} itself. The first mark starts a frame timer;
+ * when it fires, every invalidated component is laid out in one validation pass and every dirty
+ * region is painted once, however many times it was marked. The time each frame takes is
+ * recorded, so slow frames can be measured rather than guessed at.
+ *
+ * @author michael
+ */
+public class UiUpdateScheduler {
+
+    private static final Logger logger = LogManager.getLogger(application.UiUpdateScheduler.class);
+    public static final int FRAME_MILLIS = 16;
+
+    private final long mBudgetNanos;
+    private final Timer mTimer;
+    private Set<JComponent> mInvalid = new LinkedHashSet<>();
+    // A null region means the whole component
+    private Map<JComponent, Rectangle> mDirty = new LinkedHashMap<>();
+    private long mFrames;
+    private long mSlowFrames;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param frameMillis the shortest time between flushes, and the budget for a flush.
+     */
+    public UiUpdateScheduler(int frameMillis) {
+        checkArgument(frameMillis > 0);
+        mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(frameMillis);
+        mTimer = new Timer(frameMillis, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                flush();
+            }
+        });
+        mTimer.setRepeats(false);
+        mTimer.setCoalesce(true);
+    }
+
+    /**
+     * Lay a component out again in the next frame.
+     *
+     * @param component the component whose layout changed.
+     */
+    public synchronized void invalidate(JComponent component) {
+        mInvalid.add(checkNotNull(component));
+        schedule();
+    }
+
+    /**
+     * Paint the whole of a component in the next frame.
+     *
+     * @param component the component to paint.
+     */
+    public synchronized void repaint(JComponent component) {
+        mDirty.put(checkNotNull(component), null);
+        schedule();
+    }
+
+    /**
+     * Paint part of a component in the next frame, along with any other part already marked.
+     *
+     * @param component the component to paint.
+     * @param region the dirty region, in the component's coordinates.
+     */
+    public synchronized void repaint(JComponent component, Rectangle region) {
+        checkNotNull(component);
+        checkNotNull(region);
+        if (mDirty.containsKey(component)) {
+            Rectangle dirty = mDirty.get(component);
+            if (dirty != null) {
+                dirty.add(region);
+            }
+        } else {
+            mDirty.put(component, new Rectangle(region));
+        }
+        schedule();
+    }
+
+    /**
+     * Apply everything marked since the last frame. Called by the frame timer on the event
+     * dispatch thread.
+     */
+    void flush() {
+        Set<JComponent> invalid;
+        Map<JComponent, Rectangle> dirty;
+        synchronized (this) {
+            invalid = mInvalid;
+            dirty = mDirty;
+            mInvalid = new LinkedHashSet<>();
+            mDirty = new LinkedHashMap<>();
+        }
+        if (invalid.isEmpty() && dirty.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (JComponent component : invalid) {
+            component.revalidate();
+        }
+        if (!invalid.isEmpty()) {
+            // Lay everything out now rather than in another event
+            RepaintManager.currentManager(invalid.iterator().next()).validateInvalidComponents();
+        }
+        for (Map.Entry<JComponent, Rectangle> entry : dirty.entrySet()) {
+            JComponent component = entry.getKey();
+            Rectangle region = entry.getValue() != null ? entry.getValue()
+                    : new Rectangle(0, 0, component.getWidth(), component.getHeight());
+            if (component.isShowing()) {
+                component.paintImmediately(region);
+            } else {
+                component.repaint(region);
+            }
+        }
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * @return how many frames have been flushed.
+     */
+    public synchronized long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * @return how many frames took longer than the frame budget.
+     */
+    public synchronized long getSlowFrameCount() {
+        return mSlowFrames;
+    }
+
+    /**
+     * @return the mean time to flush a frame, in nanoseconds.
+     */
+    public synchronized long getMeanFrameNanos() {
+        return mFrames == 0 ? 0 : mTotalNanos / mFrames;
+    }
+
+    /**
+     * @return the longest time to flush a frame, in nanoseconds.
+     */
+    public synchronized long getMaxFrameNanos() {
+        return mMaxNanos;
+    }
+
+    private void schedule() {
+        if (!mTimer.isRunning()) {
+            mTimer.start();
+        }
+    }
+
+    private synchronized void record(long nanos) {
+        mFrames++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+        if (nanos > mBudgetNanos) {
+            mSlowFrames++;
+            logger.debug("Slow frame: " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package data;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * How the values of a measurement are combined within each group of an {@link ArchiveQuery}.
+ * Missing values are left out.
+ *
+ * @author michael
+ */
+public final class Aggregate {
+
+    public static final Aggregate MIN = new Aggregate("min", Double.NaN);
+    public static final Aggregate MAX = new Aggregate("max", Double.NaN);
+    public static final Aggregate MEAN = new Aggregate("mean", Double.NaN);
+    public static final Aggregate SUM = new Aggregate("sum", Double.NaN);
+    public static final Aggregate COUNT = new Aggregate("count", Double.NaN);
+
+    private final String mName;
+    private final double mPercentile;
+
+    private Aggregate(String name, double percentile) {
+        mName = name;
+        mPercentile = percentile;
+    }
+
+    /**
+     * A percentile, interpolating between the closest ranks.
+     *
+     * @param percentile the percentile, from 0 to 100.
+     * @return the aggregate.
+     */
+    public static Aggregate percentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100");
+        return new Aggregate("p" + percentile, percentile);
+    }
+
+    boolean isPercentile() {
+        return !Double.isNaN(mPercentile);
+    }
+
+    /**
+     * Work out the aggregate from running totals, or from the values themselves for a percentile.
+     *
+     * @param values the values, only needed for a percentile. Sorted in place.
+     * @param count how many values there are.
+     * @return the aggregate, or NaN if there are no values.
+     */
+    double compute(double[] values, int count, double sum, double min, double max) {
+        if (this == COUNT) {
+            return count;
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (this == MIN) {
+            return min;
+        } else if (this == MAX) {
+            return max;
+        } else if (this == MEAN) {
+            return sum / count;
+        } else if (this == SUM) {
+            return sum;
+        }
+        Arrays.sort(values, 0, count);
+        double rank = mPercentile / 100 * (count - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = (int) Math.ceil(rank);
+        return values[lower] + (values[upper] - values[lower]) * (rank - lower);
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
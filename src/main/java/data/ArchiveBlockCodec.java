@@ -0,0 +1,754 @@
+package data;
+
+import com.google.common.primitives.Doubles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar codec for blocks of archived observations, in the style of Facebook's Gorilla.
+ *
+ * Each column is encoded on its own so a query can decode only the columns it needs:
+ * <ul>
+ *     <li>times, in seconds, and local offsets use delta-of-delta encoding,</li>
+ *     <li>measurements use XOR encoding against the previous value. Measurements with at most three
+ *     decimal places are scaled to whole numbers first, which leaves far fewer meaningful bits,</li>
+ *     <li>station, wind direction and cloud are dictionary coded.</li>
+ * </ul>
+ * A block of downsampled records also has a column for the minimum and one for the maximum of
+ * every measurement within each record's bucket, after the others.
+ *
+ * The block header holds the record count, the resolution the block was compacted to if it was,
+ * whether it has the bucket minimum and maximum columns, the time range, the minimum and maximum of
+ * every measurement, the dictionaries and each
+ * station's time range, so a scan can decide to skip a block without decoding it. Columns are decoded in place, so a mapped block is never copied.
+ *
+ * Block layout: header length, header, then the columns back to back.
+ *
+ * @author michael
+ */
+class ArchiveBlockCodec {
+
+    private static final int FIELD_COUNT = ObservationField.values().length;
+    private static final int MAX_SCALE = 3;
+    private static final double[] POWERS_OF_TEN = {1, 10, 100, 1000};
+    // Columns in block order: station, time, offset, each field, wind direction, cloud
+    private static final int STATION_COLUMN = 0;
+    private static final int TIME_COLUMN = 1;
+    private static final int OFFSET_COLUMN = 2;
+    private static final int FIRST_FIELD_COLUMN = 3;
+    private static final int WIND_DIR_COLUMN = FIRST_FIELD_COLUMN + FIELD_COUNT;
+    private static final int CLOUD_COLUMN = WIND_DIR_COLUMN + 1;
+    private static final int COLUMN_COUNT = CLOUD_COLUMN + 1;
+    // Only in blocks of downsampled records
+    private static final int FIRST_MIN_COLUMN = COLUMN_COUNT;
+    private static final int FIRST_MAX_COLUMN = FIRST_MIN_COLUMN + FIELD_COUNT;
+    private static final int RANGED_COLUMN_COUNT = FIRST_MAX_COLUMN + FIELD_COUNT;
+
+    private ArchiveBlockCodec() {
+    }
+
+    /**
+     * The part of a block that can be read without decoding any column.
+     */
+    static class Header {
+        private final int mCount;
+        private final RetentionPolicy.Resolution mCompactedTo;
+        private final boolean mRanged;
+        private final long mMinTime;
+        private final long mMaxTime;
+        private final int[] mScales;
+        private final double[] mMin;
+        private final double[] mMax;
+        private final List<String> mStations;
+        private final long[] mStationMinTimes;
+        private final long[] mStationMaxTimes;
+        private final List<String> mWindDirs;
+        private final List<String> mClouds;
+        private final int[] mColumnOffsets;
+        private final int mLength;
+
+        Header(int count, RetentionPolicy.Resolution compactedTo, boolean ranged, long minTime, long maxTime, int[] scales, double[] min, double[] max,
+               List<String> stations, long[] stationMinTimes, long[] stationMaxTimes, List<String> windDirs,
+               List<String> clouds, int[] columnOffsets, int length) {
+            mCount = count;
+            mCompactedTo = compactedTo;
+            mRanged = ranged;
+            mMinTime = minTime;
+            mMaxTime = maxTime;
+            mScales = scales;
+            mMin = min;
+            mMax = max;
+            mStations = stations;
+            mStationMinTimes = stationMinTimes;
+            mStationMaxTimes = stationMaxTimes;
+            mWindDirs = windDirs;
+            mClouds = clouds;
+            mColumnOffsets = columnOffsets;
+            mLength = length;
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return the resolution the block was compacted to, or null if it holds records as appended.
+         */
+        RetentionPolicy.Resolution getCompactedTo() {
+            return mCompactedTo;
+        }
+
+        /**
+         * @return whether the block holds downsampled records, with the minimum and maximum of each
+         * measurement within every record's bucket.
+         */
+        boolean isRanged() {
+            return mRanged;
+        }
+
+        long getMinTime() {
+            return mMinTime;
+        }
+
+        long getMaxTime() {
+            return mMaxTime;
+        }
+
+        /**
+         * @return the smallest value of the field in the block, or NaN if it is always missing.
+         */
+        double getMin(ObservationField field) {
+            return mMin[field.ordinal()];
+        }
+
+        /**
+         * @return the largest value of the field in the block, or NaN if it is always missing.
+         */
+        double getMax(ObservationField field) {
+            return mMax[field.ordinal()];
+        }
+
+        List<String> getStations() {
+            return mStations;
+        }
+
+        boolean overlaps(long from, long to) {
+            return mMaxTime >= from && mMinTime <= to;
+        }
+
+        /**
+         * @return the earliest time of a station's records, as an index into {@link #getStations()}.
+         */
+        long getMinTime(int station) {
+            return mStationMinTimes[station];
+        }
+
+        /**
+         * @return the latest time of a station's records, as an index into {@link #getStations()}.
+         */
+        long getMaxTime(int station) {
+            return mStationMaxTimes[station];
+        }
+
+        /**
+         * @return whether the block holds records of a station within a time window.
+         */
+        boolean overlaps(String station, long from, long to) {
+            int code = mStations.indexOf(station);
+            return code >= 0 && mStationMaxTimes[code] >= from && mStationMinTimes[code] <= to;
+        }
+
+        /**
+         * @return the length of the whole block in bytes.
+         */
+        int getLength() {
+            return mLength;
+        }
+    }
+
+    /**
+     * Encode records into a block.
+     *
+     * @param records the records, ideally sorted by station and then time.
+     * @return the encoded block.
+     */
+    static byte[] encode(List<ArchiveRecord> records) throws IOException {
+        return encode(records, null);
+    }
+
+    /**
+     * Encode records into a block.
+     *
+     * @param records the records, ideally sorted by station and then time.
+     * @param compactedTo the resolution the records were compacted to, or null if they are as appended.
+     * @return the encoded block.
+     */
+    static byte[] encode(List<ArchiveRecord> records, RetentionPolicy.Resolution compactedTo) throws IOException {
+        int count = records.size();
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (ArchiveRecord record : records) {
+            minTime = Math.min(minTime, record.getTime());
+            maxTime = Math.max(maxTime, record.getTime());
+        }
+
+        boolean ranged = false;
+        for (ArchiveRecord record : records) {
+            ranged |= record.hasRange();
+        }
+        byte[][] columns = new byte[ranged ? RANGED_COLUMN_COUNT : COLUMN_COUNT][];
+        Dictionary stations = new Dictionary();
+        Dictionary windDirs = new Dictionary();
+        Dictionary clouds = new Dictionary();
+        int[] stationCodes = new int[count];
+        int[] windDirCodes = new int[count];
+        int[] cloudCodes = new int[count];
+        long[] seconds = new long[count];
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            ArchiveRecord record = records.get(i);
+            stationCodes[i] = stations.code(record.getStation());
+            windDirCodes[i] = windDirs.code(record.getWindDir());
+            cloudCodes[i] = clouds.code(record.getCloud());
+            seconds[i] = Math.floorDiv(record.getTime(), 1000);
+            offsets[i] = record.getOffsetMinutes();
+        }
+        long[] stationMinTimes = new long[stations.size()];
+        long[] stationMaxTimes = new long[stations.size()];
+        Arrays.fill(stationMinTimes, Long.MAX_VALUE);
+        Arrays.fill(stationMaxTimes, Long.MIN_VALUE);
+        for (int i = 0; i < count; i++) {
+            long time = records.get(i).getTime();
+            stationMinTimes[stationCodes[i]] = Math.min(stationMinTimes[stationCodes[i]], time);
+            stationMaxTimes[stationCodes[i]] = Math.max(stationMaxTimes[stationCodes[i]], time);
+        }
+        columns[STATION_COLUMN] = encodeCodes(stationCodes, stations.size());
+        columns[TIME_COLUMN] = encodeDeltaOfDelta(seconds);
+        columns[OFFSET_COLUMN] = encodeDeltaOfDelta(offsets);
+        columns[WIND_DIR_COLUMN] = encodeCodes(windDirCodes, windDirs.size());
+        columns[CLOUD_COLUMN] = encodeCodes(cloudCodes, clouds.size());
+
+        int[] scales = new int[FIELD_COUNT];
+        double[] min = new double[FIELD_COUNT];
+        double[] max = new double[FIELD_COUNT];
+        double[] values = new double[count];
+        double[] lows = new double[ranged ? count : 0];
+        double[] highs = new double[ranged ? count : 0];
+        for (ObservationField field : ObservationField.values()) {
+            int f = field.ordinal();
+            min[f] = Double.NaN;
+            max[f] = Double.NaN;
+            for (int i = 0; i < count; i++) {
+                ArchiveRecord record = records.get(i);
+                values[i] = record.getValue(field);
+                if (ranged) {
+                    lows[i] = record.getMin(field);
+                    highs[i] = record.getMax(field);
+                }
+                double low = record.getMin(field);
+                double high = record.getMax(field);
+                if (!Double.isNaN(low)) {
+                    min[f] = Double.isNaN(min[f]) ? low : Math.min(min[f], low);
+                    max[f] = Double.isNaN(max[f]) ? high : Math.max(max[f], high);
+                }
+            }
+            // The bucket extremes share the measurement's scale, so it must fit all three
+            scales[f] = decimalScale(ranged ? Doubles.concat(values, lows, highs) : values);
+            columns[FIRST_FIELD_COLUMN + f] = encodeXor(scale(values, scales[f]));
+            if (ranged) {
+                columns[FIRST_MIN_COLUMN + f] = encodeXor(scale(lows, scales[f]));
+                columns[FIRST_MAX_COLUMN + f] = encodeXor(scale(highs, scales[f]));
+            }
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(headerBytes)) {
+            out.writeInt(count);
+            out.writeByte(compactedTo == null ? -1 : compactedTo.ordinal());
+            out.writeBoolean(ranged);
+            out.writeLong(minTime);
+            out.writeLong(maxTime);
+            for (int f = 0; f < FIELD_COUNT; f++) {
+                out.writeByte(scales[f]);
+                out.writeDouble(min[f]);
+                out.writeDouble(max[f]);
+            }
+            stations.writeTo(out);
+            for (int station = 0; station < stations.size(); station++) {
+                out.writeLong(stationMinTimes[station]);
+                out.writeLong(stationMaxTimes[station]);
+            }
+            windDirs.writeTo(out);
+            clouds.writeTo(out);
+            for (byte[] column : columns) {
+                out.writeInt(column.length);
+            }
+        }
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(block)) {
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            for (byte[] column : columns) {
+                out.write(column);
+            }
+        }
+        return block.toByteArray();
+    }
+
+    /**
+     * Read a block header. The buffer's position is left unchanged.
+     *
+     * @param buffer the buffer, positioned at the start of the block.
+     * @return the header.
+     */
+    static Header readHeader(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate();
+        int headerLength = in.getInt();
+        int columnsStart = 4 + headerLength;
+        int count = in.getInt();
+        byte compacted = in.get();
+        RetentionPolicy.Resolution compactedTo = compacted < 0 ? null : RetentionPolicy.Resolution.values()[compacted];
+        boolean ranged = in.get() != 0;
+        long minTime = in.getLong();
+        long maxTime = in.getLong();
+        int[] scales = new int[FIELD_COUNT];
+        double[] min = new double[FIELD_COUNT];
+        double[] max = new double[FIELD_COUNT];
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            scales[f] = in.get();
+            min[f] = in.getDouble();
+            max[f] = in.getDouble();
+        }
+        List<String> stations = Dictionary.readFrom(in);
+        long[] stationMinTimes = new long[stations.size()];
+        long[] stationMaxTimes = new long[stations.size()];
+        for (int station = 0; station < stations.size(); station++) {
+            stationMinTimes[station] = in.getLong();
+            stationMaxTimes[station] = in.getLong();
+        }
+        List<String> windDirs = Dictionary.readFrom(in);
+        List<String> clouds = Dictionary.readFrom(in);
+        int columnCount = ranged ? RANGED_COLUMN_COUNT : COLUMN_COUNT;
+        int[] columnOffsets = new int[columnCount + 1];
+        columnOffsets[0] = columnsStart;
+        for (int c = 0; c < columnCount; c++) {
+            columnOffsets[c + 1] = columnOffsets[c] + in.getInt();
+        }
+        return new Header(count, compactedTo, ranged, minTime, maxTime, scales, min, max, stations, stationMinTimes, stationMaxTimes,
+                windDirs, clouds, columnOffsets, columnOffsets[columnCount]);
+    }
+
+    /**
+     * Decode the station of every record as an index into {@link Header#getStations()}.
+     */
+    static int[] decodeStations(Header header, ByteBuffer buffer) {
+        return decodeCodes(column(header, buffer, STATION_COLUMN), header.mCount, header.mStations.size());
+    }
+
+    /**
+     * Decode the UTC time of every record in milliseconds.
+     */
+    static long[] decodeTimes(Header header, ByteBuffer buffer) {
+        long[] times = decodeDeltaOfDelta(column(header, buffer, TIME_COLUMN), header.mCount);
+        for (int i = 0; i < times.length; i++) {
+            times[i] *= 1000;
+        }
+        return times;
+    }
+
+    /**
+     * Decode each record's offset of station local time from UTC, in minutes.
+     */
+    static int[] decodeOffsets(Header header, ByteBuffer buffer) {
+        long[] offsets = decodeDeltaOfDelta(column(header, buffer, OFFSET_COLUMN), header.mCount);
+        int[] result = new int[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            result[i] = (int) offsets[i];
+        }
+        return result;
+    }
+
+    /**
+     * Decode one measurement for every record.
+     */
+    static double[] decodeField(Header header, ByteBuffer buffer, ObservationField field) {
+        return decodeScaled(header, buffer, FIRST_FIELD_COLUMN, field);
+    }
+
+    /**
+     * Decode the minimum of one measurement within each record's bucket, which is the measurement
+     * itself unless the block is ranged.
+     */
+    static double[] decodeFieldMin(Header header, ByteBuffer buffer, ObservationField field) {
+        return decodeScaled(header, buffer, header.mRanged ? FIRST_MIN_COLUMN : FIRST_FIELD_COLUMN, field);
+    }
+
+    /**
+     * Decode the maximum of one measurement within each record's bucket, which is the measurement
+     * itself unless the block is ranged.
+     */
+    static double[] decodeFieldMax(Header header, ByteBuffer buffer, ObservationField field) {
+        return decodeScaled(header, buffer, header.mRanged ? FIRST_MAX_COLUMN : FIRST_FIELD_COLUMN, field);
+    }
+
+    private static double[] decodeScaled(Header header, ByteBuffer buffer, int firstColumn, ObservationField field) {
+        int f = field.ordinal();
+        double[] values = decodeXor(column(header, buffer, firstColumn + f), header.mCount);
+        int scale = header.mScales[f];
+        if (scale > 0) {
+            double power = POWERS_OF_TEN[scale];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = values[i] / power;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Decode every column back into records.
+     *
+     * @param buffer the buffer, positioned at the start of the block.
+     * @return the records in the order they were encoded.
+     */
+    static List<ArchiveRecord> decode(ByteBuffer buffer) {
+        Header header = readHeader(buffer);
+        int count = header.mCount;
+        int[] stations = decodeStations(header, buffer);
+        long[] times = decodeTimes(header, buffer);
+        int[] offsets = decodeOffsets(header, buffer);
+        double[][] values = new double[FIELD_COUNT][];
+        double[][] lows = header.mRanged ? new double[FIELD_COUNT][] : null;
+        double[][] highs = header.mRanged ? new double[FIELD_COUNT][] : null;
+        for (ObservationField field : ObservationField.values()) {
+            values[field.ordinal()] = decodeField(header, buffer, field);
+            if (header.mRanged) {
+                lows[field.ordinal()] = decodeFieldMin(header, buffer, field);
+                highs[field.ordinal()] = decodeFieldMax(header, buffer, field);
+            }
+        }
+        int[] windDirs = decodeCodes(column(header, buffer, WIND_DIR_COLUMN), count, header.mWindDirs.size());
+        int[] clouds = decodeCodes(column(header, buffer, CLOUD_COLUMN), count, header.mClouds.size());
+        List<ArchiveRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] recordValues = new double[FIELD_COUNT];
+            double[] recordLows = header.mRanged ? new double[FIELD_COUNT] : null;
+            double[] recordHighs = header.mRanged ? new double[FIELD_COUNT] : null;
+            for (int f = 0; f < FIELD_COUNT; f++) {
+                recordValues[f] = values[f][i];
+                if (header.mRanged) {
+                    recordLows[f] = lows[f][i];
+                    recordHighs[f] = highs[f][i];
+                }
+            }
+            records.add(new ArchiveRecord(header.mStations.get(stations[i]), times[i], offsets[i],
+                    recordValues, recordLows, recordHighs, header.mWindDirs.get(windDirs[i]),
+                    header.mClouds.get(clouds[i])));
+        }
+        return records;
+    }
+
+    private static BitReader column(Header header, ByteBuffer buffer, int column) {
+        return new BitReader(buffer, buffer.position() + header.mColumnOffsets[column]);
+    }
+
+    /**
+     * Scale values to whole numbers by a number of decimal places. The values are changed in place.
+     */
+    private static double[] scale(double[] values, int scale) {
+        if (scale > 0) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Math.rint(values[i] * POWERS_OF_TEN[scale]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The fewest decimal places, up to three, that represent every value exactly, or zero if the
+     * values need more.
+     */
+    private static int decimalScale(double[] values) {
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            double power = POWERS_OF_TEN[scale];
+            boolean exact = true;
+            for (double value : values) {
+                if (!Double.isNaN(value) && (Math.abs(value) > 1e12 || Math.rint(value * power) / power != value)) {
+                    exact = false;
+                    break;
+                }
+            }
+            if (exact) {
+                return scale;
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Delta-of-delta: '0' for no change in delta, otherwise a prefix choosing the width of the change,
+     * which is stored in two's complement, so each width holds one more negative than positive value.
+     */
+    private static byte[] encodeDeltaOfDelta(long[] values) {
+        BitWriter out = new BitWriter();
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0) {
+                out.write(values[0], 64);
+            } else {
+                long delta = values[i] - previous;
+                long dod = delta - previousDelta;
+                if (dod == 0) {
+                    out.write(0, 1);
+                } else if (dod >= -64 && dod <= 63) {
+                    out.write(0b10, 2);
+                    out.write(dod, 7);
+                } else if (dod >= -256 && dod <= 255) {
+                    out.write(0b110, 3);
+                    out.write(dod, 9);
+                } else if (dod >= -2048 && dod <= 2047) {
+                    out.write(0b1110, 4);
+                    out.write(dod, 12);
+                } else {
+                    out.write(0b1111, 4);
+                    out.write(dod, 64);
+                }
+                previousDelta = delta;
+            }
+            previous = values[i];
+        }
+        return out.toByteArray();
+    }
+
+    private static long[] decodeDeltaOfDelta(BitReader in, int count) {
+        long[] values = new long[count];
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                previous = in.read(64);
+            } else {
+                long dod;
+                if (in.read(1) == 0) {
+                    dod = 0;
+                } else if (in.read(1) == 0) {
+                    dod = in.readSigned(7);
+                } else if (in.read(1) == 0) {
+                    dod = in.readSigned(9);
+                } else if (in.read(1) == 0) {
+                    dod = in.readSigned(12);
+                } else {
+                    dod = in.read(64);
+                }
+                previousDelta += dod;
+                previous += previousDelta;
+            }
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    /*
+     * XOR: '0' for a repeated value, '10' for a change that fits the previous window of meaningful
+     * bits, '11' with the number of leading zeros and meaningful bits for a new window.
+     */
+    private static byte[] encodeXor(double[] values) {
+        BitWriter out = new BitWriter();
+        long previous = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 0; i < values.length; i++) {
+            long bits = Double.doubleToLongBits(values[i]);
+            if (i == 0) {
+                out.write(bits, 64);
+            } else {
+                long xor = bits ^ previous;
+                if (xor == 0) {
+                    out.write(0, 1);
+                } else {
+                    int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        out.write(0b10, 2);
+                        out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                    } else {
+                        int meaningful = 64 - leading - trailing;
+                        out.write(0b11, 2);
+                        out.write(leading, 5);
+                        out.write(meaningful - 1, 6);
+                        out.write(xor >>> trailing, meaningful);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+            }
+            previous = bits;
+        }
+        return out.toByteArray();
+    }
+
+    private static double[] decodeXor(BitReader in, int count) {
+        double[] values = new double[count];
+        long previous = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                previous = in.read(64);
+            } else if (in.read(1) == 1) {
+                if (in.read(1) == 1) {
+                    leading = (int) in.read(5);
+                    int meaningful = (int) in.read(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                previous ^= in.read(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.longBitsToDouble(previous);
+        }
+        return values;
+    }
+
+    private static byte[] encodeCodes(int[] codes, int dictionarySize) {
+        int width = codeWidth(dictionarySize);
+        BitWriter out = new BitWriter();
+        if (width > 0) {
+            for (int code : codes) {
+                out.write(code, width);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int[] decodeCodes(BitReader in, int count, int dictionarySize) {
+        int width = codeWidth(dictionarySize);
+        int[] codes = new int[count];
+        if (width > 0) {
+            for (int i = 0; i < count; i++) {
+                codes[i] = (int) in.read(width);
+            }
+        }
+        return codes;
+    }
+
+    private static int codeWidth(int dictionarySize) {
+        return dictionarySize <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(dictionarySize - 1);
+    }
+
+    /**
+     * Distinct strings in first-seen order. Null is a valid entry.
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> mCodes = new HashMap<>();
+        private final List<String> mEntries = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = mCodes.get(value);
+            if (code == null) {
+                code = mEntries.size();
+                mCodes.put(value, code);
+                mEntries.add(value);
+            }
+            return code;
+        }
+
+        int size() {
+            return mEntries.size();
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeShort(mEntries.size());
+            for (String entry : mEntries) {
+                if (entry == null) {
+                    out.writeShort(-1);
+                } else {
+                    byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        }
+
+        static List<String> readFrom(ByteBuffer in) {
+            int size = in.getShort() & 0xFFFF;
+            List<String> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int length = in.getShort();
+                if (length < 0) {
+                    entries.add(null);
+                } else {
+                    byte[] bytes = new byte[length];
+                    in.get(bytes);
+                    entries.add(new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Writes values of up to 64 bits, most significant bit first.
+     */
+    private static class BitWriter {
+        private byte[] mBytes = new byte[64];
+        private int mBitPosition;
+
+        void write(long value, int bits) {
+            if (mBytes.length * 8 < mBitPosition + bits) {
+                mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, (mBitPosition + bits) / 8 + 1));
+            }
+            while (bits > 0) {
+                int free = 8 - (mBitPosition & 7);
+                int n = Math.min(free, bits);
+                int chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+                mBytes[mBitPosition >>> 3] |= chunk << (free - n);
+                mBitPosition += n;
+                bits -= n;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBytes, (mBitPosition + 7) >>> 3);
+        }
+    }
+
+    /**
+     * Reads values written by {@link BitWriter} straight from a buffer, which may be mapped.
+     */
+    private static class BitReader {
+        private final ByteBuffer mBuffer;
+        private final int mStart;
+        private int mBitPosition;
+
+        BitReader(ByteBuffer buffer, int start) {
+            mBuffer = buffer;
+            mStart = start;
+        }
+
+        long read(int bits) {
+            long value = 0;
+            while (bits > 0) {
+                int available = 8 - (mBitPosition & 7);
+                int n = Math.min(available, bits);
+                int chunk = ((mBuffer.get(mStart + (mBitPosition >>> 3)) & 0xFF) >>> (available - n)) & ((1 << n) - 1);
+                value = (value << n) | chunk;
+                mBitPosition += n;
+                bits -= n;
+            }
+            return value;
+        }
+
+        long readSigned(int bits) {
+            long value = read(bits);
+            return (value << (64 - bits)) >> (64 - bits);
+        }
+    }
+}
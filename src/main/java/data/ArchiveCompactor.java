@@ -0,0 +1,241 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Background compaction and retention for the observation archive.
+ *
+ * Each pass looks at every day before today. A day past the retention policy's maximum age is
+ * deleted. Otherwise its segment, which collects a small block on every commit, is rewritten as
+ * large sorted blocks without duplicates, downsampled to hourly or daily records once it is old
+ * enough. The new blocks are marked with the resolution they were compacted to, so a segment whose
+ * blocks are all compacted at that resolution or coarser is left alone without being decoded.
+ *
+ * Passes run on a single minimum priority daemon thread. Work waits while the fetch scheduler
+ * has fetches queued or in flight, and is throttled to a number of bytes per second.
+ *
+ * @author michael
+ */
+class ArchiveCompactor {
+
+    private static final Logger logger = LogManager.getLogger(data.ArchiveCompactor.class);
+    private static final long IDLE_POLL_MILLIS = 500;
+
+    private final ObservationArchive mArchive;
+    private final RetentionPolicy mPolicy;
+    private final FetchScheduler mFetchScheduler;
+    private final long mBytesPerSecond;
+    private ScheduledExecutorService mExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param archive the archive to compact.
+     * @param policy how long to keep each resolution.
+     * @param fetchScheduler the scheduler to give way to.
+     * @param bytesPerSecond the most segment bytes to rewrite per second.
+     */
+    ArchiveCompactor(ObservationArchive archive, RetentionPolicy policy, FetchScheduler fetchScheduler,
+                     long bytesPerSecond) {
+        checkArgument(bytesPerSecond > 0);
+        mArchive = checkNotNull(archive);
+        mPolicy = checkNotNull(policy);
+        mFetchScheduler = checkNotNull(fetchScheduler);
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Run a pass now and then at a fixed interval.
+     *
+     * @param initialDelayMillis how long to wait before the first pass.
+     * @param intervalMillis how long to wait between passes.
+     */
+    synchronized void start(long initialDelayMillis, long intervalMillis) {
+        if (mExecutor != null) {
+            return;
+        }
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "observation-archive-compactor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, initialDelayMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Run one compaction pass.
+     *
+     * @return how many segments were rewritten or deleted.
+     * @throws InterruptedException if interrupted while waiting or throttling.
+     */
+    int compact() throws InterruptedException {
+        long today = Math.floorDiv(now(), ObservationArchive.DAY_MILLIS);
+        int changed = 0;
+        for (Map.Entry<Long, File> entry : mArchive.segments(Long.MIN_VALUE / 2, today - 1).entrySet()) {
+            long day = entry.getKey();
+            long age = today - day;
+            long bytes = entry.getValue().length();
+            waitUntilIdle();
+            if (mPolicy.isExpired(age)) {
+                mArchive.deleteSegment(day);
+                changed++;
+                continue;
+            }
+            RetentionPolicy.Resolution resolution = mPolicy.resolutionFor(age);
+            if (isCompact(entry.getValue(), resolution)) {
+                continue;
+            }
+            try {
+                if (mArchive.rewriteSegment(day, rewriter(resolution), resolution)) {
+                    changed++;
+                }
+            } catch (IOException e) {
+                logger.error("Cannot compact archive segment " + entry.getValue(), e);
+            }
+            // Give the disk back to everything else in proportion to what was rewritten
+            Thread.sleep(bytes * 1000 / mBytesPerSecond);
+        }
+        return changed;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void waitUntilIdle() throws InterruptedException {
+        while (!mFetchScheduler.isIdle()) {
+            Thread.sleep(IDLE_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Whether every block of a segment was compacted at a resolution, or a coarser one, judged from
+     * the block headers. A block appended since, for a late observation, makes the segment due again.
+     */
+    private boolean isCompact(File segment, RetentionPolicy.Resolution resolution) {
+        List<ArchiveBlockCodec.Header> headers = mArchive.headers(segment);
+        if (headers.isEmpty()) {
+            return false;
+        }
+        for (ArchiveBlockCodec.Header header : headers) {
+            RetentionPolicy.Resolution compactedTo = header.getCompactedTo();
+            if (compactedTo == null || compactedTo.compareTo(resolution) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ObservationArchive.SegmentRewriter rewriter(final RetentionPolicy.Resolution resolution) {
+        return new ObservationArchive.SegmentRewriter() {
+            @Override
+            public List<ArchiveRecord> rewrite(List<ArchiveRecord> records) {
+                Map<String, ArchiveRecord> unique = new LinkedHashMap<>();
+                for (ArchiveRecord record : records) {
+                    if (!unique.containsKey(record.key())) {
+                        unique.put(record.key(), record);
+                    }
+                }
+                List<ArchiveRecord> kept = new ArrayList<>(unique.values());
+                return resolution == RetentionPolicy.Resolution.RAW ? kept : downsample(kept, resolution);
+            }
+        };
+    }
+
+    /**
+     * Reduce records to one per station per bucket, stamped with the start of the bucket.
+     *
+     * Measurements are averaged, except the peak gust and rain since 9am, which keep their
+     * largest value. The minimum and maximum of every measurement are kept too, so the daily
+     * rollups and pyramids rebuilt from the archive still see each bucket's extremes. Wind
+     * direction, cloud and local offset come from the latest record.
+     *
+     * @param records the records to reduce.
+     * @param resolution the size of the buckets.
+     * @return the downsampled records.
+     */
+    static List<ArchiveRecord> downsample(List<ArchiveRecord> records, RetentionPolicy.Resolution resolution) {
+        records = new ArrayList<>(records);
+        Collections.sort(records, ObservationArchive.BY_STATION_AND_TIME);
+        List<ArchiveRecord> result = new ArrayList<>();
+        ObservationField[] fields = ObservationField.values();
+        int from = 0;
+        while (from < records.size()) {
+            ArchiveRecord first = records.get(from);
+            long bucket = Math.floorDiv(first.getTime(), resolution.getBucketMillis()) * resolution.getBucketMillis();
+            int to = from;
+            while (to < records.size() && records.get(to).getStation().equals(first.getStation())
+                    && records.get(to).getTime() < bucket + resolution.getBucketMillis()) {
+                to++;
+            }
+            double[] values = new double[fields.length];
+            double[] min = new double[fields.length];
+            double[] max = new double[fields.length];
+            for (ObservationField field : fields) {
+                boolean peak = field == ObservationField.GUST_KMH || field == ObservationField.RAIN_TRACE;
+                double total = 0;
+                double largest = Double.NaN;
+                double smallest = Double.NaN;
+                double highest = Double.NaN;
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    ArchiveRecord record = records.get(i);
+                    double value = record.getValue(field);
+                    if (!Double.isNaN(value)) {
+                        total += value;
+                        largest = count == 0 ? value : Math.max(largest, value);
+                        // An already downsampled record brings the extremes of its own bucket
+                        smallest = count == 0 ? record.getMin(field) : Math.min(smallest, record.getMin(field));
+                        highest = count == 0 ? record.getMax(field) : Math.max(highest, record.getMax(field));
+                        count++;
+                    }
+                }
+                values[field.ordinal()] = count == 0 ? Double.NaN
+                        : peak ? largest : Math.round(total / count * 100) / 100.0;
+                min[field.ordinal()] = smallest;
+                max[field.ordinal()] = highest;
+            }
+            ArchiveRecord last = records.get(to - 1);
+            result.add(new ArchiveRecord(first.getStation(), bucket, last.getOffsetMinutes(), values, min, max,
+                    last.getWindDir(), last.getCloud()));
+            from = to;
+        }
+        return result;
+    }
+}
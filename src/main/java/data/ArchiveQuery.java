@@ -0,0 +1,232 @@
+package data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A query over the observation archive, for example the daily maximum air temperature at a set of
+ * stations over ninety days.
+ *
+ * A query selects a time window and optionally a set of stations and value ranges, projects one or
+ * more measurements and aggregates them per station, per hour or day of station local time, or both.
+ *
+ * @author michael
+ */
+public class ArchiveQuery {
+
+    /**
+     * The time buckets results can be grouped into, in station local time.
+     */
+    public enum TimeBucket {
+        NONE, HOUR, DAY
+    }
+
+    private final Set<String> mStations;
+    private final long mFrom;
+    private final long mTo;
+    private final List<ObservationField> mFields;
+    private final Aggregate mAggregate;
+    private final boolean mGroupByStation;
+    private final TimeBucket mTimeBucket;
+    private final List<Filter> mFilters;
+
+    private ArchiveQuery(Builder builder) {
+        mStations = ImmutableSet.copyOf(builder.mStations);
+        mFrom = builder.mFrom;
+        mTo = builder.mTo;
+        mFields = ImmutableList.copyOf(builder.mFields);
+        mAggregate = builder.mAggregate;
+        mGroupByStation = builder.mGroupByStation;
+        mTimeBucket = builder.mTimeBucket;
+        mFilters = ImmutableList.copyOf(builder.mFilters);
+    }
+
+    /**
+     * @return the station names to include, or an empty set for every station.
+     */
+    public Set<String> getStations() {
+        return mStations;
+    }
+
+    public long getFrom() {
+        return mFrom;
+    }
+
+    public long getTo() {
+        return mTo;
+    }
+
+    public List<ObservationField> getFields() {
+        return mFields;
+    }
+
+    public Aggregate getAggregate() {
+        return mAggregate;
+    }
+
+    public boolean isGroupedByStation() {
+        return mGroupByStation;
+    }
+
+    public TimeBucket getTimeBucket() {
+        return mTimeBucket;
+    }
+
+    List<Filter> getFilters() {
+        return mFilters;
+    }
+
+    /**
+     * Keeps only observations whose measurement lies within a range.
+     */
+    static class Filter {
+        private final ObservationField mField;
+        private final double mMin;
+        private final double mMax;
+
+        Filter(ObservationField field, double min, double max) {
+            mField = field;
+            mMin = min;
+            mMax = max;
+        }
+
+        ObservationField getField() {
+            return mField;
+        }
+
+        boolean accepts(double value) {
+            return value >= mMin && value <= mMax;
+        }
+
+        /**
+         * @return whether any value between min and max, the range of a block, could be accepted.
+         */
+        boolean overlaps(double min, double max) {
+            return !Double.isNaN(min) && max >= mMin && min <= mMax;
+        }
+    }
+
+    /**
+     * One group of the result.
+     */
+    public static class Row {
+        private final String mStation;
+        private final long mBucket;
+        private final List<ObservationField> mFields;
+        private final double[] mValues;
+
+        Row(String station, long bucket, List<ObservationField> fields, double[] values) {
+            mStation = station;
+            mBucket = bucket;
+            mFields = fields;
+            mValues = values;
+        }
+
+        /**
+         * @return the station name, or null if not grouped by station.
+         */
+        public String getStation() {
+            return mStation;
+        }
+
+        /**
+         * @return the start of the time bucket in station local time, as milliseconds since the epoch
+         * treating local time as UTC, or 0 if not grouped by time.
+         */
+        public long getBucket() {
+            return mBucket;
+        }
+
+        /**
+         * @param field one of the projected measurements.
+         * @return the aggregate for the measurement, or NaN if the group has no values for it.
+         */
+        public double getValue(ObservationField field) {
+            int index = mFields.indexOf(field);
+            checkArgument(index >= 0, "Field was not projected: " + field);
+            return mValues[index];
+        }
+
+        @Override
+        public String toString() {
+            return mStation + " " + ArchiveRecord.formatTime(mBucket) + " " + Arrays.toString(mValues);
+        }
+    }
+
+    /**
+     * Builds a query. By default it covers every station and all time, aggregates with the mean
+     * and does not group.
+     */
+    public static class Builder {
+        private final List<String> mStations = new ArrayList<>();
+        private final List<ObservationField> mFields = new ArrayList<>();
+        private final List<Filter> mFilters = new ArrayList<>();
+        private long mFrom = Long.MIN_VALUE;
+        private long mTo = Long.MAX_VALUE;
+        private Aggregate mAggregate = Aggregate.MEAN;
+        private boolean mGroupByStation;
+        private TimeBucket mTimeBucket = TimeBucket.NONE;
+
+        public Builder stations(Collection<String> stations) {
+            mStations.addAll(stations);
+            return this;
+        }
+
+        public Builder stations(String... stations) {
+            return stations(Arrays.asList(stations));
+        }
+
+        /**
+         * @param from the start of the window, inclusive, in UTC milliseconds.
+         * @param to the end of the window, inclusive, in UTC milliseconds.
+         */
+        public Builder between(long from, long to) {
+            checkArgument(from <= to);
+            mFrom = from;
+            mTo = to;
+            return this;
+        }
+
+        public Builder fields(ObservationField... fields) {
+            mFields.addAll(Arrays.asList(fields));
+            return this;
+        }
+
+        public Builder aggregate(Aggregate aggregate) {
+            mAggregate = checkNotNull(aggregate);
+            return this;
+        }
+
+        public Builder groupByStation() {
+            mGroupByStation = true;
+            return this;
+        }
+
+        public Builder groupBy(TimeBucket timeBucket) {
+            mTimeBucket = checkNotNull(timeBucket);
+            return this;
+        }
+
+        /**
+         * Keep only observations where a measurement lies within a range, inclusive.
+         */
+        public Builder where(ObservationField field, double min, double max) {
+            mFilters.add(new Filter(checkNotNull(field), min, max));
+            return this;
+        }
+
+        public ArchiveQuery build() {
+            checkArgument(!mFields.isEmpty(), "At least one field must be projected");
+            return new ArchiveQuery(this);
+        }
+    }
+}
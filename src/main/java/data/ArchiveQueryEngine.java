@@ -0,0 +1,299 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs {@link ArchiveQuery} queries over the blocks of an {@link ObservationArchive}.
+ *
+ * Blocks are scanned in parallel with fork/join, each task building partial groups that are merged
+ * as the tasks join. A block is skipped without decoding when its header shows it is outside the
+ * time window, holds none of the stations, or cannot hold a value within a filter. Only the columns
+ * a query needs are decoded.
+ *
+ * @author michael
+ */
+class ArchiveQueryEngine {
+
+    private static final Logger logger = LogManager.getLogger(data.ArchiveQueryEngine.class);
+    private static final int BLOCKS_PER_TASK = 2;
+    private static final long HOUR_MILLIS = 3600000L;
+
+    private ArchiveQueryEngine() {
+    }
+
+    static List<ArchiveQuery.Row> run(ObservationArchive archive, ArchiveQuery query) {
+        List<ByteBuffer> blocks = new ArrayList<>();
+        long fromDay = Math.floorDiv(query.getFrom(), ObservationArchive.DAY_MILLIS);
+        long toDay = Math.floorDiv(query.getTo(), ObservationArchive.DAY_MILLIS);
+        for (File segment : archive.segments(fromDay, toDay).values()) {
+            blocks.addAll(archive.blocks(segment));
+        }
+        Map<GroupKey, Group> groups = ForkJoinPool.commonPool().invoke(new ScanTask(query, blocks, 0, blocks.size()));
+
+        List<ArchiveQuery.Row> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<GroupKey, Group> entry : groups.entrySet()) {
+            rows.add(new ArchiveQuery.Row(entry.getKey().mStation, entry.getKey().mBucket, query.getFields(),
+                    entry.getValue().result(query.getAggregate())));
+        }
+        Collections.sort(rows, new Comparator<ArchiveQuery.Row>() {
+            @Override
+            public int compare(ArchiveQuery.Row a, ArchiveQuery.Row b) {
+                if (!Objects.equals(a.getStation(), b.getStation())) {
+                    return a.getStation() == null ? -1
+                            : b.getStation() == null ? 1 : a.getStation().compareTo(b.getStation());
+                }
+                return Long.compare(a.getBucket(), b.getBucket());
+            }
+        });
+        return rows;
+    }
+
+    /**
+     * Scans a range of blocks, splitting in half until the range is small.
+     */
+    private static class ScanTask extends RecursiveTask<Map<GroupKey, Group>> {
+        private static final long serialVersionUID = 1L;
+        private final ArchiveQuery mQuery;
+        private final List<ByteBuffer> mBlocks;
+        private final int mFrom;
+        private final int mTo;
+
+        ScanTask(ArchiveQuery query, List<ByteBuffer> blocks, int from, int to) {
+            mQuery = query;
+            mBlocks = blocks;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected Map<GroupKey, Group> compute() {
+            if (mTo - mFrom <= BLOCKS_PER_TASK) {
+                Map<GroupKey, Group> groups = new HashMap<>();
+                for (int i = mFrom; i < mTo; i++) {
+                    try {
+                        scan(mQuery, mBlocks.get(i), groups);
+                    } catch (RuntimeException e) {
+                        logger.error("Skipping corrupt archive block", e);
+                    }
+                }
+                return groups;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            ScanTask left = new ScanTask(mQuery, mBlocks, mFrom, middle);
+            left.fork();
+            Map<GroupKey, Group> groups = new ScanTask(mQuery, mBlocks, middle, mTo).compute();
+            for (Map.Entry<GroupKey, Group> entry : left.join().entrySet()) {
+                Group group = groups.get(entry.getKey());
+                if (group == null) {
+                    groups.put(entry.getKey(), entry.getValue());
+                } else {
+                    group.merge(entry.getValue());
+                }
+            }
+            return groups;
+        }
+    }
+
+    private static void scan(ArchiveQuery query, ByteBuffer block, Map<GroupKey, Group> groups) {
+        ArchiveBlockCodec.Header header = ArchiveBlockCodec.readHeader(block);
+        if (!header.overlaps(query.getFrom(), query.getTo())) {
+            return;
+        }
+        List<String> stations = header.getStations();
+        boolean[] wanted = null;
+        if (!query.getStations().isEmpty()) {
+            wanted = new boolean[stations.size()];
+            boolean any = false;
+            for (int s = 0; s < wanted.length; s++) {
+                wanted[s] = query.getStations().contains(stations.get(s));
+                any |= wanted[s];
+            }
+            if (!any) {
+                return;
+            }
+        }
+        for (ArchiveQuery.Filter filter : query.getFilters()) {
+            if (!filter.overlaps(header.getMin(filter.getField()), header.getMax(filter.getField()))) {
+                return;
+            }
+        }
+
+        int count = header.getCount();
+        int[] stationCodes = wanted != null || query.isGroupedByStation()
+                ? ArchiveBlockCodec.decodeStations(header, block) : null;
+        long[] times = ArchiveBlockCodec.decodeTimes(header, block);
+        int[] offsets = query.getTimeBucket() != ArchiveQuery.TimeBucket.NONE
+                ? ArchiveBlockCodec.decodeOffsets(header, block) : null;
+        Map<ObservationField, double[]> columns = new EnumMap<>(ObservationField.class);
+        List<ObservationField> fields = query.getFields();
+        double[][] values = new double[fields.size()][];
+        for (int f = 0; f < values.length; f++) {
+            // Downsampled records keep their bucket's extremes, which a minimum or maximum must use
+            if (header.isRanged() && query.getAggregate() == Aggregate.MIN) {
+                values[f] = ArchiveBlockCodec.decodeFieldMin(header, block, fields.get(f));
+            } else if (header.isRanged() && query.getAggregate() == Aggregate.MAX) {
+                values[f] = ArchiveBlockCodec.decodeFieldMax(header, block, fields.get(f));
+            } else {
+                values[f] = column(header, block, fields.get(f), columns);
+            }
+        }
+        List<ArchiveQuery.Filter> filters = query.getFilters();
+        double[][] filterValues = new double[filters.size()][];
+        for (int f = 0; f < filterValues.length; f++) {
+            filterValues[f] = column(header, block, filters.get(f).getField(), columns);
+        }
+
+        GroupKey lastKey = null;
+        Group lastGroup = null;
+        rows:
+        for (int i = 0; i < count; i++) {
+            if (times[i] < query.getFrom() || times[i] > query.getTo()
+                    || (wanted != null && !wanted[stationCodes[i]])) {
+                continue;
+            }
+            for (int f = 0; f < filterValues.length; f++) {
+                if (!filters.get(f).accepts(filterValues[f][i])) {
+                    continue rows;
+                }
+            }
+            String station = query.isGroupedByStation() ? stations.get(stationCodes[i]) : null;
+            long bucket = bucket(query.getTimeBucket(), times[i], offsets == null ? 0 : offsets[i]);
+            if (lastKey == null || !lastKey.matches(station, bucket)) {
+                lastKey = new GroupKey(station, bucket);
+                lastGroup = groups.get(lastKey);
+                if (lastGroup == null) {
+                    lastGroup = new Group(fields.size(), query.getAggregate().isPercentile());
+                    groups.put(lastKey, lastGroup);
+                }
+            }
+            for (int f = 0; f < values.length; f++) {
+                lastGroup.add(f, values[f][i]);
+            }
+        }
+    }
+
+    private static double[] column(ArchiveBlockCodec.Header header, ByteBuffer block, ObservationField field,
+                                   Map<ObservationField, double[]> columns) {
+        double[] column = columns.get(field);
+        if (column == null) {
+            column = ArchiveBlockCodec.decodeField(header, block, field);
+            columns.put(field, column);
+        }
+        return column;
+    }
+
+    private static long bucket(ArchiveQuery.TimeBucket timeBucket, long time, int offsetMinutes) {
+        long local = time + offsetMinutes * 60000L;
+        switch (timeBucket) {
+            case HOUR:
+                return Math.floorDiv(local, HOUR_MILLIS) * HOUR_MILLIS;
+            case DAY:
+                return Math.floorDiv(local, ObservationArchive.DAY_MILLIS) * ObservationArchive.DAY_MILLIS;
+            default:
+                return 0;
+        }
+    }
+
+    private static class GroupKey {
+        private final String mStation;
+        private final long mBucket;
+
+        GroupKey(String station, long bucket) {
+            mStation = station;
+            mBucket = bucket;
+        }
+
+        boolean matches(String station, long bucket) {
+            return mBucket == bucket && Objects.equals(mStation, station);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GroupKey && ((GroupKey) o).matches(mStation, mBucket);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(mStation) * 31 + Long.hashCode(mBucket);
+        }
+    }
+
+    /**
+     * Running totals for each projected measurement of a group, and the values themselves when a
+     * percentile is asked for.
+     */
+    private static class Group {
+        private final int[] mCount;
+        private final double[] mSum;
+        private final double[] mMin;
+        private final double[] mMax;
+        private final double[][] mValues;
+
+        Group(int fields, boolean keepValues) {
+            mCount = new int[fields];
+            mSum = new double[fields];
+            mMin = new double[fields];
+            mMax = new double[fields];
+            mValues = keepValues ? new double[fields][16] : null;
+            for (int f = 0; f < fields; f++) {
+                mMin[f] = Double.POSITIVE_INFINITY;
+                mMax[f] = Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        void add(int field, double value) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+            if (mValues != null) {
+                if (mCount[field] == mValues[field].length) {
+                    mValues[field] = Arrays.copyOf(mValues[field], mCount[field] * 2);
+                }
+                mValues[field][mCount[field]] = value;
+            }
+            mCount[field]++;
+            mSum[field] += value;
+            mMin[field] = Math.min(mMin[field], value);
+            mMax[field] = Math.max(mMax[field], value);
+        }
+
+        void merge(Group other) {
+            for (int f = 0; f < mCount.length; f++) {
+                if (mValues != null) {
+                    for (int i = 0; i < other.mCount[f]; i++) {
+                        add(f, other.mValues[f][i]);
+                    }
+                } else {
+                    mCount[f] += other.mCount[f];
+                    mSum[f] += other.mSum[f];
+                    mMin[f] = Math.min(mMin[f], other.mMin[f]);
+                    mMax[f] = Math.max(mMax[f], other.mMax[f]);
+                }
+            }
+        }
+
+        double[] result(Aggregate aggregate) {
+            double[] result = new double[mCount.length];
+            for (int f = 0; f < result.length; f++) {
+                result[f] = aggregate.compute(mValues == null ? null : mValues[f], mCount[f], mSum[f], mMin[f],
+                        mMax[f]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package data;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * One archived observation: the station, the UTC time, the station's local offset from UTC, every
+ * numeric measurement and the worded wind direction and cloud.
+ *
+ * A downsampled record stands for every observation in its bucket, so it also keeps the minimum and
+ * maximum of each measurement within the bucket.
+ *
+ * @author michael
+ */
+class ArchiveRecord {
+
+    private static final DateTimeFormatter BOM_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final int FIELD_COUNT = ObservationField.values().length;
+
+    private final String mStation;
+    private final long mTime;
+    private final int mOffsetMinutes;
+    private final double[] mValues;
+    private final double[] mMin;
+    private final double[] mMax;
+    private final String mWindDir;
+    private final String mCloud;
+
+    ArchiveRecord(String station, long time, int offsetMinutes, double[] values, String windDir, String cloud) {
+        this(station, time, offsetMinutes, values, null, null, windDir, cloud);
+    }
+
+    /**
+     * Constructor for a downsampled record.
+     *
+     * @param min the minimum of each measurement within the bucket, or null for a single observation.
+     * @param max the maximum of each measurement within the bucket, or null for a single observation.
+     */
+    ArchiveRecord(String station, long time, int offsetMinutes, double[] values, double[] min, double[] max,
+                  String windDir, String cloud) {
+        mStation = station;
+        mTime = time;
+        mOffsetMinutes = offsetMinutes;
+        mValues = values;
+        mMin = min;
+        mMax = max;
+        mWindDir = windDir;
+        mCloud = cloud;
+    }
+
+    /**
+     * Create a record from a BOM observation.
+     *
+     * @param station the name of the station the observation belongs to.
+     * @param obs the observation.
+     * @return the record, or null if the observation has no usable time.
+     */
+    static ArchiveRecord fromObservation(String station, Observation obs) {
+        Long local = parseTime(obs.getmDateTime());
+        Long utc = parseTime(obs.getmAifstimeUtc());
+        if (utc == null) {
+            utc = local;
+        }
+        if (utc == null) {
+            return null;
+        }
+        int offsetMinutes = local == null ? 0 : (int) ((local - utc) / 60000);
+        double[] values = new double[FIELD_COUNT];
+        for (ObservationField field : ObservationField.values()) {
+            values[field.ordinal()] = field.valueOf(obs);
+        }
+        return new ArchiveRecord(station, utc, offsetMinutes, values, obs.getmWindDir(), obs.getmCloud());
+    }
+
+    /**
+     * Rebuild a BOM style observation from the record.
+     *
+     * @return the observation.
+     */
+    Observation toObservation() {
+        Observation obs = new Observation(null, mStation, formatTime(mTime + mOffsetMinutes * 60000L),
+                null, mCloud, null, null, null);
+        obs.setmAifstimeUtc(formatTime(mTime));
+        for (ObservationField field : ObservationField.values()) {
+            field.setValue(obs, mValues[field.ordinal()]);
+        }
+        obs.setmWindDir(mWindDir);
+        return obs;
+    }
+
+    /**
+     * Parse a BOM time string, which is UTC for aifstime_utc and station local time otherwise.
+     *
+     * @param time the time string, yyyyMMddHHmmss.
+     * @return milliseconds since the epoch treating the string as UTC, or null if it cannot be parsed.
+     */
+    static Long parseTime(String time) {
+        if (time == null || time.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(time, BOM_TIME).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    static String formatTime(long time) {
+        return LocalDateTime.ofEpochSecond(time / 1000, 0, ZoneOffset.UTC).format(BOM_TIME);
+    }
+
+    /**
+     * Key identifying the observation for de-duplication: the station and its UTC time.
+     */
+    String key() {
+        return mStation + '|' + mTime;
+    }
+
+    String getStation() {
+        return mStation;
+    }
+
+    long getTime() {
+        return mTime;
+    }
+
+    int getOffsetMinutes() {
+        return mOffsetMinutes;
+    }
+
+    double getValue(ObservationField field) {
+        return mValues[field.ordinal()];
+    }
+
+    /**
+     * @return whether the record is downsampled, with the minimum and maximum of its bucket.
+     */
+    boolean hasRange() {
+        return mMin != null;
+    }
+
+    /**
+     * @return the minimum of the measurement within the record's bucket, or the value itself.
+     */
+    double getMin(ObservationField field) {
+        return mMin == null ? mValues[field.ordinal()] : mMin[field.ordinal()];
+    }
+
+    /**
+     * @return the maximum of the measurement within the record's bucket, or the value itself.
+     */
+    double getMax(ObservationField field) {
+        return mMax == null ? mValues[field.ordinal()] : mMax[field.ordinal()];
+    }
+
+    String getWindDir() {
+        return mWindDir;
+    }
+
+    String getCloud() {
+        return mCloud;
+    }
+}
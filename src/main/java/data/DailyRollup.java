@@ -0,0 +1,101 @@
+package data;
+
+/**
+ * Summary of one station-day of observations, in station local time.
+ *
+ * Rain follows BOM's rain day: the rain in the 24 hours to 9am, credited to the day the period
+ * ends, worked out from the rain since 9am reported by each observation.
+ *
+ * @author michael
+ */
+public class DailyRollup {
+
+    private final String mStation;
+    private final String mDay;
+    private final double mMinTemp;
+    private final String mMinTempTime;
+    private final double mMaxTemp;
+    private final String mMaxTempTime;
+    private final double mMeanTemp;
+    private final double mRain;
+    private final double mPeakGust;
+    private final String mPeakGustTime;
+
+    DailyRollup(String station, String day, double minTemp, String minTempTime, double maxTemp, String maxTempTime,
+                double meanTemp, double rain, double peakGust, String peakGustTime) {
+        mStation = station;
+        mDay = day;
+        mMinTemp = minTemp;
+        mMinTempTime = minTempTime;
+        mMaxTemp = maxTemp;
+        mMaxTempTime = maxTempTime;
+        mMeanTemp = meanTemp;
+        mRain = rain;
+        mPeakGust = peakGust;
+        mPeakGustTime = peakGustTime;
+    }
+
+    public String getStation() {
+        return mStation;
+    }
+
+    /**
+     * @return the local day, yyyyMMdd.
+     */
+    public String getDay() {
+        return mDay;
+    }
+
+    /**
+     * @return the minimum air temperature, or NaN if none was observed.
+     */
+    public double getMinTemp() {
+        return mMinTemp;
+    }
+
+    /**
+     * @return the local time of the minimum, yyyyMMddHHmmss like {@link Observation#getmDateTime()}.
+     */
+    public String getMinTempTime() {
+        return mMinTempTime;
+    }
+
+    /**
+     * @return the maximum air temperature, or NaN if none was observed.
+     */
+    public double getMaxTemp() {
+        return mMaxTemp;
+    }
+
+    /**
+     * @return the local time of the maximum, yyyyMMddHHmmss like {@link Observation#getmDateTime()}.
+     */
+    public String getMaxTempTime() {
+        return mMaxTempTime;
+    }
+
+    /**
+     * @return the mean of the air temperatures observed, or NaN if none was observed.
+     */
+    public double getMeanTemp() {
+        return mMeanTemp;
+    }
+
+    /**
+     * @return the rain in the 24 hours to 9am, or NaN if no rain was reported.
+     */
+    public double getRain() {
+        return mRain;
+    }
+
+    /**
+     * @return the strongest gust in km/h, or NaN if none was reported.
+     */
+    public double getPeakGust() {
+        return mPeakGust;
+    }
+
+    public String getPeakGustTime() {
+        return mPeakGustTime;
+    }
+}
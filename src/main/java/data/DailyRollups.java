@@ -0,0 +1,171 @@
+package data;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daily rollups for each station, updated as observations are ingested so charts and queries never
+ * rescan the observations.
+ *
+ * Each station-day remembers which observation times it has counted, so ingesting overlapping
+ * fetches, or the same observations again from the archive, does not skew the mean. A downsampled
+ * archive record counts once towards the mean, with the extremes of its bucket timed at its start.
+ *
+ * @author michael
+ */
+class DailyRollups {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // Rain since 9am resets at 9am, so the rain day ending at 9am starts 15 hours before midnight
+    private static final long RAIN_DAY_SHIFT_MILLIS = TimeUnit.HOURS.toMillis(15) - 1;
+
+    private final Map<String, TreeMap<Long, Accumulator>> mStations = new HashMap<>();
+    private final Set<String> mLoadedFromArchive = new HashSet<>();
+
+    /**
+     * Add observations for a station to its rollups.
+     *
+     * @param station the station the observations belong to.
+     * @param observations the observations.
+     */
+    synchronized void ingest(String station, List<Observation> observations) {
+        for (Observation observation : observations) {
+            ArchiveRecord record = ArchiveRecord.fromObservation(station, observation);
+            if (record != null) {
+                ingest(record);
+            }
+        }
+    }
+
+    /**
+     * Add an archived record to its station's rollups.
+     *
+     * @param record the record.
+     */
+    synchronized void ingest(ArchiveRecord record) {
+        TreeMap<Long, Accumulator> days = mStations.get(record.getStation());
+        if (days == null) {
+            days = new TreeMap<>();
+            mStations.put(record.getStation(), days);
+        }
+        long local = record.getTime() + record.getOffsetMinutes() * 60000L;
+        long day = Math.floorDiv(local, DAY_MILLIS);
+        Accumulator accumulator = accumulator(days, day);
+        if (!accumulator.mTimes.add(record.getTime())) {
+            return;
+        }
+        accumulator.addTemp(record.getValue(ObservationField.AIR_TEMP), record.getMin(ObservationField.AIR_TEMP),
+                record.getMax(ObservationField.AIR_TEMP), local);
+        accumulator.addGust(record.getValue(ObservationField.GUST_KMH), local);
+        double rain = record.getValue(ObservationField.RAIN_TRACE);
+        if (!Double.isNaN(rain)) {
+            Accumulator rainDay = accumulator(days, Math.floorDiv(local + RAIN_DAY_SHIFT_MILLIS, DAY_MILLIS));
+            rainDay.mRain = Double.isNaN(rainDay.mRain) ? rain : Math.max(rainDay.mRain, rain);
+        }
+    }
+
+    /**
+     * Note that a station's archive is about to be ingested.
+     *
+     * @param station the station name.
+     * @return true the first time it is called for the station.
+     */
+    synchronized boolean markLoadedFromArchive(String station) {
+        return mLoadedFromArchive.add(station);
+    }
+
+    /**
+     * Forget a station's rollups. They are built again from the archive if asked for.
+     *
+     * @param station the station name.
+     */
+    synchronized void remove(String station) {
+        mStations.remove(station);
+        mLoadedFromArchive.remove(station);
+    }
+
+    /**
+     * Get the rollups for a station.
+     *
+     * @param station the station name.
+     * @return the rollups, oldest day first.
+     */
+    synchronized List<DailyRollup> get(String station) {
+        TreeMap<Long, Accumulator> days = mStations.get(station);
+        if (days == null) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<DailyRollup> rollups = ImmutableList.builder();
+        for (Map.Entry<Long, Accumulator> entry : days.entrySet()) {
+            rollups.add(entry.getValue().toRollup(station, entry.getKey()));
+        }
+        return rollups.build();
+    }
+
+    private static Accumulator accumulator(TreeMap<Long, Accumulator> days, long day) {
+        Accumulator accumulator = days.get(day);
+        if (accumulator == null) {
+            accumulator = new Accumulator();
+            days.put(day, accumulator);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Running totals for one station-day. Times are local.
+     */
+    private static class Accumulator {
+        private final Set<Long> mTimes = new HashSet<>();
+        private int mTempCount;
+        private double mTempSum;
+        private double mMinTemp = Double.NaN;
+        private long mMinTempTime;
+        private double mMaxTemp = Double.NaN;
+        private long mMaxTempTime;
+        private double mRain = Double.NaN;
+        private double mPeakGust = Double.NaN;
+        private long mPeakGustTime;
+
+        void addTemp(double temp, double low, double high, long time) {
+            if (Double.isNaN(temp)) {
+                return;
+            }
+            mTempCount++;
+            mTempSum += temp;
+            // Ties go to the earliest time so the result does not depend on ingest order
+            if (Double.isNaN(mMinTemp) || low < mMinTemp || (low == mMinTemp && time < mMinTempTime)) {
+                mMinTemp = low;
+                mMinTempTime = time;
+            }
+            if (Double.isNaN(mMaxTemp) || high > mMaxTemp || (high == mMaxTemp && time < mMaxTempTime)) {
+                mMaxTemp = high;
+                mMaxTempTime = time;
+            }
+        }
+
+        void addGust(double gust, long time) {
+            if (Double.isNaN(gust)) {
+                return;
+            }
+            if (Double.isNaN(mPeakGust) || gust > mPeakGust || (gust == mPeakGust && time < mPeakGustTime)) {
+                mPeakGust = gust;
+                mPeakGustTime = time;
+            }
+        }
+
+        DailyRollup toRollup(String station, long day) {
+            return new DailyRollup(station, ArchiveRecord.formatTime(day * DAY_MILLIS).substring(0, 8),
+                    mMinTemp, Double.isNaN(mMinTemp) ? null : ArchiveRecord.formatTime(mMinTempTime),
+                    mMaxTemp, Double.isNaN(mMaxTemp) ? null : ArchiveRecord.formatTime(mMaxTempTime),
+                    mTempCount == 0 ? Double.NaN : mTempSum / mTempCount, mRain,
+                    mPeakGust, Double.isNaN(mPeakGust) ? null : ArchiveRecord.formatTime(mPeakGustTime));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package data;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes each station's observations and forecasts unique and ordered by time as they are loaded,
+ * so nothing that shows them has to de-duplicate again.
+ *
+ * Items are ordered by time with a stable sort and then merged, keeping the first of any items
+ * with the same time and counting the rest as dropped. Items without a readable time are dropped
+ * too. Data that is already ordered and unique, as BOM's usually is, is checked in one pass and
+ * passed through.
+ *
+ * @author michael
+ */
+class Deduplicator {
+
+    private static final Logger logger = LogManager.getLogger(data.Deduplicator.class);
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * @param observations the observations for a station, in any order.
+     * @return the observations with unique times, newest first like BOM's own data.
+     */
+    List<Observation> observations(List<Observation> observations) {
+        return unique(observations, new TimeKey<Observation>() {
+            @Override
+            public long time(Observation observation) {
+                // yyyyMMddHHmmss orders the same as a number
+                return parse(observation.getmDateTime());
+            }
+        }, true);
+    }
+
+    /**
+     * @param forecasts the forecasts for a station, in any order.
+     * @return the forecasts with unique times, oldest first.
+     */
+    List<Forecast> forecasts(List<Forecast> forecasts) {
+        return unique(forecasts, new TimeKey<Forecast>() {
+            @Override
+            public long time(Forecast forecast) {
+                return parse(forecast.getTime());
+            }
+        }, false);
+    }
+
+    /**
+     * @return how many duplicate items have been dropped.
+     */
+    long getDropped() {
+        return mDropped.get();
+    }
+
+    private <T> List<T> unique(List<T> items, TimeKey<T> key, final boolean newestFirst) {
+        final long[] times = new long[items.size()];
+        boolean ordered = true;
+        for (int i = 0; i < times.length; i++) {
+            times[i] = key.time(items.get(i));
+            if (times[i] == NO_TIME || (i > 0 && (newestFirst ? times[i] >= times[i - 1] : times[i] <= times[i - 1]))) {
+                ordered = false;
+            }
+        }
+        if (ordered) {
+            return items;
+        }
+        Integer[] order = new Integer[times.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Ties keep their original order, so the first of each time is kept
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byTime = newestFirst ? Long.compare(times[b], times[a]) : Long.compare(times[a], times[b]);
+                return byTime != 0 ? byTime : Integer.compare(a, b);
+            }
+        });
+        ImmutableList.Builder<T> unique = ImmutableList.builder();
+        int dropped = 0;
+        long previous = NO_TIME;
+        for (int i : order) {
+            if (times[i] == NO_TIME) {
+                continue;
+            }
+            if (times[i] == previous) {
+                dropped++;
+                continue;
+            }
+            unique.add(items.get(i));
+            previous = times[i];
+        }
+        if (dropped > 0) {
+            logger.debug("Dropped " + dropped + " duplicate times");
+            mDropped.addAndGet(dropped);
+        }
+        return unique.build();
+    }
+
+    private static long parse(String time) {
+        if (time == null) {
+            return NO_TIME;
+        }
+        try {
+            return Long.parseLong(time.trim());
+        } catch (NumberFormatException e) {
+            return NO_TIME;
+        }
+    }
+
+    private interface TimeKey<T> {
+        long time(T item);
+    }
+}
@@ -0,0 +1,346 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Disk model. Keeps the latest observations for each station in a memory-mapped segment file so
+ * they survive a restart.
+ *
+ * The file is only mapped and indexed the first time it is needed, and each station's observations
+ * are only decoded when asked for. New observations are held in memory and written back on a
+ * background thread, a short while after the last change, by writing a new segment and moving it
+ * over the old one. The old segment is unmapped first, as a mapped file can't be replaced on every
+ * platform.
+ *
+ * Segment layout: magic, version, entry count, then for each entry the station name, the time the
+ * observations were saved, the payload length and the payload.
+ *
+ * @author michael
+ */
+class DiskObservationCache {
+
+    private static final Logger logger = LogManager.getLogger(data.DiskObservationCache.class);
+    private static final int MAGIC = 0x4F425343;
+    private static final int VERSION = 2;
+    private static final int MAX_STATIONS = 100;
+    private static final long WRITE_BACK_DELAY_MILLIS = 1000;
+
+    private final File mFile;
+    private final ScheduledExecutorService mWriter;
+    private final HashMap<String, Payload> mPending = new HashMap<>();
+    private HashMap<String, Payload> mIndex;
+    private MappedByteBuffer mSegment;
+    private boolean mWriteScheduled;
+    private boolean mClosed;
+
+    /**
+     * Observations read back from disk with the time they were saved.
+     */
+    static class Entry {
+        private final List<Observation> mObservations;
+        private final long mSavedAt;
+
+        Entry(List<Observation> observations, long savedAt) {
+            mObservations = observations;
+            mSavedAt = savedAt;
+        }
+
+        List<Observation> getObservations() {
+            return mObservations;
+        }
+
+        long getSavedAt() {
+            return mSavedAt;
+        }
+    }
+
+    /**
+     * Constructor. Nothing is read until the cache is first used.
+     *
+     * @param file the segment file.
+     */
+    DiskObservationCache(File file) {
+        mFile = checkNotNull(file);
+        mWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "observation-cache-writer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the observations last saved for a station.
+     *
+     * @param station the station to look up.
+     * @return the saved observations, or null if there are none or the cache is closed.
+     */
+    synchronized Entry get(Station station) {
+        if (mClosed) {
+            return null;
+        }
+        String key = station.getCity();
+        Payload payload = mPending.get(key);
+        if (payload == null) {
+            payload = index().get(key);
+        }
+        if (payload == null) {
+            return null;
+        }
+        try {
+            return new Entry(decode(payload.bytes()), payload.mSavedAt);
+        } catch (IOException e) {
+            logger.error("Cannot decode cached observations for " + key, e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the latest observations for a station. They are written to disk in the background.
+     *
+     * @param station the station the observations belong to.
+     * @param observations the observations to save.
+     * @param savedAt when the observations were loaded.
+     */
+    synchronized void put(Station station, List<Observation> observations, long savedAt) {
+        if (mClosed) {
+            logger.warn("Observation cache is closed, not saving " + station.getCity());
+            return;
+        }
+        try {
+            mPending.put(station.getCity(), new Payload(encode(observations), savedAt));
+        } catch (IOException e) {
+            logger.error("Cannot encode observations for " + station.getCity(), e);
+            return;
+        }
+        if (!mWriteScheduled) {
+            mWriteScheduled = true;
+            mWriter.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, WRITE_BACK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write any pending observations to disk now.
+     */
+    synchronized void flush() {
+        mWriteScheduled = false;
+        if (mPending.isEmpty()) {
+            return;
+        }
+        HashMap<String, Payload> merged = new HashMap<>(index());
+        merged.putAll(mPending);
+        List<Map.Entry<String, Payload>> entries = new ArrayList<>(merged.entrySet());
+        // Keep the most recently saved stations
+        Collections.sort(entries, new Comparator<Map.Entry<String, Payload>>() {
+            @Override
+            public int compare(Map.Entry<String, Payload> a, Map.Entry<String, Payload> b) {
+                return Long.compare(b.getValue().mSavedAt, a.getValue().mSavedAt);
+            }
+        });
+        if (entries.size() > MAX_STATIONS) {
+            entries = entries.subList(0, MAX_STATIONS);
+        }
+        try {
+            File temp = write(entries);
+            // Nothing may read the old mapping once it is released
+            mIndex = null;
+            release();
+            Files.move(temp.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            mPending.clear();
+        } catch (IOException e) {
+            logger.error("Cannot write observation cache " + mFile, e);
+        }
+    }
+
+    /**
+     * Write any pending observations to disk, stop the write-back thread and release the mapped
+     * segment. Nothing more is saved or read once the cache is closed.
+     */
+    synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        flush();
+        mClosed = true;
+        mWriter.shutdownNow();
+        mIndex = null;
+        release();
+    }
+
+    /**
+     * Map and index the segment file the first time it is needed.
+     */
+    private HashMap<String, Payload> index() {
+        if (mIndex != null) {
+            return mIndex;
+        }
+        mIndex = new HashMap<>();
+        if (!mFile.exists()) {
+            return mIndex;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "r");
+             FileChannel channel = file.getChannel()) {
+            mSegment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = mSegment.duplicate();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.info("Ignoring observation cache with unknown format " + mFile);
+                return mIndex;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(key);
+                long savedAt = buffer.getLong();
+                int length = buffer.getInt();
+                mIndex.put(new String(key, "UTF-8"), new Payload(mSegment, buffer.position(), length, savedAt));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Cannot read observation cache " + mFile, e);
+            mIndex.clear();
+        }
+        return mIndex;
+    }
+
+    /**
+     * Unmap the segment now rather than whenever it is garbage collected, so its file can be
+     * replaced. Neither the segment nor any payload in it may be read afterwards.
+     */
+    private void release() {
+        MappedByteBuffer segment = mSegment;
+        mSegment = null;
+        if (segment != null) {
+            MappedBuffers.unmap(segment, mFile);
+        }
+    }
+
+    /**
+     * Write the entries to a new segment beside the file.
+     *
+     * @return the new segment.
+     */
+    private File write(List<Map.Entry<String, Payload>> entries) throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        long size = 12;
+        for (Map.Entry<String, Payload> entry : entries) {
+            byte[] key = entry.getKey().getBytes("UTF-8");
+            keys.add(key);
+            size += 2 + key.length + 8 + 4 + entry.getValue().mLength;
+        }
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Payload payload = entries.get(i).getValue();
+                buffer.putShort((short) keys.get(i).length);
+                buffer.put(keys.get(i));
+                buffer.putLong(payload.mSavedAt);
+                buffer.putInt(payload.mLength);
+                buffer.put(payload.bytes());
+            }
+            buffer.force();
+            MappedBuffers.unmap(buffer, temp);
+        }
+        return temp;
+    }
+
+    private static byte[] encode(List<Observation> observations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(observations.size());
+            for (Observation observation : observations) {
+                observation.writeTo(out);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Observation> decode(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            int count = in.readInt();
+            List<Observation> observations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                observations.add(Observation.readFrom(in));
+            }
+            return observations;
+        }
+    }
+
+    /**
+     * Encoded observations, either held in memory or still sitting in the mapped segment.
+     */
+    private static class Payload {
+        private final byte[] mBytes;
+        private final ByteBuffer mSegment;
+        private final int mOffset;
+        private final int mLength;
+        private final long mSavedAt;
+
+        Payload(byte[] bytes, long savedAt) {
+            mBytes = bytes;
+            mSegment = null;
+            mOffset = 0;
+            mLength = bytes.length;
+            mSavedAt = savedAt;
+        }
+
+        Payload(ByteBuffer segment, int offset, int length, long savedAt) {
+            mBytes = null;
+            mSegment = segment;
+            mOffset = offset;
+            mLength = length;
+            mSavedAt = savedAt;
+        }
+
+        byte[] bytes() {
+            if (mBytes != null) {
+                return mBytes;
+            }
+            byte[] bytes = new byte[mLength];
+            ByteBuffer view = mSegment.duplicate();
+            view.position(mOffset);
+            view.get(bytes);
+            return bytes;
+        }
+    }
+}
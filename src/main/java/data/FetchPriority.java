@@ -0,0 +1,24 @@
+package data;
+
+/**
+ * Priority classes for network fetches, highest first.
+ *
+ * @author michael
+ */
+public enum FetchPriority {
+
+    /**
+     * Data for the station currently selected by the user.
+     */
+    VISIBLE,
+
+    /**
+     * Data for one of the user's favourite stations.
+     */
+    FAVOURITE,
+
+    /**
+     * Background polling and speculative prefetch.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,273 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Central scheduler for all network fetches.
+ *
+ * Fetches are queued by {@link FetchPriority} and started once their host has a free slot. A
+ * {@link FetchPriority#VISIBLE} fetch always goes first and one slot per host is kept free for it,
+ * so the station the user clicks is never stuck behind background work. Favourite and background
+ * fetches age while they wait so neither can be starved by the other. A fetch still waiting can be
+ * moved up to a higher priority through its {@link Ticket}, for when the user opens a station that
+ * was only being fetched in the background.
+ *
+ * @author michael
+ */
+public class FetchScheduler {
+
+    private static final Logger logger = LogManager.getLogger(data.FetchScheduler.class);
+    private static final int DEFAULT_MAX_PER_HOST = 4;
+    private static final long DEFAULT_AGING_MILLIS = 5000;
+    private static FetchScheduler instance = null;
+
+    private final int mMaxPerHost;
+    private final long mAgingMillis;
+    private final TreeSet<QueuedFetch> mQueue = new TreeSet<>();
+    private final HashMap<String, Integer> mActivePerHost = new HashMap<>();
+    private long mSequence;
+
+    /**
+     * A unit of network work. Must call {@link FetchCompletion#onFetchComplete()} exactly once when
+     * the request has finished, successfully or not, to release the host slot.
+     */
+    public interface Fetch {
+        void start(FetchCompletion completion);
+    }
+
+    public interface FetchCompletion {
+        void onFetchComplete();
+    }
+
+    /**
+     * A submitted fetch, which can be given a higher priority until it starts.
+     */
+    public class Ticket {
+        // The fetch as it is queued, or null once started. Guarded by the scheduler.
+        private QueuedFetch mQueued;
+
+        private Ticket(QueuedFetch queued) {
+            mQueued = queued;
+        }
+
+        /**
+         * Raise the fetch's priority if it is still waiting and the priority is higher than its own.
+         * It keeps its place among fetches queued at the same time.
+         *
+         * @param priority the priority class the fetch is now needed at.
+         */
+        public void promote(FetchPriority priority) {
+            checkNotNull(priority);
+            synchronized (FetchScheduler.this) {
+                QueuedFetch queued = mQueued;
+                if (queued == null || priority.ordinal() >= queued.mPriority.ordinal() || !mQueue.remove(queued)) {
+                    return;
+                }
+                mQueued = new QueuedFetch(queued.mHost, priority, queued.mFetch, queued.mQueuedAt,
+                        queued.mSequence, this);
+                mQueue.add(mQueued);
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxPerHost the maximum number of fetches in flight per host.
+     * @param agingMillis how long a queued fetch waits before it is treated as one priority class higher.
+     */
+    FetchScheduler(int maxPerHost, long agingMillis) {
+        checkArgument(maxPerHost > 0);
+        checkArgument(agingMillis > 0);
+        mMaxPerHost = maxPerHost;
+        mAgingMillis = agingMillis;
+    }
+
+    /**
+     * Get the scheduler shared by all service endpoints.
+     *
+     * @return the shared scheduler.
+     */
+    public synchronized static FetchScheduler getInstance() {
+        if (instance == null) {
+            instance = new FetchScheduler(DEFAULT_MAX_PER_HOST, DEFAULT_AGING_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a fetch. It will be started as soon as its priority and the host limits allow.
+     *
+     * @param host the host the fetch talks to.
+     * @param priority the priority class of the fetch.
+     * @param fetch the work to start.
+     * @return the fetch's ticket, to raise its priority while it waits.
+     */
+    public Ticket submit(String host, FetchPriority priority, Fetch fetch) {
+        checkNotNull(host);
+        checkNotNull(priority);
+        checkNotNull(fetch);
+        Ticket ticket;
+        synchronized (this) {
+            QueuedFetch queued = new QueuedFetch(host, priority, fetch, now(), mSequence++, null);
+            ticket = new Ticket(queued);
+            queued.mTicket = ticket;
+            mQueue.add(queued);
+        }
+        dispatch();
+        return ticket;
+    }
+
+    /**
+     * Number of fetches waiting for a free slot.
+     *
+     * @return the queue length.
+     */
+    public synchronized int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Number of fetches in flight for a host.
+     *
+     * @param host the host to check.
+     * @return the number of started but unfinished fetches.
+     */
+    public synchronized int getActiveCount(String host) {
+        Integer active = mActivePerHost.get(host);
+        return active == null ? 0 : active;
+    }
+
+    /**
+     * Whether nothing is queued or in flight, so background work will not compete with fetches.
+     *
+     * @return true if idle.
+     */
+    public synchronized boolean isIdle() {
+        if (!mQueue.isEmpty()) {
+            return false;
+        }
+        for (int active : mActivePerHost.values()) {
+            if (active > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Start every queued fetch that currently has a free host slot, in priority order.
+     */
+    private void dispatch() {
+        List<QueuedFetch> ready = new ArrayList<>();
+        synchronized (this) {
+            Iterator<QueuedFetch> iterator = mQueue.iterator();
+            while (iterator.hasNext()) {
+                QueuedFetch queued = iterator.next();
+                int active = getActiveCount(queued.mHost);
+                if (active < limitFor(queued.mPriority)) {
+                    iterator.remove();
+                    queued.mTicket.mQueued = null;
+                    mActivePerHost.put(queued.mHost, active + 1);
+                    ready.add(queued);
+                }
+            }
+        }
+        for (QueuedFetch queued : ready) {
+            start(queued);
+        }
+    }
+
+    /**
+     * Lower priority classes leave one slot per host free for the visible station.
+     */
+    private int limitFor(FetchPriority priority) {
+        if (priority == FetchPriority.VISIBLE || mMaxPerHost == 1) {
+            return mMaxPerHost;
+        }
+        return mMaxPerHost - 1;
+    }
+
+    private void start(final QueuedFetch queued) {
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        FetchCompletion completion = new FetchCompletion() {
+            @Override
+            public void onFetchComplete() {
+                if (completed.compareAndSet(false, true)) {
+                    release(queued.mHost);
+                }
+            }
+        };
+        try {
+            queued.mFetch.start(completion);
+        } catch (RuntimeException e) {
+            logger.error("Fetch for " + queued.mHost + " failed to start", e);
+            completion.onFetchComplete();
+        }
+    }
+
+    private void release(String host) {
+        synchronized (this) {
+            int active = getActiveCount(host) - 1;
+            if (active <= 0) {
+                mActivePerHost.remove(host);
+            } else {
+                mActivePerHost.put(host, active);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * A fetch waiting in the queue. Ordered by visibility first, then by its aged deadline, which is
+     * the time it was queued pushed back by one aging period per priority class.
+     */
+    private class QueuedFetch implements Comparable<QueuedFetch> {
+        private final String mHost;
+        private final FetchPriority mPriority;
+        private final Fetch mFetch;
+        private final long mQueuedAt;
+        private final long mDeadline;
+        private final long mSequence;
+        private Ticket mTicket;
+
+        QueuedFetch(String host, FetchPriority priority, Fetch fetch, long queuedAt, long sequence, Ticket ticket) {
+            mHost = host;
+            mPriority = priority;
+            mFetch = fetch;
+            mQueuedAt = queuedAt;
+            mDeadline = queuedAt + priority.ordinal() * mAgingMillis;
+            mSequence = sequence;
+            mTicket = ticket;
+        }
+
+        @Override
+        public int compareTo(QueuedFetch other) {
+            boolean visible = mPriority == FetchPriority.VISIBLE;
+            boolean otherVisible = other.mPriority == FetchPriority.VISIBLE;
+            if (visible != otherVisible) {
+                return visible ? -1 : 1;
+            }
+            if (mDeadline != other.mDeadline) {
+                return mDeadline < other.mDeadline ? -1 : 1;
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+}
@@ -1,28 +1,58 @@
 package data;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Memory model. Gets and saves data from and to the weather service API.
  *
+ * Service callbacks arrive on network threads while the UI reads on the event dispatch thread, so
+ * everything cached here is an immutable snapshot. Reads never lock: the catalog and favourites are
+ * swapped through volatile fields and the per-station caches are concurrent maps, which only lock
+ * the bucket of the station being written.
+ *
+ * Observations can also be backed by a disk cache. On a memory miss the last saved observations are
+ * served straight from disk and the station is revalidated in the background. Every observation
+ * fetched is also added to the long-term archive, which serves history beyond BOM's three days,
+ * and to the daily rollups and temperature pyramids. Observations and forecasts are made unique and
+ * ordered by time as they are loaded.
+ *
+ * Only one fetch of a station's observations, and one of its forecasts, is made at a time. A caller
+ * asking while one is in flight waits for that fetch's answer, and raises its priority if the
+ * caller's is higher, so opening a station that is being prefetched doesn't fetch it again.
+ *
  * @author michael
  */
 class InMemoryWeatherRepository implements WeatherRepository {
 
     private static final Logger logger = LogManager.getLogger(data.InMemoryWeatherRepository.class);
     private final WeatherServiceApi mWeatherServiceApi;
-    private List<State> mCachedStates;
-    private HashMap<String,List<Station>> mCachedStations;
-    private List<Station> mCachedFavouriteStations;
-    private HashMap<Station,List<Observation>> mCachedObservations = new HashMap<>();
-    private HashMap<Station,List<Forecast>> mCachedForecasts = new HashMap<>();
+    private final DiskObservationCache mDiskCache;
+    private final ObservationArchive mArchive;
+    private volatile List<State> mCachedStates;
+    private volatile Map<String,List<Station>> mCachedStations;
+    private volatile List<Station> mCachedFavouriteStations;
+    private final ConcurrentHashMap<Station,CacheEntry<Observation>> mCachedObservations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Station,CacheEntry<Forecast>> mCachedForecasts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Station,InFlight<Observation>> mObservationFetches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Station,InFlight<Forecast>> mForecastFetches = new ConcurrentHashMap<>();
+    private final Deduplicator mDeduplicator = new Deduplicator();
+    private final DailyRollups mDailyRollups = new DailyRollups();
+    private final ConcurrentHashMap<String,ObservationPyramid> mPyramids = new ConcurrentHashMap<>();
 
     /**
      * Constructor.
@@ -30,7 +60,21 @@ class InMemoryWeatherRepository implements WeatherRepository {
      * @param weatherServiceApi the service api to get and save data.
      */
     InMemoryWeatherRepository(WeatherServiceApi weatherServiceApi) {
+        this(weatherServiceApi, null, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param weatherServiceApi the service api to get and save data.
+     * @param diskCache the disk cache to back observations with, or null for memory only.
+     * @param archive the archive to add fetched observations to, or null for no history.
+     */
+    InMemoryWeatherRepository(WeatherServiceApi weatherServiceApi, DiskObservationCache diskCache,
+                              ObservationArchive archive) {
         mWeatherServiceApi = checkNotNull(weatherServiceApi);
+        mDiskCache = diskCache;
+        mArchive = archive;
     }
 
     /**
@@ -41,15 +85,17 @@ class InMemoryWeatherRepository implements WeatherRepository {
     @Override
     public void getStates(final LoadStatesCallback callback) {
         checkNotNull(callback);
-        if (mCachedStates == null) {
+        List<State> states = mCachedStates;
+        if (states == null) {
             mWeatherServiceApi.getStates(new WeatherServiceApi.WeatherServiceCallback<List<State>>() {
                 public void onLoaded(List<State> data) {
-                    mCachedStates = ImmutableList.copyOf(data);
-                    callback.onStatesLoaded(mCachedStates);
+                    List<State> loaded = ImmutableList.copyOf(data);
+                    mCachedStates = loaded;
+                    callback.onStatesLoaded(loaded);
                 }
             });
         } else {
-            callback.onStatesLoaded(mCachedStates);
+            callback.onStatesLoaded(states);
         }
     }
 
@@ -62,68 +108,300 @@ class InMemoryWeatherRepository implements WeatherRepository {
     @Override
     public void getStations(final String state, final LoadStationsCallback callback) {
         checkNotNull(callback);
-        if (mCachedStations == null) {
+        Map<String, List<Station>> stations = mCachedStations;
+        if (stations == null) {
             mWeatherServiceApi.getStations(new WeatherServiceApi.WeatherServiceCallback<HashMap<String, List<Station>>>() {
                 public void onLoaded(HashMap<String, List<Station>> data) {
-                    mCachedStations = data;
-                    callback.onStationsLoaded(mCachedStations.get(state));
+                    ImmutableMap.Builder<String, List<Station>> builder = ImmutableMap.builder();
+                    for (Map.Entry<String, List<Station>> entry : data.entrySet()) {
+                        builder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+                    }
+                    Map<String, List<Station>> loaded = builder.build();
+                    mCachedStations = loaded;
+                    callback.onStationsLoaded(loaded.get(state));
                 }
             });
         } else {
-            callback.onStationsLoaded(mCachedStations.get(state));
+            callback.onStationsLoaded(stations.get(state));
         }
     }
 
     /**
-     * Get a list of observations via callback.
+     * Get a list of observations via callback. The fetch, if needed, is treated as visible to the user.
      *
      * @param station to determine the observations.
      * @param callback to pass data back when it's ready.
      */
     @Override
-    public void getObservations(final Station station, final LoadObservationsCallback callback) {
+    public void getObservations(Station station, LoadObservationsCallback callback) {
+        getObservations(station, FetchPriority.VISIBLE, callback);
+    }
+
+    /**
+     * Get a list of observations via callback. Observations saved on disk are passed back straight
+     * away and then revalidated in the background.
+     *
+     * @param station to determine the observations.
+     * @param priority of the fetch if the observations are not cached.
+     * @param callback to pass data back when it's ready.
+     */
+    @Override
+    public void getObservations(final Station station, FetchPriority priority, final LoadObservationsCallback callback) {
         checkNotNull(callback);
-        if ((mCachedObservations == null) || (mCachedObservations.get(station) == null)) {
-            mWeatherServiceApi.getObservations(station, new WeatherServiceApi.WeatherServiceCallback<List<Observation>>() {
-                public void onLoaded(List<Observation> data) {
-                    if (data == null) {
-                        logger.debug("data is NULL");
-                    } else if (data.size() == 0) {
-                        logger.debug("data size is 0");
-                    }
-                    mCachedObservations.put(station, data);
-                    callback.onObservationsLoaded(mCachedObservations.get(station));
-                }
-            });
+        CacheEntry<Observation> cached = mCachedObservations.get(station);
+        if (cached != null) {
+            callback.onObservationsLoaded(cached.mData);
+            return;
+        }
+        DiskObservationCache.Entry saved = mDiskCache == null ? null : mDiskCache.get(station);
+        if (saved != null) {
+            List<Observation> restored = mDeduplicator.observations(ImmutableList.copyOf(saved.getObservations()));
+            mCachedObservations.putIfAbsent(station, new CacheEntry<>(restored, saved.getSavedAt()));
+            mDailyRollups.ingest(station.getCity(), restored);
+            pyramid(station).ingest(station.getCity(), restored);
+            callback.onObservationsLoaded(restored);
+            fetchObservations(station, FetchPriority.BACKGROUND, null);
         } else {
-            callback.onObservationsLoaded(mCachedObservations.get(station));
+            fetchObservations(station, priority, callback);
+        }
+    }
+
+    /**
+     * Get when a station's cached observations were loaded, so they can be shown with their age.
+     *
+     * @param station to determine the observations.
+     * @return the time the observations in memory were loaded or saved, or 0 if none are.
+     */
+    @Override
+    public long getObservationsLoadedAt(Station station) {
+        CacheEntry<Observation> cached = mCachedObservations.get(checkNotNull(station));
+        return cached == null ? 0 : cached.mLoadedAt;
+    }
+
+    /**
+     * Fetch a station's observations from the service api without dropping the cached ones first,
+     * so they can be shown until the fetch answers. The memory and disk models are updated as
+     * usual when it does.
+     *
+     * @param station to determine the observations.
+     * @param callback to pass the fresh data back when it's ready.
+     */
+    @Override
+    public void revalidateObservations(Station station, LoadObservationsCallback callback) {
+        fetchObservations(checkNotNull(station), FetchPriority.VISIBLE, checkNotNull(callback));
+    }
+
+    /**
+     * Fetch observations from the service api into the memory and disk models, or wait for the
+     * fetch already in flight for the station. A fetch that answers with no observations has failed
+     * and leaves the models as they were, passing back the cached observations, or null if none are.
+     *
+     * @param station to determine the observations.
+     * @param priority of the fetch.
+     * @param callback to pass data back when it's ready, or null to only update the models.
+     */
+    private void fetchObservations(final Station station, FetchPriority priority, final LoadObservationsCallback callback) {
+        final InFlight<Observation> fetch = new InFlight<>(priority);
+        InFlight<Observation> inFlight = mObservationFetches.putIfAbsent(station, fetch);
+        if (inFlight != null) {
+            inFlight.promote(priority);
+            if (callback != null) {
+                whenObservationsFetched(inFlight, callback);
+            }
+            return;
+        }
+        if (callback != null) {
+            whenObservationsFetched(fetch, callback);
+        }
+        fetch.started(mWeatherServiceApi.getObservations(station, priority, new WeatherServiceApi.WeatherServiceCallback<List<Observation>>() {
+            public void onLoaded(List<Observation> data) {
+                if (data == null || data.isEmpty()) {
+                    // A failed fetch answers with nothing, which must not replace the cached observations
+                    logger.debug("No observations fetched for " + station);
+                    CacheEntry<Observation> cached = mCachedObservations.get(station);
+                    mObservationFetches.remove(station, fetch);
+                    fetch.mFuture.set(cached == null ? null : cached.mData);
+                    return;
+                }
+                List<Observation> loaded = mDeduplicator.observations(ImmutableList.copyOf(data));
+                long loadedAt = now();
+                mCachedObservations.put(station, new CacheEntry<>(loaded, loadedAt));
+                if (mDiskCache != null) {
+                    mDiskCache.put(station, loaded, loadedAt);
+                }
+                mDailyRollups.ingest(station.getCity(), loaded);
+                pyramid(station).ingest(station.getCity(), loaded);
+                if (mArchive != null) {
+                    mArchive.append(station, loaded);
+                }
+                mObservationFetches.remove(station, fetch);
+                fetch.mFuture.set(loaded);
+            }
+        }));
+    }
+
+    private static void whenObservationsFetched(InFlight<Observation> fetch, final LoadObservationsCallback callback) {
+        Futures.addCallback(fetch.mFuture, new FutureCallback<List<Observation>>() {
+            @Override
+            public void onSuccess(List<Observation> observations) {
+                callback.onObservationsLoaded(observations);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                callback.onObservationsLoaded(null);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Get archived observations for a time window via callback, newest first like BOM's own data.
+     *
+     * @param station to determine the observations.
+     * @param from the start of the window in UTC milliseconds.
+     * @param to the end of the window in UTC milliseconds.
+     * @param callback to pass data back when it's ready.
+     */
+    @Override
+    public void getArchivedObservations(Station station, long from, long to, LoadObservationsCallback callback) {
+        checkNotNull(callback);
+        if (mArchive == null) {
+            callback.onObservationsLoaded(ImmutableList.<Observation>of());
+            return;
+        }
+        List<ArchiveRecord> records = mArchive.read(station.getCity(), from, to);
+        ImmutableList.Builder<Observation> observations = ImmutableList.builder();
+        for (int i = records.size() - 1; i >= 0; i--) {
+            observations.add(records.get(i).toObservation());
+        }
+        callback.onObservationsLoaded(observations.build());
+    }
+
+    /**
+     * Get the daily rollups for a station via callback. The first call for a station also rolls up
+     * its archived observations.
+     *
+     * @param station to determine the rollups.
+     * @param callback to pass data back when it's ready.
+     */
+    @Override
+    public void getDailyRollups(Station station, LoadDailyRollupsCallback callback) {
+        checkNotNull(callback);
+        if (mArchive != null && mDailyRollups.markLoadedFromArchive(station.getCity())) {
+            for (ArchiveRecord record : mArchive.read(station.getCity(), Long.MIN_VALUE, Long.MAX_VALUE)) {
+                mDailyRollups.ingest(record);
+            }
+        }
+        callback.onDailyRollupsLoaded(mDailyRollups.get(station.getCity()));
+    }
+
+    /**
+     * Get the air temperature pyramid for a station via callback. The first call for a station also
+     * adds its archived observations. The pyramid keeps growing as observations are fetched.
+     *
+     * @param station to determine the pyramid.
+     * @param callback to pass the pyramid back when it's ready.
+     */
+    @Override
+    public void getObservationPyramid(Station station, LoadObservationPyramidCallback callback) {
+        checkNotNull(callback);
+        ObservationPyramid pyramid = pyramid(station);
+        if (mArchive != null && pyramid.markLoadedFromArchive()) {
+            pyramid.ingest(mArchive.read(station.getCity(), Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+        callback.onObservationPyramidLoaded(pyramid);
+    }
+
+    private ObservationPyramid pyramid(Station station) {
+        ObservationPyramid pyramid = mPyramids.get(station.getCity());
+        if (pyramid == null) {
+            mPyramids.putIfAbsent(station.getCity(), new ObservationPyramid(ObservationField.AIR_TEMP));
+            pyramid = mPyramids.get(station.getCity());
+        }
+        return pyramid;
+    }
+
+    /**
+     * Run an aggregation query over the archived observations.
+     *
+     * @param query the time window, stations, measurements and grouping to aggregate.
+     * @param callback to pass the rows back when they're ready.
+     */
+    @Override
+    public void queryArchive(ArchiveQuery query, QueryArchiveCallback callback) {
+        checkNotNull(query);
+        checkNotNull(callback);
+        if (mArchive == null) {
+            callback.onArchiveQueried(ImmutableList.<ArchiveQuery.Row>of());
+            return;
         }
+        callback.onArchiveQueried(ImmutableList.copyOf(mArchive.query(query)));
+    }
+
+    /**
+     * Get a list of forecasts via callback. The fetch, if needed, is treated as visible to the user.
+     *
+     * @param station to determine the forecasts.
+     * @param callback to pass data back when it's ready.
+     */
+    @Override
+    public void getForecasts(Station station, LoadForecastsCallback callback) {
+        getForecasts(station, FetchPriority.VISIBLE, callback);
     }
 
     /**
      * Get a list of forecasts via callback.
      *
      * @param station to determine the forecasts.
+     * @param priority of the fetch if the forecasts are not cached.
      * @param callback to pass data back when it's ready.
      */
     @Override
-    public void getForecasts(final Station station, final LoadForecastsCallback callback) {
+    public void getForecasts(final Station station, FetchPriority priority, final LoadForecastsCallback callback) {
         checkNotNull(callback);
-        if ((mCachedForecasts == null) || (mCachedForecasts.get(station) == null)) {
-            mWeatherServiceApi.getForecasts(station, new WeatherServiceApi.WeatherServiceCallback<List<Forecast>>() {
-                public void onLoaded(List<Forecast> data) {
-                    if (data == null) {
-                        logger.debug("data is NULL");
-                    } else if (data.size() == 0) {
-                        logger.debug("data size is 0");
-                    }
-                    mCachedForecasts.put(station, data);
-                    callback.onForecastsLoaded(mCachedForecasts.get(station));
-                }
-            });
-        } else {
-            callback.onForecastsLoaded(mCachedForecasts.get(station));
+        CacheEntry<Forecast> cached = mCachedForecasts.get(station);
+        if (cached != null) {
+            callback.onForecastsLoaded(cached.mData);
+            return;
         }
+        final InFlight<Forecast> fetch = new InFlight<>(priority);
+        InFlight<Forecast> inFlight = mForecastFetches.putIfAbsent(station, fetch);
+        if (inFlight != null) {
+            inFlight.promote(priority);
+            whenForecastsFetched(inFlight, callback);
+            return;
+        }
+        whenForecastsFetched(fetch, callback);
+        fetch.started(mWeatherServiceApi.getForecasts(station, priority, new WeatherServiceApi.WeatherServiceCallback<List<Forecast>>() {
+            public void onLoaded(List<Forecast> data) {
+                if (data == null) {
+                    logger.debug("data is NULL");
+                    mForecastFetches.remove(station, fetch);
+                    fetch.mFuture.set(null);
+                    return;
+                } else if (data.size() == 0) {
+                    logger.debug("data size is 0");
+                }
+                List<Forecast> loaded = mDeduplicator.forecasts(ImmutableList.copyOf(data));
+                mCachedForecasts.put(station, new CacheEntry<>(loaded, now()));
+                mForecastFetches.remove(station, fetch);
+                fetch.mFuture.set(loaded);
+            }
+        }));
+    }
+
+    private static void whenForecastsFetched(InFlight<Forecast> fetch, final LoadForecastsCallback callback) {
+        Futures.addCallback(fetch.mFuture, new FutureCallback<List<Forecast>>() {
+            @Override
+            public void onSuccess(List<Forecast> forecasts) {
+                callback.onForecastsLoaded(forecasts);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                callback.onForecastsLoaded(null);
+            }
+        }, MoreExecutors.directExecutor());
     }
 
     /**
@@ -145,15 +423,17 @@ class InMemoryWeatherRepository implements WeatherRepository {
     @Override
     public void getFavouriteStations(final LoadFavouritesCallback callback) {
         checkNotNull(callback);
-        if (mCachedFavouriteStations == null) {
+        List<Station> favourites = mCachedFavouriteStations;
+        if (favourites == null) {
             mWeatherServiceApi.getFavouriteStations(new WeatherServiceApi.WeatherServiceCallback<List<Station>>() {
                 public void onLoaded(List<Station> data) {
-                    mCachedFavouriteStations = ImmutableList.copyOf(data);
-                    callback.onFavouritesLoaded(mCachedFavouriteStations);
+                    List<Station> loaded = ImmutableList.copyOf(data);
+                    mCachedFavouriteStations = loaded;
+                    callback.onFavouritesLoaded(loaded);
                 }
             });
         } else {
-            callback.onFavouritesLoaded(mCachedFavouriteStations);
+            callback.onFavouritesLoaded(favourites);
         }
     }
 
@@ -204,7 +484,145 @@ class InMemoryWeatherRepository implements WeatherRepository {
      */
     @Override
     public void refreshForecasts() {
-        mCachedObservations.clear();
+        mCachedForecasts.clear();
+    }
+
+    /**
+     * Delete the memory model of observations for one station. Other stations stay cached.
+     *
+     * @param station the station to refresh.
+     */
+    @Override
+    public void refreshObservations(Station station) {
+        mCachedObservations.remove(checkNotNull(station));
+    }
+
+    /**
+     * Delete the memory model of forecasts for one station. Other stations stay cached.
+     *
+     * @param station the station to refresh.
+     */
+    @Override
+    public void refreshForecasts(Station station) {
+        mCachedForecasts.remove(checkNotNull(station));
+    }
+
+    /**
+     * Delete the memory model of both observations and forecasts for one station.
+     *
+     * @param station the station to refresh.
+     */
+    @Override
+    public void refreshStation(Station station) {
+        refreshObservations(station);
+        refreshForecasts(station);
+    }
+
+    /**
+     * Drop everything held in memory for one station: its observations, forecasts, daily rollups
+     * and temperature pyramid. The rollups and pyramid are built again from the archive if asked
+     * for, so bulk fetches can keep memory flat.
+     *
+     * @param station the station to evict.
+     */
+    @Override
+    public void evictStation(Station station) {
+        refreshStation(station);
+        mDailyRollups.remove(station.getCity());
+        mPyramids.remove(station.getCity());
+    }
+
+    /**
+     * Delete any observations and forecasts that were loaded longer ago than the given age.
+     *
+     * @param maxAgeMillis the oldest data, in milliseconds, to keep.
+     */
+    @Override
+    public void refreshOlderThan(long maxAgeMillis) {
+        long oldest = now() - maxAgeMillis;
+        removeOlderThan(mCachedObservations, oldest);
+        removeOlderThan(mCachedForecasts, oldest);
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return how many duplicate observations and forecasts have been dropped while loading.
+     */
+    long getDroppedDuplicates() {
+        return mDeduplicator.getDropped();
+    }
+
+    /**
+     * Remove stale entries. An entry replaced by a fresh load while iterating is left alone.
+     */
+    private static <T> void removeOlderThan(ConcurrentHashMap<Station, CacheEntry<T>> cache, long oldest) {
+        Iterator<Map.Entry<Station, CacheEntry<T>>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Station, CacheEntry<T>> entry = iterator.next();
+            if (entry.getValue().mLoadedAt < oldest) {
+                cache.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * A fetch in flight for one station, which later callers wait on rather than fetching again.
+     */
+    private static class InFlight<T> {
+        private final SettableFuture<List<T>> mFuture = SettableFuture.create();
+        private FetchPriority mPriority;
+        private FetchScheduler.Ticket mTicket;
+
+        InFlight(FetchPriority priority) {
+            mPriority = priority;
+        }
+
+        /**
+         * Keep the fetch's ticket, applying any priority raised before it was known.
+         */
+        void started(FetchScheduler.Ticket ticket) {
+            FetchPriority priority;
+            synchronized (this) {
+                mTicket = ticket;
+                priority = mPriority;
+            }
+            if (ticket != null) {
+                ticket.promote(priority);
+            }
+        }
+
+        /**
+         * Raise the fetch's priority if a caller needs it sooner than it was asked for.
+         */
+        void promote(FetchPriority priority) {
+            FetchScheduler.Ticket ticket;
+            synchronized (this) {
+                if (priority.ordinal() >= mPriority.ordinal()) {
+                    return;
+                }
+                mPriority = priority;
+                ticket = mTicket;
+            }
+            if (ticket != null) {
+                ticket.promote(priority);
+            }
+        }
+    }
+
+    /**
+     * Cached data for one station with the time it was loaded.
+     */
+    private static class CacheEntry<T> {
+        private final List<T> mData;
+        private final long mLoadedAt;
+
+        CacheEntry(List<T> data, long loadedAt) {
+            mData = data;
+            mLoadedAt = loadedAt;
+        }
     }
 
 }
@@ -0,0 +1,52 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Unmaps memory-mapped files straight away rather than whenever their buffers are garbage
+ * collected, as a mapped file can't be replaced or deleted on every platform.
+ *
+ * @author michael
+ */
+final class MappedBuffers {
+
+    private static final Logger logger = LogManager.getLogger(data.MappedBuffers.class);
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Unmap a buffer. Neither it nor any slice or duplicate of it may be read afterwards.
+     *
+     * @param buffer the buffer to unmap.
+     * @param file the file it maps, for logging.
+     */
+    static void unmap(MappedByteBuffer buffer, File file) {
+        try {
+            try {
+                // Java 9 and later
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object clean = cleaner.invoke(buffer);
+                if (clean != null) {
+                    clean.getClass().getMethod("clean").invoke(clean);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Cannot unmap " + file + ", leaving it to the garbage collector", e);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package data;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -21,6 +24,7 @@ public class Observation {
 	private String mName;
 	private String mStateName;
 	private String mDateTime;
+	private String mAifstimeUtc;
 	private String mApparentTemp;
 	private String mCloud;
 	private String mAirtemp;
@@ -85,6 +89,7 @@ public class Observation {
 		mAirtemp = airTemp;
 		mName = name;
 		mDateTime = local_date_time_full;
+		mAifstimeUtc = aifstime_utc;
 		mApparentTemp = apparent_t;
 		mCloud = cloud.equals("-") ? "Clear" : cloud;
 		mRain = rain_trace;
@@ -165,6 +170,60 @@ public class Observation {
 		return data;
 	}
 
+	/**
+	 * Writes all of the observation's properties in a compact binary form.
+	 * 
+	 * @param out
+	 *            the output to write to.
+	 * @throws IOException
+	 *             if the output cannot be written.
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		String[] values = { mId, mName, mStateName, mDateTime, mAifstimeUtc, mApparentTemp, mCloud, mAirtemp, mRain, mHumidity,
+				mDewpt, mDelta_t, mWindDir, mWindSpdKmh, mGustKmh, mWindSpdKt, mGustKt, mPressQnh, mPressMsl };
+		for (String value : values) {
+			out.writeBoolean(value != null);
+			if (value != null) {
+				out.writeUTF(value);
+			}
+		}
+	}
+
+	/**
+	 * Reads an observation written by {@link #writeTo(DataOutput)}.
+	 * 
+	 * @param in
+	 *            the input to read from.
+	 * @return the observation.
+	 * @throws IOException
+	 *             if the input cannot be read.
+	 */
+	static Observation readFrom(DataInput in) throws IOException {
+		Observation obs = new Observation(readString(in), readString(in), null, null, null, null, null, null);
+		obs.mStateName = readString(in);
+		obs.mDateTime = readString(in);
+		obs.mAifstimeUtc = readString(in);
+		obs.mApparentTemp = readString(in);
+		obs.mCloud = readString(in);
+		obs.mAirtemp = readString(in);
+		obs.mRain = readString(in);
+		obs.mHumidity = readString(in);
+		obs.mDewpt = readString(in);
+		obs.mDelta_t = readString(in);
+		obs.mWindDir = readString(in);
+		obs.mWindSpdKmh = readString(in);
+		obs.mGustKmh = readString(in);
+		obs.mWindSpdKt = readString(in);
+		obs.mGustKt = readString(in);
+		obs.mPressQnh = readString(in);
+		obs.mPressMsl = readString(in);
+		return obs;
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
 	/*
 	 * Getters and setters for the class.
 	 */
@@ -192,6 +251,14 @@ public class Observation {
 		this.mDateTime = mDateTime;
 	}
 
+	public String getmAifstimeUtc() {
+		return mAifstimeUtc;
+	}
+
+	public void setmAifstimeUtc(String mAifstimeUtc) {
+		this.mAifstimeUtc = mAifstimeUtc;
+	}
+
 	public String getmApparentTemp() {
 		return mApparentTemp;
 	}
@@ -232,7 +299,7 @@ public class Observation {
 		this.mHumidity = mHumidity;
 	}
 
-	private String getmDewpt() {
+	public String getmDewpt() {
 		return mDewpt;
 	}
 
@@ -240,7 +307,7 @@ public class Observation {
 		this.mDewpt = mDewpt;
 	}
 
-	private String getmDelta_t() {
+	public String getmDelta_t() {
 		return mDelta_t;
 	}
 
@@ -264,7 +331,7 @@ public class Observation {
 		this.mWindSpdKmh = mWindSpdKmh;
 	}
 
-	private String getmGustKmh() {
+	public String getmGustKmh() {
 		return mGustKmh;
 	}
 
@@ -272,7 +339,7 @@ public class Observation {
 		this.mGustKmh = mGustKmh;
 	}
 
-	private String getmWindSpdKt() {
+	public String getmWindSpdKt() {
 		return mWindSpdKt;
 	}
 
@@ -280,7 +347,7 @@ public class Observation {
 		this.mWindSpdKt = mWindSpdKt;
 	}
 
-	private String getmGustKt() {
+	public String getmGustKt() {
 		return mGustKt;
 	}
 
@@ -288,7 +355,7 @@ public class Observation {
 		this.mGustKt = mGustKt;
 	}
 
-	private String getmPressQnh() {
+	public String getmPressQnh() {
 		return mPressQnh;
 	}
 
@@ -296,7 +363,7 @@ public class Observation {
 		this.mPressQnh = mPressQnh;
 	}
 
-	private String getmPressMsl() {
+	public String getmPressMsl() {
 		return mPressMsl;
 	}
 
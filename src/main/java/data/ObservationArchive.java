@@ -0,0 +1,655 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Long-term archive of every observation fetched, kept beyond the three days BOM serves.
+ *
+ * The archive is append-only and partitioned by UTC day, one segment file per day. Appends are
+ * queued and a writer thread group commits everything that arrives within the commit window, which
+ * bounds the latency of an append. A group commit is made durable with a single sync of the
+ * {@link WriteAheadLog}, then written as one block per segment without syncing. Segments are synced
+ * and the log emptied at checkpoints, and on startup anything left in the log is replayed after
+ * torn blocks are truncated from the segments it touches. Observations already archived for the
+ * same station and aifstime_utc are dropped.
+ *
+ * Segment layout: a sequence of blocks, each the block magic, the block length, a CRC32 of the
+ * block and a block encoded by {@link ArchiveBlockCodec}. Segments are read
+ * through {@link SegmentCache}, whose sparse index finds the blocks holding a station's records
+ * for a time window without scanning the segment.
+ *
+ * @author michael
+ */
+class ObservationArchive {
+
+    private static final Logger logger = LogManager.getLogger(data.ObservationArchive.class);
+    static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final DateTimeFormatter SEGMENT_NAME = DateTimeFormatter.BASIC_ISO_DATE;
+    static final int BLOCK_MAGIC = 0x4F424336;
+    static final int BLOCK_HEADER = 12;
+    private static final String WAL_FILE = "wal.log";
+    private static final long CHECKPOINT_BYTES = 1024 * 1024;
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final int MAX_BATCH = 10000;
+    private static final int MAX_DEDUP_SEGMENTS = 8;
+    private static final int MAX_MAPPED_SEGMENTS = 32;
+    // Beyond this many days, list the directory rather than look for each day's segment
+    private static final int MAX_PROBED_DAYS = 64;
+
+    private final File mDirectory;
+    private final long mCommitWindowMillis;
+    private final LinkedBlockingQueue<List<ArchiveRecord>> mQueue = new LinkedBlockingQueue<>();
+    // Queued by a flush to end the commit window early
+    private final List<ArchiveRecord> mFlushMarker = new ArrayList<>();
+    private final SegmentCache mSegmentCache = new SegmentCache(MAX_MAPPED_SEGMENTS);
+    // Held while a segment file is appended to or replaced
+    private final Object mSegmentLock = new Object();
+    private final Map<Long, Set<String>> mArchivedKeys = new LinkedHashMap<Long, Set<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Set<String>> eldest) {
+            return size() > MAX_DEDUP_SEGMENTS;
+        }
+    };
+    private final Set<Long> mDirtyDays = new HashSet<>();
+    private final WriteAheadLog mWriteAheadLog;
+    private final Thread mWriter;
+    private long mEnqueued;
+    private long mCommitted;
+    private volatile boolean mClosed;
+
+    /**
+     * Rewrites the records of a segment, for compaction.
+     */
+    interface SegmentRewriter {
+        /**
+         * @param records every record in the segment, in the order they were appended.
+         * @return the records to keep, or null to leave the segment unchanged.
+         */
+        List<ArchiveRecord> rewrite(List<ArchiveRecord> records);
+    }
+
+    /**
+     * Constructor. Starts the writer thread.
+     *
+     * @param directory the directory holding the segment files.
+     * @param commitWindowMillis how long to gather appends into one group commit.
+     */
+    ObservationArchive(File directory, long commitWindowMillis) {
+        checkArgument(commitWindowMillis >= 0);
+        mDirectory = checkNotNull(directory);
+        mCommitWindowMillis = commitWindowMillis;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            logger.error("Cannot create archive directory " + mDirectory);
+        }
+        WriteAheadLog writeAheadLog = null;
+        try {
+            writeAheadLog = new WriteAheadLog(new File(mDirectory, WAL_FILE));
+        } catch (IOException e) {
+            logger.error("Cannot open archive write-ahead log, syncing every commit instead", e);
+        }
+        mWriteAheadLog = writeAheadLog;
+        recover();
+        mWriter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "observation-archive-writer");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /**
+     * Queue observations for a station to be archived.
+     *
+     * @param station the station the observations belong to.
+     * @param observations the observations to archive.
+     * @return the sequence to pass to {@link #awaitCommitted(long)} to wait for the append's commit.
+     */
+    long append(Station station, List<Observation> observations) {
+        List<ArchiveRecord> records = new ArrayList<>(observations.size());
+        for (Observation observation : observations) {
+            ArchiveRecord record = ArchiveRecord.fromObservation(station.getCity(), observation);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        synchronized (this) {
+            if (records.isEmpty()) {
+                return mEnqueued;
+            }
+            mEnqueued += records.size();
+            // Queued whole so an append is never split across group commits, and ahead of any
+            // flush marker that counted it
+            mQueue.add(records);
+            return mEnqueued;
+        }
+    }
+
+    /**
+     * Block until everything appended up to a sequence has been committed. Unlike a flush, the
+     * commit window is not ended early.
+     *
+     * @param sequence the sequence returned by {@link #append(Station, List)}.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized void awaitCommitted(long sequence) throws InterruptedException {
+        while (mCommitted < sequence && mWriter.isAlive()) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Block until everything appended before this call has been committed.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized void flush() throws InterruptedException {
+        long target = mEnqueued;
+        if (mCommitted < target) {
+            mQueue.add(mFlushMarker);
+        }
+        awaitCommitted(target);
+    }
+
+    /**
+     * Stop the writer once everything queued has been committed, and checkpoint.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void close() throws InterruptedException {
+        flush();
+        mClosed = true;
+        mWriter.join();
+        checkpoint();
+        if (mWriteAheadLog != null) {
+            try {
+                mWriteAheadLog.close();
+            } catch (IOException e) {
+                logger.error("Cannot close archive write-ahead log", e);
+            }
+        }
+    }
+
+    /**
+     * Read the archived observations for a station within a time window.
+     *
+     * @param station the station name.
+     * @param from the start of the window, inclusive, in UTC milliseconds.
+     * @param to the end of the window, inclusive, in UTC milliseconds.
+     * @return the records in time order.
+     */
+    List<ArchiveRecord> read(String station, long from, long to) {
+        List<ArchiveRecord> result = new ArrayList<>();
+        mSegmentCache.beginRead();
+        try {
+            for (File segment : segments(Math.floorDiv(from, DAY_MILLIS), Math.floorDiv(to, DAY_MILLIS)).values()) {
+                SegmentCache.MappedSegment mapped = mSegmentCache.get(segment);
+                if (mapped == null) {
+                    continue;
+                }
+                for (ArchiveRecord record : decode(segment, mapped.blocks(station, from, to))) {
+                    if (record.getStation().equals(station) && record.getTime() >= from && record.getTime() <= to) {
+                        result.add(record);
+                    }
+                }
+            }
+        } finally {
+            mSegmentCache.endRead();
+        }
+        Collections.sort(result, BY_STATION_AND_TIME);
+        return result;
+    }
+
+    /**
+     * Run an aggregation query over the archive. Blocks are scanned in parallel.
+     *
+     * @param query the query.
+     * @return a row for each group with any matching observations, by station and then time.
+     */
+    List<ArchiveQuery.Row> query(ArchiveQuery query) {
+        mSegmentCache.beginRead();
+        try {
+            return ArchiveQueryEngine.run(this, query);
+        } finally {
+            mSegmentCache.endRead();
+        }
+    }
+
+    File segmentFile(long day) {
+        return new File(mDirectory, LocalDate.ofEpochDay(day).format(SEGMENT_NAME) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Find the segment files that exist for a range of days.
+     *
+     * @param fromDay the first day, inclusive, in days since the epoch.
+     * @param toDay the last day, inclusive, in days since the epoch.
+     * @return the segment files keyed and ordered by day.
+     */
+    TreeMap<Long, File> segments(long fromDay, long toDay) {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        if (toDay - fromDay < MAX_PROBED_DAYS) {
+            for (long day = fromDay; day <= toDay; day++) {
+                File segment = segmentFile(day);
+                if (segment.isFile()) {
+                    segments.put(day, segment);
+                }
+            }
+            return segments;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+            try {
+                long day = LocalDate.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), SEGMENT_NAME)
+                        .toEpochDay();
+                if (day >= fromDay && day <= toDay) {
+                    segments.put(day, file);
+                }
+            } catch (DateTimeParseException e) {
+                logger.debug("Ignoring unknown file in archive " + file);
+            }
+        }
+        return segments;
+    }
+
+    private void writeLoop() {
+        List<ArchiveRecord> batch = new ArrayList<>();
+        while (!mClosed) {
+            try {
+                // Poll rather than wait to be interrupted, which would close the log's channel
+                List<ArchiveRecord> first = mQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null || first == mFlushMarker) {
+                    continue;
+                }
+                batch.addAll(first);
+                long deadline = System.currentTimeMillis() + mCommitWindowMillis;
+                while (batch.size() < MAX_BATCH) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    List<ArchiveRecord> next = remaining > 0 ? mQueue.poll(remaining, TimeUnit.MILLISECONDS)
+                            : mQueue.poll();
+                    if (next == null || next == mFlushMarker) {
+                        break;
+                    }
+                    batch.addAll(next);
+                }
+            } catch (InterruptedException e) {
+                if (mClosed) {
+                    break;
+                }
+                continue;
+            }
+            logAndCommit(batch);
+            synchronized (this) {
+                mCommitted += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Make a batch durable in the write-ahead log, then commit it to the segments. Without a log,
+     * or if logging fails, the segments are synced straight away instead.
+     */
+    private void logAndCommit(List<ArchiveRecord> batch) {
+        boolean logged = false;
+        long logSize = 0;
+        if (mWriteAheadLog != null) {
+            try {
+                mWriteAheadLog.append(batch);
+                logSize = mWriteAheadLog.size();
+                logged = true;
+            } catch (IOException e) {
+                logger.error("Cannot append to archive write-ahead log", e);
+            }
+        }
+        commit(batch);
+        if (!logged || logSize > CHECKPOINT_BYTES) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Replay whatever the write-ahead log holds from before a crash.
+     */
+    private void recover() {
+        if (mWriteAheadLog == null) {
+            return;
+        }
+        try {
+            List<ArchiveRecord> records = mWriteAheadLog.recover();
+            if (records.isEmpty()) {
+                return;
+            }
+            Set<Long> days = new HashSet<>();
+            for (ArchiveRecord record : records) {
+                days.add(Math.floorDiv(record.getTime(), DAY_MILLIS));
+            }
+            for (long day : days) {
+                truncateTornTail(segmentFile(day));
+            }
+            logger.info("Replaying " + records.size() + " records from archive write-ahead log");
+            commit(records);
+            checkpoint();
+        } catch (IOException e) {
+            logger.error("Cannot recover archive write-ahead log", e);
+        }
+    }
+
+    /**
+     * Sync every segment written since the last checkpoint, then empty the write-ahead log.
+     */
+    private void checkpoint() {
+        synchronized (mSegmentLock) {
+            for (long day : mDirtyDays) {
+                File segment = segmentFile(day);
+                if (!segment.exists()) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                } catch (IOException e) {
+                    logger.error("Cannot sync archive segment " + segment, e);
+                    return;
+                }
+            }
+            mDirtyDays.clear();
+            if (mWriteAheadLog != null) {
+                try {
+                    mWriteAheadLog.truncate();
+                } catch (IOException e) {
+                    logger.error("Cannot truncate archive write-ahead log", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cut a segment back to its last complete block with a good checksum. The segment is read rather
+     * than mapped, as a mapped file can't be truncated safely.
+     *
+     * @param segment the segment file.
+     * @throws IOException if the segment cannot be read or truncated.
+     */
+    static void truncateTornTail(File segment) throws IOException {
+        if (!segment.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long valid = 0;
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+            while (valid + BLOCK_HEADER <= size) {
+                header.clear();
+                readFully(channel, header, valid);
+                header.flip();
+                int magic = header.getInt();
+                int length = header.getInt();
+                long checksum = header.getInt() & 0xFFFFFFFFL;
+                if (magic != BLOCK_MAGIC || length < 0 || valid + BLOCK_HEADER + length > size) {
+                    break;
+                }
+                ByteBuffer block = ByteBuffer.allocate(length);
+                readFully(channel, block, valid + BLOCK_HEADER);
+                block.flip();
+                if (WriteAheadLog.checksum(block) != checksum) {
+                    break;
+                }
+                valid += BLOCK_HEADER + length;
+            }
+            if (valid < size) {
+                logger.info("Truncating torn archive segment " + segment + " to " + valid + " bytes");
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive segment");
+            }
+        }
+    }
+
+    /**
+     * Write a batch as one block per day segment, skipping anything already archived.
+     */
+    private void commit(List<ArchiveRecord> batch) {
+        TreeMap<Long, List<ArchiveRecord>> byDay = new TreeMap<>();
+        for (ArchiveRecord record : batch) {
+            long day = Math.floorDiv(record.getTime(), DAY_MILLIS);
+            List<ArchiveRecord> records = byDay.get(day);
+            if (records == null) {
+                records = new ArrayList<>();
+                byDay.put(day, records);
+            }
+            records.add(record);
+        }
+        synchronized (mSegmentLock) {
+            for (Map.Entry<Long, List<ArchiveRecord>> entry : byDay.entrySet()) {
+                appendFresh(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Append the records not already archived as one block to a day's segment.
+     */
+    private void appendFresh(long day, List<ArchiveRecord> records) {
+        Set<String> archived = archivedKeys(day);
+        List<ArchiveRecord> fresh = new ArrayList<>();
+        for (ArchiveRecord record : records) {
+            if (archived.add(record.key())) {
+                fresh.add(record);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+        Collections.sort(fresh, BY_STATION_AND_TIME);
+        try {
+            appendBlock(segmentFile(day), fresh);
+            mDirtyDays.add(day);
+        } catch (IOException e) {
+            logger.error("Cannot append to archive segment for day " + day, e);
+            for (ArchiveRecord record : fresh) {
+                archived.remove(record.key());
+            }
+        }
+    }
+
+    /**
+     * Replace a day's segment with rewritten records, written as sorted blocks to a new file that is
+     * then moved over the old one once every read of the old one has ended and it is unmapped.
+     * Appends wait until the rewrite is done.
+     *
+     * @param day the day, in days since the epoch.
+     * @param rewriter decides which records to keep.
+     * @param compactedTo the resolution to mark the new blocks as compacted to, or null for none.
+     * @return true if the segment was replaced or deleted.
+     * @throws IOException if the new segment cannot be written.
+     */
+    boolean rewriteSegment(long day, SegmentRewriter rewriter, RetentionPolicy.Resolution compactedTo)
+            throws IOException {
+        synchronized (mSegmentLock) {
+            File segment = segmentFile(day);
+            if (!segment.isFile()) {
+                return false;
+            }
+            List<ArchiveRecord> records = rewriter.rewrite(decode(segment));
+            if (records == null) {
+                return false;
+            }
+            if (records.isEmpty()) {
+                deleteSegment(day);
+                return true;
+            }
+            records = new ArrayList<>(records);
+            Collections.sort(records, BY_STATION_AND_TIME);
+            File temp = new File(segment.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                for (int from = 0; from < records.size(); from += MAX_BATCH) {
+                    writeBlock(out, records.subList(from, Math.min(records.size(), from + MAX_BATCH)), compactedTo);
+                }
+                out.getFD().sync();
+            }
+            mSegmentCache.evict(segment);
+            Files.move(temp.toPath(), segment.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            mArchivedKeys.remove(day);
+            return true;
+        }
+    }
+
+    /**
+     * Delete a day's segment.
+     *
+     * @param day the day, in days since the epoch.
+     */
+    void deleteSegment(long day) {
+        synchronized (mSegmentLock) {
+            File segment = segmentFile(day);
+            mSegmentCache.evict(segment);
+            if (segment.exists() && !segment.delete()) {
+                logger.error("Cannot delete archive segment " + segment);
+            }
+            mArchivedKeys.remove(day);
+        }
+    }
+
+    private Set<String> archivedKeys(long day) {
+        Set<String> keys = mArchivedKeys.get(day);
+        if (keys == null) {
+            keys = new HashSet<>();
+            File segment = segmentFile(day);
+            if (segment.exists()) {
+                for (ArchiveRecord record : decode(segment)) {
+                    keys.add(record.key());
+                }
+            }
+            mArchivedKeys.put(day, keys);
+        }
+        return keys;
+    }
+
+    private static void appendBlock(File segment, List<ArchiveRecord> records) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            writeBlock(out, records, null);
+        }
+    }
+
+    private static void writeBlock(OutputStream out, List<ArchiveRecord> records,
+                                   RetentionPolicy.Resolution compactedTo) throws IOException {
+        byte[] encoded = ArchiveBlockCodec.encode(records, compactedTo);
+        ByteArrayOutputStream block = new ByteArrayOutputStream(encoded.length + BLOCK_HEADER);
+        try (DataOutputStream data = new DataOutputStream(block)) {
+            data.writeInt(BLOCK_MAGIC);
+            data.writeInt(encoded.length);
+            data.writeInt((int) WriteAheadLog.checksum(ByteBuffer.wrap(encoded)));
+            data.write(encoded);
+        }
+        block.writeTo(out);
+    }
+
+    /**
+     * Get the complete blocks of a segment, mapped rather than read. The buffers are unmapped when
+     * the segment is rewritten or deleted, so are only read within a query.
+     *
+     * @param segment the segment file.
+     * @return a buffer for each block, positioned at the start of the encoded block.
+     */
+    List<ByteBuffer> blocks(File segment) {
+        SegmentCache.MappedSegment mapped = mSegmentCache.get(segment);
+        return mapped == null ? Collections.<ByteBuffer>emptyList() : mapped.blocks();
+    }
+
+    /**
+     * Read the header of every complete block of a segment.
+     *
+     * @param segment the segment file.
+     * @return the headers, in the order the blocks were appended.
+     */
+    List<ArchiveBlockCodec.Header> headers(File segment) {
+        mSegmentCache.beginRead();
+        try {
+            List<ArchiveBlockCodec.Header> headers = new ArrayList<>();
+            for (ByteBuffer block : blocks(segment)) {
+                headers.add(ArchiveBlockCodec.readHeader(block));
+            }
+            return headers;
+        } finally {
+            mSegmentCache.endRead();
+        }
+    }
+
+    private List<ArchiveRecord> decode(File segment) {
+        mSegmentCache.beginRead();
+        try {
+            return decode(segment, blocks(segment));
+        } finally {
+            mSegmentCache.endRead();
+        }
+    }
+
+    private static List<ArchiveRecord> decode(File segment, List<ByteBuffer> blocks) {
+        List<ArchiveRecord> records = new ArrayList<>();
+        for (ByteBuffer block : blocks) {
+            try {
+                records.addAll(ArchiveBlockCodec.decode(block));
+            } catch (RuntimeException e) {
+                logger.error("Corrupt block in archive segment " + segment, e);
+            }
+        }
+        return records;
+    }
+
+    static final Comparator<ArchiveRecord> BY_STATION_AND_TIME = new Comparator<ArchiveRecord>() {
+        @Override
+        public int compare(ArchiveRecord a, ArchiveRecord b) {
+            int station = a.getStation().compareTo(b.getStation());
+            return station != 0 ? station : Long.compare(a.getTime(), b.getTime());
+        }
+    };
+}
@@ -0,0 +1,172 @@
+package data;
+
+/**
+ * The numeric measurements of an observation that are archived and can be queried.
+ *
+ * BOM sends every measurement as a string and leaves missing ones blank or as "-". Those are
+ * read as NaN.
+ *
+ * @author michael
+ */
+public enum ObservationField {
+
+    AIR_TEMP {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmAirtemp();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmAirtemp(value);
+        }
+    },
+    APPARENT_TEMP {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmApparentTemp();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmApparentTemp(value);
+        }
+    },
+    DEW_POINT {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmDewpt();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmDewpt(value);
+        }
+    },
+    HUMIDITY {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmHumidity();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmHumidity(value);
+        }
+    },
+    DELTA_T {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmDelta_t();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmDelta_t(value);
+        }
+    },
+    WIND_SPD_KMH {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmWindSpdKmh();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmWindSpdKmh(value);
+        }
+    },
+    GUST_KMH {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmGustKmh();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmGustKmh(value);
+        }
+    },
+    WIND_SPD_KT {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmWindSpdKt();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmWindSpdKt(value);
+        }
+    },
+    PRESS_QNH {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmPressQnh();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmPressQnh(value);
+        }
+    },
+    PRESS_MSL {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmPressMsl();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmPressMsl(value);
+        }
+    },
+    RAIN_TRACE {
+        @Override
+        String rawValue(Observation obs) {
+            return obs.getmRain();
+        }
+
+        @Override
+        void setRawValue(Observation obs, String value) {
+            obs.setmRain(value);
+        }
+    };
+
+    abstract String rawValue(Observation obs);
+
+    abstract void setRawValue(Observation obs, String value);
+
+    /**
+     * Read this measurement from an observation.
+     *
+     * @param obs the observation to read.
+     * @return the measurement, or NaN if it is missing.
+     */
+    public double valueOf(Observation obs) {
+        String raw = rawValue(obs);
+        if (raw == null || raw.isEmpty() || raw.equals("-")) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(raw);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Write this measurement back to an observation in the same form BOM uses.
+     *
+     * @param obs the observation to update.
+     * @param value the measurement, or NaN if it is missing.
+     */
+    void setValue(Observation obs, double value) {
+        if (Double.isNaN(value)) {
+            setRawValue(obs, "");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            setRawValue(obs, String.valueOf((long) value));
+        } else {
+            setRawValue(obs, String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * One measurement of a station's observations at several resolutions, so a chart of months of
+ * history only ever loads the points it can show.
+ *
+ * Every level keeps the minimum, maximum and mean of the observations in each of its buckets, in
+ * primitive arrays ordered by time. The raw level has a bucket per observation. Times are station
+ * local time as milliseconds since the epoch, like the times of {@link DailyRollup}, so daily
+ * buckets are local days. Levels are updated as observations are ingested; ingesting the same
+ * observation time again is ignored. A downsampled archive record brings the minimum and maximum
+ * of its own bucket.
+ *
+ * @author michael
+ */
+public class ObservationPyramid {
+
+    /**
+     * Resolutions the pyramid keeps, finest first.
+     */
+    public enum Level {
+        RAW(0), HALF_HOUR(TimeUnit.MINUTES.toMillis(30)), HOUR(TimeUnit.HOURS.toMillis(1)),
+        DAY(TimeUnit.DAYS.toMillis(1));
+
+        private final long mBucketMillis;
+
+        Level(long bucketMillis) {
+            mBucketMillis = bucketMillis;
+        }
+
+        /**
+         * @return the width of a bucket, or 0 for one bucket per observation.
+         */
+        public long getBucketMillis() {
+            return mBucketMillis;
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ObservationField mField;
+    private final Series[] mLevels = new Series[Level.values().length];
+    private boolean mLoadedFromArchive;
+
+    /**
+     * Constructor.
+     *
+     * @param field the measurement to keep.
+     */
+    ObservationPyramid(ObservationField field) {
+        mField = checkNotNull(field);
+        for (int i = 0; i < mLevels.length; i++) {
+            mLevels[i] = new Series();
+        }
+    }
+
+    public ObservationField getField() {
+        return mField;
+    }
+
+    /**
+     * Add observations for the station to every level.
+     *
+     * @param station the station the observations belong to.
+     * @param observations the observations, in any order.
+     */
+    synchronized void ingest(String station, List<Observation> observations) {
+        List<ArchiveRecord> records = new ArrayList<>(observations.size());
+        for (Observation observation : observations) {
+            ArchiveRecord record = ArchiveRecord.fromObservation(station, observation);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        ingest(records);
+    }
+
+    /**
+     * Add archived records for the station to every level.
+     *
+     * @param records the records, in any order.
+     */
+    synchronized void ingest(List<ArchiveRecord> records) {
+        records = new ArrayList<>(records);
+        // Oldest first so ingesting is almost always appending
+        Collections.sort(records, new Comparator<ArchiveRecord>() {
+            @Override
+            public int compare(ArchiveRecord a, ArchiveRecord b) {
+                return Long.compare(a.getTime(), b.getTime());
+            }
+        });
+        for (ArchiveRecord record : records) {
+            add(record.getTime() + record.getOffsetMinutes() * 60000L, record.getValue(mField), record.getMin(mField),
+                    record.getMax(mField));
+        }
+    }
+
+    /**
+     * Note that the station's archive is about to be ingested.
+     *
+     * @return true the first time it is called.
+     */
+    synchronized boolean markLoadedFromArchive() {
+        if (mLoadedFromArchive) {
+            return false;
+        }
+        mLoadedFromArchive = true;
+        return true;
+    }
+
+    /**
+     * Add one observation to every level.
+     *
+     * @param time the local observation time.
+     * @param value the measurement, ignored if NaN.
+     */
+    synchronized void add(long time, double value) {
+        add(time, value, value, value);
+    }
+
+    /**
+     * Add one downsampled record to every level.
+     *
+     * @param time the local time of the record.
+     * @param value the measurement, ignored if NaN.
+     * @param min the smallest measurement the record stands for.
+     * @param max the largest measurement the record stands for.
+     */
+    synchronized void add(long time, double value, double min, double max) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (!mLevels[Level.RAW.ordinal()].add(time, value, min, max)) {
+            return;
+        }
+        for (Level level : Level.values()) {
+            if (level != Level.RAW) {
+                long bucket = Math.floorDiv(time, level.getBucketMillis()) * level.getBucketMillis();
+                mLevels[level.ordinal()].add(bucket, value, min, max);
+            }
+        }
+    }
+
+    /**
+     * @param level the level.
+     * @return how many buckets the level has.
+     */
+    public synchronized int size(Level level) {
+        return mLevels[level.ordinal()].mSize;
+    }
+
+    /**
+     * Pick the finest level that has no more than a number of buckets within a time window.
+     *
+     * @param from the start of the window, inclusive, in local milliseconds.
+     * @param to the end of the window, inclusive, in local milliseconds.
+     * @param maxPoints the most buckets wanted.
+     * @return the level, the daily level if every level has too many.
+     */
+    public synchronized Level levelFor(long from, long to, int maxPoints) {
+        checkArgument(maxPoints > 0);
+        for (Level level : Level.values()) {
+            Series series = mLevels[level.ordinal()];
+            if (series.indexAfter(to) - series.indexOf(from) <= maxPoints) {
+                return level;
+            }
+        }
+        return Level.DAY;
+    }
+
+    /**
+     * Copy out the buckets of a level within a time window.
+     *
+     * @param level the level.
+     * @param from the start of the window, inclusive, in local milliseconds.
+     * @param to the end of the window, inclusive, in local milliseconds.
+     * @return the buckets in time order.
+     */
+    public synchronized Slice slice(Level level, long from, long to) {
+        Series series = mLevels[level.ordinal()];
+        int start = series.indexOf(from);
+        int end = Math.max(start, series.indexAfter(to));
+        return new Slice(level, Arrays.copyOfRange(series.mTimes, start, end),
+                Arrays.copyOfRange(series.mMin, start, end), Arrays.copyOfRange(series.mMax, start, end),
+                mean(series, start, end));
+    }
+
+    private static double[] mean(Series series, int start, int end) {
+        double[] mean = new double[end - start];
+        for (int i = start; i < end; i++) {
+            mean[i - start] = series.mSum[i] / series.mCount[i];
+        }
+        return mean;
+    }
+
+    /**
+     * Buckets of one level within a time window.
+     */
+    public static class Slice {
+        private final Level mLevel;
+        private final long[] mTimes;
+        private final double[] mMin;
+        private final double[] mMax;
+        private final double[] mMean;
+
+        private Slice(Level level, long[] times, double[] min, double[] max, double[] mean) {
+            mLevel = level;
+            mTimes = times;
+            mMin = min;
+            mMax = max;
+            mMean = mean;
+        }
+
+        public Level getLevel() {
+            return mLevel;
+        }
+
+        public int size() {
+            return mTimes.length;
+        }
+
+        /**
+         * @param i the bucket index.
+         * @return the local start of the bucket, or the observation time at the raw level.
+         */
+        public long getTime(int i) {
+            return mTimes[i];
+        }
+
+        public double getMin(int i) {
+            return mMin[i];
+        }
+
+        public double getMax(int i) {
+            return mMax[i];
+        }
+
+        public double getMean(int i) {
+            return mMean[i];
+        }
+    }
+
+    /**
+     * Buckets of one level, in parallel growable arrays ordered by time.
+     */
+    private static class Series {
+        private long[] mTimes = new long[INITIAL_CAPACITY];
+        private double[] mMin = new double[INITIAL_CAPACITY];
+        private double[] mMax = new double[INITIAL_CAPACITY];
+        private double[] mSum = new double[INITIAL_CAPACITY];
+        private int[] mCount = new int[INITIAL_CAPACITY];
+        private int mSize;
+
+        /**
+         * Add a value and the range it stands for to its bucket, creating the bucket if needed.
+         *
+         * @return true if a new bucket was created.
+         */
+        boolean add(long time, double value, double min, double max) {
+            int index = Arrays.binarySearch(mTimes, 0, mSize, time);
+            if (index >= 0) {
+                mMin[index] = Math.min(mMin[index], min);
+                mMax[index] = Math.max(mMax[index], max);
+                mSum[index] += value;
+                mCount[index]++;
+                return false;
+            }
+            index = -index - 1;
+            if (mSize == mTimes.length) {
+                int capacity = mSize * 2;
+                mTimes = Arrays.copyOf(mTimes, capacity);
+                mMin = Arrays.copyOf(mMin, capacity);
+                mMax = Arrays.copyOf(mMax, capacity);
+                mSum = Arrays.copyOf(mSum, capacity);
+                mCount = Arrays.copyOf(mCount, capacity);
+            }
+            if (index < mSize) {
+                int moved = mSize - index;
+                System.arraycopy(mTimes, index, mTimes, index + 1, moved);
+                System.arraycopy(mMin, index, mMin, index + 1, moved);
+                System.arraycopy(mMax, index, mMax, index + 1, moved);
+                System.arraycopy(mSum, index, mSum, index + 1, moved);
+                System.arraycopy(mCount, index, mCount, index + 1, moved);
+            }
+            mTimes[index] = time;
+            mMin[index] = min;
+            mMax[index] = max;
+            mSum[index] = value;
+            mCount[index] = 1;
+            mSize++;
+            return true;
+        }
+
+        /**
+         * @return the index of the first bucket at or after a time.
+         */
+        int indexOf(long time) {
+            int index = Arrays.binarySearch(mTimes, 0, mSize, time);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        /**
+         * @return the index of the first bucket after a time.
+         */
+        int indexAfter(long time) {
+            return time == Long.MAX_VALUE ? mSize : indexOf(time + 1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package data;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * How long archived observations are kept at each resolution.
+ *
+ * Days up to the raw limit keep every observation. Older days are downsampled to one record per
+ * station per hour, and past the hourly limit to one per station per day. Days past the maximum
+ * age are deleted.
+ *
+ * @author michael
+ */
+class RetentionPolicy {
+
+    // BOM serves three days, which must stay raw so refetched observations are still recognised
+    static final int MIN_RAW_DAYS = 4;
+
+    /**
+     * Resolutions archived days can be kept at.
+     */
+    enum Resolution {
+        RAW(0), HOURLY(TimeUnit.HOURS.toMillis(1)), DAILY(TimeUnit.DAYS.toMillis(1));
+
+        private final long mBucketMillis;
+
+        Resolution(long bucketMillis) {
+            mBucketMillis = bucketMillis;
+        }
+
+        long getBucketMillis() {
+            return mBucketMillis;
+        }
+    }
+
+    private final int mRawDays;
+    private final int mHourlyDays;
+    private final int mMaxDays;
+
+    /**
+     * Constructor.
+     *
+     * @param rawDays how many days to keep every observation.
+     * @param hourlyDays how many days to keep hourly records.
+     * @param maxDays how many days to keep anything, or 0 to keep daily records forever.
+     */
+    RetentionPolicy(int rawDays, int hourlyDays, int maxDays) {
+        checkArgument(rawDays >= MIN_RAW_DAYS, "Must keep at least " + MIN_RAW_DAYS + " raw days");
+        checkArgument(hourlyDays >= rawDays);
+        checkArgument(maxDays == 0 || maxDays >= hourlyDays);
+        mRawDays = rawDays;
+        mHourlyDays = hourlyDays;
+        mMaxDays = maxDays;
+    }
+
+    /**
+     * @param ageDays how many days ago the day was.
+     * @return the resolution to keep the day at.
+     */
+    Resolution resolutionFor(long ageDays) {
+        if (ageDays <= mRawDays) {
+            return Resolution.RAW;
+        }
+        return ageDays <= mHourlyDays ? Resolution.HOURLY : Resolution.DAILY;
+    }
+
+    /**
+     * @param ageDays how many days ago the day was.
+     * @return whether the day should be deleted.
+     */
+    boolean isExpired(long ageDays) {
+        return mMaxDays > 0 && ageDays > mMaxDays;
+    }
+}
@@ -0,0 +1,313 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded cache of memory-mapped archive segments, each with a sparse index.
+ *
+ * The index maps a station and hour bucket to the offsets of the blocks holding that station's
+ * records for the hour. It is built from the block headers when a segment is mapped. A segment that
+ * has grown since it was mapped is mapped again and only its new blocks are indexed. Blocks are
+ * handed out as slices of the mapping, so their bytes are never copied onto the heap.
+ *
+ * Slices must only be read between {@link #beginRead()} and {@link #endRead()}. Mappings that are
+ * replaced or pushed out of the cache are unmapped once nothing is reading, and evicting a segment
+ * waits for every reader to finish, so its file can then be replaced or deleted on every platform.
+ *
+ * @author michael
+ */
+class SegmentCache {
+
+    private static final Logger logger = LogManager.getLogger(data.SegmentCache.class);
+    static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Map<File, MappedSegment> mSegments;
+    // Held to read slices, and exclusively to unmap
+    private final ReentrantReadWriteLock mReaders = new ReentrantReadWriteLock();
+    // Segments no longer cached, still mapped until nothing is reading
+    private final List<MappedSegment> mSuperseded = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param maxSegments how many segments to keep mapped.
+     */
+    SegmentCache(final int maxSegments) {
+        checkArgument(maxSegments > 0);
+        mSegments = new LinkedHashMap<File, MappedSegment>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, MappedSegment> eldest) {
+                if (size() > maxSegments) {
+                    mSuperseded.add(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a segment, mapping and indexing it if it is not cached or has grown.
+     *
+     * @param file the segment file.
+     * @return the segment, or null if it does not exist or cannot be read.
+     */
+    synchronized MappedSegment get(File file) {
+        MappedSegment segment = mSegments.get(file);
+        long length = file.length();
+        if (segment != null && segment.mLength == length) {
+            return segment;
+        }
+        if (segment != null) {
+            mSuperseded.add(segment);
+        }
+        if (length == 0) {
+            mSegments.remove(file);
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            segment = segment == null || length < segment.mLength
+                    ? new MappedSegment(file, buffer, length) : segment.grow(buffer, length);
+            mSegments.put(file, segment);
+            return segment;
+        } catch (IOException e) {
+            logger.error("Cannot map archive segment " + file, e);
+            mSegments.remove(file);
+            return null;
+        }
+    }
+
+    /**
+     * Start reading slices of the cached segments. Evictions wait until every read has ended.
+     */
+    void beginRead() {
+        mReaders.readLock().lock();
+    }
+
+    /**
+     * Stop reading slices, unmapping superseded segments if nothing else is reading.
+     */
+    void endRead() {
+        mReaders.readLock().unlock();
+        if (mReaders.writeLock().tryLock()) {
+            try {
+                unmapSuperseded();
+            } finally {
+                mReaders.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Forget and unmap a segment, for example because it is about to be replaced. Waits for every
+     * read to end first, and must not be called while reading.
+     *
+     * @param file the segment file.
+     */
+    void evict(File file) {
+        mReaders.writeLock().lock();
+        try {
+            synchronized (this) {
+                MappedSegment segment = mSegments.remove(file);
+                if (segment != null) {
+                    mSuperseded.add(segment);
+                }
+                unmapSuperseded();
+            }
+        } finally {
+            mReaders.writeLock().unlock();
+        }
+    }
+
+    private synchronized void unmapSuperseded() {
+        for (MappedSegment segment : mSuperseded) {
+            MappedBuffers.unmap(segment.mBuffer, segment.mFile);
+        }
+        mSuperseded.clear();
+    }
+
+    synchronized int size() {
+        return mSegments.size();
+    }
+
+    /**
+     * A mapped segment and its index. Safe to read from several threads.
+     */
+    static class MappedSegment {
+        private final File mFile;
+        private final MappedByteBuffer mBuffer;
+        private final long mLength;
+        private final List<Integer> mOffsets;
+        private final Map<String, NavigableMap<Long, List<Integer>>> mIndex;
+        private final int mIndexedTo;
+
+        MappedSegment(File file, MappedByteBuffer buffer, long length) {
+            this(file, buffer, length, new ArrayList<Integer>(), new HashMap<String, NavigableMap<Long, List<Integer>>>(),
+                    0);
+        }
+
+        private MappedSegment(File file, MappedByteBuffer buffer, long length, List<Integer> offsets,
+                              Map<String, NavigableMap<Long, List<Integer>>> index, int indexFrom) {
+            mFile = file;
+            mBuffer = buffer;
+            mLength = length;
+            mOffsets = offsets;
+            mIndex = index;
+            mIndexedTo = indexBlocks(indexFrom);
+        }
+
+        /**
+         * A new mapping of the same, longer, file that keeps the index built so far.
+         */
+        MappedSegment grow(MappedByteBuffer buffer, long length) {
+            Map<String, NavigableMap<Long, List<Integer>>> index = new HashMap<>();
+            for (Map.Entry<String, NavigableMap<Long, List<Integer>>> entry : mIndex.entrySet()) {
+                NavigableMap<Long, List<Integer>> buckets = new TreeMap<>();
+                for (Map.Entry<Long, List<Integer>> bucket : entry.getValue().entrySet()) {
+                    buckets.put(bucket.getKey(), new ArrayList<>(bucket.getValue()));
+                }
+                index.put(entry.getKey(), buckets);
+            }
+            return new MappedSegment(mFile, buffer, length, new ArrayList<>(mOffsets), index, mIndexedTo);
+        }
+
+        /**
+         * Index complete blocks from a position, stopping at a torn or corrupt block.
+         *
+         * @return the position after the last complete block.
+         */
+        private int indexBlocks(int from) {
+            ByteBuffer in = mBuffer.duplicate();
+            in.position(from);
+            while (in.remaining() >= ObservationArchive.BLOCK_HEADER) {
+                int start = in.position();
+                if (in.getInt() != ObservationArchive.BLOCK_MAGIC) {
+                    logger.error("Corrupt block in archive segment " + mFile);
+                    return start;
+                }
+                int length = in.getInt();
+                // The checksum is only checked when recovering from a crash
+                in.getInt();
+                if (length < 0 || in.remaining() < length) {
+                    // Torn block from an interrupted append
+                    return start;
+                }
+                int offset = in.position();
+                try {
+                    ArchiveBlockCodec.Header header = ArchiveBlockCodec.readHeader(block(offset));
+                    List<String> stations = header.getStations();
+                    for (int station = 0; station < stations.size(); station++) {
+                        index(stations.get(station), header.getMinTime(station), header.getMaxTime(station),
+                                mOffsets.size());
+                    }
+                    mOffsets.add(offset);
+                } catch (RuntimeException e) {
+                    logger.error("Corrupt block in archive segment " + mFile, e);
+                    return start;
+                }
+                in.position(offset + length);
+            }
+            return in.position();
+        }
+
+        private void index(String station, long from, long to, int block) {
+            NavigableMap<Long, List<Integer>> buckets = mIndex.get(station);
+            if (buckets == null) {
+                buckets = new TreeMap<>();
+                mIndex.put(station, buckets);
+            }
+            for (long bucket = bucket(from); bucket <= bucket(to); bucket += BUCKET_MILLIS) {
+                List<Integer> blocks = buckets.get(bucket);
+                if (blocks == null) {
+                    blocks = new ArrayList<>(1);
+                    buckets.put(bucket, blocks);
+                }
+                blocks.add(block);
+            }
+        }
+
+        private static long bucket(long time) {
+            return Math.floorDiv(time, BUCKET_MILLIS) * BUCKET_MILLIS;
+        }
+
+        /**
+         * Slice out the block at an offset, just after its magic, length and checksum.
+         */
+        private ByteBuffer block(int offset) {
+            ByteBuffer block = mBuffer.duplicate();
+            block.position(offset - 8);
+            int length = block.getInt();
+            block.position(offset);
+            block = block.slice();
+            block.limit(length);
+            return block;
+        }
+
+        /**
+         * @return every complete block, in the order they were appended.
+         */
+        List<ByteBuffer> blocks() {
+            List<ByteBuffer> blocks = new ArrayList<>(mOffsets.size());
+            for (int offset : mOffsets) {
+                blocks.add(block(offset));
+            }
+            return blocks;
+        }
+
+        /**
+         * Look up the blocks that may hold a station's records within a time window.
+         *
+         * @param station the station name.
+         * @param from the start of the window, inclusive, in UTC milliseconds.
+         * @param to the end of the window, inclusive, in UTC milliseconds.
+         * @return the blocks, in the order they were appended.
+         */
+        List<ByteBuffer> blocks(String station, long from, long to) {
+            NavigableMap<Long, List<Integer>> buckets = mIndex.get(station);
+            if (buckets == null || from > to) {
+                return Collections.emptyList();
+            }
+            // Clamp to the indexed buckets so open-ended windows cannot overflow
+            long fromBucket = Math.max(buckets.firstKey(), bucket(Math.max(from, buckets.firstKey())));
+            long toBucket = bucket(Math.min(to, buckets.lastKey()));
+            if (fromBucket > toBucket) {
+                return Collections.emptyList();
+            }
+            Set<Integer> matches = new LinkedHashSet<>();
+            for (List<Integer> blocks : buckets.subMap(fromBucket, true, toBucket, true).values()) {
+                matches.addAll(blocks);
+            }
+            List<Integer> sorted = new ArrayList<>(matches);
+            Collections.sort(sorted);
+            List<ByteBuffer> blocks = new ArrayList<>(sorted.size());
+            for (int block : sorted) {
+                blocks.add(block(mOffsets.get(block)));
+            }
+            return blocks;
+        }
+    }
+}
@@ -83,12 +83,25 @@ public class Station implements Serializable {
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (!(obj instanceof Station))
+			return false;
 		Station s = (Station) obj;
 		if (s.getCity().equals(mCity))
 			return true;
 		return false;
 	}
 
+	/*
+	 * Hash on the station name to match equals, so stations can key hash maps
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return mCity == null ? 0 : mCity.hashCode();
+	}
+
 	/*
 	 * Getters and setters for the Station object properties.
 	 */
@@ -3,20 +3,60 @@ package data;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Holds weather repositories. Currently just have one (memory version).
+ * Holds weather repositories. Currently just have one (memory version, backed by a disk cache and an archive of observations).
+ *
+ * The disk cache and archive write in the background, so a shutdown hook writes out whatever is
+ * still pending when the app exits.
  *
  * @author michael
  */
 public class WeatherRepositories {
 
     private static final Logger logger = LogManager.getLogger(data.WeatherRepositories.class);
+    private static final String OBSERVATION_CACHE_FILE = "observations.cache";
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    private static final long ARCHIVE_COMMIT_WINDOW_MILLIS = 50;
+    private static final RetentionPolicy ARCHIVE_RETENTION = new RetentionPolicy(30, 365, 0);
+    private static final long COMPACTION_BYTES_PER_SECOND = 1024 * 1024;
+    private static final long COMPACTION_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long COMPACTION_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
     private static WeatherRepository repository = null;
 
     public synchronized static WeatherRepository getInMemoryRepoInstance(WeatherServiceApi weatherServiceApi) {
         if (repository == null) {
-            repository = new InMemoryWeatherRepository(weatherServiceApi);
+            final ObservationArchive archive = new ObservationArchive(new File(ARCHIVE_DIRECTORY),
+                    ARCHIVE_COMMIT_WINDOW_MILLIS);
+            final DiskObservationCache diskCache = new DiskObservationCache(new File(OBSERVATION_CACHE_FILE));
+            new ArchiveCompactor(archive, ARCHIVE_RETENTION, FetchScheduler.getInstance(),
+                    COMPACTION_BYTES_PER_SECOND).start(COMPACTION_DELAY_MILLIS, COMPACTION_INTERVAL_MILLIS);
+            repository = new InMemoryWeatherRepository(weatherServiceApi, diskCache, archive);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    close(diskCache, archive);
+                }
+            }, "repository-shutdown"));
         }
         return repository;
     }
+
+    /**
+     * Write out the observations the disk cache and archive are still holding, and close them.
+     *
+     * @param diskCache the disk cache.
+     * @param archive the archive.
+     */
+    static void close(DiskObservationCache diskCache, ObservationArchive archive) {
+        diskCache.close();
+        try {
+            archive.close();
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while closing the observation archive", e);
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -29,14 +29,42 @@ public interface WeatherRepository {
         void onFavouritesLoaded(List<Station> favourites);
     }
 
+    interface LoadDailyRollupsCallback {
+        void onDailyRollupsLoaded(List<DailyRollup> rollups);
+    }
+
+    interface LoadObservationPyramidCallback {
+        void onObservationPyramidLoaded(ObservationPyramid pyramid);
+    }
+
+    interface QueryArchiveCallback {
+        void onArchiveQueried(List<ArchiveQuery.Row> rows);
+    }
+
     void getStates(LoadStatesCallback callback);
 
     void getStations(String state, LoadStationsCallback callback);
 
     void getObservations(Station station, LoadObservationsCallback callback);
 
+    void getObservations(Station station, FetchPriority priority, LoadObservationsCallback callback);
+
+    long getObservationsLoadedAt(Station station);
+
+    void revalidateObservations(Station station, LoadObservationsCallback callback);
+
+    void getArchivedObservations(Station station, long from, long to, LoadObservationsCallback callback);
+
+    void getDailyRollups(Station station, LoadDailyRollupsCallback callback);
+
+    void getObservationPyramid(Station station, LoadObservationPyramidCallback callback);
+
+    void queryArchive(ArchiveQuery query, QueryArchiveCallback callback);
+
     void getForecasts(Station station, LoadForecastsCallback callback);
 
+    void getForecasts(Station station, FetchPriority priority, LoadForecastsCallback callback);
+
     void saveFavouriteStation(Station favourite);
 
     void refreshStates();
@@ -49,6 +77,16 @@ public interface WeatherRepository {
 
     void refreshForecasts();
 
+    void refreshObservations(Station station);
+
+    void refreshForecasts(Station station);
+
+    void refreshStation(Station station);
+
+    void evictStation(Station station);
+
+    void refreshOlderThan(long maxAgeMillis);
+
 	void getFavouriteStations(LoadFavouritesCallback callback);
 
 	void removeFavouriteStation(Station favourite);
@@ -24,8 +24,11 @@ interface WeatherServiceApi {
 
     void removeFavouriteStation(Station favourite);
 
-    void getObservations(Station station, WeatherServiceCallback<List<Observation>> callback);
+    // Fetches return their ticket, to raise their priority while they wait, or null if they have none
+    FetchScheduler.Ticket getObservations(Station station, FetchPriority priority,
+                                          WeatherServiceCallback<List<Observation>> callback);
 
-    void getForecasts(Station station, WeatherServiceCallback<List<Forecast>> callback);
+    FetchScheduler.Ticket getForecasts(Station station, FetchPriority priority,
+                                       WeatherServiceCallback<List<Forecast>> callback);
 
 }
@@ -101,10 +101,13 @@ class WeatherServiceApiEndpoint {
      * Get observations from the BOM. Uses Retrofit library which does work on a background thread.
      *
      * @param station to determine what observations to get.
+     * @param priority to order the request against other queued fetches.
      * @param callback to return data when it's ready.
+     * @return the fetch's ticket, to raise its priority while it waits.
      */
     @SuppressWarnings("rawtypes")
-    static void getObservations(final Station station, final WeatherServiceApi.WeatherServiceCallback<List<Observation>> callback) {
+    static FetchScheduler.Ticket getObservations(final Station station, FetchPriority priority,
+                                final WeatherServiceApi.WeatherServiceCallback<List<Observation>> callback) {
         final List<Observation> observations = new ArrayList<>();
 
         Retrofit retrofit = new Retrofit.Builder()
@@ -114,7 +117,7 @@ class WeatherServiceApiEndpoint {
 
         WeatherService service = retrofit.create(WeatherService.class);
         Call<JsonObject> call = service.loadObservations(station.getUrl());
-        call.enqueue(new Callback<JsonObject>() {
+        return enqueue(call, retrofit.baseUrl().host(), priority, new Callback<JsonObject>() {
             @SuppressWarnings("unchecked")
             public void onResponse(Call<JsonObject> call, Response<JsonObject> response) {
                 if (response.body() != null) {
@@ -284,9 +287,12 @@ class WeatherServiceApiEndpoint {
      * Get forecasts from online sites. Uses Retrofit library which does work on a background thread.
      *
      * @param station to determine what forecasts to get.
+     * @param priority to order the request against other queued fetches.
      * @param callback to return data when it's ready.
+     * @return the fetch's ticket, to raise its priority while it waits.
      */
-    static void getForecasts(final Station station, final WeatherServiceApi.WeatherServiceCallback<List<Forecast>> callback) {
+    static FetchScheduler.Ticket getForecasts(final Station station, FetchPriority priority,
+                             final WeatherServiceApi.WeatherServiceCallback<List<Forecast>> callback) {
         final List<Forecast> forecasts = new ArrayList<>();
         String forecastSite = "";
         String siteBaseUrl = "";
@@ -336,7 +342,7 @@ class WeatherServiceApiEndpoint {
                     station.getLongitude(),
                     units);
 
-            call.enqueue(new Callback<JsonObject>() {
+            return enqueue(call, retrofit.baseUrl().host(), priority, new Callback<JsonObject>() {
                 public void onResponse(Call<JsonObject> call, Response<JsonObject> response) {
                     if (response.body() != null) {
                         JsonObject forecastsObject = response.body().getAsJsonObject("hourly");
@@ -415,7 +421,7 @@ class WeatherServiceApiEndpoint {
             queryMap.put("units", units);
             Call<JsonObject> call = service.loadForecastsFromOpenWeatherMap("", queryMap);
 
-            call.enqueue(new Callback<JsonObject>() {
+            return enqueue(call, retrofit.baseUrl().host(), priority, new Callback<JsonObject>() {
                 public void onResponse(Call<JsonObject> call, Response<JsonObject> response) {
                     if (response.body() != null) {
                         JsonArray dataArray = response.body().getAsJsonArray("list");
@@ -496,6 +502,43 @@ class WeatherServiceApiEndpoint {
         }
     }
 
+    /**
+     * Hand a Retrofit call to the fetch scheduler instead of enqueueing it directly, so it is started in
+     * priority order and within the host's concurrency limit. The host slot is released once the
+     * callback has run.
+     *
+     * @param call the call to enqueue.
+     * @param host the host the call talks to.
+     * @param priority the priority class of the call.
+     * @param callback to handle the response.
+     * @return the call's ticket, to raise its priority while it waits.
+     */
+    private static FetchScheduler.Ticket enqueue(final Call<JsonObject> call, String host, FetchPriority priority,
+                                                 final Callback<JsonObject> callback) {
+        return FetchScheduler.getInstance().submit(host, priority, new FetchScheduler.Fetch() {
+            @Override
+            public void start(final FetchScheduler.FetchCompletion completion) {
+                call.enqueue(new Callback<JsonObject>() {
+                    public void onResponse(Call<JsonObject> call, Response<JsonObject> response) {
+                        try {
+                            callback.onResponse(call, response);
+                        } finally {
+                            completion.onFetchComplete();
+                        }
+                    }
+
+                    public void onFailure(Call<JsonObject> call, Throwable t) {
+                        try {
+                            callback.onFailure(call, t);
+                        } finally {
+                            completion.onFetchComplete();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Interface for use with Retrofit to get weather data.
      */
@@ -43,11 +43,13 @@ public class WeatherServiceApiImpl implements WeatherServiceApi {
      * Get a list of observations.
      *
      * @param station to determine what observations to get.
+     * @param priority to order the request against other queued fetches.
      * @param callback to return the data when it's been retrieved.
+     * @return the fetch's ticket, to raise its priority while it waits.
      */
     @Override
-    public void getObservations(Station station, final WeatherServiceCallback<List<Observation>> callback) {
-        WeatherServiceApiEndpoint.getObservations(station, new WeatherServiceApi.WeatherServiceCallback<List<Observation>>() {
+    public FetchScheduler.Ticket getObservations(Station station, FetchPriority priority, final WeatherServiceCallback<List<Observation>> callback) {
+        return WeatherServiceApiEndpoint.getObservations(station, priority, new WeatherServiceApi.WeatherServiceCallback<List<Observation>>() {
             @Override
             public void onLoaded(List<Observation> data) {
                 callback.onLoaded(data);
@@ -59,11 +61,13 @@ public class WeatherServiceApiImpl implements WeatherServiceApi {
      * Get a list of forecasts.
      *
      * @param station to determine what forecasts to get.
+     * @param priority to order the request against other queued fetches.
      * @param callback to return the data when it's been retrieved.
+     * @return the fetch's ticket, to raise its priority while it waits.
      */
     @Override
-    public void getForecasts(Station station, final WeatherServiceCallback<List<Forecast>> callback) {
-        WeatherServiceApiEndpoint.getForecasts(station, new WeatherServiceApi.WeatherServiceCallback<List<Forecast>>() {
+    public FetchScheduler.Ticket getForecasts(Station station, FetchPriority priority, final WeatherServiceCallback<List<Forecast>> callback) {
+        return WeatherServiceApiEndpoint.getForecasts(station, priority, new WeatherServiceApi.WeatherServiceCallback<List<Forecast>>() {
             @Override
             public void onLoaded(List<Forecast> data) {
                 callback.onLoaded(data);
@@ -0,0 +1,136 @@
+package data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Write-ahead log of archive records that have not yet been made durable in their segments.
+ *
+ * Each group commit is one entry: the entry magic, the payload length, a CRC32 of the payload and a
+ * block encoded by {@link ArchiveBlockCodec}, followed by a single sync. On startup every entry up to
+ * the first incomplete or corrupt one is recovered and the torn tail is truncated. Once the records
+ * are synced in their segments the log is truncated back to empty.
+ *
+ * @author michael
+ */
+class WriteAheadLog {
+
+    private static final Logger logger = LogManager.getLogger(data.WriteAheadLog.class);
+    private static final int ENTRY_MAGIC = 0x4F574133;
+    private static final int ENTRY_HEADER = 12;
+
+    private final File mFile;
+    private final FileChannel mChannel;
+
+    /**
+     * Constructor. Opens or creates the log.
+     *
+     * @param file the log file.
+     * @throws IOException if the log cannot be opened.
+     */
+    WriteAheadLog(File file) throws IOException {
+        mFile = checkNotNull(file);
+        mChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Read back every complete entry and truncate anything after the last one.
+     *
+     * @return the records of every complete entry, in the order they were logged.
+     * @throws IOException if the log cannot be read.
+     */
+    synchronized List<ArchiveRecord> recover() throws IOException {
+        List<ArchiveRecord> records = new ArrayList<>();
+        long size = mChannel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+        while (position + ENTRY_HEADER <= size) {
+            header.clear();
+            mChannel.read(header, position);
+            header.flip();
+            int magic = header.getInt();
+            int length = header.getInt();
+            long checksum = header.getInt() & 0xFFFFFFFFL;
+            if (magic != ENTRY_MAGIC || length < 0 || position + ENTRY_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            mChannel.read(payload, position + ENTRY_HEADER);
+            payload.flip();
+            if (checksum(payload) != checksum) {
+                break;
+            }
+            try {
+                records.addAll(ArchiveBlockCodec.decode(payload));
+            } catch (RuntimeException e) {
+                logger.error("Cannot decode write-ahead log entry at " + position, e);
+                break;
+            }
+            position += ENTRY_HEADER + length;
+        }
+        if (position < size) {
+            logger.info("Truncating torn write-ahead log " + mFile + " from " + size + " to " + position + " bytes");
+            mChannel.truncate(position);
+            mChannel.force(true);
+        }
+        mChannel.position(position);
+        return records;
+    }
+
+    /**
+     * Log records as one entry and sync it.
+     *
+     * @param records the records to log.
+     * @throws IOException if the entry cannot be written or synced.
+     */
+    synchronized void append(List<ArchiveRecord> records) throws IOException {
+        byte[] payload = ArchiveBlockCodec.encode(records);
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER + payload.length);
+        entry.putInt(ENTRY_MAGIC);
+        entry.putInt(payload.length);
+        entry.putInt((int) checksum(ByteBuffer.wrap(payload)));
+        entry.put(payload);
+        entry.flip();
+        while (entry.hasRemaining()) {
+            mChannel.write(entry);
+        }
+        mChannel.force(false);
+    }
+
+    /**
+     * Empty the log, once everything in it is durable elsewhere.
+     *
+     * @throws IOException if the log cannot be truncated.
+     */
+    synchronized void truncate() throws IOException {
+        mChannel.truncate(0);
+        mChannel.position(0);
+        mChannel.force(true);
+    }
+
+    synchronized long size() throws IOException {
+        return mChannel.size();
+    }
+
+    synchronized void close() throws IOException {
+        mChannel.close();
+    }
+
+    static long checksum(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return crc.getValue();
+    }
+}
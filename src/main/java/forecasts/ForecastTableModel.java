@@ -0,0 +1,57 @@
+package forecasts;
+
+import application.Main;
+import application.SeriesTableModel;
+import data.Forecast;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Table model over a station's forecasts, oldest first.
+ *
+ * @author michael
+ */
+class ForecastTableModel extends SeriesTableModel<Forecast> {
+
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMN_NAMES = { "Date Time", "Temp C" + Main.getSymboldegree(),
+            "Min temp C" + Main.getSymboldegree(), "Max temp C" + Main.getSymboldegree(), "Humidity %", "Pressure",
+            "Wind spd kmh" };
+
+    // Only used on the event dispatch thread
+    private final SimpleDateFormat mDisplayFormat = new SimpleDateFormat("hh:mm a EE dd/MM/yy");
+
+    ForecastTableModel() {
+        super(COLUMN_NAMES);
+    }
+
+    @Override
+    protected String key(Forecast forecast) {
+        return forecast.getTime();
+    }
+
+    @Override
+    protected String format(Forecast forecast, int column) {
+        switch (column) {
+            case 0:
+                try {
+                    return mDisplayFormat.format(new Date(Long.parseLong(forecast.getTime()) * 1000));
+                } catch (NumberFormatException e) {
+                    return forecast.getTime();
+                }
+            case 1:
+                return forecast.getTemp();
+            case 2:
+                return forecast.getMinTemp();
+            case 3:
+                return forecast.getMaxTemp();
+            case 4:
+                return forecast.getHumidity();
+            case 5:
+                return forecast.getPressure();
+            default:
+                return forecast.getWindSpeed();
+        }
+    }
+}
@@ -1,10 +1,7 @@
 package forecasts;
 
-import data.Forecast;
 import data.Station;
 
-import java.util.List;
-
 /**
  * The contract between the view and the presenter.
  *
@@ -24,11 +21,11 @@ public interface ForecastsContract {
         void setProgressBar(boolean active);
 
         /**
-         * Show forecasts in the current view.
+         * Show a station's latest forecast, its forecasts in a table and a chart of them.
          *
-         * @param forecasts the observations to show.
+         * @param model the forecasts, ready to bind.
          */
-        void showForecasts(List<Forecast> forecasts);
+        void showForecasts(ForecastsViewModel model);
 
         /**
          * Set the Presenter on initialisation.
@@ -47,29 +44,6 @@ public interface ForecastsContract {
         // ***Not currently ready. Ignore for now.***
         // FYI: Interface may change.
         void setForecastSite(String forecastSite);
-    
-        /**
-         * Show latest forecasts
-         *
-         * @param forecast the forecast to show.
-         */
-        void showLatestForecast(Forecast forecast);
-        
-        /**
-         * Show forecasts in the current view.
-         *
-         * @param forecasts the forecasts to show.
-         */
-        void showForecastTable(List<Forecast> forecasts);
-        
-        /**
-         * Show chart.
-         *
-         * @param forecasts the forecasts on which to base to chart.
-         */
-        void showForecastChart(List<Forecast> forecasts);
-    
-    
     }
 
     /**
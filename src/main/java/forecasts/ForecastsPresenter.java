@@ -1,5 +1,6 @@
 package forecasts;
 
+import application.PresentationPipeline;
 import data.Forecast;
 import data.Station;
 import data.WeatherRepository;
@@ -22,41 +23,73 @@ public class ForecastsPresenter implements ForecastsContract.UserActionsListener
     private static final Logger logger = LogManager.getLogger(forecasts.ForecastsPresenter.class);
     private final WeatherRepository mWeatherRepository;
     private final ForecastsContract.View mView;
+    private final PresentationPipeline mPipeline;
+    // The station the view is showing, as results for an earlier one can still arrive
+    private volatile Station mStation;
 
     /**
-     * Constructor.
+     * Constructor. Uses the app's shared presentation pipeline.
      *
      * @param weatherRepository to access data.
      * @param view to display the UI.
      */
     public ForecastsPresenter(WeatherRepository weatherRepository, ForecastsContract.View view) {
+        this(weatherRepository, view, PresentationPipeline.getInstance());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param weatherRepository to access data.
+     * @param view to display the UI.
+     * @param pipeline to prepare what the view shows off the event dispatch thread.
+     */
+    public ForecastsPresenter(WeatherRepository weatherRepository, ForecastsContract.View view,
+                              PresentationPipeline pipeline) {
         mWeatherRepository = weatherRepository;
         mView = view;
+        mPipeline = pipeline;
     }
 
     /**
-     * Load forecasts from the repository.
+     * Load forecasts from the repository. The view model is built on a worker and the view then
+     * binds it in one go.
      *
      * @param station     station on which to base forecasts.
      * @param forceUpdate determines weather to use memory or force a refresh to pull latest data
      */
     @Override
-    public void loadForecasts(Station station, boolean forceUpdate) {
+    public void loadForecasts(final Station station, boolean forceUpdate) {
+        mStation = station;
         mView.setProgressBar(true);
         if (forceUpdate) {
-            mWeatherRepository.refreshForecasts();
+            mWeatherRepository.refreshForecasts(station);
         }
         mWeatherRepository.getForecasts(station, new WeatherRepository.LoadForecastsCallback() {
-            public void onForecastsLoaded(List<Forecast> forecasts) {
-                mView.setProgressBar(false);
-                if(forecasts == null) {
-                    logger.debug("Cannot get forecast data from repository.");
-                } else {
-                    mView.showForecasts(forecasts);
-                    mView.showLatestForecast(forecasts.get(0));
-                    mView.showForecastTable(forecasts);
-                    mView.showForecastChart(forecasts);
+            public void onForecastsLoaded(final List<Forecast> forecasts) {
+                if (station != null && !station.equals(mStation)) {
+                    logger.debug("Dropping forecasts for " + station + ", no longer shown");
+                    return;
                 }
+                mPipeline.present(mView, new PresentationPipeline.Builder<ForecastsViewModel>() {
+                    @Override
+                    public ForecastsViewModel build() {
+                        if (forecasts == null || forecasts.isEmpty()) {
+                            return null;
+                        }
+                        return ForecastsViewModel.build(forecasts);
+                    }
+                }, new PresentationPipeline.Binder<ForecastsViewModel>() {
+                    @Override
+                    public void bind(ForecastsViewModel model) {
+                        mView.setProgressBar(false);
+                        if (model == null) {
+                            logger.debug("Cannot get forecast data from repository.");
+                        } else {
+                            mView.showForecasts(model);
+                        }
+                    }
+                });
             }
         });
     }
@@ -1,32 +1,19 @@
 package forecasts;
 
+import application.ChartModel;
 import application.Main;
+import com.google.common.collect.ImmutableList;
 import data.Forecast;
 import data.Observation;
 import data.Station;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.CategoryAxis;
-import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.labels.StandardXYItemLabelGenerator;
 import org.jfree.chart.labels.XYItemLabelGenerator;
-import org.jfree.chart.plot.IntervalMarker;
-import org.jfree.chart.plot.XYPlot;
-import org.jfree.chart.renderer.xy.XYItemRenderer;
-import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.general.SeriesException;
-import org.jfree.data.time.Hour;
-import org.jfree.data.time.Minute;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
-import org.jfree.ui.Layer;
-import org.jfree.ui.RectangleAnchor;
-import org.jfree.ui.RectangleInsets;
 import org.jfree.ui.TextAnchor;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 
 import java.awt.Color;
 import java.awt.GridBagConstraints;
@@ -34,13 +21,6 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.Paint;
 import java.text.NumberFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.TimeZone;
 
 /**
  * User interface for the display of weather forecast data for the selected Station.
@@ -57,13 +37,18 @@ public class ForecastsView implements ForecastsContract.View {
     private JPanel mFheadPanel;
     private JPanel mTablePanel;
     private JScrollPane mFTableScrollPane;
+    private JLabel mLblLatestDate;
+    private JLabel mLblTemp;
+    private JLabel mLblSummary;
+    private final ForecastTableModel mTableModel = new ForecastTableModel();
 
     /**
      * Constructor.
      *
      * Instantiates the view and adds a progress bar, header panel (for the
      * title and latest weather data), and table panel and a chart of
-     * temperature data.
+     * temperature data. The view is built once and then shows whichever
+     * station it is given in {@link #onReady(Station)}.
      */
     public ForecastsView() {
         // Add a progress bar
@@ -118,10 +103,13 @@ public class ForecastsView implements ForecastsContract.View {
         tableCons.insets = new Insets(0,10,10,10);
         tableCons.fill = GridBagConstraints.BOTH;
         mTablePanel.add(mFTableScrollPane, tableCons);
-        
-
+        JTable table = new JTable(mTableModel);
+        table.setFont(Main.getFontsmall());
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.getColumn("Date Time").setPreferredWidth(160);
+        mFTableScrollPane.setViewportView(table);
 
-        
+        createHeaderPanel();
     }
 
     /**
@@ -138,31 +126,22 @@ public class ForecastsView implements ForecastsContract.View {
             mJProgressBar.setVisible(false);
             /*Main.MainWindow.getInstance().getStationName().setVisible(false);*/
         }
-        Main.MainWindow.getInstance().getObservationsPanel().repaint();
+        Main.MainWindow.getInstance().getUpdateScheduler().repaint(Main.MainWindow.getInstance().getObservationsPanel());
     }
 
-    // TODO: 18/05/16 Kendall to update...
-    // This is just to show it's working.
+    /**
+     * Show a station's latest forecast, its forecasts in the table and a chart of them. The model is
+     * built off the event dispatch thread, so this only binds it.
+     *
+     * @param model the forecasts, ready to bind.
+     */
     @Override
-    public void showForecasts(List<Forecast> forecasts) {
-        for (Forecast forecast :
-                forecasts) {
-            logger.info("Forecast time: " + forecast.getTime());
-            logger.info("Forecast temp: " + forecast.getTemp());
-        }
-        
-        mFheadPanel = new JPanel();
-        
-        GridBagConstraints cons = new GridBagConstraints();
-        cons.gridx = 1;
-        cons.gridy = 0;
-        cons.weightx = 0;
-        cons.fill = GridBagConstraints.BOTH;
-        cons.anchor = GridBagConstraints.NORTHWEST;
-        cons.insets = new Insets(10, 10, 0, 10);
-        Main.MainWindow.getInstance().getObservationsPanel().add(mFheadPanel, cons);
-        Main.MainWindow.getInstance().getObservationsPanel().repaint();
- 
+    public void showForecasts(ForecastsViewModel model) {
+        mLblLatestDate.setText(model.getLatestTime());
+        mLblTemp.setText(model.getLatestTemp());
+        mLblSummary.setText(model.getLatestSummary());
+        mTableModel.setItems(model.getForecasts());
+        showForecastChart(model);
     }
 
     /**
@@ -176,15 +155,20 @@ public class ForecastsView implements ForecastsContract.View {
     }
 
     /**
-     * When the view has finished initialising load the forecasts from the presenter.
+     * Show a station, loading its forecasts from the presenter. The previous station's forecasts
+     * are cleared first, so nothing from it lingers while the new station loads.
      *
      * @param station the selected weather station
      */
     @Override
     public void onReady(Station station) {
+        if (mStation == null) {
+            // Test to change the forecast weather source
+            mActionsListener.setForecastSite("openweathermap");
+        } else if (!station.equals(mStation)) {
+            mTableModel.setItems(ImmutableList.<Forecast>of());
+        }
         mStation = station;
-        // Test to change the forecast weather source
-        mActionsListener.setForecastSite("openweathermap");
         mActionsListener.loadForecasts(mStation, false);
     }
 
@@ -198,207 +182,79 @@ public class ForecastsView implements ForecastsContract.View {
     }
     
 
-	@Override
-    public void showLatestForecast(Forecast forecast) {
-		 mFheadPanel.setLayout(new GridBagLayout());
-		 mFheadPanel.setBackground(Main.getColorcontrast1());
-	        GridBagConstraints headCons = new GridBagConstraints();
-	        headCons.gridx = 0;
-	        headCons.gridy = 0;
-	        headCons.weighty = 0;
-	        headCons.weightx = 0.5;
-	        headCons.insets = new Insets(10,10,0,10);
-	        headCons.fill = GridBagConstraints.HORIZONTAL;
-	        headCons.anchor = GridBagConstraints.WEST;
-	        JLabel title = new JLabel();
-
-	        title.setFont(Main.getFonttitle());
-	        mFheadPanel.add(title, headCons);
-	        JLabel lblLatest = new JLabel();
-	        lblLatest.setText("Forecasts:");
-	        lblLatest.setFont(Main.getFontnormalbold());
-	        headCons.gridy = 1;
-	        headCons.weightx = 1;
-	        headCons.gridwidth = 1;
-	        headCons.insets = new Insets(0,10,0,10);
-	        mFheadPanel.add(lblLatest, headCons);
-	        JLabel lblLatestDate = new JLabel();
-	        SimpleDateFormat standardDateFormat = new SimpleDateFormat("yyyyMMddhhmmss");
-	        Date thisDate = new Date(Long.parseLong(forecast.getTime()) * 1000);
-
-
-	        Calendar c = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-	        c.setTime(thisDate);
-	        SimpleDateFormat dateFormat = new SimpleDateFormat("hh:mm a EE dd/MM/yy");
-	        lblLatestDate.setText(dateFormat.format(c.getTime()));
-	        lblLatestDate.setFont(Main.getFontnormal());
-	        headCons.gridy = 2;
-	        headCons.weightx = 0;
-	        mFheadPanel.add(lblLatestDate, headCons);
-	        JLabel lblTemp = new JLabel();
-	        lblTemp.setText(forecast.getTemp() + Main.getSymboldegree() + " C");
-	        lblTemp.setFont(Main.getFonttitle());
-	        headCons.gridx = 1;
-	        headCons.gridy = 2;
-	        headCons.weightx = 0;
-	        headCons.weighty = 1;
-	        headCons.gridheight = 2;
-	        headCons.anchor = GridBagConstraints.EAST;
-	        mFheadPanel.add(lblTemp, headCons);
-	        JLabel lblSummary = new JLabel();
-	        lblSummary.setText("<html><body>" + forecast.getDescription() + ", " + forecast.getHumidity() + "% humidity. Pressure - " + forecast.getPressure() + " "
-	                + "Wind - " + forecast.getWindSpeed() + "kph.<body><html>");
-	        lblSummary.setFont(Main.getFontnormal());
-	        headCons.gridy = 3;
-	        headCons.weightx = 1;
-	        headCons.gridx = 0;
-	        headCons.gridheight = 1;
-	        headCons.anchor = GridBagConstraints.WEST;
-	        headCons.insets = new Insets(0,10,30,10);
-	        mFheadPanel.add(lblSummary, headCons);
-		
-	}
-
-	@Override
-	public void showForecastTable(List<Forecast> forecasts) {
-		  // Table settings
-		
-        String[] columnNames = { "Date Time", "Temp C" + Main.getSymboldegree(), 
-                "Min temp C"  + Main.getSymboldegree(), "Max temp C"  + Main.getSymboldegree(), "Humidity %", "Pressure", "Wind spd kmh", };
-
-        JTable table = new JTable();
-        DefaultTableModel dataModel = new DefaultTableModel(columnNames, 0);
-
-        for (Forecast frc : forecasts) {
-            dataModel.addRow(frc.getForecastVector());
-        }
-
-        table.setModel(dataModel);
-        table.setFont(Main.getFontsmall());
-        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
-        table.getColumn("Date Time").setPreferredWidth(160);
-        mFTableScrollPane.setViewportView(table);
-		
-	}
-	
-	@Override
-	public void showForecastChart(List<Forecast> forecasts) {
-        JFreeChart chart = Main.MainWindow.getInstance().getChart();
-        XYPlot plot = (XYPlot) chart.getPlot();
-        TimeSeriesCollection dataset = (TimeSeriesCollection) plot.getDataset();
-        TimeSeries seriesTemp = dataset.getSeries(dataset.indexOf("Temp"));
-        TimeSeries seriesMin = dataset.getSeries(dataset.indexOf("Min"));
-        TimeSeries seriesMax = dataset.getSeries(dataset.indexOf("Max"));
-        TimeSeries series9am = dataset.getSeries(dataset.indexOf("9am"));
-        TimeSeries series3pm = dataset.getSeries(dataset.indexOf("3pm"));
-        double temp = Double.NaN;
-        double minTemp = Double.NaN;
-        double maxTemp = Double.NaN;
-        List<String> dates = new ArrayList<String>();
-        SimpleDateFormat standardDateFormat = new SimpleDateFormat("yyyyMMddhhmmss");
-        SimpleDateFormat day_format = new SimpleDateFormat("dd/M/yyyy");
-        String previousDay = null;
-        Date minDate = null;
-        Date maxDate = null;
-        for (Forecast forecast : forecasts) {
-            if(dates.contains(forecast.getTime())) {
-                continue;
-            }
-            dates.add(forecast.getTime());
-            // format the temperature
-            try {
-                temp = Double.parseDouble(forecast.getTemp());
-            } catch (NumberFormatException e) {
-                temp = 0.0;
-            }
-
-            // format the date
-            Date myDate = null;
-            Date myHour = null;
-            
-
-            myDate = new Date(Long.parseLong(forecast.getTime()) * 1000);
-        	String day = day_format.format(myDate); 
-
-            // Check for 9am and 3pm observations
-            Calendar myCal = Calendar.getInstance();
-            myCal.setTime(myDate);
-
-            
-            int hour = myCal.get(Calendar.HOUR_OF_DAY);
-            if(hour == 9 ) {
-                series9am.addOrUpdate(new Hour(myDate), temp);
-            } else if (hour == 15) {
-                series3pm.addOrUpdate(new Hour(myDate), temp);
-            }
-            try {
-                seriesTemp.addOrUpdate(new Minute(myDate), temp);
-            } catch (SeriesException e) {
-                e.printStackTrace();
-            }
-            if (previousDay == null) {
-                previousDay = day;
-            }
-
-            if (Double.isNaN(minTemp)) {
-                minTemp = temp;
-                minDate = myDate;
-            }
-            if (Double.isNaN(maxTemp)) {
-                maxTemp = temp;
-                maxDate = myDate;
-            }
-
-            if (day.equals(previousDay)) {
-                if (temp < minTemp) {
-                    minTemp = temp;
-                    minDate = myDate;
-                }
-                if (temp > maxTemp) {
-                    maxTemp = temp;
-                    maxDate = myDate;
-                }
-
-            } else {
-                seriesMin.addOrUpdate(new Minute(minDate), minTemp);
-                seriesMax.addOrUpdate(new Minute(maxDate), maxTemp);
-                minDate = null;
-                maxDate = null;
-                minTemp = Double.NaN;
-                maxTemp = Double.NaN;
-            }
-            previousDay = day;
+    /**
+     * Create the header panel in the view, with the labels that each station's latest forecast is
+     * shown in.
+     */
+    private void createHeaderPanel() {
+        mFheadPanel = new JPanel();
+        GridBagConstraints cons = new GridBagConstraints();
+        cons.gridx = 1;
+        cons.gridy = 0;
+        cons.weightx = 0;
+        cons.fill = GridBagConstraints.BOTH;
+        cons.anchor = GridBagConstraints.NORTHWEST;
+        cons.insets = new Insets(10, 10, 0, 10);
+        Main.MainWindow.getInstance().getObservationsPanel().add(mFheadPanel, cons);
 
-        }
-        
-        
-        //dataset.addSeries(series);
-        
-        long intervalStart = Long.parseLong(forecasts.get(0).getTime()) * 1000;
-        long intervalEnd = Long.parseLong(forecasts.get(forecasts.size() - 1).getTime()) * 1000;
-        IntervalMarker mark = new IntervalMarker(intervalStart, intervalEnd );
-        mark.setPaint(Main.getColorcontrast1());
+        mFheadPanel.setLayout(new GridBagLayout());
+        mFheadPanel.setBackground(Main.getColorcontrast1());
+        GridBagConstraints headCons = new GridBagConstraints();
+        headCons.gridx = 0;
+        headCons.gridy = 0;
+        headCons.weighty = 0;
+        headCons.weightx = 0.5;
+        headCons.insets = new Insets(10,10,0,10);
+        headCons.fill = GridBagConstraints.HORIZONTAL;
+        headCons.anchor = GridBagConstraints.WEST;
+        JLabel title = new JLabel();
+        title.setFont(Main.getFonttitle());
+        mFheadPanel.add(title, headCons);
+        JLabel lblLatest = new JLabel();
+        lblLatest.setText("Forecasts:");
+        lblLatest.setFont(Main.getFontnormalbold());
+        headCons.gridy = 1;
+        headCons.weightx = 1;
+        headCons.gridwidth = 1;
+        headCons.insets = new Insets(0,10,0,10);
+        mFheadPanel.add(lblLatest, headCons);
+        mLblLatestDate = new JLabel();
+        mLblLatestDate.setFont(Main.getFontnormal());
+        headCons.gridy = 2;
+        headCons.weightx = 0;
+        mFheadPanel.add(mLblLatestDate, headCons);
+        mLblTemp = new JLabel();
+        mLblTemp.setFont(Main.getFonttitle());
+        headCons.gridx = 1;
+        headCons.gridy = 2;
+        headCons.weightx = 0;
+        headCons.weighty = 1;
+        headCons.gridheight = 2;
+        headCons.anchor = GridBagConstraints.EAST;
+        mFheadPanel.add(mLblTemp, headCons);
+        mLblSummary = new JLabel();
+        mLblSummary.setFont(Main.getFontnormal());
+        headCons.gridy = 3;
+        headCons.weightx = 1;
+        headCons.gridx = 0;
+        headCons.gridheight = 1;
+        headCons.anchor = GridBagConstraints.WEST;
+        headCons.insets = new Insets(0,10,30,10);
+        mFheadPanel.add(mLblSummary, headCons);
+    }
 
-        plot.setAxisOffset(new RectangleInsets(0, 0, 0, 0));
-        
-        plot.addDomainMarker(mark, Layer.BACKGROUND);
-        mark.setLabel("Forecasts");
-        mark.setLabelFont(Main.getFontnormal());
-        mark.setLabelAnchor(RectangleAnchor.TOP);
-        mark.setLabelOffset(new RectangleInsets(20,0,0,0));
-        ValueAxis axis = plot.getDomainAxis();
-        
-        axis.setLowerMargin(0);
-        axis.setUpperMargin(0);
-        
-        XYItemRenderer r = plot.getRenderer();
-        if (r instanceof XYLineAndShapeRenderer) {
-            XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) r;
-            renderer.setSeriesItemLabelsVisible(plot.getSeriesCount() - 1, false);            
-        }
-		
-	}
-	
+    /**
+     * Add the forecast temperatures to the station's chart, with a marker over the forecast period.
+     * Each series fires one change and the chart redraws once.
+     *
+     * @param model the forecasts, with their chart points worked out.
+     */
+    private void showForecastChart(ForecastsViewModel model) {
+        ChartModel chartModel = Main.MainWindow.getInstance().getChartModel();
+        chartModel.beginUpdate();
+        model.chart(chartModel, mStation);
+        chartModel.endUpdate();
+    }
 
 	public JPanel getmTablePanel() {
 		return mTablePanel;
@@ -0,0 +1,253 @@
+package forecasts;
+
+import application.ChartModel;
+import application.ChartPoints;
+import application.Main;
+import com.google.common.collect.ImmutableList;
+import data.Forecast;
+import data.Station;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.IntervalMarker;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYItemRenderer;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.time.Hour;
+import org.jfree.data.time.Minute;
+import org.jfree.ui.RectangleAnchor;
+import org.jfree.ui.RectangleInsets;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Everything the forecasts view shows for a station, parsed, aggregated and formatted ahead of
+ * time so the view only has to bind it.
+ *
+ * Built off the event dispatch thread by {@link #build(List)}. Nothing changes once built.
+ *
+ * @author michael
+ */
+public final class ForecastsViewModel {
+
+    private final String mLatestTime;
+    private final String mLatestTemp;
+    private final String mLatestSummary;
+    private final List<Forecast> mForecasts;
+    private final ChartPoints mTemp;
+    private final ChartPoints mMin;
+    private final ChartPoints mMax;
+    private final ChartPoints m9am;
+    private final ChartPoints m3pm;
+    private final long mStart;
+    private final long mEnd;
+
+    private ForecastsViewModel(Forecast latest, List<Forecast> forecasts, ChartPoints temp, ChartPoints min,
+                               ChartPoints max, ChartPoints nineAm, ChartPoints threePm, long start, long end) {
+        mLatestTime = formatTime(latest.getTime());
+        mLatestTemp = latest.getTemp() + Main.getSymboldegree() + " C";
+        mLatestSummary = "<html><body>" + latest.getDescription() + ", " + latest.getHumidity()
+                + "% humidity. Pressure - " + latest.getPressure() + " " + "Wind - " + latest.getWindSpeed()
+                + "kph.<body><html>";
+        mForecasts = forecasts;
+        mTemp = temp;
+        mMin = min;
+        mMax = max;
+        m9am = nineAm;
+        m3pm = threePm;
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * Build the view model for a station's forecasts.
+     *
+     * @param forecasts the station's forecasts, oldest first and not empty.
+     * @return the view model.
+     */
+    public static ForecastsViewModel build(List<Forecast> forecasts) {
+        checkNotNull(forecasts);
+        int count = forecasts.size();
+        ChartPoints.Builder temps = new ChartPoints.Builder(count);
+        ChartPoints.Builder nineAm = new ChartPoints.Builder(count);
+        ChartPoints.Builder threePm = new ChartPoints.Builder(count);
+        ChartPoints.Builder mins = new ChartPoints.Builder(count);
+        ChartPoints.Builder maxes = new ChartPoints.Builder(count);
+        SimpleDateFormat dayFormat = new SimpleDateFormat("dd/M/yyyy");
+        Calendar calendar = Calendar.getInstance();
+        double minTemp = Double.NaN;
+        double maxTemp = Double.NaN;
+        Date minDate = null;
+        Date maxDate = null;
+        String previousDay = null;
+        for (Forecast forecast : forecasts) {
+            Date date = parseTime(forecast.getTime());
+            if (date == null) {
+                continue;
+            }
+            double temp;
+            try {
+                temp = Double.parseDouble(forecast.getTemp());
+            } catch (NumberFormatException | NullPointerException e) {
+                temp = 0.0;
+            }
+            String day = dayFormat.format(date);
+
+            // Check for 9am and 3pm forecasts
+            calendar.setTime(date);
+            int hour = calendar.get(Calendar.HOUR_OF_DAY);
+            if (hour == 9) {
+                nineAm.add(new Hour(date), temp);
+            } else if (hour == 15) {
+                threePm.add(new Hour(date), temp);
+            }
+            temps.add(new Minute(date), temp);
+
+            // Each day's extremes are added when the next day starts
+            if (previousDay == null) {
+                previousDay = day;
+            }
+            if (Double.isNaN(minTemp)) {
+                minTemp = temp;
+                minDate = date;
+            }
+            if (Double.isNaN(maxTemp)) {
+                maxTemp = temp;
+                maxDate = date;
+            }
+            if (day.equals(previousDay)) {
+                if (temp < minTemp) {
+                    minTemp = temp;
+                    minDate = date;
+                }
+                if (temp > maxTemp) {
+                    maxTemp = temp;
+                    maxDate = date;
+                }
+            } else {
+                mins.add(new Minute(minDate), minTemp);
+                maxes.add(new Minute(maxDate), maxTemp);
+                minDate = null;
+                maxDate = null;
+                minTemp = Double.NaN;
+                maxTemp = Double.NaN;
+            }
+            previousDay = day;
+        }
+        Date start = parseTime(forecasts.get(0).getTime());
+        Date end = parseTime(forecasts.get(count - 1).getTime());
+        return new ForecastsViewModel(forecasts.get(0), ImmutableList.copyOf(forecasts), temps.build(),
+                mins.build(), maxes.build(), nineAm.build(), threePm.build(),
+                start == null ? 0 : start.getTime(), end == null ? 0 : end.getTime());
+    }
+
+    /**
+     * Add the forecast temperatures to a station's series in a chart model, with a marker over the
+     * forecast period. Each series fires one change. Doesn't touch anything but the model and its
+     * chart, so charts can be built without the window.
+     *
+     * @param chartModel the chart model.
+     * @param station the station the forecasts are for.
+     */
+    public void chart(ChartModel chartModel, Station station) {
+        XYPlot plot = chartModel.getChart().getXYPlot();
+        ChartModel.merge(chartModel.getSeries(station, ChartModel.TEMP), mTemp);
+        ChartModel.merge(chartModel.getSeries(station, ChartModel.MIN), mMin);
+        ChartModel.merge(chartModel.getSeries(station, ChartModel.MAX), mMax);
+        ChartModel.merge(chartModel.getSeries(station, ChartModel.NINE_AM), m9am);
+        ChartModel.merge(chartModel.getSeries(station, ChartModel.THREE_PM), m3pm);
+
+        IntervalMarker mark = new IntervalMarker(mStart, mEnd);
+        mark.setPaint(Main.getColorcontrast1());
+
+        plot.setAxisOffset(new RectangleInsets(0, 0, 0, 0));
+
+        mark.setLabel("Forecasts");
+        mark.setLabelFont(Main.getFontnormal());
+        mark.setLabelAnchor(RectangleAnchor.TOP);
+        mark.setLabelOffset(new RectangleInsets(20,0,0,0));
+        chartModel.setForecastMarker(station, mark);
+        ValueAxis axis = plot.getDomainAxis();
+
+        axis.setLowerMargin(0);
+        axis.setUpperMargin(0);
+
+        XYItemRenderer r = plot.getRenderer();
+        if (r instanceof XYLineAndShapeRenderer) {
+            XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) r;
+            renderer.setSeriesItemLabelsVisible(plot.getSeriesCount() - 1, false);
+        }
+    }
+
+    String getLatestTime() {
+        return mLatestTime;
+    }
+
+    String getLatestTemp() {
+        return mLatestTemp;
+    }
+
+    String getLatestSummary() {
+        return mLatestSummary;
+    }
+
+    /**
+     * @return the forecasts, oldest first, for the table.
+     */
+    List<Forecast> getForecasts() {
+        return mForecasts;
+    }
+
+    ChartPoints getTemp() {
+        return mTemp;
+    }
+
+    ChartPoints getMin() {
+        return mMin;
+    }
+
+    ChartPoints getMax() {
+        return mMax;
+    }
+
+    ChartPoints get9am() {
+        return m9am;
+    }
+
+    ChartPoints get3pm() {
+        return m3pm;
+    }
+
+    /**
+     * @return the chart time the forecast period starts.
+     */
+    long getStart() {
+        return mStart;
+    }
+
+    /**
+     * @return the chart time the forecast period ends.
+     */
+    long getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * Forecast times are seconds since the epoch.
+     */
+    private static Date parseTime(String time) {
+        try {
+            return new Date(Long.parseLong(time) * 1000);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String formatTime(String time) {
+        Date date = parseTime(time);
+        return date == null ? time : new SimpleDateFormat("hh:mm a EE dd/MM/yy").format(date);
+    }
+}
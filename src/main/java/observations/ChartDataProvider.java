@@ -0,0 +1,197 @@
+package observations;
+
+import data.ObservationPyramid;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.chart.axis.DateAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.data.Range;
+import org.jfree.data.time.Minute;
+import org.jfree.data.time.TimeSeries;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps a chart series filled from a station's observation pyramid at the resolution that suits the
+ * visible part of the domain axis.
+ *
+ * Whenever the axis is zoomed or panned the finest pyramid level with no more than a few points per
+ * pixel is picked, and the series is replaced with that level's points for the visible range plus
+ * one range either side, so small pans do not reload anything. The points are downsampled with
+ * {@link LargestTriangleThreeBuckets} to one per pixel, so the cost of drawing the chart depends on
+ * its width rather than on how much history it covers.
+ *
+ * The axis range is fixed while attached, so loading history either side does not zoom the chart
+ * out. An axis that ranged itself to its data does so again once detached.
+ *
+ * @author michael
+ */
+class ChartDataProvider implements AxisChangeListener {
+
+    private static final Logger logger = LogManager.getLogger(observations.ChartDataProvider.class);
+    static final int MAX_POINTS = 1000;
+    // Points per pixel loaded from the pyramid, before downsampling
+    private static final int LEVEL_OVERSAMPLING = 4;
+
+    private final ObservationPyramid mPyramid;
+    private final TimeSeries mSeries;
+    private DateAxis mAxis;
+    private boolean mAxisWasAutoRange;
+    private ObservationPyramid.Level mLevel;
+    private long mLoadedFrom;
+    private long mLoadedTo;
+    private int mMaxPoints = MAX_POINTS;
+
+    /**
+     * Constructor.
+     *
+     * @param pyramid the pyramid to load points from.
+     * @param series the series to fill, with {@link Minute} periods.
+     */
+    ChartDataProvider(ObservationPyramid pyramid, TimeSeries series) {
+        mPyramid = checkNotNull(pyramid);
+        mSeries = checkNotNull(series);
+    }
+
+    /**
+     * Start following an axis and load the points for its current range.
+     *
+     * @param axis the domain axis of the chart showing the series.
+     */
+    void attach(DateAxis axis) {
+        mAxis = checkNotNull(axis);
+        mAxisWasAutoRange = mAxis.isAutoRange();
+        mAxis.setRange(mAxis.getRange());
+        mAxis.addChangeListener(this);
+        update();
+    }
+
+    /**
+     * Stop following the axis, letting it range itself again if it did before.
+     */
+    void detach() {
+        if (mAxis != null) {
+            mAxis.removeChangeListener(this);
+            if (mAxisWasAutoRange) {
+                mAxis.setAutoRange(true);
+            }
+            mAxis = null;
+        }
+    }
+
+    /**
+     * Set how many points fit across the visible range, usually the chart's width in pixels, and
+     * reload if it changed.
+     *
+     * @param maxPoints the most points to show at once.
+     */
+    void setMaxPoints(int maxPoints) {
+        checkArgument(maxPoints >= 3);
+        if (maxPoints == mMaxPoints) {
+            return;
+        }
+        mMaxPoints = maxPoints;
+        mLevel = null;
+        if (mAxis != null) {
+            update();
+        }
+    }
+
+    ObservationPyramid.Level getLevel() {
+        return mLevel;
+    }
+
+    @Override
+    public void axisChanged(AxisChangeEvent event) {
+        update();
+    }
+
+    private void update() {
+        Range range = mAxis.getRange();
+        long from = toLocal((long) range.getLowerBound());
+        long to = toLocal((long) range.getUpperBound());
+        ObservationPyramid.Level level = mPyramid.levelFor(from, to, mMaxPoints * LEVEL_OVERSAMPLING);
+        if (level == mLevel && from >= mLoadedFrom && to <= mLoadedTo) {
+            return;
+        }
+        long width = to - from;
+        load(level, from - width, to + width);
+    }
+
+    /**
+     * Replace the series with a level's points, firing one change event.
+     */
+    private void load(ObservationPyramid.Level level, long from, long to) {
+        ObservationPyramid.Slice slice = mPyramid.slice(level, from, to);
+        logger.debug("Loading " + slice.size() + " " + level + " points");
+        mLevel = level;
+        mLoadedFrom = from;
+        mLoadedTo = to;
+        long[] times = new long[slice.size()];
+        double[] values = new double[slice.size()];
+        for (int i = 0; i < slice.size(); i++) {
+            times[i] = fromLocal(slice.getTime(i));
+            values[i] = slice.getMean(i);
+        }
+        // The loaded points span three visible ranges
+        fill(mSeries, times, values, times.length, mMaxPoints * 3);
+    }
+
+    /**
+     * Replace a series with points downsampled to at most a number of points, firing one change
+     * event.
+     *
+     * @param series the series to fill, with {@link Minute} periods.
+     * @param times the chart times of the points, in order.
+     * @param values the values of the points.
+     * @param count how many points to use from the start of the arrays.
+     * @param maxPoints the most points to add.
+     */
+    static void fill(TimeSeries series, long[] times, double[] values, int count, int maxPoints) {
+        int[] kept = LargestTriangleThreeBuckets.select(times, values, count, Math.max(3, maxPoints));
+        series.setNotify(false);
+        series.clear();
+        for (int i : kept) {
+            series.addOrUpdate(new Minute(new Date(times[i])), values[i]);
+        }
+        series.setNotify(true);
+    }
+
+    /**
+     * Put the first points of parallel arrays oldest first, reversing them in place if they are
+     * newest first.
+     *
+     * @param times the point times.
+     * @param values the point values.
+     * @param count how many points to order.
+     */
+    static void oldestFirst(long[] times, double[] values, int count) {
+        if (count > 1 && times[0] < times[count - 1]) {
+            return;
+        }
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            long time = times[i];
+            times[i] = times[j];
+            times[j] = time;
+            double value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Chart times are station local times read in the default time zone, as the observations are.
+     */
+    private static long toLocal(long chartTime) {
+        return chartTime + TimeZone.getDefault().getOffset(chartTime);
+    }
+
+    private static long fromLocal(long local) {
+        return local - TimeZone.getDefault().getOffset(local);
+    }
+}
@@ -0,0 +1,76 @@
+package observations;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a time series held in primitive arrays.
+ *
+ * The first and last points are always kept. The points between are split into equal buckets and
+ * from each bucket the point making the largest triangle with the point kept from the previous
+ * bucket and the average of the next bucket is kept. Peaks and troughs survive, so a chart of the
+ * downsampled points looks like a chart of all of them.
+ *
+ * @author michael
+ */
+class LargestTriangleThreeBuckets {
+
+    private LargestTriangleThreeBuckets() {
+    }
+
+    /**
+     * Pick the points to keep.
+     *
+     * @param times the point times, in order.
+     * @param values the point values.
+     * @param count how many points to use from the start of the arrays.
+     * @param threshold the most points to keep, at least 3.
+     * @return the indices of the points to keep, in order.
+     */
+    static int[] select(long[] times, double[] values, int count, int threshold) {
+        checkArgument(threshold >= 3);
+        checkArgument(count <= times.length && count <= values.length);
+        if (count <= threshold) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] selected = new int[threshold];
+        // Relative times keep the triangle areas well within double precision
+        long origin = times[0];
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            double averageTime = 0;
+            double averageValue = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageTime += times[i] - origin;
+                averageValue += values[i];
+            }
+            averageTime /= nextEnd - nextStart;
+            averageValue /= nextEnd - nextStart;
+
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = nextStart;
+            double previousTime = times[previous] - origin;
+            double previousValue = values[previous];
+            double largest = -1;
+            int kept = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previousTime - averageTime) * (values[i] - previousValue)
+                        - (previousTime - (times[i] - origin)) * (averageValue - previousValue));
+                if (area > largest) {
+                    largest = area;
+                    kept = i;
+                }
+            }
+            selected[bucket + 1] = kept;
+            previous = kept;
+        }
+        selected[threshold - 1] = count - 1;
+        return selected;
+    }
+}
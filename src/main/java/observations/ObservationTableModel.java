@@ -0,0 +1,82 @@
+package observations;
+
+import application.Main;
+import application.SeriesTableModel;
+import data.Observation;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Table model over a station's observations, newest first.
+ *
+ * @author michael
+ */
+class ObservationTableModel extends SeriesTableModel<Observation> {
+
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMN_NAMES = { "Date Time", "Temp C" + Main.getSymboldegree(),
+            "App Temp C" + Main.getSymboldegree(), "Dew point", "Humidity %", "Delta-T C" + Main.getSymboldegree(),
+            "Wind Dir", "Wind spd kmh", "Wind gust kmh", "Wind spd kts", "Wind gust kts", "Press QNH hPa",
+            "Press MSL hPa", "Rain since 9am, mm" };
+
+    // Only used on the event dispatch thread
+    private final SimpleDateFormat mParseFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+    private final SimpleDateFormat mDisplayFormat = new SimpleDateFormat("hh:mm a EE dd/MM/yy");
+
+    ObservationTableModel() {
+        super(COLUMN_NAMES);
+    }
+
+    @Override
+    protected String key(Observation observation) {
+        return observation.getmDateTime();
+    }
+
+    @Override
+    protected String format(Observation observation, int column) {
+        switch (column) {
+            case 0:
+                return formatDateTime(observation.getmDateTime());
+            case 1:
+                return observation.getmAirtemp();
+            case 2:
+                return observation.getmApparentTemp();
+            case 3:
+                return observation.getmDewpt();
+            case 4:
+                return observation.getmHumidity();
+            case 5:
+                return observation.getmDelta_t();
+            case 6:
+                return observation.getmWindDir();
+            case 7:
+                return observation.getmWindSpdKmh();
+            case 8:
+                return observation.getmGustKmh();
+            case 9:
+                return observation.getmWindSpdKt();
+            case 10:
+                return observation.getmGustKt();
+            case 11:
+                return observation.getmPressQnh();
+            case 12:
+                return observation.getmPressMsl();
+            default:
+                return observation.getmRain();
+        }
+    }
+
+    /**
+     * Show the station's local time the way the observation header does.
+     */
+    private String formatDateTime(String dateTime) {
+        try {
+            Date date = mParseFormat.parse(dateTime);
+            return mDisplayFormat.format(date);
+        } catch (ParseException e) {
+            return dateTime;
+        }
+    }
+}
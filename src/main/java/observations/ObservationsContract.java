@@ -1,10 +1,8 @@
 package observations;
 
-import data.Observation;
+import data.ObservationPyramid;
 import data.Station;
 
-import java.util.List;
-
 /**
  * The contract between the view and the presenter.
  *
@@ -25,25 +23,18 @@ public interface ObservationsContract {
         void setProgressBar(boolean active);
 
         /**
-         * Show latest observation
-         *
-         * @param observation the observation to show.
-         */
-        void showLatestObservation(Observation observation);
-
-        /**
-         * Show observations in the current view.
+         * Show a station's latest observation, its observations in a table and a chart of them.
          *
-         * @param observations the observations to show.
+         * @param model the observations, ready to bind.
          */
-        void showObservationTable(List<Observation> observations);
+        void showObservations(ObservationsViewModel model);
 
         /**
-         * Show chart.
+         * Let the chart zoom out over the station's history.
          *
-         * @param observations the observations on which to base to chart.
+         * @param pyramid the station's temperatures at each resolution.
          */
-        void showChart(List<Observation> observations);
+        void showChartHistory(ObservationPyramid pyramid);
 
         /**
          * Set the Presenter on initialisation.
@@ -1,7 +1,10 @@
 package observations;
 
 import application.Main;
+import application.PresentationPipeline;
+import data.DailyRollup;
 import data.Observation;
+import data.ObservationPyramid;
 import data.Station;
 import data.WeatherRepository;
 import org.apache.logging.log4j.LogManager;
@@ -20,43 +23,229 @@ public class ObservationsPresenter implements ObservationsContract.UserActionsLi
     private static final Logger logger = LogManager.getLogger(observations.ObservationsPresenter.class);
     private final WeatherRepository mWeatherRepository;
     private final ObservationsContract.View mView;
+    private final PresentationPipeline mPipeline;
+    // History updates are superseded separately from observation updates
+    private final Object mHistoryTarget = new Object();
+    // A failed revalidation only stops the progress bar, so must not supersede the cached observations
+    private final Object mRevalidationTarget = new Object();
+    // Observation updates are ordered by when their data was fetched, which only compares within a
+    // station, so each station shown gets a new target. Only used on the event dispatch thread.
+    private Object mTarget = new Object();
+    // The station the view is showing, as results for an earlier one can still arrive
+    private volatile Station mStation;
+    // When the observations the view shows were fetched, only used on the event dispatch thread
+    private long mShownAsOf;
 
     /**
-     * Constructor.
+     * Constructor. Uses the app's shared presentation pipeline.
      *
      * @param weatherRepository to access data.
      * @param view to display the UI.
      */
     public ObservationsPresenter(WeatherRepository weatherRepository, ObservationsContract.View view) {
+        this(weatherRepository, view, PresentationPipeline.getInstance());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param weatherRepository to access data.
+     * @param view to display the UI.
+     * @param pipeline to prepare what the view shows off the event dispatch thread.
+     */
+    public ObservationsPresenter(WeatherRepository weatherRepository, ObservationsContract.View view,
+                                 PresentationPipeline pipeline) {
         mWeatherRepository = weatherRepository;
         mView = view;
+        mPipeline = pipeline;
     }
 
     /**
-     * Load observations from the repository.
+     * Load observations from the repository. The view model is built on a worker once the
+     * station's daily rollups are loaded too, and the view then binds it in one go.
+     *
+     * When an update is forced for a station that has observations cached, the cached ones are
+     * shown straight away with the time they were fetched, and the station is refreshed in the
+     * background. The view then only applies what changed when the refresh answers.
      *
      * @param station     station on which to base observations.
      * @param forceUpdate determines weather to use memory or force a refresh to pull latest data
      */
     @Override
-    public void loadObservations(Station station, boolean forceUpdate) {
+    public void loadObservations(final Station station, boolean forceUpdate) {
+        if (station == null || !station.equals(mStation)) {
+            mShownAsOf = 0;
+            mTarget = new Object();
+        }
+        mStation = station;
         mView.setProgressBar(true);
-        if (forceUpdate) {
-            mWeatherRepository.refreshObservations();
+        boolean revalidate = forceUpdate && station != null && mWeatherRepository.getObservationsLoadedAt(station) > 0;
+        if (forceUpdate && !revalidate) {
+            mWeatherRepository.refreshObservations(station);
+        }
+        mWeatherRepository.getObservations(station, new ObservationsCallback(station, mTarget, revalidate, false));
+        if (revalidate) {
+            mWeatherRepository.revalidateObservations(station,
+                    new ObservationsCallback(station, mTarget, false, true));
+        }
+    }
+
+    /**
+     * Passes loaded observations on to be shown.
+     */
+    private class ObservationsCallback implements WeatherRepository.LoadObservationsCallback {
+        private final Station mCallbackStation;
+        private final Object mCallbackTarget;
+        private final boolean mRefreshing;
+        private final boolean mShowingCached;
+
+        /**
+         * @param station the station the observations are for.
+         * @param target the target to present the station's observations to.
+         * @param refreshing true if fresher observations will follow these.
+         * @param showingCached true if cached observations are already shown, so a failure only
+         *                      needs logging.
+         */
+        ObservationsCallback(Station station, Object target, boolean refreshing, boolean showingCached) {
+            mCallbackStation = station;
+            mCallbackTarget = target;
+            mRefreshing = refreshing;
+            mShowingCached = showingCached;
+        }
+
+        @Override
+        public void onObservationsLoaded(final List<Observation> observations) {
+            if (!isShown(mCallbackStation)) {
+                return;
+            }
+            if (observations == null || observations.isEmpty()) {
+                mPipeline.present(mShowingCached ? mRevalidationTarget : mCallbackTarget,
+                        new PresentationPipeline.Builder<ObservationsViewModel>() {
+                    @Override
+                    public ObservationsViewModel build() {
+                        return null;
+                    }
+                }, new PresentationPipeline.Binder<ObservationsViewModel>() {
+                    @Override
+                    public void bind(ObservationsViewModel model) {
+                        mView.setProgressBar(false);
+                        if (observations != null) {
+                            return;
+                        }
+                        logger.debug("Cannot get observation data from repository.");
+                        if (!mShowingCached) {
+                            JOptionPane.showMessageDialog(Main.MainWindow.getInstance().getContainer(),
+                                    "Cannot connect the the data source. Try again later...");
+                        }
+                    }
+                });
+            } else {
+                final long asOf = asOf(mCallbackStation);
+                // Rolling up a station the first time reads its archive, so keep it off the callback thread
+                mPipeline.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        loadDailyRollups(mCallbackStation, mCallbackTarget, observations, asOf, mRefreshing);
+                    }
+                });
+            }
         }
-        mWeatherRepository.getObservations(station, new WeatherRepository.LoadObservationsCallback() {
-            public void onObservationsLoaded(List<Observation> observations) {
-                mView.setProgressBar(false);
-                if(observations == null) {
-                    logger.debug("Cannot get observation data from repository.");
-                    JOptionPane.showMessageDialog(Main.MainWindow.getInstance().getContainer(),
-                            "Cannot connect the the data source. Try again later...");
-                } else {
-                    mView.showLatestObservation(observations.get(0));
-                    mView.showObservationTable(observations);
-                    mView.showChart(observations);
-                }
+    }
+
+    /**
+     * Build the view model once the station's daily rollups are loaded, then load its history once
+     * the view has bound it.
+     *
+     * Whichever of the cached and fresh observations is presented last, the cached ones never
+     * replace the fresh ones.
+     *
+     * @param station the station the observations belong to.
+     * @param target the target to present the station's observations to.
+     * @param observations the observations to show.
+     * @param asOf when the observations were fetched.
+     * @param refreshing true if fresher observations will follow these.
+     */
+    private void loadDailyRollups(final Station station, final Object target, final List<Observation> observations,
+                                  final long asOf, final boolean refreshing) {
+        mWeatherRepository.getDailyRollups(station, new WeatherRepository.LoadDailyRollupsCallback() {
+            @Override
+            public void onDailyRollupsLoaded(final List<DailyRollup> rollups) {
+                mPipeline.present(target, asOf, new PresentationPipeline.Builder<ObservationsViewModel>() {
+                    @Override
+                    public ObservationsViewModel build() {
+                        return ObservationsViewModel.build(observations, rollups, asOf);
+                    }
+                }, new PresentationPipeline.Binder<ObservationsViewModel>() {
+                    @Override
+                    public void bind(ObservationsViewModel model) {
+                        // Cached observations that lost the race with the refresh are not shown
+                        if (!isShown(station) || asOf < mShownAsOf) {
+                            return;
+                        }
+                        // The progress bar is already on while fresher observations are on the way
+                        if (!refreshing) {
+                            mView.setProgressBar(false);
+                        }
+                        if (model != null) {
+                            mShownAsOf = asOf;
+                            mView.showObservations(model);
+                            loadHistory(station);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Give the chart the station's history once its pyramid is loaded.
+     *
+     * @param station the station to load the history of.
+     */
+    private void loadHistory(final Station station) {
+        mPipeline.execute(new Runnable() {
+            @Override
+            public void run() {
+                mWeatherRepository.getObservationPyramid(station, new WeatherRepository.LoadObservationPyramidCallback() {
+                    @Override
+                    public void onObservationPyramidLoaded(final ObservationPyramid pyramid) {
+                        mPipeline.present(mHistoryTarget, new PresentationPipeline.Builder<ObservationPyramid>() {
+                            @Override
+                            public ObservationPyramid build() {
+                                return pyramid;
+                            }
+                        }, new PresentationPipeline.Binder<ObservationPyramid>() {
+                            @Override
+                            public void bind(ObservationPyramid pyramid) {
+                                if (isShown(station)) {
+                                    mView.showChartHistory(pyramid);
+                                }
+                            }
+                        });
+                    }
+                });
             }
         });
     }
+
+    /**
+     * @param station a station whose observations have just loaded.
+     * @return when the station's observations were fetched, or now if the repository cannot say.
+     */
+    private long asOf(Station station) {
+        long loadedAt = station == null ? 0 : mWeatherRepository.getObservationsLoadedAt(station);
+        return loadedAt > 0 ? loadedAt : System.currentTimeMillis();
+    }
+
+    /**
+     * @param station a station results have arrived for.
+     * @return true if the view is still showing the station.
+     */
+    private boolean isShown(Station station) {
+        if (station != null && !station.equals(mStation)) {
+            logger.debug("Dropping results for " + station + ", no longer shown");
+            return false;
+        }
+        return true;
+    }
 }
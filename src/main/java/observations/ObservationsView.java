@@ -1,36 +1,30 @@
 package observations;
 
+import application.ChartImageCache;
+import application.ChartModel;
 import application.Main;
+import application.PresentationPipeline;
+import application.UiUpdateScheduler;
+import com.google.common.collect.ImmutableList;
 import data.Observation;
+import data.ObservationPyramid;
 import data.Station;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
-import org.jfree.chart.labels.StandardXYItemLabelGenerator;
-import org.jfree.chart.labels.XYItemLabelGenerator;
-import org.jfree.chart.plot.XYPlot;
-import org.jfree.chart.renderer.xy.XYItemRenderer;
-import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.general.SeriesException;
-import org.jfree.data.time.Hour;
-import org.jfree.data.time.Minute;
 import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
-import org.jfree.ui.HorizontalAlignment;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.List;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 
 /**
  * User interface for the display of weather observation data for the selected Station.
@@ -47,7 +41,20 @@ public class ObservationsView implements ObservationsContract.View, ActionListen
     private JPanel mChartPanel;
     private JPanel mHeadPanel;
     private JScrollPane mTableScrollPane;
+    private JLabel mLblLatestDate;
+    private JLabel mLblTemp;
+    private JLabel mLblCloud;
+    private JLabel mLblAsOf;
+    private final ObservationTableModel mTableModel = new ObservationTableModel();
     private Station mStation;
+    private TimeSeries mTempSeries;
+    private ChartDataProvider mChartDataProvider;
+    // Stands in for the chart with a rendered image of it, until the pointer enters it
+    private JComponent mChartImage;
+    private BufferedImage mShownImage;
+    private long mShownImageVersion;
+    // True once the chart model shows the station's data
+    private boolean mChartBound;
 
 
     /**
@@ -55,7 +62,8 @@ public class ObservationsView implements ObservationsContract.View, ActionListen
      *
      * Instantiates the view and adds a progress bar, header panel (for the
      * title and latest weather data), and table panel and a chart of
-     * temperature data.
+     * temperature data. The view is built once and then shows whichever
+     * station it is given in {@link #onReady(Station)}.
      */
     public ObservationsView() {
         // Add a progress bar
@@ -102,6 +110,11 @@ public class ObservationsView implements ObservationsContract.View, ActionListen
         
         tableCons.fill = GridBagConstraints.BOTH;
         mTablePanel.add(mTableScrollPane, tableCons);
+        JTable table = new JTable(mTableModel);
+        table.setFont(Main.getFontsmall());
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.getColumn("Date Time").setPreferredWidth(160);
+        mTableScrollPane.setViewportView(table);
 
         // Add chart panel
         mChartPanel = new JPanel();
@@ -113,6 +126,32 @@ public class ObservationsView implements ObservationsContract.View, ActionListen
         cons.weighty = 1;
         cons.insets = new Insets(10,10,10,10);
         Main.MainWindow.getInstance().getObservationsPanel().add(mChartPanel, cons);
+        mChartPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (mChartDataProvider != null) {
+                    mChartDataProvider.setMaxPoints(chartWidth());
+                }
+                // The image was rendered for the old size
+                if (isShowingChartImage()) {
+                    showLiveChart();
+                }
+            }
+        });
+        mChartImage = new JComponent() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                if (mShownImage != null) {
+                    g.drawImage(mShownImage, 0, 0, null);
+                }
+            }
+        };
+        mChartImage.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                showLiveChart();
+            }
+        });
 
         // Set refresh button listener
         Main.MainWindow.getInstance().getBtnRefresh().addActionListener(this);
@@ -132,265 +171,191 @@ public class ObservationsView implements ObservationsContract.View, ActionListen
             mJProgressBar.setVisible(false);
             /*Main.MainWindow.getInstance().getStationName().setVisible(false);*/
         }
-        Main.MainWindow.getInstance().getObservationsPanel().repaint();
+        Main.MainWindow.getInstance().getUpdateScheduler().repaint(Main.MainWindow.getInstance().getObservationsPanel());
     }
 
     /**
-     * When the view has finished initalising load the observations from the
-     * presenter.
+     * Show a station, loading its observations from the presenter. Whatever was shown for the
+     * previous station is let go first, so nothing from it lingers while the new station loads.
+     *
+     * The chart of the previous station is rendered to an image in the background as it is left.
+     * If the new station has an image of its current data at the chart's size, it is painted
+     * straight away and the live chart is only drawn once the pointer enters it.
      *
      * @param station the selected weather station
      */
     @Override
     public void onReady(Station station) {
+        if (!station.equals(mStation)) {
+            if (mStation != null) {
+                cacheChartImage();
+            }
+            if (mChartDataProvider != null) {
+                mChartDataProvider.detach();
+                mChartDataProvider = null;
+            }
+            mTempSeries = null;
+            mChartBound = false;
+            mTableModel.setItems(ImmutableList.<Observation>of());
+            long version = Main.MainWindow.getInstance().getChartModel().getDataVersion(station);
+            BufferedImage image = Main.MainWindow.getInstance().getChartImageCache().get(station, version,
+                    mChartPanel.getWidth(), mChartPanel.getHeight());
+            if (image != null) {
+                showChartImage(image, version);
+            }
+        }
         mStation = station;
         mActionsListener.loadObservations(mStation, false);
     }
 
     /**
-     * Creates a header panel containing the selection station details and a
-     * summary of the latest weather observation for that station.
+     * Show a station's latest observation, its observations in the table and a chart of them. The
+     * model is built off the event dispatch thread, so this only binds it.
      *
-     * @param obs a collection of observations for a weather station.
+     * @param model the observations, ready to bind.
      */
     @Override
-    public void showLatestObservation(Observation obs) {
+    public void showObservations(ObservationsViewModel model) {
+        showLatestObservation(model);
+        mTableModel.setItems(model.getObservations());
+        showChart(model);
+    }
+
+    /**
+     * Shows the selected station's details and a summary of its latest weather observation in the
+     * header panel.
+     *
+     * @param model the observations to summarise.
+     */
+    private void showLatestObservation(ObservationsViewModel model) {
         // Update Station name
-    	String stationTitle = obs.getmName() + " - " + obs.getmStateName();
-    	Main.MainWindow.getInstance().getStationName().setText(stationTitle);
-        
-        mHeadPanel.setLayout(new GridBagLayout());
-        mHeadPanel.setBackground(Main.MainWindow.getInstance().getObservationsPanel().getBackground());
-        GridBagConstraints headCons = new GridBagConstraints();
-        headCons.gridx = 0;
-        headCons.gridy = 0;
-        headCons.weighty = 0;
-        headCons.weightx = 1;
-        headCons.gridwidth = 2;
-        headCons.fill = GridBagConstraints.HORIZONTAL;
-        headCons.anchor = GridBagConstraints.WEST;
-/*        JLabel title = new JLabel();
-        title.setText(stationTitle);
-        title.setFont(Main.getFonttitle());
-        mHeadPanel.add(title, headCons);*/
-        JLabel lblLatest = new JLabel();
-        lblLatest.setText("Latest weather observation:");
-        lblLatest.setFont(Main.getFontnormalbold());
-        headCons.gridy = 1;
-        headCons.weightx = 1;
-        headCons.gridwidth = 1;
-        headCons.insets = new Insets(10,0,0,0);
-        mHeadPanel.add(lblLatest, headCons);
-        JLabel lblLatestDate = new JLabel();
-        SimpleDateFormat standardDateFormat = new SimpleDateFormat("yyyyMMddhhmmss");
-        Date thisDate = null;
+        Main.MainWindow.getInstance().getStationName().setText(model.getStationTitle());
+        mLblLatestDate.setText(model.getLatestTime());
+        mLblTemp.setText(model.getLatestTemp());
+        mLblCloud.setText(model.getLatestSummary());
+        mLblAsOf.setText(model.getAsOf());
+    }
 
-        try {
-            thisDate = standardDateFormat.parse(obs.getmDateTime());
-        } catch (ParseException e) {
-            e.printStackTrace();
+    /**
+     * Displays a graph of temperatures for the selected weather station. Uses JFreeChart to build
+     * the image. The daily minimum and maximum come from the repository's rollups rather than the
+     * observations.
+     *
+     * The station's dataset lives on in the shared chart model, so only observations newer than
+     * those already charted are added, each series firing one change and the chart redrawing
+     * once. The chart panel is added the first time only.
+     *
+     * @param model the observations, with their chart points worked out.
+     */
+    private void showChart(ObservationsViewModel model) {
+        if (mChartDataProvider != null) {
+            mChartDataProvider.detach();
+            mChartDataProvider = null;
         }
+        ChartModel chartModel = Main.MainWindow.getInstance().getChartModel();
+        chartModel.beginUpdate();
+        model.chart(chartModel, mStation, chartWidth());
+        mTempSeries = chartModel.getSeries(mStation, ChartModel.TEMP);
+        chartModel.show(mStation);
+        chartModel.endUpdate();
+
+        mChartBound = true;
+        // An image of older data can't stand in for the chart
+        if (!isShowingChartImage() || mShownImageVersion != chartModel.getDataVersion(mStation)) {
+            showLiveChart();
+        }
+    }
 
-        Calendar c = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-        c.setTime(thisDate);
-        SimpleDateFormat dateFormat = new SimpleDateFormat("hh:mm a EE dd/MM/yy");
-        lblLatestDate.setText(dateFormat.format(c.getTime()));
-        lblLatestDate.setFont(Main.getFontnormal());
-        headCons.gridy = 2;
-        headCons.weightx = 0;
-        headCons.insets = new Insets(0,0,0,0);
-        mHeadPanel.add(lblLatestDate, headCons);
-        JLabel lblTemp = new JLabel();
-        lblTemp.setText(obs.getmAirtemp() + Main.getSymboldegree() + " C");
-        lblTemp.setFont(Main.getFonttitle());
-        headCons.gridx = 1;
-        headCons.gridy = 2;
-        headCons.weightx = 0;
-        headCons.weighty = 1;
-        headCons.gridheight = 2;
-        headCons.anchor = GridBagConstraints.EAST;
-        mHeadPanel.add(lblTemp, headCons);
-        JLabel lblCloud = new JLabel();
-        lblCloud.setText(obs.getmCloud() + ", " + obs.getmHumidity() + "% humidity. Wind - " + obs.getmWindDir() + " "
-                + obs.getmWindSpdKmh() + "kph.");
-        lblCloud.setFont(Main.getFontnormal());
-        headCons.gridy = 3;
-        headCons.weightx = 1;
-        headCons.gridx = 0;
-        headCons.gridheight = 1;
-        headCons.anchor = GridBagConstraints.WEST;
-        mHeadPanel.add(lblCloud, headCons);
+    /**
+     * Render the chart of the station being left in the background, unless an image of its current
+     * data at this size is already cached.
+     */
+    private void cacheChartImage() {
+        int width = mChartPanel.getWidth();
+        int height = mChartPanel.getHeight();
+        if (!mChartBound || isShowingChartImage() || width <= 0 || height <= 0) {
+            return;
+        }
+        ChartModel chartModel = Main.MainWindow.getInstance().getChartModel();
+        ChartImageCache cache = Main.MainWindow.getInstance().getChartImageCache();
+        long version = chartModel.getDataVersion(mStation);
+        if (cache.contains(mStation, version, width, height)) {
+            return;
+        }
+        JFreeChart snapshot = chartModel.snapshot();
+        if (snapshot != null) {
+            cache.render(mStation, version, snapshot, width, height, PresentationPipeline.getInstance());
+        }
     }
 
     /**
-     * Create a table to display all observations and attributes and add it to
-     * the table scroll pane.
+     * Paint a rendered image of the chart in its place.
      *
-     * @param observations a collection of observations for a weather station.
+     * @param image the image.
+     * @param version the data version it was rendered at.
      */
-    @Override
-    public void showObservationTable(List<Observation> observations) {
-        // Table settings
-        String[] columnNames = { "Date Time", "Temp C" + Main.getSymboldegree(), "App Temp C" + Main.getSymboldegree(),
-                "Dew point", "Humidity %", "Delta-T C" + Main.getSymboldegree(), "Wind Dir", "Wind spd kmh",
-                "Wind gust kmh", "Wind spd kts", "Wind gust kts", "Press QNH hPa", "Press MSL hPa",
-                "Rain since 9am, mm" };
-
-        JTable table = new JTable();
-        DefaultTableModel dataModel = new DefaultTableModel(columnNames, 0);
+    private void showChartImage(BufferedImage image, long version) {
+        mShownImage = image;
+        mShownImageVersion = version;
+        setChartComponent(mChartImage);
+        Main.MainWindow.getInstance().getUpdateScheduler().repaint(mChartImage);
+    }
 
-        for (Observation obs : observations) {
-            dataModel.addRow(obs.getObsVector());
+    /**
+     * Put the interactive chart back, showing the station's data.
+     */
+    private void showLiveChart() {
+        ChartModel chartModel = Main.MainWindow.getInstance().getChartModel();
+        if (mStation != null) {
+            chartModel.show(mStation);
         }
+        mShownImage = null;
+        setChartComponent(chartModel.getChartPanel());
+    }
 
-        table.setModel(dataModel);
-        table.setFont(Main.getFontsmall());
-        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
-        table.getColumn("Date Time").setPreferredWidth(160);
-        mTableScrollPane.setViewportView(table);
+    private boolean isShowingChartImage() {
+        return mChartImage.getParent() == mChartPanel;
+    }
+
+    private void setChartComponent(JComponent chart) {
+        if (chart.getParent() == mChartPanel) {
+            return;
+        }
+        mChartPanel.removeAll();
+        mChartPanel.add(chart, BorderLayout.CENTER);
+        UiUpdateScheduler scheduler = Main.MainWindow.getInstance().getUpdateScheduler();
+        scheduler.invalidate(Main.MainWindow.getInstance().getObservationsPanel());
+        scheduler.repaint(Main.MainWindow.getInstance().getObservationsPanel());
     }
 
     /**
-     * Creates and displays a graph of temperatures for the selected weather
-     * station. Uses JFreeChart to build the image.
+     * Let the chart zoom and pan over the station's history. The temperature series is refilled
+     * from the pyramid at a resolution that suits the visible range, starting with the range of
+     * the observations already shown. The range stays fixed until the next station or refresh is
+     * shown, which detaches the history.
      *
-     * @param observations a collection of observations for a weather station.
+     * @param pyramid the station's temperatures at each resolution.
      */
     @Override
-    public void showChart(List<Observation> observations) {
-        logger.debug("observations dateTime: " + observations.get(0).getmDateTime());
-
-        TimeSeries seriesTemp = new TimeSeries("Temp", Minute.class);
-        TimeSeries seriesMin = new TimeSeries("Min", Minute.class);
-        TimeSeries seriesMax = new TimeSeries("Max", Minute.class);
-        TimeSeries series9am = new TimeSeries("9am", Hour.class);
-        TimeSeries series3pm = new TimeSeries("3pm", Hour.class);
-        double temp = Double.NaN;
-        double minTemp = Double.NaN;
-        double maxTemp = Double.NaN;
-        List<String> dates = new ArrayList<String>();
-        SimpleDateFormat standardDateFormat = new SimpleDateFormat("yyyyMMddhhmmss");
-        String previousDay = null;
-        Date minDate = null;
-        Date maxDate = null;
-        for (Observation obs : observations) {
-            if(dates.contains(obs.getmDateTime())) {
-                continue;
-            }
-            dates.add(obs.getmDateTime());
-            // format the temperature
-            try {
-                temp = Double.parseDouble(obs.getmAirtemp());
-            } catch (NumberFormatException e) {
-                temp = 0.0;
-            }
-
-            // format the date
-            Date myDate = null;
-            Date myHour = null;
-            String day = obs.getmDateTime().substring(0, 8);
-
-            try {
-                myDate = standardDateFormat.parse(obs.getmDateTime());
-            } catch (ParseException e) {
-                e.printStackTrace();
-            }
-
-            // Check for 9am and 3pm observations
-            Calendar myCal = Calendar.getInstance();
-            myCal.setTime(myDate);
-            int hour = myCal.get(Calendar.HOUR_OF_DAY);
-            if(hour == 9 ) {
-                series9am.addOrUpdate(new Hour(myDate), temp);
-            } else if (hour == 15) {
-                series3pm.addOrUpdate(new Hour(myDate), temp);
-            }
-            try {
-                seriesTemp.addOrUpdate(new Minute(myDate), temp);
-            } catch (SeriesException e) {
-                e.printStackTrace();
-            }
-            if (previousDay == null) {
-                previousDay = day;
-            }
-
-            if (Double.isNaN(minTemp)) {
-                minTemp = temp;
-                minDate = myDate;
-            }
-            if (Double.isNaN(maxTemp)) {
-                maxTemp = temp;
-                maxDate = myDate;
-            }
-
-            if (day.equals(previousDay)) {
-                if (temp < minTemp) {
-                    minTemp = temp;
-                    minDate = myDate;
-                }
-                if (temp > maxTemp) {
-                    maxTemp = temp;
-                    maxDate = myDate;
-                }
-
-            } else {
-                seriesMin.addOrUpdate(new Minute(minDate), minTemp);
-                seriesMax.addOrUpdate(new Minute(maxDate), maxTemp);
-                minDate = null;
-                maxDate = null;
-                minTemp = Double.NaN;
-                maxTemp = Double.NaN;
-            }
-            previousDay = day;
-
+    public void showChartHistory(ObservationPyramid pyramid) {
+        if (mTempSeries == null) {
+            return;
         }
-
-        TimeSeriesCollection dataset = new TimeSeriesCollection();
-        dataset.addSeries(seriesTemp);
-        dataset.addSeries(seriesMin);
-        dataset.addSeries(seriesMax);
-        dataset.addSeries(series9am);
-        dataset.addSeries(series3pm);
-        
-        JFreeChart chart = Main.MainWindow.getInstance().getChart();
-        chart.getXYPlot().setDataset(dataset);
-        
-        
-        XYPlot plot = (XYPlot) chart.getPlot();
-        plot.setBackgroundPaint(Main.getColorlight());
-        XYItemRenderer r = plot.getRenderer();
-        if (r instanceof XYLineAndShapeRenderer) {
-            XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) r;
-            for(int i = 1; i < 5; i++) {
-                renderer.setSeriesShapesVisible(i, true);
-                renderer.setSeriesShapesFilled(i, true);
-                renderer.setSeriesLinesVisible(i, false);
-            }
-
-            NumberFormat format = NumberFormat.getNumberInstance();
-            format.setMaximumFractionDigits(2);
-            XYItemLabelGenerator generator =
-                    new StandardXYItemLabelGenerator("{0} {2}", format, format);
-            renderer.setBaseItemLabelGenerator(generator);
-            renderer.setBaseItemLabelsVisible(true);
-            renderer.setSeriesItemLabelsVisible(0, false);
-            renderer.setSeriesItemLabelsVisible(1, false);
-            renderer.setSeriesItemLabelsVisible(2, false);
-            renderer.setSeriesPaint(3, Main.getColordark());
-            
+        if (mChartDataProvider != null) {
+            mChartDataProvider.detach();
         }
+        DateAxis axis = (DateAxis) Main.MainWindow.getInstance().getChartModel().getChart().getXYPlot().getDomainAxis();
+        mChartDataProvider = new ChartDataProvider(pyramid, mTempSeries);
+        mChartDataProvider.setMaxPoints(chartWidth());
+        mChartDataProvider.attach(axis);
+    }
 
-        chart.getTitle().setHorizontalAlignment(HorizontalAlignment.LEFT);
-        chart.getTitle().setFont(Main.getFontnormalbold());
-        chart.setBackgroundPaint(Main.MainWindow.getInstance().getObservationsPanel().getBackground());
-        chart.getXYPlot().getDomainAxis().setLabelFont(Main.getFontsmall());
-        chart.getXYPlot().getRangeAxis().setLabelFont(Main.getFontsmall());
-        DateAxis axis = (DateAxis) plot.getDomainAxis();
-        axis.setDateFormatOverride(new SimpleDateFormat("hh:mm a dd-MM-yy"));
-        ChartPanel chartPanel = new ChartPanel(chart);
-        mChartPanel.add(chartPanel, BorderLayout.CENTER);
-        Main.MainWindow.getInstance().getObservationsPanel().revalidate();
-        Main.MainWindow.getInstance().getObservationsPanel().repaint();
+    /**
+     * @return the chart's width in pixels, which is as many points as it can show.
+     */
+    private int chartWidth() {
+        int width = mChartPanel.getWidth();
+        return width > 0 ? width : ChartDataProvider.MAX_POINTS;
     }
 
     /**
@@ -413,25 +378,14 @@ public class ObservationsView implements ObservationsContract.View, ActionListen
         if (e.getSource() instanceof JButton) {
             JButton btn = (JButton) e.getSource();
             if (btn.getName().equals("refresh")) {
-                recreateHeadPanel();
                 mActionsListener.loadObservations(mStation, true);
             }
         }
     }
 
     /**
-     * When the user clicks refresh, this method clears the current data displayed in the UI.
-     * Otherwise it overwrites and contains both old and new data which doesn't look very nice.
-     */
-    private void recreateHeadPanel() {
-        if (mHeadPanel != null) {
-            Main.MainWindow.getInstance().getObservationsPanel().remove(mHeadPanel);
-            createHeaderPanel();
-        }
-    }
-
-    /**
-     * Create the header panel in the view.
+     * Create the header panel in the view, with the labels that each station's latest observation
+     * is shown in.
      */
     private void createHeaderPanel() {
         // add header panel
@@ -444,9 +398,51 @@ public class ObservationsView implements ObservationsContract.View, ActionListen
         cons.anchor = GridBagConstraints.NORTHWEST;
         cons.insets = new Insets(10, 10, 20, 10);
         Main.MainWindow.getInstance().getObservationsPanel().add(mHeadPanel, cons);
-    }
-
 
-    
-    
+        mHeadPanel.setLayout(new GridBagLayout());
+        mHeadPanel.setBackground(Main.MainWindow.getInstance().getObservationsPanel().getBackground());
+        GridBagConstraints headCons = new GridBagConstraints();
+        headCons.gridx = 0;
+        headCons.gridy = 0;
+        headCons.weighty = 0;
+        headCons.weightx = 1;
+        headCons.gridwidth = 2;
+        headCons.fill = GridBagConstraints.HORIZONTAL;
+        headCons.anchor = GridBagConstraints.WEST;
+        JLabel lblLatest = new JLabel();
+        lblLatest.setText("Latest weather observation:");
+        lblLatest.setFont(Main.getFontnormalbold());
+        headCons.gridy = 1;
+        headCons.weightx = 1;
+        headCons.gridwidth = 1;
+        headCons.insets = new Insets(10,0,0,0);
+        mHeadPanel.add(lblLatest, headCons);
+        mLblLatestDate = new JLabel();
+        mLblLatestDate.setFont(Main.getFontnormal());
+        headCons.gridy = 2;
+        headCons.weightx = 0;
+        headCons.insets = new Insets(0,0,0,0);
+        mHeadPanel.add(mLblLatestDate, headCons);
+        mLblTemp = new JLabel();
+        mLblTemp.setFont(Main.getFonttitle());
+        headCons.gridx = 1;
+        headCons.gridy = 2;
+        headCons.weightx = 0;
+        headCons.weighty = 1;
+        headCons.gridheight = 2;
+        headCons.anchor = GridBagConstraints.EAST;
+        mHeadPanel.add(mLblTemp, headCons);
+        mLblCloud = new JLabel();
+        mLblCloud.setFont(Main.getFontnormal());
+        headCons.gridy = 3;
+        headCons.weightx = 1;
+        headCons.gridx = 0;
+        headCons.gridheight = 1;
+        headCons.anchor = GridBagConstraints.WEST;
+        mHeadPanel.add(mLblCloud, headCons);
+        mLblAsOf = new JLabel();
+        mLblAsOf.setFont(Main.getFontsmall());
+        headCons.gridy = 4;
+        mHeadPanel.add(mLblAsOf, headCons);
+    }
 }
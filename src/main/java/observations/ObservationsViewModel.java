@@ -0,0 +1,241 @@
+package observations;
+
+import application.ChartModel;
+import application.ChartPoints;
+import application.Main;
+import data.Station;
+import com.google.common.collect.ImmutableList;
+import data.DailyRollup;
+import data.Observation;
+import org.jfree.data.time.Hour;
+import org.jfree.data.time.Minute;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.TimeSeries;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Everything the observations view shows for a station, parsed, aggregated and formatted ahead of
+ * time so the view only has to bind it.
+ *
+ * Built off the event dispatch thread by {@link #build(List, List, long)}. Nothing changes once built;
+ * the arrays are shared with the view rather than copied, and must not be modified.
+ *
+ * @author michael
+ */
+public final class ObservationsViewModel {
+
+    private final String mStationTitle;
+    private final String mLatestTime;
+    private final String mLatestTemp;
+    private final String mLatestSummary;
+    private final String mAsOf;
+    private final List<Observation> mObservations;
+    private final long[] mTempTimes;
+    private final double[] mTemps;
+    private final ChartPoints mMin;
+    private final ChartPoints mMax;
+    private final ChartPoints m9am;
+    private final ChartPoints m3pm;
+
+    private ObservationsViewModel(Observation latest, long asOf, List<Observation> observations, long[] tempTimes,
+                                  double[] temps, ChartPoints min, ChartPoints max, ChartPoints nineAm, ChartPoints threePm) {
+        mStationTitle = latest.getmName() + " - " + latest.getmStateName();
+        mLatestTime = formatTime(latest.getmDateTime());
+        mLatestTemp = latest.getmAirtemp() + Main.getSymboldegree() + " C";
+        mLatestSummary = latest.getmCloud() + ", " + latest.getmHumidity() + "% humidity. Wind - "
+                + latest.getmWindDir() + " " + latest.getmWindSpdKmh() + "kph.";
+        mAsOf = "As of " + new SimpleDateFormat("hh:mm a EE dd/MM/yy").format(new Date(asOf));
+        mObservations = observations;
+        mTempTimes = tempTimes;
+        mTemps = temps;
+        mMin = min;
+        mMax = max;
+        m9am = nineAm;
+        m3pm = threePm;
+    }
+
+    /**
+     * Build the view model for a station's observations.
+     *
+     * @param observations the station's observations, newest first and not empty.
+     * @param rollups the station's daily rollups.
+     * @param asOf when the observations were fetched.
+     * @return the view model.
+     */
+    public static ObservationsViewModel build(List<Observation> observations, List<DailyRollup> rollups,
+                                              long asOf) {
+        checkNotNull(observations);
+        checkNotNull(rollups);
+        SimpleDateFormat standardDateFormat = new SimpleDateFormat("yyyyMMddHHmmss");
+        Calendar calendar = Calendar.getInstance();
+        int count = observations.size();
+        long[] tempTimes = new long[count];
+        double[] temps = new double[count];
+        int tempCount = 0;
+        ChartPoints.Builder nineAm = new ChartPoints.Builder(count);
+        ChartPoints.Builder threePm = new ChartPoints.Builder(count);
+        // BOM lists the newest observation first, the chart wants the oldest
+        for (int i = count - 1; i >= 0; i--) {
+            Observation obs = observations.get(i);
+            Date date;
+            try {
+                date = standardDateFormat.parse(obs.getmDateTime());
+            } catch (ParseException | NullPointerException e) {
+                continue;
+            }
+            double temp;
+            try {
+                temp = Double.parseDouble(obs.getmAirtemp());
+            } catch (NumberFormatException | NullPointerException e) {
+                temp = 0.0;
+            }
+            calendar.setTime(date);
+            int hour = calendar.get(Calendar.HOUR_OF_DAY);
+            if (hour == 9) {
+                nineAm.add(new Hour(date), temp);
+            } else if (hour == 15) {
+                threePm.add(new Hour(date), temp);
+            }
+            tempTimes[tempCount] = date.getTime();
+            temps[tempCount++] = temp;
+        }
+
+        // Only show the extremes of days the observations cover
+        String firstDay = observations.get(count - 1).getmDateTime().substring(0, 8);
+        ChartPoints.Builder min = new ChartPoints.Builder(rollups.size());
+        ChartPoints.Builder max = new ChartPoints.Builder(rollups.size());
+        for (DailyRollup rollup : rollups) {
+            if (rollup.getDay().compareTo(firstDay) < 0) {
+                continue;
+            }
+            try {
+                if (rollup.getMinTempTime() != null) {
+                    min.add(new Minute(standardDateFormat.parse(rollup.getMinTempTime())), rollup.getMinTemp());
+                }
+                if (rollup.getMaxTempTime() != null) {
+                    max.add(new Minute(standardDateFormat.parse(rollup.getMaxTempTime())), rollup.getMaxTemp());
+                }
+            } catch (ParseException e) {
+                e.printStackTrace();
+            }
+        }
+        return new ObservationsViewModel(observations.get(0), asOf, ImmutableList.copyOf(observations),
+                Arrays.copyOf(tempTimes, tempCount), Arrays.copyOf(temps, tempCount), min.build(), max.build(),
+                nineAm.build(), threePm.build());
+    }
+
+    /**
+     * Add the observations to a station's series in a chart model. The series live on in the
+     * model, so only observations newer than those already charted are added, each series firing
+     * one change. The daily minimum and maximum are replaced, as a day's extremes move as the day
+     * goes on. Doesn't touch anything but the model, so charts can be built without the window.
+     *
+     * @param chartModel the chart model.
+     * @param station the station the observations are for.
+     * @param maxPoints the most temperatures to add to an empty series, usually the chart's width.
+     */
+    public void chart(ChartModel chartModel, Station station, int maxPoints) {
+        // The times are oldest first, so the new ones are at the end
+        int first = Arrays.binarySearch(mTempTimes, chartModel.getObservedUpTo(station));
+        first = first < 0 ? -first - 1 : first + 1;
+        int newCount = mTempTimes.length - first;
+
+        TimeSeries seriesTemp = chartModel.getSeries(station, ChartModel.TEMP);
+        if (seriesTemp.getItemCount() == 0) {
+            ChartDataProvider.fill(seriesTemp, mTempTimes, mTemps, mTempTimes.length, maxPoints);
+        } else if (newCount > 0) {
+            RegularTimePeriod[] minutes = new RegularTimePeriod[newCount];
+            for (int i = 0; i < newCount; i++) {
+                minutes[i] = new Minute(new Date(mTempTimes[first + i]));
+            }
+            ChartModel.merge(seriesTemp, minutes, Arrays.copyOfRange(mTemps, first, mTempTimes.length), newCount);
+        }
+        ChartModel.replace(chartModel.getSeries(station, ChartModel.MIN), mMin);
+        ChartModel.replace(chartModel.getSeries(station, ChartModel.MAX), mMax);
+        ChartModel.merge(chartModel.getSeries(station, ChartModel.NINE_AM), m9am);
+        ChartModel.merge(chartModel.getSeries(station, ChartModel.THREE_PM), m3pm);
+        if (mTempTimes.length > 0) {
+            chartModel.setObservedUpTo(station, mTempTimes[mTempTimes.length - 1]);
+        }
+    }
+
+    String getStationTitle() {
+        return mStationTitle;
+    }
+
+    String getLatestTime() {
+        return mLatestTime;
+    }
+
+    String getLatestTemp() {
+        return mLatestTemp;
+    }
+
+    String getLatestSummary() {
+        return mLatestSummary;
+    }
+
+    /**
+     * @return when the observations were fetched, for showing cached observations with their age.
+     */
+    String getAsOf() {
+        return mAsOf;
+    }
+
+    /**
+     * @return the observations, newest first, for the table.
+     */
+    List<Observation> getObservations() {
+        return mObservations;
+    }
+
+    /**
+     * @return the chart times of the air temperatures, oldest first.
+     */
+    long[] getTempTimes() {
+        return mTempTimes;
+    }
+
+    /**
+     * @return the air temperatures, in the same order as their times.
+     */
+    double[] getTemps() {
+        return mTemps;
+    }
+
+    ChartPoints getMin() {
+        return mMin;
+    }
+
+    ChartPoints getMax() {
+        return mMax;
+    }
+
+    ChartPoints get9am() {
+        return m9am;
+    }
+
+    ChartPoints get3pm() {
+        return m3pm;
+    }
+
+    /**
+     * Show the station's local time the way the table does.
+     */
+    private static String formatTime(String dateTime) {
+        try {
+            Date date = new SimpleDateFormat("yyyyMMddHHmmss").parse(dateTime);
+            return new SimpleDateFormat("hh:mm a EE dd/MM/yy").format(date);
+        } catch (ParseException | NullPointerException e) {
+            return dateTime;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package stations;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import data.Station;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * List model over a list of stations, such as a state's stations from the catalog or the user's
+ * favourites.
+ *
+ * The model reads straight from the list it is given rather than copying it into a
+ * {@code DefaultListModel} one element and one event at a time. Replacing the list fires a single
+ * event, or a single one-row event when one station was added or removed, as happens when a
+ * favourite is added or removed. Stations can be filtered by a predicate and by a search query,
+ * which is matched against lower-case names worked out once per list. Filtering keeps the indices
+ * of the shown stations rather than a copy of them.
+ *
+ * Only used on the event dispatch thread.
+ *
+ * @author michael
+ */
+class StationListModel extends AbstractListModel<Station> {
+
+    private static final long serialVersionUID = 1L;
+    private List<Station> mStations = ImmutableList.of();
+    // Lower-case station names, in the same order as the stations, to match queries against
+    private String[] mSearchNames = new String[0];
+    private Predicate<? super Station> mFilter = Predicates.alwaysTrue();
+    private String mQuery = "";
+    // Indices of the stations shown, in order, or null when every station is shown
+    private int[] mShown;
+    private int mShownCount;
+    // Built when first needed after the stations change
+    private Map<Station, Integer> mIndex;
+
+    /**
+     * Show a new list of stations, keeping the filter and query.
+     *
+     * @param stations the stations, which must not be changed afterwards.
+     */
+    void setStations(List<Station> stations) {
+        checkNotNull(stations);
+        List<Station> old = mStations;
+        int oldSize = getSize();
+        mStations = stations;
+        mSearchNames = new String[stations.size()];
+        for (int i = 0; i < mSearchNames.length; i++) {
+            Station station = stations.get(i);
+            mSearchNames[i] = station == null || station.getCity() == null ? ""
+                    : station.getCity().toLowerCase(Locale.ROOT);
+        }
+        mIndex = null;
+        if (mShown == null) {
+            mShownCount = stations.size();
+            int changed = singleChange(old, stations);
+            if (changed >= 0 && stations.size() > old.size()) {
+                fireIntervalAdded(this, changed, changed);
+                return;
+            } else if (changed >= 0) {
+                fireIntervalRemoved(this, changed, changed);
+                return;
+            }
+            fireChanged(oldSize);
+        } else {
+            applyFilter(oldSize);
+        }
+    }
+
+    /**
+     * Only show the stations the filter accepts.
+     *
+     * @param filter the filter, or null to show every station the query matches.
+     */
+    void setFilter(Predicate<? super Station> filter) {
+        int oldSize = getSize();
+        mFilter = filter == null ? Predicates.alwaysTrue() : filter;
+        applyFilter(oldSize);
+    }
+
+    /**
+     * Only show stations whose names contain the query, ignoring case.
+     *
+     * @param query the text to look for, or null or empty to show every station the filter accepts.
+     */
+    void setQuery(String query) {
+        String normalised = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (normalised.equals(mQuery)) {
+            return;
+        }
+        int oldSize = getSize();
+        mQuery = normalised;
+        applyFilter(oldSize);
+    }
+
+    /**
+     * @return all the stations, including those filtered out.
+     */
+    List<Station> getStations() {
+        return mStations;
+    }
+
+    /**
+     * @param station a station.
+     * @return true if the station is in the list, whether or not it is shown.
+     */
+    boolean contains(Station station) {
+        return index().containsKey(station);
+    }
+
+    /**
+     * @param station a station.
+     * @return the station's index among those shown, or -1 if it is not shown.
+     */
+    int indexOf(Station station) {
+        Integer index = index().get(station);
+        if (index == null) {
+            return -1;
+        }
+        if (mShown == null) {
+            return index;
+        }
+        int shown = Arrays.binarySearch(mShown, 0, mShownCount, index);
+        return shown < 0 ? -1 : shown;
+    }
+
+    @Override
+    public int getSize() {
+        return mShownCount;
+    }
+
+    @Override
+    public Station getElementAt(int index) {
+        return mStations.get(mShown == null ? index : mShown[index]);
+    }
+
+    private void applyFilter(int oldSize) {
+        if (mQuery.isEmpty() && mFilter == Predicates.alwaysTrue()) {
+            mShown = null;
+            mShownCount = mStations.size();
+        } else {
+            int[] shown = mShown != null && mShown.length >= mStations.size() ? mShown : new int[mStations.size()];
+            int count = 0;
+            for (int i = 0; i < mStations.size(); i++) {
+                if (mSearchNames[i].contains(mQuery) && mFilter.apply(mStations.get(i))) {
+                    shown[count++] = i;
+                }
+            }
+            mShown = shown;
+            mShownCount = count;
+        }
+        fireChanged(oldSize);
+    }
+
+    /**
+     * Tell listeners every shown row may have changed, in one event, and that any rows past the
+     * new end were removed.
+     */
+    private void fireChanged(int oldSize) {
+        int size = getSize();
+        if (size > 0) {
+            fireContentsChanged(this, 0, size - 1);
+        }
+        if (size < oldSize) {
+            fireIntervalRemoved(this, size, oldSize - 1);
+        }
+    }
+
+    private Map<Station, Integer> index() {
+        if (mIndex == null) {
+            mIndex = new HashMap<>(mStations.size() * 2);
+            for (int i = 0; i < mStations.size(); i++) {
+                mIndex.put(mStations.get(i), i);
+            }
+        }
+        return mIndex;
+    }
+
+    /**
+     * @return the index of the one station added or removed between the lists, or -1 if they
+     * differ in some other way.
+     */
+    private static int singleChange(List<Station> old, List<Station> stations) {
+        List<Station> longer = stations.size() > old.size() ? stations : old;
+        List<Station> shorter = longer == stations ? old : stations;
+        if (longer.size() != shorter.size() + 1) {
+            return -1;
+        }
+        int changed = 0;
+        while (changed < shorter.size() && shorter.get(changed).equals(longer.get(changed))) {
+            changed++;
+        }
+        for (int i = changed; i < shorter.size(); i++) {
+            if (!shorter.get(i).equals(longer.get(i + 1))) {
+                return -1;
+            }
+        }
+        return changed;
+    }
+}
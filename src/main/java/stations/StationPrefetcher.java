@@ -0,0 +1,219 @@
+package stations;
+
+import data.FetchPriority;
+import data.Forecast;
+import data.Observation;
+import data.Station;
+import data.WeatherRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.swing.*;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Loads stations the user is likely to open next into the repository's cache, so opening them
+ * shows data straight away.
+ *
+ * A station the pointer rests on, and the stations either side of it, are fetched at
+ * {@link FetchPriority#BACKGROUND} priority so they never hold up the station being shown. Moving
+ * the selection with the keyboard fetches the stations either side of the new one. Stations
+ * already cached or being fetched are skipped.
+ *
+ * Speculative fetches are capped twice: only a few may be in flight at once, and once enough
+ * prefetched stations are waiting to be opened, prefetching stops until one of them is, or until
+ * the list changes. Opening a station records whether it was prefetched, so the hit ratio shows
+ * whether the fetches are worth making. A station opened while its prefetch is in flight joins
+ * that fetch in the repository, which raises it to the opened station's priority.
+ *
+ * Only used on the event dispatch thread, apart from the repository callbacks.
+ *
+ * @author michael
+ */
+class StationPrefetcher {
+
+    private static final Logger logger = LogManager.getLogger(stations.StationPrefetcher.class);
+    static final int DEFAULT_NEIGHBOURS = 1;
+    static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    static final int DEFAULT_MAX_UNUSED = 12;
+
+    private final WeatherRepository mWeatherRepository;
+    private final int mNeighbours;
+    private final int mMaxInFlight;
+    private final int mMaxUnused;
+    private final Set<Station> mInFlight = new HashSet<>();
+    // Prefetched stations not yet opened, oldest first
+    private final Set<Station> mUnused = new LinkedHashSet<>();
+    private long mRequests;
+    private long mHits;
+    private long mMisses;
+    private long mWasted;
+
+    /**
+     * Constructor.
+     *
+     * @param weatherRepository the repository to load stations into.
+     * @param neighbours how many stations either side of a station to prefetch.
+     * @param maxInFlight the most prefetches that may be fetching at once.
+     * @param maxUnused the most prefetched stations that may be waiting to be opened.
+     */
+    StationPrefetcher(WeatherRepository weatherRepository, int neighbours, int maxInFlight, int maxUnused) {
+        checkArgument(neighbours >= 0);
+        checkArgument(maxInFlight > 0);
+        checkArgument(maxUnused > 0);
+        mWeatherRepository = checkNotNull(weatherRepository);
+        mNeighbours = neighbours;
+        mMaxInFlight = maxInFlight;
+        mMaxUnused = maxUnused;
+    }
+
+    /**
+     * The pointer has rested on a station. Prefetch it and the stations either side of it.
+     *
+     * @param stations the list the station is in.
+     * @param index the station's index in the list.
+     */
+    void hovered(ListModel<Station> stations, int index) {
+        if (index < 0 || index >= stations.getSize()) {
+            return;
+        }
+        prefetch(stations.getElementAt(index));
+        prefetchNeighbours(stations, index);
+    }
+
+    /**
+     * A station has been selected and is about to be opened. Record whether it was prefetched and
+     * prefetch the stations either side of it, where the keyboard is likely to go next.
+     *
+     * @param stations the list the station is in.
+     * @param index the station's index in the list.
+     */
+    void selected(ListModel<Station> stations, int index) {
+        if (index < 0 || index >= stations.getSize()) {
+            return;
+        }
+        opened(stations.getElementAt(index));
+        prefetchNeighbours(stations, index);
+    }
+
+    /**
+     * A station has been opened. Counts as a hit if its data was prefetched, or is still being
+     * prefetched, since the repository then has the opened station wait for that fetch instead of
+     * fetching it again.
+     *
+     * @param station the station opened.
+     */
+    synchronized void opened(Station station) {
+        boolean prefetching = mInFlight.remove(station);
+        boolean prefetched = mUnused.remove(station);
+        if (prefetching || prefetched && mWeatherRepository.getObservationsLoadedAt(station) > 0) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        logger.debug("Prefetch hit ratio " + String.format("%.2f", getHitRatio()) + " after " + mRequests
+                + " requests, " + mWasted + " wasted");
+    }
+
+    /**
+     * The list has changed, so prefetched stations still waiting to be opened probably won't be.
+     */
+    synchronized void listChanged() {
+        mWasted += mUnused.size();
+        mUnused.clear();
+    }
+
+    /**
+     * @return how many stations have been prefetched.
+     */
+    synchronized long getRequestCount() {
+        return mRequests;
+    }
+
+    /**
+     * @return how many opened stations had been prefetched.
+     */
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * @return how many opened stations had not been prefetched.
+     */
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return how many prefetched stations were dropped before being opened.
+     */
+    synchronized long getWastedCount() {
+        return mWasted;
+    }
+
+    /**
+     * @return the share of opened stations that had been prefetched, or 0 if none have been opened.
+     */
+    synchronized double getHitRatio() {
+        long opened = mHits + mMisses;
+        return opened == 0 ? 0 : (double) mHits / opened;
+    }
+
+    private void prefetchNeighbours(ListModel<Station> stations, int index) {
+        for (int offset = 1; offset <= mNeighbours; offset++) {
+            if (index + offset < stations.getSize()) {
+                prefetch(stations.getElementAt(index + offset));
+            }
+            if (index - offset >= 0) {
+                prefetch(stations.getElementAt(index - offset));
+            }
+        }
+    }
+
+    private void prefetch(final Station station) {
+        synchronized (this) {
+            if (station == null || mInFlight.contains(station) || mUnused.contains(station)
+                    || mInFlight.size() >= mMaxInFlight || mUnused.size() + mInFlight.size() >= mMaxUnused
+                    || mWeatherRepository.getObservationsLoadedAt(station) > 0) {
+                return;
+            }
+            mInFlight.add(station);
+            mRequests++;
+        }
+        // Forecasts are shown with the observations, so the station is ready once both are cached
+        final int[] pending = {2};
+        mWeatherRepository.getObservations(station, FetchPriority.BACKGROUND, new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> observations) {
+                done(station, pending);
+            }
+        });
+        mWeatherRepository.getForecasts(station, FetchPriority.BACKGROUND, new WeatherRepository.LoadForecastsCallback() {
+            @Override
+            public void onForecastsLoaded(List<Forecast> forecasts) {
+                done(station, pending);
+            }
+        });
+    }
+
+    private synchronized void done(Station station, int[] pending) {
+        if (--pending[0] > 0) {
+            return;
+        }
+        if (!mInFlight.remove(station)) {
+            return;
+        }
+        if (mWeatherRepository.getObservationsLoadedAt(station) > 0) {
+            mUnused.add(station);
+        } else {
+            // The fetch failed
+            mWasted++;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package stations;
 
 import application.Main;
+import application.UiUpdateScheduler;
 import data.State;
 import data.Station;
 import data.WeatherRepositories;
@@ -13,13 +14,16 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -31,14 +35,28 @@ import java.util.List;
 public class StationsView implements StationsContract.View, ActionListener, ListSelectionListener {
 
     private static final Logger logger = LogManager.getLogger(stations.StationsView.class);
+    // How long the pointer rests on a station before it is prefetched
+    private static final int PREFETCH_DWELL_MILLIS = 250;
     private StationsContract.UserActionsListener mActionsListener;
     private JProgressBar mJProgressBar;
     private JComboBox<State> mStatesComboList;
     private JList<Station> mStationsJList;
-    private HashMap<String, Station> mStationHashMap = new HashMap<String, Station>();
+    private final StationListModel mStationsModel = new StationListModel();
+    private JTextField mSearchField;
+    // Set while the stations are filtered, so reselecting the shown station doesn't open it again
+    private boolean mFiltering;
     private Station mSelectedStation;
     private List<Station> mFavouritesList = new ArrayList<Station>();
     private JList<Station> mFavouritesJList;
+    private final StationListModel mFavouritesModel = new StationListModel();
+    // Built the first time a station is shown, then rebound to each station after
+    private ObservationsView mObservationsView;
+    private ForecastsView mForecastsView;
+    private final StationPrefetcher mPrefetcher;
+    private final Timer mDwellTimer;
+    private final MouseAdapter mHoverListener;
+    private JList<Station> mHoveredList;
+    private int mHoveredIndex = -1;
 
     /**
      * Constructor.
@@ -51,6 +69,75 @@ public class StationsView implements StationsContract.View, ActionListener, List
         mJProgressBar.setIndeterminate(true);
         mJProgressBar.setVisible(false);
         Main.MainWindow.getInstance().getStationsPanel().add(mJProgressBar);
+
+        // Filter the stations by name as the user types
+        mSearchField = new JTextField();
+        mSearchField.setToolTipText("Search stations");
+        mSearchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filterStations(mSearchField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filterStations(mSearchField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                filterStations(mSearchField.getText());
+            }
+        });
+        GridBagConstraints cons = new GridBagConstraints();
+        cons.gridx = 0;
+        cons.gridy = 5;
+        cons.weighty = 0;
+        cons.insets = new Insets(0, 10, 0, 10);
+        cons.anchor = GridBagConstraints.WEST;
+        cons.fill = GridBagConstraints.BOTH;
+        Main.MainWindow.getInstance().getStationsPanel().add(mSearchField, cons);
+
+        // Prefetch a station once the pointer has rested on it
+        mPrefetcher = new StationPrefetcher(WeatherRepositories.getInMemoryRepoInstance(new WeatherServiceApiImpl()),
+                StationPrefetcher.DEFAULT_NEIGHBOURS, StationPrefetcher.DEFAULT_MAX_IN_FLIGHT,
+                StationPrefetcher.DEFAULT_MAX_UNUSED);
+        mDwellTimer = new Timer(PREFETCH_DWELL_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (mHoveredList != null) {
+                    mPrefetcher.hovered(mHoveredList.getModel(), mHoveredIndex);
+                }
+            }
+        });
+        mDwellTimer.setRepeats(false);
+        mHoverListener = new MouseAdapter() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                JList<Station> list = (JList<Station>) e.getSource();
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0 && !list.getCellBounds(index, index).contains(e.getPoint())) {
+                    index = -1;
+                }
+                if (list != mHoveredList || index != mHoveredIndex) {
+                    mHoveredList = list;
+                    mHoveredIndex = index;
+                    if (index >= 0) {
+                        mDwellTimer.restart();
+                    } else {
+                        mDwellTimer.stop();
+                    }
+                }
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                mDwellTimer.stop();
+                mHoveredList = null;
+                mHoveredIndex = -1;
+            }
+        };
     }
 
     /**
@@ -117,38 +204,30 @@ public class StationsView implements StationsContract.View, ActionListener, List
 
     /**
      * Displays a list of weather stations in the UI. Updated when the State
-     * combo box is changed.
+     * combo box is changed. The list is built once and its model swapped to
+     * the new stations in one go, keeping the search filter.
      *
      * @param stations
      *            a collection of Station objects.
      */
     @Override
     public void showStations(List<Station> stations) {
-        mStationHashMap.clear();
-        for (int i = 0; i < stations.size(); i++) {
-            mStationHashMap.put(stations.get(i).getCity(), stations.get(i));
+        if (mStationsJList == null) {
+            mStationsJList = new JList<Station>(mStationsModel);
+            mStationsJList.addListSelectionListener(this);
+            mStationsJList.addMouseListener(mHoverListener);
+            mStationsJList.addMouseMotionListener(mHoverListener);
+            Main.MainWindow.getInstance().getStationsScrollPane().setViewportView(mStationsJList);
         }
-
-        if (mStationsJList != null) {
-            Main.MainWindow.getInstance().getStationsScrollPane().remove(mStationsJList);
-            Main.MainWindow.getInstance().getStationsScrollPane().revalidate();
-            Main.MainWindow.getInstance().getStationsScrollPane().repaint();
-        }
-        mStationsJList = new JList<Station>();
-        DefaultListModel<Station> listModel = new DefaultListModel<Station>();
-        for (Station s : stations) {
-            listModel.addElement(s);
-        }
-        mStationsJList.setModel(listModel);
-        mStationsJList.setSelectedIndex(-1);
-        mStationsJList.addListSelectionListener(this);
-
-        Main.MainWindow.getInstance().getStationsScrollPane().setViewportView(mStationsJList);
-        Main.MainWindow.getInstance().getStationsScrollPane().repaint();
+        mStationsJList.clearSelection();
+        mStationsModel.setStations(stations);
+        mPrefetcher.listChanged();
+        Main.MainWindow.getInstance().getUpdateScheduler().repaint(Main.MainWindow.getInstance().getStationsScrollPane());
     }
 
     /**
      * Displays the user's favourite stations with an updated list of stations.
+     * Adding or removing a favourite only updates its row.
      *
      * @param favourites
      *            A collection of weather stations.
@@ -157,56 +236,76 @@ public class StationsView implements StationsContract.View, ActionListener, List
     public void showFavourites(List<Station> favourites) {
         mFavouritesList = favourites;
 
-        if (mFavouritesJList != null) {
-            Main.MainWindow.getInstance().getFavouritesScrollPane().setViewportView(null);
+        if (mFavouritesJList == null) {
+            mFavouritesJList = new JList<Station>(mFavouritesModel);
+            mFavouritesJList.addListSelectionListener(this);
+            mFavouritesJList.addMouseListener(mHoverListener);
+            mFavouritesJList.addMouseMotionListener(mHoverListener);
+            Main.MainWindow.getInstance().getFavouritesScrollPane().setViewportView(mFavouritesJList);
         }
-        mFavouritesJList = new JList<Station>();
-        DefaultListModel<Station> listModel = new DefaultListModel<Station>();
-        for (Station s : favourites) {
-            listModel.addElement(s);
-        }
-        mFavouritesJList.setModel(listModel);
-        mFavouritesJList.setSelectedIndex(-1);
-        mFavouritesJList.addListSelectionListener(this);
+        mFavouritesJList.clearSelection();
+        mFavouritesModel.setStations(favourites);
 
-        Main.MainWindow.getInstance().getFavouritesScrollPane().setViewportView(mFavouritesJList);
-        Main.MainWindow.getInstance().getFavouritesScrollPane().revalidate();
-        Main.MainWindow.getInstance().getFavouritesScrollPane().repaint();
+        UiUpdateScheduler scheduler = Main.MainWindow.getInstance().getUpdateScheduler();
+        scheduler.invalidate(Main.MainWindow.getInstance().getFavouritesScrollPane());
+        scheduler.repaint(Main.MainWindow.getInstance().getFavouritesScrollPane());
     }
 
     /**
-     * Gets the application instance, resets the Observation panel and displays
-     * data for the selected weather station.
+     * Show only the stations whose names contain the query, keeping the
+     * selected station selected if it is still shown.
+     *
+     * @param query
+     *            the text typed in the search field.
+     */
+    private void filterStations(String query) {
+        if (mStationsJList == null) {
+            mStationsModel.setQuery(query);
+            return;
+        }
+        Station selected = mStationsJList.getSelectedValue();
+        mFiltering = true;
+        try {
+            mStationsJList.clearSelection();
+            mStationsModel.setQuery(query);
+            int index = mStationsModel.indexOf(selected);
+            if (index >= 0) {
+                mStationsJList.setSelectedIndex(index);
+                mStationsJList.ensureIndexIsVisible(index);
+            }
+        } finally {
+            mFiltering = false;
+        }
+        Main.MainWindow.getInstance().getUpdateScheduler().repaint(Main.MainWindow.getInstance().getStationsScrollPane());
+    }
+
+    /**
+     * Displays data for the selected weather station. The observations and forecasts views are
+     * built, with their presenters and listeners, the first time a station is shown. After that
+     * they are rebound to the selected station, so switching stations only loads and binds data.
      *
      * @param station
      *            a weather station with observations to display.
      */
     @Override
     public void showObservationsUi(Station station) {
-        // Clear previous favourite listener upon selecting a new station.
-        if (Main.MainWindow.getInstance().getBtnFavourite().getActionListeners() != null) {
-            Main.MainWindow.getInstance().getBtnFavourite().removeActionListener(this);
-        }
-        if (Main.MainWindow.getInstance().getBtnRefresh().getActionListeners() != null) {
-            Main.MainWindow.getInstance().getBtnRefresh().removeActionListener(this);
+        if (mObservationsView == null) {
+            Main.MainWindow.getInstance().clearObservationsPanel();
+            Main.MainWindow.getInstance().getBtnFavourite().addActionListener(this);
+            Main.MainWindow.getInstance().getBtnRemove().addActionListener(this);
+            Main.MainWindow.getInstance().getIntroText().setVisible(false);
+
+            mObservationsView = new ObservationsView();
+            ObservationsPresenter observationsPresenter = new ObservationsPresenter(WeatherRepositories.getInMemoryRepoInstance(new WeatherServiceApiImpl()), mObservationsView);
+            mObservationsView.setActionListener(observationsPresenter);
+
+            mForecastsView = new ForecastsView();
+            ForecastsPresenter forecastsPresenter = new ForecastsPresenter(WeatherRepositories.getInMemoryRepoInstance(new WeatherServiceApiImpl()), mForecastsView);
+            mForecastsView.setActionListener(forecastsPresenter);
+            Main.MainWindow.getInstance().getUpdateScheduler().invalidate(Main.MainWindow.getInstance().getObservationsPanel());
         }
-        if (Main.MainWindow.getInstance().getBtnRemove().getActionListeners() != null) {
-            Main.MainWindow.getInstance().getBtnRemove().removeActionListener(this);
-        }
-        Main.MainWindow.getInstance().clearObservationsPanel();
-        Main.MainWindow.getInstance().getBtnFavourite().addActionListener(this);
-        Main.MainWindow.getInstance().getBtnRemove().addActionListener(this);
-    	Main.MainWindow.getInstance().getIntroText().setVisible(false);
-
-        ObservationsView observationsView = new ObservationsView();
-        ObservationsPresenter observationsPresenter = new ObservationsPresenter(WeatherRepositories.getInMemoryRepoInstance(new WeatherServiceApiImpl()), observationsView);
-        observationsView.setActionListener(observationsPresenter);
-        observationsView.onReady(station);
-
-        ForecastsView forecastsView = new ForecastsView();
-        ForecastsPresenter forecastsPresenter = new ForecastsPresenter(WeatherRepositories.getInMemoryRepoInstance(new WeatherServiceApiImpl()), forecastsView);
-        forecastsView.setActionListener(forecastsPresenter);
-        forecastsView.onReady(station);
+        mObservationsView.onReady(station);
+        mForecastsView.onReady(station);
     }
 
     /*
@@ -245,16 +344,20 @@ public class StationsView implements StationsContract.View, ActionListener, List
     @SuppressWarnings("unchecked")
     @Override
     public void valueChanged(ListSelectionEvent e) {
+        if (mFiltering) {
+            return;
+        }
         if (e.getSource() == mStationsJList && !mStationsJList.isSelectionEmpty()) {
             // Ensure the user has finished selecting
             if (!e.getValueIsAdjusting()) {
                 JList<Station> list = (JList<Station>) e.getSource();
 
                 Station thisStation = list.getSelectedValue();
-                String stationName = thisStation.toString();
                 setSelectedStation(thisStation);
 
-                mActionsListener.openObservations(mStationHashMap.get(stationName));
+                // Also prefetches the stations either side, for keyboard navigation
+                mPrefetcher.selected(list.getModel(), list.getSelectedIndex());
+                mActionsListener.openObservations(thisStation);
             }
             if (mFavouritesJList != null) {
                 mFavouritesJList.clearSelection();
@@ -263,6 +366,9 @@ public class StationsView implements StationsContract.View, ActionListener, List
             JList<Station> list = (JList<Station>) e.getSource();
             Station thisStation = list.getSelectedValue();
             setSelectedStation(thisStation);
+            if (!e.getValueIsAdjusting()) {
+                mPrefetcher.selected(list.getModel(), list.getSelectedIndex());
+            }
             mActionsListener.openObservations(thisStation);
             if (mStationsJList != null) {
                 mStationsJList.clearSelection();
@@ -0,0 +1,121 @@
+package application;
+
+import com.google.common.collect.Lists;
+import data.DailyRollup;
+import data.FetchPriority;
+import data.Forecast;
+import data.Observation;
+import data.Station;
+import data.WeatherRepository;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the headless chart exporter.
+ *
+ * @author michael
+ */
+public class ChartExporterTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+
+    private static List<Observation> OBSERVATIONS = Lists.newArrayList(
+            new Observation("1","Melbourne Olympic Park", "20160529140000", "9.9", "-", "13.2", "0.0", "56"),
+            new Observation("1","Melbourne Olympic Park", "20160529133000", "7.7", "Mostly clear", "12.4", "0.0", "53"));
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private WeatherRepository mWeatherRepository;
+
+    @Before
+    public void setupRepository() {
+        MockitoAnnotations.initMocks(this);
+        // Melbourne has observations, Geelong has nothing
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Station station = (Station) invocation.getArguments()[0];
+                ((WeatherRepository.LoadObservationsCallback) invocation.getArguments()[1]).onObservationsLoaded(
+                        station.equals(MELBOURNE) ? OBSERVATIONS : null);
+                return null;
+            }
+        }).when(mWeatherRepository).revalidateObservations(any(Station.class),
+                any(WeatherRepository.LoadObservationsCallback.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((WeatherRepository.LoadDailyRollupsCallback) invocation.getArguments()[1]).onDailyRollupsLoaded(
+                        Lists.<DailyRollup>newArrayList());
+                return null;
+            }
+        }).when(mWeatherRepository).getDailyRollups(any(Station.class),
+                any(WeatherRepository.LoadDailyRollupsCallback.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((WeatherRepository.LoadForecastsCallback) invocation.getArguments()[2]).onForecastsLoaded(
+                        Lists.<Forecast>newArrayList());
+                return null;
+            }
+        }).when(mWeatherRepository).getForecasts(any(Station.class), eq(FetchPriority.FAVOURITE),
+                any(WeatherRepository.LoadForecastsCallback.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((WeatherRepository.LoadFavouritesCallback) invocation.getArguments()[0]).onFavouritesLoaded(
+                        Lists.newArrayList(MELBOURNE, GEELONG));
+                return null;
+            }
+        }).when(mWeatherRepository).getFavouriteStations(anyObject());
+    }
+
+    /**
+     * When the favourites are exported, check that:
+     * - a PNG of the chart's size is written for the station with data,
+     * - the station without data is counted as failed rather than written,
+     * - the export reports its throughput,
+     * - observations are always fetched rather than taken from the disk cache.
+     */
+    @Test
+    public void exportFavouritesAsPngs() throws Exception {
+        File directory = new File(mTemporaryFolder.getRoot(), "charts");
+        ChartExporter exporter = new ChartExporter(mWeatherRepository, directory, 2, 400, 300);
+
+        ChartExporter.Result result = exporter.exportFavourites();
+
+        assertEquals(1, result.getExported());
+        assertEquals(1, result.getFailed());
+        assertTrue(result.getChartsPerSecond() > 0);
+        BufferedImage image = ImageIO.read(exporter.fileFor(MELBOURNE));
+        assertEquals(400, image.getWidth());
+        assertEquals(300, image.getHeight());
+        assertFalse(exporter.fileFor(GEELONG).exists());
+        assertEquals("Melbourne_Olympic_Park.png", exporter.fileFor(MELBOURNE).getName());
+        verify(mWeatherRepository, never()).getObservations(any(Station.class), any(FetchPriority.class),
+                any(WeatherRepository.LoadObservationsCallback.class));
+    }
+}
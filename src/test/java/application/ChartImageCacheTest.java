@@ -0,0 +1,87 @@
+package application;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import data.Station;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the chart image cache.
+ *
+ * @author michael
+ */
+public class ChartImageCacheTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+    private static Station BALLARAT = new Station("94852", "Ballarat", "Victoria");
+
+    /**
+     * When a station's image is looked up, check that:
+     * - it is found at the data version and size it was rendered at,
+     * - it is not found at another version or size,
+     * - hits and misses are counted.
+     */
+    @Test
+    public void findImageByVersionAndSize() {
+        ChartImageCache cache = new ChartImageCache(1024 * 1024);
+        BufferedImage image = new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB);
+        cache.put(MELBOURNE, 3, image);
+
+        assertSame(image, cache.get(MELBOURNE, 3, 100, 50));
+        assertNull(cache.get(MELBOURNE, 4, 100, 50));
+        assertNull(cache.get(MELBOURNE, 3, 101, 50));
+        assertNull(cache.get(GEELONG, 3, 100, 50));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    /**
+     * When images go over the byte budget, check that:
+     * - the least recently used image is dropped,
+     * - a station's new image replaces its old one.
+     */
+    @Test
+    public void dropLeastRecentlyUsedOverBudget() {
+        // Room for two 100 x 50 images
+        ChartImageCache cache = new ChartImageCache(2 * 4 * 100 * 50);
+        cache.put(MELBOURNE, 1, new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB));
+        cache.put(GEELONG, 1, new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB));
+        cache.get(MELBOURNE, 1, 100, 50);
+        cache.put(BALLARAT, 1, new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB));
+
+        assertTrue(cache.contains(MELBOURNE, 1, 100, 50));
+        assertFalse(cache.contains(GEELONG, 1, 100, 50));
+        assertTrue(cache.contains(BALLARAT, 1, 100, 50));
+
+        cache.put(MELBOURNE, 2, new BufferedImage(100, 50, BufferedImage.TYPE_INT_ARGB));
+        assertFalse(cache.contains(MELBOURNE, 1, 100, 50));
+        assertEquals(2 * 4 * 100 * 50, cache.getBytes());
+    }
+
+    /**
+     * When a chart is rendered, check that:
+     * - the image is kept for the station at the size asked for.
+     */
+    @Test
+    public void renderChartIntoCache() {
+        ChartImageCache cache = new ChartImageCache(1024 * 1024);
+        JFreeChart chart = ChartFactory.createTimeSeriesChart("Temperature", "Time", "C", null, true, true, false);
+
+        cache.render(MELBOURNE, 1, chart, 200, 100, MoreExecutors.directExecutor());
+
+        BufferedImage image = cache.get(MELBOURNE, 1, 200, 100);
+        assertNotNull(image);
+        assertEquals(200, image.getWidth());
+    }
+}
@@ -0,0 +1,129 @@
+package application;
+
+import data.Station;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.IntervalMarker;
+import org.jfree.data.general.SeriesChangeEvent;
+import org.jfree.data.general.SeriesChangeListener;
+import org.jfree.data.time.Minute;
+import org.jfree.data.time.RegularTimePeriod;
+import org.jfree.data.time.TimeSeries;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the shared chart model.
+ *
+ * @author michael
+ */
+public class ChartModelTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+
+    private ChartModel mChartModel;
+
+    @Before
+    public void setupChartModel() {
+        JFreeChart chart = ChartFactory.createTimeSeriesChart("Temperature", "Time", "C", null, true, true, false);
+        mChartModel = new ChartModel(chart);
+    }
+
+    /**
+     * When stations are shown in turn, check that:
+     * - each station keeps its own dataset,
+     * - the chart shows the dataset of the station shown last,
+     * - the same chart panel is used every time.
+     */
+    @Test
+    public void datasetsAreKeptPerStation() {
+        TimeSeries melbourne = mChartModel.getSeries(MELBOURNE, ChartModel.TEMP);
+        TimeSeries geelong = mChartModel.getSeries(GEELONG, ChartModel.TEMP);
+        assertNotSame(melbourne, geelong);
+        assertSame(melbourne, mChartModel.getSeries(MELBOURNE, ChartModel.TEMP));
+
+        mChartModel.show(MELBOURNE);
+        mChartModel.show(GEELONG);
+
+        assertEquals(5, mChartModel.getChart().getXYPlot().getDataset().getSeriesCount());
+        assertEquals(0, mChartModel.getChart().getXYPlot().getDataset().indexOf(ChartModel.TEMP));
+        assertSame(mChartModel.getChartPanel(), mChartModel.getChartPanel());
+    }
+
+    /**
+     * When points are merged into a series, check that:
+     * - new points are added and changed points updated,
+     * - the series fires one change for the lot,
+     * - merging the same points again fires nothing.
+     */
+    @Test
+    public void mergeFiresOnce() {
+        TimeSeries series = mChartModel.getSeries(MELBOURNE, ChartModel.TEMP);
+        series.add(new Minute(0, 10, 1, 6, 2016), 11.0);
+        final int[] changes = {0};
+        series.addChangeListener(new SeriesChangeListener() {
+            @Override
+            public void seriesChanged(SeriesChangeEvent event) {
+                changes[0]++;
+            }
+        });
+        RegularTimePeriod[] periods = {new Minute(0, 10, 1, 6, 2016), new Minute(30, 10, 1, 6, 2016),
+                new Minute(0, 11, 1, 6, 2016)};
+        double[] values = {11.5, 12.0, 12.5};
+
+        ChartModel.merge(series, periods, values, 3);
+
+        assertEquals(3, series.getItemCount());
+        assertEquals(11.5, series.getValue(0).doubleValue(), 0);
+        assertEquals(1, changes[0]);
+        assertFalse(ChartModel.merge(series, periods, values, 3));
+        assertEquals(1, changes[0]);
+    }
+
+    /**
+     * When a station gets newer observations or a new forecast period, check that:
+     * - its data version goes up,
+     * - older observations and the same forecast period leave it alone.
+     */
+    @Test
+    public void dataVersionFollowsNewData() {
+        long version = mChartModel.getDataVersion(MELBOURNE);
+
+        mChartModel.setObservedUpTo(MELBOURNE, 1000);
+        assertEquals(version + 1, mChartModel.getDataVersion(MELBOURNE));
+        mChartModel.setObservedUpTo(MELBOURNE, 500);
+        assertEquals(version + 1, mChartModel.getDataVersion(MELBOURNE));
+
+        mChartModel.setForecastMarker(MELBOURNE, new IntervalMarker(1000, 2000));
+        mChartModel.setForecastMarker(MELBOURNE, new IntervalMarker(1000, 2000));
+        assertEquals(version + 2, mChartModel.getDataVersion(MELBOURNE));
+        assertEquals(0, mChartModel.getDataVersion(GEELONG));
+    }
+
+    /**
+     * When the chart is copied, check that:
+     * - the copy shows copies of the shown station's series,
+     * - later changes to the station's series don't reach the copy.
+     */
+    @Test
+    public void snapshotCopiesShownSeries() {
+        TimeSeries temp = mChartModel.getSeries(MELBOURNE, ChartModel.TEMP);
+        temp.add(new Minute(0, 12, 29, 5, 2016), 10.0);
+        mChartModel.show(MELBOURNE);
+
+        JFreeChart snapshot = mChartModel.snapshot();
+        temp.add(new Minute(30, 12, 29, 5, 2016), 11.0);
+
+        assertNotNull(snapshot);
+        assertNotSame(mChartModel.getChart(), snapshot);
+        assertEquals(5, snapshot.getXYPlot().getDataset().getSeriesCount());
+        assertEquals(1, snapshot.getXYPlot().getDataset().getItemCount(0));
+    }
+}
@@ -0,0 +1,152 @@
+package application;
+
+import com.google.common.collect.Lists;
+import data.Observation;
+import data.State;
+import data.Station;
+import data.WeatherRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the headless observation batch.
+ *
+ * @author michael
+ */
+public class ObservationBatchTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+    private static Station SYDNEY = new Station("94768", "Sydney - Observatory Hill", "New South Wales");
+
+    private static List<Observation> OBSERVATIONS = Lists.newArrayList(
+            new Observation("1","Melbourne Olympic Park", "20160529140000", "9.9", "-", "13.2", "0.0", "56"),
+            new Observation("1","Melbourne Olympic Park", "20160529133000", "7.7", "Mostly clear, calm", "12.4", "0.0", "53"));
+
+    @Mock
+    private WeatherRepository mWeatherRepository;
+
+    private ByteArrayOutputStream mProgress;
+
+    @Before
+    public void setupRepository() {
+        MockitoAnnotations.initMocks(this);
+        mProgress = new ByteArrayOutputStream();
+        // Melbourne and Sydney have observations, Geelong fails with an empty list like the service does
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Station station = (Station) invocation.getArguments()[0];
+                ((WeatherRepository.LoadObservationsCallback) invocation.getArguments()[1]).onObservationsLoaded(
+                        station.equals(GEELONG) ? new ArrayList<Observation>() : OBSERVATIONS);
+                return null;
+            }
+        }).when(mWeatherRepository).revalidateObservations(any(Station.class),
+                any(WeatherRepository.LoadObservationsCallback.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ((WeatherRepository.LoadStatesCallback) invocation.getArguments()[0]).onStatesLoaded(
+                        Lists.newArrayList(new State("Victoria"), new State("New South Wales")));
+                return null;
+            }
+        }).when(mWeatherRepository).getStates(any(WeatherRepository.LoadStatesCallback.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                String state = (String) invocation.getArguments()[0];
+                ((WeatherRepository.LoadStationsCallback) invocation.getArguments()[1]).onStationsLoaded(
+                        state.equals("Victoria") ? Lists.newArrayList(MELBOURNE, GEELONG)
+                                : state.equals("New South Wales") ? Lists.newArrayList(SYDNEY) : null);
+                return null;
+            }
+        }).when(mWeatherRepository).getStations(anyString(), any(WeatherRepository.LoadStationsCallback.class));
+    }
+
+    /**
+     * When stations are written as CSV, check that:
+     * - a header is written followed by a row for each observation,
+     * - values holding a separator are quoted,
+     * - a station without observations is counted as failed, giving a partial exit status,
+     * - each station is evicted from the repository's memory once written.
+     */
+    @Test
+    public void writeStationsAsCsv() throws Exception {
+        StringWriter out = new StringWriter();
+        ObservationBatch batch = new ObservationBatch(mWeatherRepository, out, ObservationBatch.Format.CSV, 2,
+                new PrintStream(mProgress));
+
+        ObservationBatch.Result result = batch.run(Lists.newArrayList(MELBOURNE, GEELONG));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("station,state,local_date_time,"));
+        assertTrue(lines[1].startsWith("Melbourne Olympic Park,Victoria,"));
+        assertTrue(lines[2].contains("\"Mostly clear, calm\""));
+        assertEquals(2, result.getStations());
+        assertEquals(1, result.getFailed());
+        assertEquals(2, result.getRows());
+        assertEquals(ObservationBatch.EXIT_PARTIAL, result.getExitStatus());
+        verify(mWeatherRepository).evictStation(MELBOURNE);
+        verify(mWeatherRepository).evictStation(GEELONG);
+    }
+
+    /**
+     * When a state is exported as NDJSON from the command line, check that:
+     * - only that state's stations are fetched,
+     * - each observation is written as one JSON object on its own line,
+     * - a summary is reported and the exit status is success.
+     */
+    @Test
+    public void exportStateAsNdjson() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int status = ObservationBatch.run(mWeatherRepository, new String[]{"--export-observations", "--state",
+                "New South Wales", "--format", "ndjson", "--threads", "3"}, new PrintStream(out),
+                new PrintStream(mProgress));
+
+        assertEquals(ObservationBatch.EXIT_OK, status);
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"station\":\"Sydney - Observatory Hill\",\"state\":\"New South Wales\""));
+        assertTrue(lines[0].endsWith("}"));
+        assertTrue(mProgress.toString().contains("Fetched 1 stations (0 failed), 2 observations"));
+    }
+
+    /**
+     * When the command line names no stations or an unknown one, check that:
+     * - the usage exit status is returned without writing anything.
+     */
+    @Test
+    public void rejectBadArguments() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stdout = new PrintStream(out);
+        PrintStream stderr = new PrintStream(mProgress);
+
+        assertEquals(ObservationBatch.EXIT_USAGE, ObservationBatch.run(mWeatherRepository,
+                new String[]{"--export-observations"}, stdout, stderr));
+        assertEquals(ObservationBatch.EXIT_USAGE, ObservationBatch.run(mWeatherRepository,
+                new String[]{"--export-observations", "--format", "xml", "--all"}, stdout, stderr));
+        assertEquals(ObservationBatch.EXIT_USAGE, ObservationBatch.run(mWeatherRepository,
+                new String[]{"--export-observations", "--stations", "melbourne olympic park,Nowhere"}, stdout, stderr));
+        assertEquals(0, out.size());
+        assertTrue(mProgress.toString().contains("Unknown station: Nowhere"));
+    }
+}
@@ -0,0 +1,188 @@
+package application;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the presentation pipeline.
+ *
+ * @author michael
+ */
+public class PresentationPipelineTest {
+
+    private QueueExecutor mWorkers;
+    private QueueExecutor mEventDispatchThread;
+    private PresentationPipeline mPipeline;
+    private List<String> mBound;
+
+    @Before
+    public void setupPipeline() {
+        mWorkers = new QueueExecutor();
+        mEventDispatchThread = new QueueExecutor();
+        mPipeline = new PresentationPipeline(mWorkers, mEventDispatchThread);
+        mBound = new ArrayList<>();
+    }
+
+    /**
+     * When an update is presented, check that:
+     * - the model is built on a worker,
+     * - it is then bound with a single task on the event dispatch thread.
+     */
+    @Test
+    public void buildsOnWorkerAndBindsOnce() {
+        mPipeline.present(this, model("a"), binder());
+        assertTrue(mEventDispatchThread.isEmpty());
+
+        mWorkers.runAll();
+        assertEquals(1, mEventDispatchThread.size());
+        assertTrue(mBound.isEmpty());
+
+        mEventDispatchThread.runAll();
+        assertEquals(1, mBound.size());
+        assertEquals("a", mBound.get(0));
+    }
+
+    /**
+     * When a newer update for the same target is presented before an older one is bound, check that:
+     * - only the newer update is bound,
+     * - updates for other targets are not affected.
+     */
+    @Test
+    public void newerUpdateSupersedesOlder() {
+        mPipeline.present(this, model("old"), binder());
+        mWorkers.runAll();
+        mPipeline.present(this, model("new"), binder());
+        mPipeline.present(mBound, model("other"), binder());
+        mWorkers.runAll();
+        mEventDispatchThread.runAll();
+
+        assertEquals(2, mBound.size());
+        assertEquals("new", mBound.get(0));
+        assertEquals("other", mBound.get(1));
+    }
+
+    /**
+     * When updates of data fetched at different times are presented out of order, check that:
+     * - an update of older data started after one of newer data is dropped,
+     * - an update of newer data still supersedes one of older data,
+     * - an update of the same age supersedes as usual.
+     */
+    @Test
+    public void olderDataNeverSupersedesNewer() {
+        mPipeline.present(this, 200, model("fresh"), binder());
+        mPipeline.present(this, 100, model("cached"), binder());
+        mWorkers.runAll();
+        mEventDispatchThread.runAll();
+        assertEquals(1, mBound.size());
+        assertEquals("fresh", mBound.get(0));
+
+        mPipeline.present(this, 200, model("cached"), binder());
+        mPipeline.present(this, 300, model("fresher"), binder());
+        mPipeline.present(this, 300, model("again"), binder());
+        mWorkers.runAll();
+        mEventDispatchThread.runAll();
+        assertEquals(2, mBound.size());
+        assertEquals("again", mBound.get(1));
+    }
+
+    /**
+     * When a model cannot be built, check that:
+     * - null is bound so the view can stop waiting.
+     */
+    @Test
+    public void failedBuildBindsNull() {
+        PresentationPipeline pipeline = new PresentationPipeline(MoreExecutors.directExecutor(),
+                MoreExecutors.directExecutor());
+        pipeline.present(this, new PresentationPipeline.Builder<String>() {
+            @Override
+            public String build() {
+                throw new IllegalStateException();
+            }
+        }, binder());
+
+        assertEquals(1, mBound.size());
+        assertEquals(null, mBound.get(0));
+    }
+
+    /**
+     * When updates are presented to a new target for each station shown, check that:
+     * - a target that can no longer be presented to is no longer tracked.
+     */
+    @Test
+    public void forgetsUnreachableTargets() throws Exception {
+        mPipeline.present(this, model("a"), binder());
+        WeakReference<Object> dropped = present(model("b"));
+        mWorkers.runAll();
+        mEventDispatchThread.runAll();
+
+        for (int i = 0; i < 100 && dropped.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(null, dropped.get());
+        assertEquals(1, mPipeline.getTargetCount());
+        assertEquals(2, mBound.size());
+    }
+
+    private WeakReference<Object> present(PresentationPipeline.Builder<String> builder) {
+        Object target = new Object();
+        mPipeline.present(target, builder, binder());
+        return new WeakReference<>(target);
+    }
+
+    private static PresentationPipeline.Builder<String> model(final String model) {
+        return new PresentationPipeline.Builder<String>() {
+            @Override
+            public String build() {
+                return model;
+            }
+        };
+    }
+
+    private PresentationPipeline.Binder<String> binder() {
+        return new PresentationPipeline.Binder<String>() {
+            @Override
+            public void bind(String model) {
+                mBound.add(model);
+            }
+        };
+    }
+
+    /**
+     * Holds tasks until the test runs them.
+     */
+    private static class QueueExecutor implements Executor {
+        private final Queue<Runnable> mTasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mTasks.add(runnable);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = mTasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        boolean isEmpty() {
+            return mTasks.isEmpty();
+        }
+
+        int size() {
+            return mTasks.size();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package application;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the series table model.
+ *
+ * @author michael
+ */
+public class SeriesTableModelTest {
+
+    private static final String[] COLUMNS = { "Time", "Value" };
+
+    private SeriesTableModel<String> mTableModel;
+    private List<TableModelEvent> mEvents;
+    private int mFormatCount;
+
+    @Before
+    public void setupTableModel() {
+        mTableModel = new SeriesTableModel<String>(COLUMNS) {
+            @Override
+            protected String key(String item) {
+                return item;
+            }
+
+            @Override
+            protected String format(String item, int column) {
+                mFormatCount++;
+                return column == 0 ? item : "value " + item;
+            }
+        };
+        mEvents = new ArrayList<>();
+        mTableModel.addTableModelListener(new TableModelListener() {
+            @Override
+            public void tableChanged(TableModelEvent e) {
+                mEvents.add(e);
+            }
+        });
+    }
+
+    /**
+     * When cells are read, check that:
+     * - nothing is formatted until it is asked for,
+     * - each cell is formatted once.
+     */
+    @Test
+    public void cellsAreFormattedLazily() {
+        mTableModel.setItems(ImmutableList.of("3", "2", "1"));
+        assertEquals(0, mTableModel.getFormattedRowCount());
+
+        assertEquals("value 2", mTableModel.getValueAt(1, 1));
+        assertEquals("value 2", mTableModel.getValueAt(1, 1));
+
+        assertEquals(1, mTableModel.getFormattedRowCount());
+        assertEquals(1, mFormatCount);
+    }
+
+    /**
+     * When newer items arrive and the oldest fall off the end, check that:
+     * - only the new rows are reported as inserted and the old rows as deleted,
+     * - rows already formatted are kept.
+     */
+    @Test
+    public void refreshReportsOnlyChangedRows() {
+        mTableModel.setItems(ImmutableList.of("3", "2", "1"));
+        mTableModel.getValueAt(0, 0);
+        mEvents.clear();
+
+        mTableModel.setItems(ImmutableList.of("5", "4", "3", "2"));
+
+        assertEquals(2, mEvents.size());
+        assertEvent(mEvents.get(0), TableModelEvent.INSERT, 0, 1);
+        assertEvent(mEvents.get(1), TableModelEvent.DELETE, 4, 4);
+        assertEquals(4, mTableModel.getRowCount());
+        assertEquals(1, mTableModel.getFormattedRowCount());
+        assertEquals("3", mTableModel.getValueAt(2, 0));
+        assertEquals(1, mFormatCount);
+    }
+
+    /**
+     * When items are appended to a series shown oldest first, check that:
+     * - the new rows are reported as inserted at the end.
+     */
+    @Test
+    public void appendedItemsAreInsertedAtTheEnd() {
+        mTableModel.setItems(ImmutableList.of("1", "2"));
+        mEvents.clear();
+
+        mTableModel.setItems(ImmutableList.of("1", "2", "3"));
+
+        assertEquals(1, mEvents.size());
+        assertEvent(mEvents.get(0), TableModelEvent.INSERT, 2, 2);
+    }
+
+    /**
+     * When the new items do not line up with the old, check that:
+     * - the whole table is reported as changed.
+     */
+    @Test
+    public void unrelatedItemsReplaceTheTable() {
+        mTableModel.setItems(ImmutableList.of("3", "2", "1"));
+        mTableModel.getValueAt(0, 0);
+        mEvents.clear();
+
+        mTableModel.setItems(ImmutableList.of("9", "8"));
+
+        assertEquals(1, mEvents.size());
+        assertEquals(Integer.MAX_VALUE, mEvents.get(0).getLastRow());
+        assertEquals(0, mTableModel.getFormattedRowCount());
+        assertEquals(2, mTableModel.getRowCount());
+    }
+
+    private static void assertEvent(TableModelEvent event, int type, int firstRow, int lastRow) {
+        assertEquals(type, event.getType());
+        assertEquals(firstRow, event.getFirstRow());
+        assertEquals(lastRow, event.getLastRow());
+    }
+}
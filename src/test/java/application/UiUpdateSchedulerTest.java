@@ -0,0 +1,123 @@
+package application;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the UI update scheduler.
+ *
+ * @author michael
+ */
+public class UiUpdateSchedulerTest {
+
+    // Long enough that the frame timer never fires during a test that flushes by hand
+    private static final int SLOW_FRAME_MILLIS = 60000;
+
+    private UiUpdateScheduler mScheduler;
+    private CountingComponent mComponent;
+
+    @Before
+    public void setupScheduler() {
+        mScheduler = new UiUpdateScheduler(SLOW_FRAME_MILLIS);
+        mComponent = new CountingComponent();
+        mComponent.setSize(100, 100);
+    }
+
+    /**
+     * When a component is marked several times before a frame, check that:
+     * - it is laid out and painted once,
+     * - one frame is recorded.
+     */
+    @Test
+    public void marksAreCoalescedIntoOneFrame() {
+        mScheduler.invalidate(mComponent);
+        mScheduler.invalidate(mComponent);
+        mScheduler.repaint(mComponent);
+        mScheduler.repaint(mComponent);
+
+        mScheduler.flush();
+
+        assertEquals(1, mComponent.mRevalidates);
+        assertEquals(1, mComponent.mRepaints.size());
+        assertEquals(new Rectangle(0, 0, 100, 100), mComponent.mRepaints.get(0));
+        assertEquals(1, mScheduler.getFrameCount());
+
+        mScheduler.flush();
+        assertEquals(1, mScheduler.getFrameCount());
+    }
+
+    /**
+     * When parts of a component are marked dirty, check that:
+     * - the parts are painted together as one region.
+     */
+    @Test
+    public void dirtyRegionsAreUnited() {
+        mScheduler.repaint(mComponent, new Rectangle(0, 0, 10, 10));
+        mScheduler.repaint(mComponent, new Rectangle(20, 20, 10, 10));
+
+        mScheduler.flush();
+
+        assertEquals(1, mComponent.mRepaints.size());
+        assertEquals(new Rectangle(0, 0, 30, 30), mComponent.mRepaints.get(0));
+    }
+
+    /**
+     * When a frame takes longer than its budget, check that:
+     * - the frame timer flushes it on the event dispatch thread,
+     * - it is counted as a slow frame.
+     */
+    @Test
+    public void slowFramesAreCounted() throws Exception {
+        UiUpdateScheduler scheduler = new UiUpdateScheduler(1);
+        CountingComponent slow = new CountingComponent() {
+            @Override
+            public void revalidate() {
+                super.revalidate();
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        scheduler.invalidate(slow);
+        Thread.sleep(100);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        assertEquals(1, scheduler.getFrameCount());
+        assertEquals(1, scheduler.getSlowFrameCount());
+        assertTrue(scheduler.getMaxFrameNanos() >= 5000000);
+    }
+
+    /**
+     * Counts layout and paint requests instead of doing them.
+     */
+    private static class CountingComponent extends JComponent {
+        private static final long serialVersionUID = 1L;
+
+        private int mRevalidates;
+        private final List<Rectangle> mRepaints = new ArrayList<>();
+
+        @Override
+        public void revalidate() {
+            mRevalidates++;
+        }
+
+        @Override
+        public void repaint(long tm, int x, int y, int width, int height) {
+            mRepaints.add(new Rectangle(x, y, width, height));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package data;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures archive append throughput and latency for different group commit windows.
+ *
+ * Several threads each append single observations as fast as the archive will take them, waiting
+ * for every append to be committed, as a fetch would. The wait doesn't flush, so each commit still
+ * gathers whatever arrives within its window. Run with {@code main}; it is not a test.
+ *
+ * @author michael
+ */
+public class ArchiveAppendBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int APPENDS_PER_THREAD = 200;
+    private static final long[] COMMIT_WINDOWS_MILLIS = {0, 5, 20, 50};
+
+    public static void main(String[] args) throws Exception {
+        for (long window : COMMIT_WINDOWS_MILLIS) {
+            File directory = Files.createTempDirectory("archive-benchmark").toFile();
+            final ObservationArchive archive = new ObservationArchive(directory, window);
+            final CountDownLatch done = new CountDownLatch(THREADS);
+            final long[] latencies = new long[THREADS * APPENDS_PER_THREAD];
+            long start = System.nanoTime();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Station station = new Station("9" + thread, "Station " + thread, "Victoria");
+                        try {
+                            for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+                                long began = System.nanoTime();
+                                archive.awaitCommitted(
+                                        archive.append(station, ObservationArchiveTest.observations(time(i))));
+                                latencies[thread * APPENDS_PER_THREAD + i] = System.nanoTime() - began;
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+            done.await();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            archive.close();
+            Arrays.sort(latencies);
+            System.out.println(String.format("window %3d ms: %8.0f appends/s, p50 %6.2f ms, p99 %6.2f ms",
+                    window, latencies.length / seconds, latencies[latencies.length / 2] / 1e6,
+                    latencies[latencies.length * 99 / 100] / 1e6));
+            delete(directory);
+        }
+    }
+
+    private static String time(int minute) {
+        return String.format("201605290%d%02d00", minute / 60 % 10, minute % 60);
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
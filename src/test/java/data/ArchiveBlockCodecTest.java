@@ -0,0 +1,165 @@
+package data;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the columnar archive block codec.
+ *
+ * @author michael
+ */
+public class ArchiveBlockCodecTest {
+
+    private static final int FIELD_COUNT = ObservationField.values().length;
+    private static final long HALF_HOUR = 30 * 60000L;
+
+    /**
+     * When a block with several stations, missing measurements and irregular times is decoded, check that:
+     * - every record comes back exactly as it was encoded,
+     * - the header holds the time range, the stations and each field's min and max.
+     */
+    @Test
+    public void blockRoundTrips() throws Exception {
+        long start = ArchiveRecord.parseTime("20160529000000");
+        List<ArchiveRecord> records = new ArrayList<>();
+        records.add(record("Geelong Racecourse", start, 600, 11.3, "SW", null));
+        records.add(record("Geelong Racecourse", start + HALF_HOUR, 600, Double.NaN, null, "Cloudy"));
+        records.add(record("Melbourne Olympic Park", start + 7000, 570, -2.25, "CALM", "-"));
+        records.add(record("Melbourne Olympic Park", start + HALF_HOUR * 90, 570, 1017.123, "SW", "-"));
+        records.add(record("Melbourne Olympic Park", start - HALF_HOUR, -120, 12.4, "SW", "-"));
+
+        byte[] block = ArchiveBlockCodec.encode(records);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        List<ArchiveRecord> decoded = ArchiveBlockCodec.decode(buffer);
+
+        assertEquals(records.size(), decoded.size());
+        for (int i = 0; i < records.size(); i++) {
+            ArchiveRecord expected = records.get(i);
+            ArchiveRecord actual = decoded.get(i);
+            assertEquals(expected.getStation(), actual.getStation());
+            assertEquals(expected.getTime(), actual.getTime());
+            assertEquals(expected.getOffsetMinutes(), actual.getOffsetMinutes());
+            assertEquals(expected.getWindDir(), actual.getWindDir());
+            assertEquals(expected.getCloud(), actual.getCloud());
+            for (ObservationField field : ObservationField.values()) {
+                assertEquals(Double.doubleToLongBits(expected.getValue(field)),
+                        Double.doubleToLongBits(actual.getValue(field)));
+            }
+        }
+        assertNull(decoded.get(0).getCloud());
+        ArchiveBlockCodec.Header header = ArchiveBlockCodec.readHeader(buffer);
+        assertEquals(block.length, header.getLength());
+        assertEquals(start - HALF_HOUR, header.getMinTime());
+        assertEquals(start + HALF_HOUR * 90, header.getMaxTime());
+        assertEquals(Arrays.asList("Geelong Racecourse", "Melbourne Olympic Park"), header.getStations());
+        assertEquals(-2.25, header.getMin(ObservationField.AIR_TEMP), 0);
+        assertEquals(1017.123, header.getMax(ObservationField.AIR_TEMP), 0);
+        assertTrue(Double.isNaN(header.getMin(ObservationField.GUST_KMH)));
+    }
+
+    /**
+     * When times and offsets change by exactly the edges of each delta-of-delta width, check that:
+     * - every time and offset comes back exactly, on both sides of each edge.
+     */
+    @Test
+    public void deltaOfDeltaWidthEdgesRoundTrip() throws Exception {
+        long start = ArchiveRecord.parseTime("20160529000000");
+        long[] edges = {63, 64, -64, -65, 255, 256, -256, -257, 2047, 2048, -2048, -2049};
+        for (long edge : edges) {
+            // Deltas of 600 and then 600 + edge seconds, and of 0 and then edge minutes
+            List<ArchiveRecord> records = new ArrayList<>();
+            records.add(record("Geelong Racecourse", start, 600, 11.3, "SW", null));
+            records.add(record("Geelong Racecourse", start + 600 * 1000L, 600, 11.4, "SW", null));
+            records.add(record("Geelong Racecourse", start + (1200 + edge) * 1000L, 600 + (int) edge, 11.5, "SW",
+                    null));
+
+            List<ArchiveRecord> decoded = ArchiveBlockCodec.decode(ByteBuffer.wrap(ArchiveBlockCodec.encode(records)));
+
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals("edge " + edge, records.get(i).getTime(), decoded.get(i).getTime());
+                assertEquals("edge " + edge, records.get(i).getOffsetMinutes(), decoded.get(i).getOffsetMinutes());
+            }
+        }
+    }
+
+    /**
+     * When a day of half hourly observations for twenty stations is encoded, check that:
+     * - each measurement takes less than two bytes,
+     * - a single column can be decoded on its own.
+     */
+    @Test
+    public void realisticDayCompressesBelowTwoBytesPerMeasurement() throws Exception {
+        List<ArchiveRecord> records = realisticDay(20);
+        double[] airTemps = new double[records.size()];
+        for (int i = 0; i < airTemps.length; i++) {
+            airTemps[i] = records.get(i).getValue(ObservationField.AIR_TEMP);
+        }
+
+        byte[] block = ArchiveBlockCodec.encode(records);
+        double bytesPerMeasurement = (double) block.length / (records.size() * FIELD_COUNT);
+
+        assertTrue("Bytes per measurement " + bytesPerMeasurement, bytesPerMeasurement < 2);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        ArchiveBlockCodec.Header header = ArchiveBlockCodec.readHeader(buffer);
+        assertArrayEquals(airTemps, ArchiveBlockCodec.decodeField(header, buffer, ObservationField.AIR_TEMP), 0);
+    }
+
+    /**
+     * A day of half hourly observations with realistic daily cycles.
+     *
+     * @param stations how many stations to make observations for.
+     * @return the records, by station and then time.
+     */
+    static List<ArchiveRecord> realisticDay(int stations) {
+        long start = ArchiveRecord.parseTime("20160529000000");
+        List<ArchiveRecord> records = new ArrayList<>();
+        for (int s = 0; s < stations; s++) {
+            double rain = 0;
+            for (int i = 0; i < 48; i++) {
+                double hour = i / 2.0;
+                double airTemp = round(12 + s * 0.3 + 5 * Math.sin((hour - 9) * Math.PI / 12), 1);
+                int humidity = (int) Math.round(70 - 20 * Math.sin((hour - 9) * Math.PI / 12));
+                int wind = 10 + (i / 6) % 4 * 2;
+                rain = i % 16 == 5 ? rain + 0.2 : rain;
+                double[] values = new double[FIELD_COUNT];
+                values[ObservationField.AIR_TEMP.ordinal()] = airTemp;
+                values[ObservationField.APPARENT_TEMP.ordinal()] = round(airTemp - 2.5, 1);
+                values[ObservationField.DEW_POINT.ordinal()] = round(7.7 + s * 0.1 - (i / 8) * 0.1, 1);
+                values[ObservationField.HUMIDITY.ordinal()] = humidity;
+                values[ObservationField.DELTA_T.ordinal()] = round(airTemp / 4, 1);
+                values[ObservationField.WIND_SPD_KMH.ordinal()] = wind;
+                values[ObservationField.GUST_KMH.ordinal()] = i % 3 == 0 ? wind + 8 : Double.NaN;
+                values[ObservationField.WIND_SPD_KT.ordinal()] = Math.round(wind / 1.852);
+                values[ObservationField.PRESS_QNH.ordinal()] = round(1018.2 - (i / 4) * 0.1, 1);
+                values[ObservationField.PRESS_MSL.ordinal()] = round(1018.3 - (i / 4) * 0.1, 1);
+                values[ObservationField.RAIN_TRACE.ordinal()] = round(rain, 1);
+                records.add(new ArchiveRecord("Station " + s, start + i * HALF_HOUR, 600, values,
+                        i < 24 ? "SW" : "W", i % 12 < 6 ? "-" : "Partly cloudy"));
+            }
+        }
+        return records;
+    }
+
+    private static ArchiveRecord record(String station, long time, int offset, double value, String windDir,
+                                        String cloud) {
+        double[] values = new double[FIELD_COUNT];
+        Arrays.fill(values, Double.NaN);
+        values[ObservationField.AIR_TEMP.ordinal()] = value;
+        values[ObservationField.HUMIDITY.ordinal()] = 53;
+        return new ArchiveRecord(station, time, offset, values, windDir, cloud);
+    }
+
+    private static double round(double value, int places) {
+        double power = Math.pow(10, places);
+        return Math.round(value * power) / power;
+    }
+}
@@ -0,0 +1,196 @@
+package data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for archive compaction and retention.
+ *
+ * @author michael
+ */
+public class ArchiveCompactorTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private ObservationArchive mArchive;
+    private ArchiveCompactor mCompactor;
+
+    @Before
+    public void setupArchive() {
+        mArchive = new ObservationArchive(mTemporaryFolder.getRoot(), 0);
+        mCompactor = new ArchiveCompactor(mArchive, new RetentionPolicy(4, 10, 20), new FetchScheduler(4, 5000),
+                Long.MAX_VALUE / 1000) {
+            @Override
+            long now() {
+                return ArchiveRecord.parseTime("20160630120000");
+            }
+        };
+    }
+
+    @After
+    public void closeArchive() throws InterruptedException {
+        mArchive.close();
+    }
+
+    /**
+     * When a recent day has many small blocks and a duplicate, check that:
+     * - it is rewritten as a single block without the duplicate,
+     * - a second pass leaves it alone.
+     */
+    @Test
+    public void recentDaysAreMergedAndDeduplicated() throws Exception {
+        mArchive.append(MELBOURNE, ObservationArchiveTest.observations("20160628003000"));
+        mArchive.flush();
+        duplicate("20160628");
+        mArchive.append(MELBOURNE, ObservationArchiveTest.observations("20160628013000"));
+        mArchive.flush();
+        mArchive.append(GEELONG, ObservationArchiveTest.observations("20160628013000"));
+        mArchive.flush();
+        assertEquals(3, mArchive.blocks(segment("20160628")).size());
+        assertEquals(3, mArchive.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2).size());
+
+        assertEquals(1, mCompactor.compact());
+
+        assertEquals(1, mArchive.blocks(segment("20160628")).size());
+        assertEquals(2, mArchive.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2).size());
+        assertEquals(1, mArchive.read(GEELONG.getCity(), 0, Long.MAX_VALUE / 2).size());
+        assertEquals(0, mCompactor.compact());
+    }
+
+    /**
+     * When a day holds more records than fit in one block, check that:
+     * - it is rewritten as several blocks marked as compacted,
+     * - a second pass leaves it alone.
+     */
+    @Test
+    public void largeDaysAreOnlyCompactedOnce() throws Exception {
+        String[] times = new String[10001];
+        long start = ArchiveRecord.parseTime("20160628000000");
+        for (int i = 0; i < times.length; i++) {
+            times[i] = ArchiveRecord.formatTime(start + i * 8000L);
+        }
+        mArchive.append(MELBOURNE, ObservationArchiveTest.observations(times));
+        mArchive.flush();
+
+        assertEquals(1, mCompactor.compact());
+
+        List<ByteBuffer> blocks = mArchive.blocks(segment("20160628"));
+        assertEquals(2, blocks.size());
+        for (ByteBuffer block : blocks) {
+            assertEquals(RetentionPolicy.Resolution.RAW, ArchiveBlockCodec.readHeader(block).getCompactedTo());
+        }
+        assertEquals(0, mCompactor.compact());
+        assertEquals(times.length, mArchive.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2).size());
+    }
+
+    /**
+     * When days fall past each retention limit, check that:
+     * - days past the raw limit keep one averaged record per station per hour,
+     * - days past the hourly limit keep one record per station per day, with the peak gust,
+     * - days past the maximum age are deleted,
+     * - a second pass leaves the downsampled days alone.
+     */
+    @Test
+    public void olderDaysAreDownsampledAndExpired() throws Exception {
+        List<Observation> hourly = ObservationArchiveTest.observations("20160623100000", "20160623103000");
+        hourly.get(1).setmAirtemp("13.0");
+        mArchive.append(MELBOURNE, hourly);
+        List<Observation> daily = ObservationArchiveTest.observations("20160614030000", "20160614150000");
+        daily.get(0).setmGustKmh("30");
+        daily.get(1).setmGustKmh("52");
+        mArchive.append(MELBOURNE, daily);
+        mArchive.append(MELBOURNE, ObservationArchiveTest.observations("20160601030000"));
+        mArchive.flush();
+
+        assertEquals(3, mCompactor.compact());
+
+        List<ArchiveRecord> hour = mArchive.read(MELBOURNE.getCity(),
+                ArchiveRecord.parseTime("20160623000000"), ArchiveRecord.parseTime("20160623235959"));
+        assertEquals(1, hour.size());
+        assertEquals("20160623100000", ArchiveRecord.formatTime(hour.get(0).getTime()));
+        assertEquals(12.7, hour.get(0).getValue(ObservationField.AIR_TEMP), 1e-9);
+        List<ArchiveRecord> day = mArchive.read(MELBOURNE.getCity(),
+                ArchiveRecord.parseTime("20160614000000"), ArchiveRecord.parseTime("20160614235959"));
+        assertEquals(1, day.size());
+        assertEquals("20160614000000", ArchiveRecord.formatTime(day.get(0).getTime()));
+        assertEquals(52, day.get(0).getValue(ObservationField.GUST_KMH), 0);
+        assertFalse(segment("20160601").exists());
+        assertEquals(0, mCompactor.compact());
+    }
+
+    /**
+     * When a day is downsampled to hourly and later to daily records, check that:
+     * - each record keeps the minimum and maximum of its bucket as well as the mean,
+     * - daily rollups and pyramids rebuilt from the archive show the true extremes.
+     */
+    @Test
+    public void downsampledDaysKeepTheirExtremes() throws Exception {
+        List<Observation> observations = ObservationArchiveTest.observations("20160623100000", "20160623102000",
+                "20160623104000");
+        observations.get(0).setmAirtemp("9.0");
+        observations.get(2).setmAirtemp("15.0");
+        mArchive.append(MELBOURNE, observations);
+        mArchive.flush();
+        assertEquals(1, mCompactor.compact());
+        List<ArchiveRecord> hour = mArchive.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2);
+        assertEquals(1, hour.size());
+        assertEquals(12.13, hour.get(0).getValue(ObservationField.AIR_TEMP), 1e-9);
+        assertEquals(9.0, hour.get(0).getMin(ObservationField.AIR_TEMP), 0);
+        assertEquals(15.0, hour.get(0).getMax(ObservationField.AIR_TEMP), 0);
+
+        ArchiveCompactor later = new ArchiveCompactor(mArchive, new RetentionPolicy(4, 10, 20),
+                new FetchScheduler(4, 5000), Long.MAX_VALUE / 1000) {
+            @Override
+            long now() {
+                return ArchiveRecord.parseTime("20160710120000");
+            }
+        };
+        assertEquals(1, later.compact());
+
+        List<ArchiveRecord> day = mArchive.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2);
+        assertEquals("20160623000000", ArchiveRecord.formatTime(day.get(0).getTime()));
+        DailyRollups rollups = new DailyRollups();
+        rollups.ingest(day.get(0));
+        assertEquals(9.0, rollups.get(MELBOURNE.getCity()).get(0).getMinTemp(), 0);
+        assertEquals(15.0, rollups.get(MELBOURNE.getCity()).get(0).getMaxTemp(), 0);
+        ObservationPyramid pyramid = new ObservationPyramid(ObservationField.AIR_TEMP);
+        pyramid.ingest(day);
+        ObservationPyramid.Slice slice = pyramid.slice(ObservationPyramid.Level.DAY, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(9.0, slice.getMin(0), 0);
+        assertEquals(15.0, slice.getMax(0), 0);
+    }
+
+    private File segment(String day) {
+        return mArchive.segmentFile(ArchiveRecord.parseTime(day + "000000") / ObservationArchive.DAY_MILLIS);
+    }
+
+    /**
+     * Write every record of a day twice, as an interrupted commit could.
+     */
+    private void duplicate(String day) throws Exception {
+        mArchive.rewriteSegment(ArchiveRecord.parseTime(day + "000000") / ObservationArchive.DAY_MILLIS,
+                new ObservationArchive.SegmentRewriter() {
+                    @Override
+                    public List<ArchiveRecord> rewrite(List<ArchiveRecord> records) {
+                        List<ArchiveRecord> doubled = new ArrayList<>(records);
+                        doubled.addAll(records);
+                        return doubled;
+                    }
+                }, null);
+    }
+}
@@ -0,0 +1,72 @@
+package data;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Measures how fast archive blocks decode, whole and one column at a time.
+ *
+ * A block holds a realistic day of half hourly observations for many stations. Each pass decodes it
+ * repeatedly after a warm up, and the best of several passes is reported. Run with {@code main};
+ * it is not a test.
+ *
+ * @author michael
+ */
+public class ArchiveDecodeBenchmark {
+
+    private static final int STATIONS = 200;
+    private static final int WARM_UP_DECODES = 2000;
+    private static final int DECODES_PER_PASS = 2000;
+    private static final int PASSES = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<ArchiveRecord> records = ArchiveBlockCodecTest.realisticDay(STATIONS);
+        final ByteBuffer block = ByteBuffer.wrap(ArchiveBlockCodec.encode(records));
+        final int fields = ObservationField.values().length;
+        System.out.println(String.format("block of %d records, %d bytes, %.2f bytes per measurement",
+                records.size(), block.capacity(), (double) block.capacity() / (records.size() * fields)));
+
+        report("whole block", records.size() * fields, new Runnable() {
+            @Override
+            public void run() {
+                ArchiveBlockCodec.decode(block);
+            }
+        });
+        report("air temp column", records.size(), new Runnable() {
+            @Override
+            public void run() {
+                ArchiveBlockCodec.decodeField(ArchiveBlockCodec.readHeader(block), block, ObservationField.AIR_TEMP);
+            }
+        });
+        report("time column", records.size(), new Runnable() {
+            @Override
+            public void run() {
+                ArchiveBlockCodec.decodeTimes(ArchiveBlockCodec.readHeader(block), block);
+            }
+        });
+    }
+
+    /**
+     * Decode repeatedly and print the best rate of values decoded per second.
+     *
+     * @param name what is decoded.
+     * @param values how many values each decode produces.
+     * @param decode decodes once.
+     */
+    private static void report(String name, int values, Runnable decode) {
+        for (int i = 0; i < WARM_UP_DECODES; i++) {
+            decode.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int pass = 0; pass < PASSES; pass++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < DECODES_PER_PASS; i++) {
+                decode.run();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double seconds = best / 1e9;
+        System.out.println(String.format("%-16s %12.0f values/s, %8.1f us per decode", name,
+                (double) values * DECODES_PER_PASS / seconds, seconds * 1e6 / DECODES_PER_PASS));
+    }
+}
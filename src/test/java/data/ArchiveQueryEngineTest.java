@@ -0,0 +1,121 @@
+package data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for aggregation queries over the observation archive.
+ *
+ * @author michael
+ */
+public class ArchiveQueryEngineTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private ObservationArchive mArchive;
+
+    @Before
+    public void setupArchive() throws InterruptedException {
+        mArchive = new ObservationArchive(mTemporaryFolder.getRoot(), 10);
+        // Local times are ten hours ahead, so these fall on the 29th and 30th locally
+        mArchive.append(MELBOURNE, observations(new String[]{"20160528213000", "20160529033000", "20160529143000"},
+                new String[]{"10.5", "18.2", "9.1"}));
+        mArchive.append(GEELONG, observations(new String[]{"20160528213000", "20160529033000"},
+                new String[]{"11.0", "-"}));
+        mArchive.flush();
+        mArchive.append(MELBOURNE, observations(new String[]{"20160529153000"}, new String[]{"8.4"}));
+        mArchive.flush();
+    }
+
+    @After
+    public void closeArchive() throws InterruptedException {
+        mArchive.close();
+    }
+
+    /**
+     * When querying the daily maximum per station, check that:
+     * - there is a row per station and local day, in order,
+     * - blocks committed separately are merged into the same group,
+     * - missing measurements are left out.
+     */
+    @Test
+    public void dailyMaximumPerStation() {
+        List<ArchiveQuery.Row> rows = mArchive.query(new ArchiveQuery.Builder()
+                .fields(ObservationField.AIR_TEMP)
+                .aggregate(Aggregate.MAX)
+                .groupByStation()
+                .groupBy(ArchiveQuery.TimeBucket.DAY)
+                .build());
+
+        assertEquals(3, rows.size());
+        assertEquals(GEELONG.getCity(), rows.get(0).getStation());
+        assertEquals(11.0, rows.get(0).getValue(ObservationField.AIR_TEMP), 0);
+        assertEquals(MELBOURNE.getCity(), rows.get(1).getStation());
+        assertEquals("20160529000000", ArchiveRecord.formatTime(rows.get(1).getBucket()));
+        assertEquals(18.2, rows.get(1).getValue(ObservationField.AIR_TEMP), 0);
+        assertEquals("20160530000000", ArchiveRecord.formatTime(rows.get(2).getBucket()));
+        assertEquals(9.1, rows.get(2).getValue(ObservationField.AIR_TEMP), 0);
+    }
+
+    /**
+     * When querying a station and time window without grouping, check that:
+     * - a single ungrouped row aggregates only the selected observations,
+     * - percentiles interpolate between ranks.
+     */
+    @Test
+    public void windowAndStationSelection() {
+        ArchiveQuery.Builder query = new ArchiveQuery.Builder()
+                .stations(MELBOURNE.getCity())
+                .between(ArchiveRecord.parseTime("20160529000000"), ArchiveRecord.parseTime("20160529235959"))
+                .fields(ObservationField.AIR_TEMP, ObservationField.HUMIDITY);
+
+        List<ArchiveQuery.Row> rows = mArchive.query(query.aggregate(Aggregate.percentile(50)).build());
+
+        assertEquals(1, rows.size());
+        assertNull(rows.get(0).getStation());
+        assertEquals(9.1, rows.get(0).getValue(ObservationField.AIR_TEMP), 1e-9);
+        assertEquals(53, rows.get(0).getValue(ObservationField.HUMIDITY), 0);
+        assertEquals(3, mArchive.query(query.aggregate(Aggregate.COUNT).build()).get(0)
+                .getValue(ObservationField.AIR_TEMP), 0);
+    }
+
+    /**
+     * When filtering on a measurement range, check that:
+     * - only observations within the range are aggregated,
+     * - a filter no block can satisfy returns no rows.
+     */
+    @Test
+    public void valueFilters() {
+        List<ArchiveQuery.Row> rows = mArchive.query(new ArchiveQuery.Builder()
+                .fields(ObservationField.AIR_TEMP)
+                .aggregate(Aggregate.SUM)
+                .where(ObservationField.AIR_TEMP, 10, 12)
+                .build());
+
+        assertEquals(21.5, rows.get(0).getValue(ObservationField.AIR_TEMP), 1e-9);
+        assertEquals(0, mArchive.query(new ArchiveQuery.Builder()
+                .fields(ObservationField.AIR_TEMP)
+                .where(ObservationField.AIR_TEMP, 30, 50)
+                .build()).size());
+    }
+
+    private static List<Observation> observations(String[] utcTimes, String[] airTemps) {
+        List<Observation> observations = ObservationArchiveTest.observations(utcTimes);
+        for (int i = 0; i < airTemps.length; i++) {
+            observations.get(i).setmAirtemp(airTemps[i]);
+        }
+        return observations;
+    }
+}
@@ -0,0 +1,104 @@
+package data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the daily rollups.
+ *
+ * @author michael
+ */
+public class DailyRollupsTest {
+
+    private static final String MELBOURNE = "Melbourne Olympic Park";
+
+    private DailyRollups mDailyRollups;
+
+    @Before
+    public void setupRollups() {
+        mDailyRollups = new DailyRollups();
+    }
+
+    /**
+     * When two local days of observations are ingested, check that:
+     * - the final day's extremes are kept, not only the days before it,
+     * - the extremes carry their local times,
+     * - the mean covers each day's temperatures.
+     */
+    @Test
+    public void extremesForEveryDay() {
+        // UTC+10, so these are 7am, 1pm and 8pm on the 29th, then 1am and 2pm on the 30th
+        mDailyRollups.ingest(MELBOURNE, observations(
+                new String[]{"20160528210000", "20160529030000", "20160529100000", "20160529150000", "20160530040000"},
+                new String[]{"6.0", "15.5", "11.0", "4.5", "17.0"}, null, null));
+
+        List<DailyRollup> rollups = mDailyRollups.get(MELBOURNE);
+
+        assertEquals(2, rollups.size());
+        assertEquals("20160529", rollups.get(0).getDay());
+        assertEquals(6.0, rollups.get(0).getMinTemp(), 0);
+        assertEquals("20160529070000", rollups.get(0).getMinTempTime());
+        assertEquals(15.5, rollups.get(0).getMaxTemp(), 0);
+        assertEquals(32.5 / 3, rollups.get(0).getMeanTemp(), 1e-9);
+        assertEquals("20160530", rollups.get(1).getDay());
+        assertEquals(4.5, rollups.get(1).getMinTemp(), 0);
+        assertEquals(17.0, rollups.get(1).getMaxTemp(), 0);
+        assertEquals("20160530140000", rollups.get(1).getMaxTempTime());
+    }
+
+    /**
+     * When rain since 9am and gusts are ingested, check that:
+     * - rain up to 9am is credited to the day the rain day ends,
+     * - the 9am reset starts the next rain day,
+     * - the peak gust is kept with its time.
+     */
+    @Test
+    public void rainFromNineAmResetAndPeakGust() {
+        // Local 6pm 29th, 8am 30th, 9am 30th, 3pm 30th
+        mDailyRollups.ingest(MELBOURNE, observations(
+                new String[]{"20160529080000", "20160529220000", "20160529230000", "20160530050000"},
+                new String[]{"12.0", "10.0", "10.5", "14.0"},
+                new String[]{"1.2", "3.4", "0.0", "0.6"},
+                new String[]{"31", "-", "44", "37"}));
+
+        List<DailyRollup> rollups = mDailyRollups.get(MELBOURNE);
+
+        assertEquals(3, rollups.size());
+        assertTrue(Double.isNaN(rollups.get(0).getRain()));
+        assertEquals(3.4, rollups.get(1).getRain(), 0);
+        assertEquals(44, rollups.get(1).getPeakGust(), 0);
+        assertEquals("20160530090000", rollups.get(1).getPeakGustTime());
+        assertEquals(0.6, rollups.get(2).getRain(), 0);
+        assertTrue(Double.isNaN(rollups.get(2).getMaxTemp()));
+    }
+
+    /**
+     * When overlapping fetches are ingested, check that:
+     * - observations already counted do not skew the mean.
+     */
+    @Test
+    public void overlappingFetchesAreCountedOnce() {
+        mDailyRollups.ingest(MELBOURNE, observations(new String[]{"20160529000000", "20160529010000"},
+                new String[]{"10.0", "12.0"}, null, null));
+        mDailyRollups.ingest(MELBOURNE, observations(new String[]{"20160529010000", "20160529020000"},
+                new String[]{"12.0", "20.0"}, null, null));
+
+        assertEquals(14.0, mDailyRollups.get(MELBOURNE).get(0).getMeanTemp(), 1e-9);
+    }
+
+    private static List<Observation> observations(String[] utcTimes, String[] airTemps, String[] rain,
+                                                  String[] gusts) {
+        List<Observation> observations = ObservationArchiveTest.observations(utcTimes);
+        for (int i = 0; i < utcTimes.length; i++) {
+            observations.get(i).setmAirtemp(airTemps[i]);
+            observations.get(i).setmRain(rain == null ? "-" : rain[i]);
+            observations.get(i).setmGustKmh(gusts == null ? "-" : gusts[i]);
+        }
+        return observations;
+    }
+}
@@ -0,0 +1,79 @@
+package data;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for making loaded observations and forecasts unique.
+ *
+ * @author michael
+ */
+public class DeduplicatorTest {
+
+    /**
+     * When observations are already newest first and unique, check that:
+     * - they are passed through untouched,
+     * - nothing is counted as dropped.
+     */
+    @Test
+    public void orderedObservationsPassThrough() {
+        Deduplicator deduplicator = new Deduplicator();
+        List<Observation> observations = Lists.newArrayList(observation("20160529140000", "13.2"),
+                observation("20160529133000", "12.4"));
+
+        assertSame(observations, deduplicator.observations(observations));
+        assertEquals(0, deduplicator.getDropped());
+    }
+
+    /**
+     * When observations overlap and are out of order, check that:
+     * - each time is kept once, newest first,
+     * - the first observation of each time is the one kept,
+     * - observations without a time are dropped,
+     * - the duplicates are counted.
+     */
+    @Test
+    public void duplicateObservationsAreDropped() {
+        Deduplicator deduplicator = new Deduplicator();
+        List<Observation> observations = Lists.newArrayList(observation("20160529133000", "12.4"),
+                observation("20160529140000", "13.2"), observation("20160529133000", "99.9"),
+                observation(null, "1.0"), observation("20160529130000", "11.9"),
+                observation("20160529140000", "99.9"));
+
+        List<Observation> unique = deduplicator.observations(observations);
+
+        assertEquals(3, unique.size());
+        assertEquals("20160529140000", unique.get(0).getmDateTime());
+        assertEquals("13.2", unique.get(0).getmAirtemp());
+        assertEquals("12.4", unique.get(1).getmAirtemp());
+        assertEquals("20160529130000", unique.get(2).getmDateTime());
+        assertEquals(2, deduplicator.getDropped());
+    }
+
+    /**
+     * When forecasts repeat a time, check that:
+     * - each time is kept once, oldest first.
+     */
+    @Test
+    public void duplicateForecastsAreDropped() {
+        Deduplicator deduplicator = new Deduplicator();
+        List<Forecast> forecasts = Lists.newArrayList(new Forecast("1464537600", "14"),
+                new Forecast("1464526800", "12"), new Forecast("1464537600", "15"));
+
+        List<Forecast> unique = deduplicator.forecasts(forecasts);
+
+        assertEquals(2, unique.size());
+        assertEquals("1464526800", unique.get(0).getTime());
+        assertEquals("14", unique.get(1).getTemp());
+        assertEquals(1, deduplicator.getDropped());
+    }
+
+    private static Observation observation(String dateTime, String airTemp) {
+        return new Observation("1", "Melbourne Olympic Park", dateTime, "7.7", "-", airTemp, "0.0", "53");
+    }
+}
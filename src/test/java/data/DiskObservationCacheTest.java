@@ -0,0 +1,137 @@
+package data;
+
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the disk observation cache.
+ *
+ * @author michael
+ */
+public class DiskObservationCacheTest {
+
+    private static List<Observation> OBSERVATIONS = Lists.newArrayList(
+            new Observation("1","Melbourne Olympic Park", "20160529133000", "7.7", "Mostly clear", "12.4", "0.0", "53"),
+            new Observation("1","Melbourne Olympic Park", "20160529140000", "9.9", null, "13.2", "0.0", "56"));
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mFile;
+    private List<DiskObservationCache> mCaches;
+
+    @Before
+    public void setupFile() {
+        mFile = new File(mTemporaryFolder.getRoot(), "observations.cache");
+        mCaches = new ArrayList<>();
+    }
+
+    @After
+    public void closeCaches() {
+        for (DiskObservationCache cache : mCaches) {
+            cache.close();
+        }
+    }
+
+    /**
+     * When observations have been flushed to disk, check that:
+     * - a new cache over the same file reads them back with their save time.
+     */
+    @Test
+    public void flushedObservationsSurviveARestart() {
+        DiskObservationCache cache = open();
+        cache.put(MELBOURNE, OBSERVATIONS, 1234);
+        cache.flush();
+
+        DiskObservationCache.Entry entry = open().get(MELBOURNE);
+
+        assertEquals(1234, entry.getSavedAt());
+        assertEquals(2, entry.getObservations().size());
+        assertEquals("20160529140000", entry.getObservations().get(1).getmDateTime());
+        assertEquals("13.2", entry.getObservations().get(1).getmAirtemp());
+        assertNull(entry.getObservations().get(1).getmCloud());
+    }
+
+    /**
+     * When the segment is mapped and then written again, check that:
+     * - the mapped segment is replaced and nothing is left pending,
+     * - the stations from the old segment are kept alongside the new one.
+     */
+    @Test
+    public void rewriteMappedSegment() {
+        DiskObservationCache cache = open();
+        cache.put(MELBOURNE, OBSERVATIONS, 1234);
+        cache.flush();
+        // Map the segment, then write over it
+        assertEquals(2, cache.get(MELBOURNE).getObservations().size());
+        cache.put(GEELONG, OBSERVATIONS.subList(0, 1), 5678);
+        cache.flush();
+
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+        assertEquals(2, cache.get(MELBOURNE).getObservations().size());
+        DiskObservationCache reopened = open();
+        assertEquals(1234, reopened.get(MELBOURNE).getSavedAt());
+        assertEquals(5678, reopened.get(GEELONG).getSavedAt());
+        assertEquals(1, reopened.get(GEELONG).getObservations().size());
+    }
+
+    /**
+     * When observations have not been written yet, check that:
+     * - they are still served from memory.
+     */
+    @Test
+    public void pendingObservationsAreServedBeforeWriteBack() {
+        DiskObservationCache cache = open();
+        cache.put(MELBOURNE, OBSERVATIONS, 1234);
+
+        assertEquals(2, cache.get(MELBOURNE).getObservations().size());
+    }
+
+    /**
+     * When the cache is closed with observations still pending, check that:
+     * - they are on disk,
+     * - nothing more is saved or read through the closed cache.
+     */
+    @Test
+    public void closeWritesPendingObservationsAndStopsSaving() {
+        DiskObservationCache cache = open();
+        cache.put(MELBOURNE, OBSERVATIONS, 1234);
+        cache.close();
+        cache.put(GEELONG, OBSERVATIONS, 5678);
+
+        assertNull(cache.get(MELBOURNE));
+        DiskObservationCache reopened = open();
+        assertEquals(1234, reopened.get(MELBOURNE).getSavedAt());
+        assertNull(reopened.get(GEELONG));
+    }
+
+    /**
+     * When there is no cache file, check that:
+     * - nothing is found.
+     */
+    @Test
+    public void missingFileHasNoObservations() {
+        assertNull(open().get(MELBOURNE));
+    }
+
+    private DiskObservationCache open() {
+        DiskObservationCache cache = new DiskObservationCache(mFile);
+        mCaches.add(cache);
+        return cache;
+    }
+}
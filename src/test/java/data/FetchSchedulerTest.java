@@ -0,0 +1,142 @@
+package data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the fetch scheduler.
+ *
+ * @author michael
+ */
+public class FetchSchedulerTest {
+
+    private static final String HOST = "www.bom.gov.au";
+
+    private long mNow;
+    private FetchScheduler mFetchScheduler;
+    private List<String> mStarted;
+    private List<FetchScheduler.FetchCompletion> mInFlight;
+
+    // Setup a scheduler with two slots per host and a controllable clock
+    @Before
+    public void setupFetchScheduler() {
+        mNow = 0;
+        mStarted = new ArrayList<>();
+        mInFlight = new ArrayList<>();
+        mFetchScheduler = new FetchScheduler(2, 1000) {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+    }
+
+    /**
+     * When background fetches hold the host, check that:
+     * - background fetches never take the slot reserved for the visible station,
+     * - a visible fetch starts straight away.
+     */
+    @Test
+    public void visibleFetchIsNotBlockedByBackgroundFetches() {
+        submit("background 1", FetchPriority.BACKGROUND);
+        submit("background 2", FetchPriority.BACKGROUND);
+        submit("visible", FetchPriority.VISIBLE);
+
+        assertEquals(2, mStarted.size());
+        assertEquals("background 1", mStarted.get(0));
+        assertEquals("visible", mStarted.get(1));
+        assertEquals(1, mFetchScheduler.getQueuedCount());
+        assertEquals(2, mFetchScheduler.getActiveCount(HOST));
+    }
+
+    /**
+     * When the host is full, check that:
+     * - queued fetches start in priority order once slots are released.
+     */
+    @Test
+    public void queuedFetchesStartInPriorityOrder() {
+        submit("visible 1", FetchPriority.VISIBLE);
+        submit("visible 2", FetchPriority.VISIBLE);
+        submit("background", FetchPriority.BACKGROUND);
+        submit("favourite", FetchPriority.FAVOURITE);
+
+        completeOldest();
+        completeOldest();
+
+        assertEquals("favourite", mStarted.get(2));
+        assertEquals(1, mFetchScheduler.getQueuedCount());
+    }
+
+    /**
+     * When a background fetch has waited longer than the aging period, check that:
+     * - it starts before a favourite fetch that was queued later.
+     */
+    @Test
+    public void agedBackgroundFetchOvertakesNewFavourite() {
+        submit("visible 1", FetchPriority.VISIBLE);
+        submit("visible 2", FetchPriority.VISIBLE);
+        submit("background", FetchPriority.BACKGROUND);
+        mNow = 1500;
+        submit("favourite", FetchPriority.FAVOURITE);
+
+        completeOldest();
+        completeOldest();
+
+        assertEquals("background", mStarted.get(2));
+    }
+
+    /**
+     * When a queued background fetch is promoted, check that:
+     * - it starts before a favourite fetch queued ahead of it,
+     * - promoting it again once it has started changes nothing.
+     */
+    @Test
+    public void promotedFetchOvertakesQueuedFetches() {
+        submit("visible 1", FetchPriority.VISIBLE);
+        submit("visible 2", FetchPriority.VISIBLE);
+        submit("favourite", FetchPriority.FAVOURITE);
+        FetchScheduler.Ticket ticket = submit("background", FetchPriority.BACKGROUND);
+
+        ticket.promote(FetchPriority.VISIBLE);
+        completeOldest();
+
+        assertEquals("background", mStarted.get(2));
+        ticket.promote(FetchPriority.VISIBLE);
+        assertEquals(1, mFetchScheduler.getQueuedCount());
+        assertEquals(3, mStarted.size());
+    }
+
+    /**
+     * When a fetch completes more than once, check that:
+     * - only one host slot is released.
+     */
+    @Test
+    public void completingTwiceReleasesOneSlot() {
+        submit("visible 1", FetchPriority.VISIBLE);
+        submit("visible 2", FetchPriority.VISIBLE);
+
+        mInFlight.get(0).onFetchComplete();
+        mInFlight.get(0).onFetchComplete();
+
+        assertEquals(1, mFetchScheduler.getActiveCount(HOST));
+    }
+
+    private FetchScheduler.Ticket submit(final String name, FetchPriority priority) {
+        return mFetchScheduler.submit(HOST, priority, new FetchScheduler.Fetch() {
+            @Override
+            public void start(FetchScheduler.FetchCompletion completion) {
+                mStarted.add(name);
+                mInFlight.add(completion);
+            }
+        });
+    }
+
+    private void completeOldest() {
+        mInFlight.remove(0).onFetchComplete();
+    }
+}
@@ -1,12 +1,41 @@
 package data;
 
+import application.ObservationBatch;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for the in memory weather repository.
@@ -24,6 +53,9 @@ public class InMemoryWeatherRepositoryTest {
 
     private InMemoryWeatherRepository mInMemoryWeatherRepository;
 
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
     // Setup InMemoryWeatherRepository so we can test it
     @Before
     public void setupInMemoryWeatherRepository() {
@@ -53,4 +85,448 @@ public class InMemoryWeatherRepositoryTest {
 
         verify(mWeatherServiceApi).removeFavouriteStation(anyObject());
     }
+
+    /**
+     * When one station's observations are refreshed, check that:
+     * - only that station is fetched again,
+     * - its forecasts and every other station stay cached.
+     */
+    @Test
+    public void refreshingOneStationKeepsTheRestOfTheCache() {
+        AsyncWeatherServiceApi serviceApi = new AsyncWeatherServiceApi(MoreExecutors.newDirectExecutorService());
+        InMemoryWeatherRepository repository = new InMemoryWeatherRepository(serviceApi);
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        Station geelong = new Station("url2", "Geelong", "Victoria");
+        load(repository, melbourne);
+        load(repository, geelong);
+
+        repository.refreshObservations(melbourne);
+        load(repository, melbourne);
+        load(repository, geelong);
+
+        assertEquals(3, serviceApi.mObservationFetches.get());
+        assertEquals(2, serviceApi.mForecastFetches.get());
+    }
+
+    /**
+     * When forecasts are refreshed, check that:
+     * - observations stay cached.
+     */
+    @Test
+    public void refreshingForecastsKeepsObservations() {
+        AsyncWeatherServiceApi serviceApi = new AsyncWeatherServiceApi(MoreExecutors.newDirectExecutorService());
+        InMemoryWeatherRepository repository = new InMemoryWeatherRepository(serviceApi);
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        load(repository, melbourne);
+
+        repository.refreshForecasts();
+        load(repository, melbourne);
+
+        assertEquals(1, serviceApi.mObservationFetches.get());
+        assertEquals(2, serviceApi.mForecastFetches.get());
+    }
+
+    /**
+     * When data older than a given age is refreshed, check that:
+     * - only stations loaded before the cut off are fetched again.
+     */
+    @Test
+    public void refreshingByAgeOnlyDropsOldData() {
+        final long[] now = {0};
+        AsyncWeatherServiceApi serviceApi = new AsyncWeatherServiceApi(MoreExecutors.newDirectExecutorService());
+        InMemoryWeatherRepository repository = new InMemoryWeatherRepository(serviceApi) {
+            @Override
+            long now() {
+                return now[0];
+            }
+        };
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        Station geelong = new Station("url2", "Geelong", "Victoria");
+        load(repository, melbourne);
+        now[0] = 60000;
+        load(repository, geelong);
+
+        repository.refreshOlderThan(30000);
+        load(repository, melbourne);
+        load(repository, geelong);
+
+        assertEquals(3, serviceApi.mObservationFetches.get());
+        assertEquals(3, serviceApi.mForecastFetches.get());
+    }
+
+    /**
+     * When observations for a station were saved to disk in a previous session, check that:
+     * - they are passed back without waiting for the network,
+     * - the station is revalidated in the background.
+     */
+    @Test
+    public void savedObservationsAreServedFromDiskAndRevalidated() {
+        File file = new File(mTemporaryFolder.getRoot(), "observations.cache");
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        DiskObservationCache previousSession = new DiskObservationCache(file);
+        previousSession.put(melbourne, Lists.newArrayList(
+                new Observation("1", "Melbourne", "20160529133000", "7.7", "Clear", "12.4", "0.0", "53")), 1234);
+        previousSession.close();
+        final List<List<Observation>> loaded = new ArrayList<>();
+        AsyncWeatherServiceApi serviceApi = new AsyncWeatherServiceApi(MoreExecutors.newDirectExecutorService());
+        DiskObservationCache diskCache = new DiskObservationCache(file);
+        InMemoryWeatherRepository repository = new InMemoryWeatherRepository(serviceApi, diskCache, null);
+
+        repository.getObservations(melbourne, new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> observations) {
+                loaded.add(observations);
+            }
+        });
+
+        assertEquals(1, loaded.size());
+        assertEquals(1, loaded.get(0).size());
+        assertEquals(1, serviceApi.mObservationFetches.get());
+        assertEquals(FetchPriority.BACKGROUND, serviceApi.mLastPriority);
+        diskCache.close();
+    }
+
+    /**
+     * When a cached station's observations are revalidated, check that:
+     * - the cached observations and the time they were loaded are still there while the fetch runs,
+     * - the fresh observations are fetched at visible priority and replace the cached ones.
+     */
+    @Test
+    public void revalidatingKeepsCachedObservationsUntilFetched() {
+        final long[] now = {1000};
+        AsyncWeatherServiceApi serviceApi = new AsyncWeatherServiceApi(MoreExecutors.newDirectExecutorService());
+        InMemoryWeatherRepository repository = new InMemoryWeatherRepository(serviceApi) {
+            @Override
+            long now() {
+                return now[0];
+            }
+        };
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        assertEquals(0, repository.getObservationsLoadedAt(melbourne));
+        load(repository, melbourne);
+        assertEquals(1000, repository.getObservationsLoadedAt(melbourne));
+
+        now[0] = 2000;
+        final List<List<Observation>> fresh = new ArrayList<>();
+        repository.revalidateObservations(melbourne, new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> observations) {
+                fresh.add(observations);
+            }
+        });
+
+        assertEquals(1, fresh.size());
+        assertEquals(2, serviceApi.mObservationFetches.get());
+        assertEquals(FetchPriority.VISIBLE, serviceApi.mLastPriority);
+        assertEquals(2000, repository.getObservationsLoadedAt(melbourne));
+    }
+
+    /**
+     * When a station is opened while its background prefetch is still in flight, check that:
+     * - the station is only fetched once,
+     * - the waiting fetch is promoted to visible,
+     * - both callers get the observations once it answers.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void openingAPrefetchingStationJoinsItsFetch() {
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        FetchScheduler.Ticket ticket = mock(FetchScheduler.Ticket.class);
+        ArgumentCaptor<WeatherServiceApi.WeatherServiceCallback<List<Observation>>> serviceCallback =
+                ArgumentCaptor.forClass((Class) WeatherServiceApi.WeatherServiceCallback.class);
+        when(mWeatherServiceApi.getObservations(eq(melbourne), eq(FetchPriority.BACKGROUND),
+                serviceCallback.capture())).thenReturn(ticket);
+        final List<List<Observation>> answers = new ArrayList<>();
+        WeatherRepository.LoadObservationsCallback callback = new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> observations) {
+                answers.add(observations);
+            }
+        };
+
+        mInMemoryWeatherRepository.getObservations(melbourne, FetchPriority.BACKGROUND, callback);
+        mInMemoryWeatherRepository.getObservations(melbourne, FetchPriority.VISIBLE, callback);
+
+        verify(mWeatherServiceApi).getObservations(eq(melbourne), any(FetchPriority.class), anyObject());
+        verify(ticket).promote(FetchPriority.VISIBLE);
+        assertTrue(answers.isEmpty());
+        serviceCallback.getValue().onLoaded(Lists.newArrayList(
+                new Observation("1", "Melbourne", "20160529133000", "7.7", "Clear", "12.4", "0.0", "53")));
+        assertEquals(2, answers.size());
+        assertEquals(1, answers.get(1).size());
+        assertEquals(answers.get(0), answers.get(1));
+    }
+
+    /**
+     * When the service fails after a station's observations were loaded, check that:
+     * - revalidating passes back the cached observations instead of the empty answer,
+     * - the cached observations and the time they were loaded are kept,
+     * - a station never loaded gets null, so the failure can be reported.
+     */
+    @Test
+    public void failedFetchKeepsCachedObservations() {
+        final long[] now = {1000};
+        AsyncWeatherServiceApi serviceApi = new AsyncWeatherServiceApi(MoreExecutors.newDirectExecutorService());
+        InMemoryWeatherRepository repository = new InMemoryWeatherRepository(serviceApi) {
+            @Override
+            long now() {
+                return now[0];
+            }
+        };
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        Station geelong = new Station("url2", "Geelong", "Victoria");
+        load(repository, melbourne);
+
+        now[0] = 2000;
+        serviceApi.mFailing = true;
+        final List<List<Observation>> answers = new ArrayList<>();
+        WeatherRepository.LoadObservationsCallback callback = new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> observations) {
+                answers.add(observations);
+            }
+        };
+        repository.revalidateObservations(melbourne, callback);
+        repository.getObservations(melbourne, callback);
+        repository.getObservations(geelong, callback);
+
+        assertEquals(3, answers.size());
+        assertEquals(3, answers.get(0).size());
+        assertEquals(3, answers.get(1).size());
+        assertNull(answers.get(2));
+        assertEquals(1000, repository.getObservationsLoadedAt(melbourne));
+        assertEquals(0, repository.getObservationsLoadedAt(geelong));
+        assertEquals(3, serviceApi.mObservationFetches.get());
+    }
+
+    /**
+     * When a batch runs over a station with old observations in the disk cache, check that:
+     * - the observations written are freshly fetched, not the cached ones,
+     * - nothing is left in memory for the station afterwards, including its rollups and pyramid.
+     */
+    @Test
+    public void batchWritesFreshObservationsAndEvictsThem() throws Exception {
+        Station melbourne = new Station("url1", "Melbourne", "Victoria");
+        DiskObservationCache diskCache = new DiskObservationCache(
+                new File(mTemporaryFolder.getRoot(), "observations.cache"));
+        diskCache.put(melbourne, Lists.newArrayList(
+                new Observation("1", "Melbourne", "20160101000000", "30.1", "Clear", "29.0", "0.0", "20")), 1000);
+        diskCache.flush();
+        AsyncWeatherServiceApi serviceApi = new AsyncWeatherServiceApi(MoreExecutors.newDirectExecutorService());
+        InMemoryWeatherRepository repository = new InMemoryWeatherRepository(serviceApi, diskCache, null);
+        StringWriter out = new StringWriter();
+
+        ObservationBatch.Result result = new ObservationBatch(repository, out, ObservationBatch.Format.CSV, 1,
+                new PrintStream(new ByteArrayOutputStream())).run(Lists.newArrayList(melbourne));
+
+        assertEquals(3, result.getRows());
+        assertEquals(1, serviceApi.mObservationFetches.get());
+        assertTrue(out.toString().contains("20160529133000"));
+        assertFalse(out.toString().contains("20160101000000"));
+        assertEquals(0, repository.getObservationsLoadedAt(melbourne));
+        final List<DailyRollup> rollups = new ArrayList<>();
+        repository.getDailyRollups(melbourne, new WeatherRepository.LoadDailyRollupsCallback() {
+            @Override
+            public void onDailyRollupsLoaded(List<DailyRollup> loaded) {
+                rollups.addAll(loaded);
+            }
+        });
+        assertTrue(rollups.isEmpty());
+        final AtomicReference<ObservationPyramid> pyramid = new AtomicReference<>();
+        repository.getObservationPyramid(melbourne, new WeatherRepository.LoadObservationPyramidCallback() {
+            @Override
+            public void onObservationPyramidLoaded(ObservationPyramid loaded) {
+                pyramid.set(loaded);
+            }
+        });
+        assertEquals(0, pyramid.get().size(ObservationPyramid.Level.RAW));
+        diskCache.close();
+    }
+
+    private void load(InMemoryWeatherRepository repository, Station station) {
+        repository.getObservations(station, new WeatherRepository.LoadObservationsCallback() {
+            @Override
+            public void onObservationsLoaded(List<Observation> observations) {
+            }
+        });
+        repository.getForecasts(station, new WeatherRepository.LoadForecastsCallback() {
+            @Override
+            public void onForecastsLoaded(List<Forecast> forecasts) {
+            }
+        });
+    }
+
+    /**
+     * When many threads get and refresh data while service callbacks land on other threads, check that:
+     * - every request gets its callback,
+     * - every callback gets a complete list for the station it asked for,
+     * - nothing throws.
+     */
+    @Test
+    public void concurrentGetsRefreshesAndCallbacksAreSafe() throws InterruptedException {
+        final ExecutorService networkThreads = Executors.newFixedThreadPool(4);
+        final InMemoryWeatherRepository repository = new InMemoryWeatherRepository(
+                new AsyncWeatherServiceApi(networkThreads));
+        final List<Station> stations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            stations.add(new Station("url" + i, "Station " + i, "Victoria"));
+        }
+        final int threads = 16;
+        final int iterations = 2000;
+        final AtomicInteger requested = new AtomicInteger();
+        final CountDownLatch callbacks = new CountDownLatch(threads * iterations);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            callers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            final Station station = stations.get(random.nextInt(stations.size()));
+                            requested.incrementAndGet();
+                            switch (random.nextInt(6)) {
+                                case 0:
+                                    repository.refreshObservations();
+                                    callbacks.countDown();
+                                    break;
+                                case 1:
+                                    repository.refreshForecasts();
+                                    callbacks.countDown();
+                                    break;
+                                case 2:
+                                    repository.getStates(new WeatherRepository.LoadStatesCallback() {
+                                        @Override
+                                        public void onStatesLoaded(List<State> states) {
+                                            check(states.size() == 1, "states");
+                                            callbacks.countDown();
+                                        }
+                                    });
+                                    break;
+                                case 3:
+                                    repository.getForecasts(station, new WeatherRepository.LoadForecastsCallback() {
+                                        @Override
+                                        public void onForecastsLoaded(List<Forecast> forecasts) {
+                                            check(forecasts.size() == 3, "forecasts");
+                                            check(forecasts.get(0).getTemp().equals(station.getCity()), "forecast station");
+                                            callbacks.countDown();
+                                        }
+                                    });
+                                    break;
+                                default:
+                                    repository.getObservations(station, new WeatherRepository.LoadObservationsCallback() {
+                                        @Override
+                                        public void onObservationsLoaded(List<Observation> observations) {
+                                            check(observations.size() == 3, "observations");
+                                            check(observations.get(2).getmName().equals(station.getCity()), "observation station");
+                                            callbacks.countDown();
+                                        }
+                                    });
+                                    break;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+
+                private void check(boolean condition, String what) {
+                    if (!condition) {
+                        failure.compareAndSet(null, new AssertionError("Bad " + what));
+                    }
+                }
+            });
+        }
+
+        assertTrue(callbacks.await(30, TimeUnit.SECONDS));
+        callers.shutdown();
+        networkThreads.shutdown();
+        assertNull(failure.get());
+        assertEquals(threads * iterations, requested.get());
+    }
+
+    /**
+     * Service api that answers every request on a separate thread, the same way Retrofit does.
+     */
+    private static class AsyncWeatherServiceApi implements WeatherServiceApi {
+
+        private final ExecutorService mExecutor;
+        private final AtomicInteger mObservationFetches = new AtomicInteger();
+        private final AtomicInteger mForecastFetches = new AtomicInteger();
+        private volatile FetchPriority mLastPriority;
+        // Answer observations with an empty list, the way the real endpoint reports a failure
+        private volatile boolean mFailing;
+
+        AsyncWeatherServiceApi(ExecutorService executor) {
+            mExecutor = executor;
+        }
+
+        @Override
+        public void getStates(final WeatherServiceCallback<List<State>> callback) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<State> states = new ArrayList<>();
+                    states.add(new State("Victoria"));
+                    callback.onLoaded(states);
+                }
+            });
+        }
+
+        @Override
+        public void getStations(WeatherServiceCallback<HashMap<String, List<Station>>> callback) {
+            callback.onLoaded(new HashMap<String, List<Station>>());
+        }
+
+        @Override
+        public void getFavouriteStations(WeatherServiceCallback<List<Station>> callback) {
+            callback.onLoaded(new ArrayList<Station>());
+        }
+
+        @Override
+        public void saveFavouriteStation(Station favourite) {
+        }
+
+        @Override
+        public void removeFavouriteStation(Station favourite) {
+        }
+
+        @Override
+        public FetchScheduler.Ticket getObservations(final Station station, FetchPriority priority,
+                                                     final WeatherServiceCallback<List<Observation>> callback) {
+            mObservationFetches.incrementAndGet();
+            mLastPriority = priority;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<Observation> observations = new ArrayList<>();
+                    for (int i = 0; i < (mFailing ? 0 : 3); i++) {
+                        observations.add(new Observation(String.valueOf(i), station.getCity(), "2016052913300" + i,
+                                "7.7", "Clear", "12.4", "0.0", "53"));
+                    }
+                    callback.onLoaded(observations);
+                }
+            });
+            return null;
+        }
+
+        @Override
+        public FetchScheduler.Ticket getForecasts(final Station station, FetchPriority priority,
+                                                  final WeatherServiceCallback<List<Forecast>> callback) {
+            mForecastFetches.incrementAndGet();
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<Forecast> forecasts = new ArrayList<>();
+                    for (int i = 0; i < 3; i++) {
+                        forecasts.add(new Forecast(String.valueOf(i), station.getCity()));
+                    }
+                    callback.onLoaded(forecasts);
+                }
+            });
+            return null;
+        }
+    }
 }
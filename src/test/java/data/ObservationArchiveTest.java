@@ -0,0 +1,97 @@
+package data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the observation archive.
+ *
+ * @author michael
+ */
+public class ObservationArchiveTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private ObservationArchive mArchive;
+
+    @Before
+    public void setupArchive() {
+        mArchive = new ObservationArchive(mTemporaryFolder.getRoot(), 10);
+    }
+
+    @After
+    public void closeArchive() throws InterruptedException {
+        mArchive.close();
+    }
+
+    /**
+     * When overlapping fetches for a station are archived, check that:
+     * - each observation time is only archived once,
+     * - observations roll into one segment per UTC day.
+     */
+    @Test
+    public void overlappingFetchesAreArchivedOnce() throws InterruptedException {
+        mArchive.append(MELBOURNE, observations("20160528233000", "20160529003000"));
+        mArchive.flush();
+        mArchive.append(MELBOURNE, observations("20160529003000", "20160529013000"));
+        mArchive.flush();
+
+        List<ArchiveRecord> records = mArchive.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2);
+
+        assertEquals(3, records.size());
+        assertEquals("20160528233000", ArchiveRecord.formatTime(records.get(0).getTime()));
+        assertEquals("20160529013000", ArchiveRecord.formatTime(records.get(2).getTime()));
+        assertTrue(mArchive.segmentFile(ArchiveRecord.parseTime("20160528000000") / ObservationArchive.DAY_MILLIS).exists());
+        assertTrue(mArchive.segmentFile(ArchiveRecord.parseTime("20160529000000") / ObservationArchive.DAY_MILLIS).exists());
+    }
+
+    /**
+     * When reading a time window for one station, check that:
+     * - only that station's observations inside the window are returned,
+     * - the measurements and local time survive the round trip.
+     */
+    @Test
+    public void rangeReadSelectsStationAndWindow() throws InterruptedException {
+        mArchive.append(MELBOURNE, observations("20160529003000", "20160529013000", "20160529023000"));
+        mArchive.append(GEELONG, observations("20160529013000"));
+        mArchive.flush();
+
+        List<ArchiveRecord> records = mArchive.read(MELBOURNE.getCity(),
+                ArchiveRecord.parseTime("20160529010000"), ArchiveRecord.parseTime("20160529023000"));
+
+        assertEquals(2, records.size());
+        Observation observation = records.get(0).toObservation();
+        assertEquals("20160529013000", observation.getmAifstimeUtc());
+        assertEquals("20160529113000", observation.getmDateTime());
+        assertEquals("12.4", observation.getmAirtemp());
+        assertEquals("53", observation.getmHumidity());
+        assertEquals("SW", observation.getmWindDir());
+    }
+
+    /**
+     * Observations ten hours ahead of UTC, as in Melbourne.
+     */
+    static List<Observation> observations(String... utcTimes) {
+        List<Observation> observations = new ArrayList<>();
+        for (String utc : utcTimes) {
+            String local = ArchiveRecord.formatTime(ArchiveRecord.parseTime(utc) + 10 * 3600000L);
+            observations.add(new Observation("12.4", "Melbourne (Olympic Park)", "94866", "IDV60901", "11/01:30pm",
+                    local, utc, "-37.8", "145.0", "7.7", "Mostly clear", "", "", "", "", "3.1", "20",
+                    "5.5", "", "1018.2", "1018.3", "", "0.0", "53", "", "", "", "", "10", "-", "SW", "11", "6"));
+        }
+        return observations;
+    }
+}
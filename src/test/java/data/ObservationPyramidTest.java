@@ -0,0 +1,73 @@
+package data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the multi-resolution observation pyramid.
+ *
+ * @author michael
+ */
+public class ObservationPyramidTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private ObservationPyramid mPyramid;
+
+    @Before
+    public void setupPyramid() {
+        mPyramid = new ObservationPyramid(ObservationField.AIR_TEMP);
+        // Ten days of ten minute observations, rising one degree an hour through each day
+        for (long time = 0; time < 10 * DAY; time += 10 * MINUTE) {
+            mPyramid.add(time, Math.floorMod(time, DAY) / TimeUnit.HOURS.toMillis(1));
+        }
+    }
+
+    /**
+     * When observations are added, check that:
+     * - every level has a bucket per observation, half hour, hour or day,
+     * - buckets keep the minimum, maximum and mean,
+     * - adding an observation time again changes nothing.
+     */
+    @Test
+    public void levelsSummariseBuckets() {
+        assertEquals(10 * 144, mPyramid.size(ObservationPyramid.Level.RAW));
+        assertEquals(10 * 48, mPyramid.size(ObservationPyramid.Level.HALF_HOUR));
+        assertEquals(10 * 24, mPyramid.size(ObservationPyramid.Level.HOUR));
+        assertEquals(10, mPyramid.size(ObservationPyramid.Level.DAY));
+
+        ObservationPyramid.Slice day = mPyramid.slice(ObservationPyramid.Level.DAY, DAY, DAY);
+        assertEquals(1, day.size());
+        assertEquals(0, day.getMin(0), 0);
+        assertEquals(23, day.getMax(0), 0);
+        assertEquals(11.5, day.getMean(0), 1e-9);
+
+        mPyramid.add(DAY, 100);
+        assertEquals(10 * 144, mPyramid.size(ObservationPyramid.Level.RAW));
+        assertEquals(23, mPyramid.slice(ObservationPyramid.Level.DAY, DAY, DAY).getMax(0), 0);
+    }
+
+    /**
+     * When picking a level for a time window, check that:
+     * - the finest level with few enough points is chosen,
+     * - a slice only holds the buckets within the window.
+     */
+    @Test
+    public void levelSuitsWindow() {
+        assertEquals(ObservationPyramid.Level.RAW, mPyramid.levelFor(0, DAY - 1, 200));
+        assertEquals(ObservationPyramid.Level.HALF_HOUR, mPyramid.levelFor(0, 3 * DAY - 1, 200));
+        assertEquals(ObservationPyramid.Level.HOUR, mPyramid.levelFor(0, 8 * DAY - 1, 200));
+        assertEquals(ObservationPyramid.Level.DAY, mPyramid.levelFor(0, Long.MAX_VALUE, 200));
+
+        ObservationPyramid.Slice slice = mPyramid.slice(ObservationPyramid.Level.HOUR, DAY, 2 * DAY - 1);
+        assertEquals(24, slice.size());
+        assertEquals(DAY, slice.getTime(0));
+        assertEquals(2 * DAY - TimeUnit.HOURS.toMillis(1), slice.getTime(23));
+        assertEquals(23, slice.getMean(23), 0);
+    }
+}
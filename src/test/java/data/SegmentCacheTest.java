@@ -0,0 +1,138 @@
+package data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the mapped segment cache and its sparse index.
+ *
+ * @author michael
+ */
+public class SegmentCacheTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private ObservationArchive mArchive;
+    private File mSegment;
+
+    @Before
+    public void setupArchive() throws InterruptedException {
+        mArchive = new ObservationArchive(mTemporaryFolder.getRoot(), 0);
+        mSegment = mArchive.segmentFile(ArchiveRecord.parseTime("20160529000000") / ObservationArchive.DAY_MILLIS);
+        // One block per flush
+        mArchive.append(MELBOURNE, ObservationArchiveTest.observations("20160529003000", "20160529013000"));
+        mArchive.flush();
+        mArchive.append(GEELONG, ObservationArchiveTest.observations("20160529013000"));
+        mArchive.flush();
+        mArchive.append(MELBOURNE, ObservationArchiveTest.observations("20160529103000"));
+        mArchive.flush();
+    }
+
+    @After
+    public void closeArchive() throws InterruptedException {
+        mArchive.close();
+    }
+
+    /**
+     * When looking up a station and time window, check that:
+     * - only the blocks holding the station's records for those hours are returned,
+     * - open-ended windows return every block for the station.
+     */
+    @Test
+    public void indexFindsStationBlocksByHour() {
+        SegmentCache.MappedSegment segment = new SegmentCache(4).get(mSegment);
+
+        assertEquals(3, segment.blocks().size());
+        List<ByteBuffer> blocks = segment.blocks(MELBOURNE.getCity(),
+                ArchiveRecord.parseTime("20160529090000"), ArchiveRecord.parseTime("20160529120000"));
+        assertEquals(1, blocks.size());
+        assertEquals(ArchiveRecord.parseTime("20160529103000"),
+                (Long) ArchiveBlockCodec.readHeader(blocks.get(0)).getMinTime());
+        assertEquals(2, segment.blocks(MELBOURNE.getCity(), Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(1, segment.blocks(GEELONG.getCity(), Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(0, segment.blocks(GEELONG.getCity(),
+                ArchiveRecord.parseTime("20160529030000"), Long.MAX_VALUE).size());
+    }
+
+    /**
+     * When a cached segment grows, check that:
+     * - it is mapped again and the new block is indexed.
+     */
+    @Test
+    public void grownSegmentIsReindexed() throws InterruptedException {
+        SegmentCache cache = new SegmentCache(4);
+        assertEquals(1, cache.get(mSegment).blocks(GEELONG.getCity(), Long.MIN_VALUE, Long.MAX_VALUE).size());
+
+        mArchive.append(GEELONG, ObservationArchiveTest.observations("20160529203000"));
+        mArchive.flush();
+
+        assertEquals(2, cache.get(mSegment).blocks(GEELONG.getCity(), Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    /**
+     * When a segment is evicted while it is being read, check that:
+     * - the eviction waits for the read to end,
+     * - the segment is mapped afresh when asked for again.
+     */
+    @Test
+    public void evictionWaitsForReaders() throws InterruptedException {
+        final SegmentCache cache = new SegmentCache(4);
+        cache.beginRead();
+        SegmentCache.MappedSegment segment = cache.get(mSegment);
+        Thread evicting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.evict(mSegment);
+            }
+        });
+        evicting.start();
+        evicting.join(200);
+
+        assertTrue(evicting.isAlive());
+        assertEquals(3, segment.blocks().size());
+        cache.endRead();
+        evicting.join(5000);
+        assertFalse(evicting.isAlive());
+        assertEquals(0, cache.size());
+        cache.beginRead();
+        assertNotSame(segment, cache.get(mSegment));
+        cache.endRead();
+    }
+
+    /**
+     * When more segments are read than the cache holds, check that:
+     * - only the most recently used stay mapped,
+     * - missing segments are not cached.
+     */
+    @Test
+    public void cacheIsBounded() throws InterruptedException {
+        mArchive.append(MELBOURNE, ObservationArchiveTest.observations("20160530003000", "20160531003000"));
+        mArchive.flush();
+        SegmentCache cache = new SegmentCache(2);
+
+        for (String day : new String[]{"20160529000000", "20160530000000", "20160531000000"}) {
+            cache.get(mArchive.segmentFile(ArchiveRecord.parseTime(day) / ObservationArchive.DAY_MILLIS));
+        }
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(new File(mTemporaryFolder.getRoot(), "missing.seg")));
+        assertEquals(2, cache.size());
+    }
+}
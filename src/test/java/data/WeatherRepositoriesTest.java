@@ -1,5 +1,14 @@
 package data;
 
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 /**
  * Tests for the WeatherRepository class.
  *
@@ -7,6 +16,32 @@ package data;
  */
 public class WeatherRepositoriesTest {
 
-    // There are no useful tests to be made with the current implementation.
-    // This class simply returns the one repository.
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    /**
+     * When the repository's stores are closed with writes still pending, check that:
+     * - the disk cache's pending observations are on disk and the cache is closed,
+     * - the archive's queued observations are committed, even inside a long commit window.
+     */
+    @Test
+    public void closeWritesOutPendingObservations() {
+        File cacheFile = new File(mTemporaryFolder.getRoot(), "observations.cache");
+        File archiveDirectory = new File(mTemporaryFolder.getRoot(), "archive");
+        DiskObservationCache diskCache = new DiskObservationCache(cacheFile);
+        ObservationArchive archive = new ObservationArchive(archiveDirectory, 60000);
+        diskCache.put(MELBOURNE, ObservationArchiveTest.observations("20160529003000"), 1234);
+        archive.append(MELBOURNE, ObservationArchiveTest.observations("20160529003000", "20160529013000"));
+
+        WeatherRepositories.close(diskCache, archive);
+
+        assertNull(diskCache.get(MELBOURNE));
+        DiskObservationCache reopenedCache = new DiskObservationCache(cacheFile);
+        assertEquals(1234, reopenedCache.get(MELBOURNE).getSavedAt());
+        ObservationArchive reopened = new ObservationArchive(archiveDirectory, 10);
+        assertEquals(2, reopened.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2).size());
+        WeatherRepositories.close(reopenedCache, reopened);
+    }
 }
@@ -0,0 +1,120 @@
+package data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the archive write-ahead log and crash recovery.
+ *
+ * @author michael
+ */
+public class WriteAheadLogTest {
+
+    private static Station MELBOURNE = new Station("95936", "Melbourne Olympic Park", "Victoria");
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    /**
+     * When the log ends in a partly written entry, check that:
+     * - every complete entry is recovered in order,
+     * - the torn entry is truncated away,
+     * - later entries are appended after the last complete one.
+     */
+    @Test
+    public void tornEntryIsTruncated() throws Exception {
+        File file = mTemporaryFolder.newFile("wal.log");
+        WriteAheadLog log = new WriteAheadLog(file);
+        log.append(records("20160529003000", "20160529013000"));
+        log.append(records("20160529023000"));
+        long complete = log.size();
+        log.close();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0x4F, 0x57, 0x41, 0x33, 0, 0, 1});
+        }
+
+        log = new WriteAheadLog(file);
+        List<ArchiveRecord> recovered = log.recover();
+
+        assertEquals(3, recovered.size());
+        assertEquals("20160529023000", ArchiveRecord.formatTime(recovered.get(2).getTime()));
+        assertEquals(complete, file.length());
+        log.append(records("20160529033000"));
+        assertEquals(4, log.recover().size());
+        log.close();
+    }
+
+    /**
+     * When an entry fails its checksum, check that:
+     * - only the entries before it are recovered.
+     */
+    @Test
+    public void corruptEntryEndsRecovery() throws Exception {
+        File file = mTemporaryFolder.newFile("wal.log");
+        WriteAheadLog log = new WriteAheadLog(file);
+        log.append(records("20160529003000"));
+        long first = log.size();
+        log.append(records("20160529013000"));
+        log.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(file.length() - 1);
+            int last = raf.read();
+            raf.seek(file.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        log = new WriteAheadLog(file);
+
+        assertEquals(1, log.recover().size());
+        assertEquals(first, file.length());
+        log.close();
+    }
+
+    /**
+     * When the archive crashes after logging a commit but with a torn segment, check that:
+     * - the torn block is truncated from the segment,
+     * - the logged records are replayed into the segment on reopening,
+     * - the log is emptied once they are durable.
+     */
+    @Test
+    public void loggedCommitsSurviveCrash() throws Exception {
+        File directory = mTemporaryFolder.getRoot();
+        ObservationArchive archive = new ObservationArchive(directory, 0);
+        archive.append(MELBOURNE, ObservationArchiveTest.observations("20160529003000"));
+        archive.close();
+        File segment = archive.segmentFile(ArchiveRecord.parseTime("20160529000000") / ObservationArchive.DAY_MILLIS);
+        long durable = segment.length();
+        WriteAheadLog log = new WriteAheadLog(new File(directory, "wal.log"));
+        log.append(records("20160529013000", "20160529023000"));
+        log.close();
+        try (FileOutputStream out = new FileOutputStream(segment, true)) {
+            out.write(new byte[]{0x4F, 0x42, 0x43, 0x36, 0, 0, 0, 100, 1, 2});
+        }
+
+        archive = new ObservationArchive(directory, 0);
+
+        assertEquals(3, archive.read(MELBOURNE.getCity(), 0, Long.MAX_VALUE / 2).size());
+        assertEquals(2, archive.blocks(segment).size());
+        assertEquals(0, new File(directory, "wal.log").length());
+        assertTrue(segment.length() > durable);
+        archive.close();
+    }
+
+    private static List<ArchiveRecord> records(String... utcTimes) {
+        List<ArchiveRecord> records = new ArrayList<>();
+        for (Observation observation : ObservationArchiveTest.observations(utcTimes)) {
+            records.add(ArchiveRecord.fromObservation(MELBOURNE.getCity(), observation));
+        }
+        return records;
+    }
+}
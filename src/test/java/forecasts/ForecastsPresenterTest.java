@@ -1,6 +1,8 @@
 package forecasts;
 
+import application.PresentationPipeline;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import data.Forecast;
 import data.WeatherRepository;
 import org.junit.Before;
@@ -12,6 +14,7 @@ import org.mockito.MockitoAnnotations;
 
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.verify;
 
@@ -23,8 +26,8 @@ import static org.mockito.Mockito.verify;
 public class ForecastsPresenterTest {
 
     private static List<Forecast> FORECASTS = Lists.newArrayList(
-            new Forecast("20160529133000", "overcast clouds", "7.7", "12.8", "53", "1018.56", "0.93"),
-            new Forecast("20160529140000", "few clouds", "9.9", "15.0", "56", "1018.96", "1.58"));
+            new Forecast("1464492600", "overcast clouds", "7.7", "12.8", "53", "1018.56", "0.93"),
+            new Forecast("1464494400", "few clouds", "9.9", "15.0", "56", "1018.96", "1.58"));
 
     // Use mock repository so real data is not affected
     @Mock
@@ -38,13 +41,19 @@ public class ForecastsPresenterTest {
     @Captor
     private ArgumentCaptor<WeatherRepository.LoadForecastsCallback> mLoadForecastsCallbackCaptor;
 
+    @Captor
+    private ArgumentCaptor<ForecastsViewModel> mViewModelCaptor;
+
     private ForecastsPresenter mForecastsPresenter;
 
     // Setup a real forecasts presenter so we can test it
     @Before
     public void setupForecastsPresenter() {
         MockitoAnnotations.initMocks(this);
-        mForecastsPresenter = new ForecastsPresenter(mWetherRepository, mForecastsView);
+        // Build and bind straight away so the test can follow each step
+        PresentationPipeline pipeline = new PresentationPipeline(MoreExecutors.directExecutor(),
+                MoreExecutors.directExecutor());
+        mForecastsPresenter = new ForecastsPresenter(mWetherRepository, mForecastsView, pipeline);
     }
 
     /**
@@ -52,7 +61,7 @@ public class ForecastsPresenterTest {
      * - it calls the view to enable a progress bar,
      * - it gets the forecasts from the repository,
      * - it calls the view to disable the progress bar,
-     * - it passes the forecasts to the view for display
+     * - it passes the view a model of the forecasts for display
      */
     @Test
     public void loadForecastsFromRepositoryAndLoadIntoView() {
@@ -65,6 +74,7 @@ public class ForecastsPresenterTest {
 
         verify(mForecastsView).setProgressBar(false);
 
-        verify(mForecastsView).showForecasts(FORECASTS);
+        verify(mForecastsView).showForecasts(mViewModelCaptor.capture());
+        assertEquals(FORECASTS, mViewModelCaptor.getValue().getForecasts());
     }
 }
@@ -0,0 +1,94 @@
+package observations;
+
+import data.ObservationPyramid;
+import org.jfree.chart.axis.DateAxis;
+import org.jfree.data.time.Minute;
+import org.jfree.data.time.TimeSeries;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for loading chart points from an observation pyramid.
+ *
+ * @author michael
+ */
+public class ChartDataProviderTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private ObservationPyramid mPyramid;
+    private TimeSeries mSeries;
+    private DateAxis mAxis;
+
+    @Before
+    public void setupProvider() {
+        mPyramid = mock(ObservationPyramid.class);
+        when(mPyramid.levelFor(anyLong(), anyLong(), anyInt())).thenReturn(ObservationPyramid.Level.HOUR);
+        mSeries = new TimeSeries("Temp", Minute.class);
+        mAxis = new DateAxis();
+        mAxis.setRange(new Date(100 * DAY), new Date(101 * DAY));
+    }
+
+    /**
+     * When the axis is zoomed or panned, check that:
+     * - points are loaded for the visible range and a range either side,
+     * - panning within the loaded points loads nothing,
+     * - zooming to a range that needs another level reloads.
+     */
+    @Test
+    public void loadsLevelForVisibleRange() {
+        when(mPyramid.slice(eq(ObservationPyramid.Level.HOUR), anyLong(), anyLong()))
+                .thenReturn(mock(ObservationPyramid.Slice.class));
+        ChartDataProvider provider = new ChartDataProvider(mPyramid, mSeries);
+        provider.attach(mAxis);
+
+        assertEquals(ObservationPyramid.Level.HOUR, provider.getLevel());
+        verify(mPyramid).slice(eq(ObservationPyramid.Level.HOUR), anyLong(), anyLong());
+
+        mAxis.setRange(new Date(100 * DAY + DAY / 2), new Date(101 * DAY + DAY / 2));
+        verify(mPyramid, times(1)).slice(eq(ObservationPyramid.Level.HOUR), anyLong(), anyLong());
+
+        when(mPyramid.levelFor(anyLong(), anyLong(), anyInt())).thenReturn(ObservationPyramid.Level.DAY);
+        when(mPyramid.slice(eq(ObservationPyramid.Level.DAY), anyLong(), anyLong()))
+                .thenReturn(mock(ObservationPyramid.Slice.class));
+        mAxis.setRange(new Date(0), new Date(200 * DAY));
+        assertEquals(ObservationPyramid.Level.DAY, provider.getLevel());
+
+        provider.detach();
+        mAxis.setRange(new Date(0), new Date(DAY));
+        verify(mPyramid, times(1)).slice(eq(ObservationPyramid.Level.DAY), anyLong(), anyLong());
+    }
+
+    /**
+     * When a provider is attached to an axis that ranges itself and later detached, check that:
+     * - the axis keeps its range while attached,
+     * - the axis ranges itself again once detached, so later data is not drawn off the edge.
+     */
+    @Test
+    public void restoresAutoRangeOnDetach() {
+        when(mPyramid.slice(eq(ObservationPyramid.Level.HOUR), anyLong(), anyLong()))
+                .thenReturn(mock(ObservationPyramid.Slice.class));
+        mAxis.setAutoRange(true);
+        ChartDataProvider provider = new ChartDataProvider(mPyramid, mSeries);
+
+        provider.attach(mAxis);
+        assertFalse(mAxis.isAutoRange());
+
+        provider.detach();
+        assertTrue(mAxis.isAutoRange());
+    }
+}
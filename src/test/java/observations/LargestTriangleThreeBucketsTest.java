@@ -0,0 +1,64 @@
+package observations;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for Largest-Triangle-Three-Buckets downsampling.
+ *
+ * @author michael
+ */
+public class LargestTriangleThreeBucketsTest {
+
+    /**
+     * When there are no more points than the threshold, check that:
+     * - every point is kept.
+     */
+    @Test
+    public void fewPointsAreAllKept() {
+        long[] times = {0, 1, 2, 3};
+        double[] values = {5, 6, 7, 8};
+
+        assertArrayEquals(new int[]{0, 1, 2, 3}, LargestTriangleThreeBuckets.select(times, values, 4, 10));
+        assertArrayEquals(new int[]{0, 1}, LargestTriangleThreeBuckets.select(times, values, 2, 10));
+    }
+
+    /**
+     * When a flat series with one spike and one dip is downsampled, check that:
+     * - exactly the threshold number of points are kept, in order,
+     * - the first and last points are kept,
+     * - the spike and the dip are kept.
+     */
+    @Test
+    public void extremesSurvive() {
+        int count = 1000;
+        long[] times = new long[count];
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = 1464500000000L + i * 600000L;
+            values[i] = 12;
+        }
+        values[333] = 30;
+        values[777] = -2;
+
+        int[] kept = LargestTriangleThreeBuckets.select(times, values, count, 50);
+
+        assertEquals(50, kept.length);
+        assertEquals(0, kept[0]);
+        assertEquals(count - 1, kept[49]);
+        boolean spike = false;
+        boolean dip = false;
+        for (int i = 0; i < kept.length; i++) {
+            if (i > 0) {
+                assertTrue(kept[i] > kept[i - 1]);
+            }
+            spike |= kept[i] == 333;
+            dip |= kept[i] == 777;
+        }
+        assertTrue(spike);
+        assertTrue(dip);
+    }
+}
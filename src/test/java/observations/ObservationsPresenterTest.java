@@ -1,7 +1,12 @@
 package observations;
 
+import application.PresentationPipeline;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import data.DailyRollup;
 import data.Observation;
+import data.ObservationPyramid;
+import data.Station;
 import data.WeatherRepository;
 import org.junit.Before;
 import org.junit.Test;
@@ -12,8 +17,14 @@ import org.mockito.MockitoAnnotations;
 
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for the observations presenter.
@@ -38,21 +49,35 @@ public class ObservationsPresenterTest {
     @Captor
     private ArgumentCaptor<WeatherRepository.LoadObservationsCallback> mLoadObservationsCallbackCaptor;
 
+    @Captor
+    private ArgumentCaptor<WeatherRepository.LoadDailyRollupsCallback> mLoadDailyRollupsCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<WeatherRepository.LoadObservationPyramidCallback> mLoadObservationPyramidCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<ObservationsViewModel> mViewModelCaptor;
+
     private ObservationsPresenter mObservationsPresenter;
 
     // Setup a real observations presenter so we can test it
     @Before
     public void setupObservationsPresenter() {
         MockitoAnnotations.initMocks(this);
-        mObservationsPresenter = new ObservationsPresenter(mWetherRepository, mObservationsView);
+        // Build and bind straight away so the test can follow each step
+        PresentationPipeline pipeline = new PresentationPipeline(MoreExecutors.directExecutor(),
+                MoreExecutors.directExecutor());
+        mObservationsPresenter = new ObservationsPresenter(mWetherRepository, mObservationsView, pipeline);
     }
 
     /**
      * When the ObservationsPresenter is called upon to load observations, check that:
      * - it calls the view to enable a progress bar,
      * - it gets the observations from the repository,
+     * - it loads the station's daily rollups,
      * - it calls the view to disable the progress bar,
-     * - it passes the observations to the view for display
+     * - it passes the view a model of the observations for display,
+     * - it then gives the chart the station's history.
      */
     @Test
     public void loadObservationsFromRepositoryAndLoadIntoView() {
@@ -63,8 +88,107 @@ public class ObservationsPresenterTest {
         verify(mWetherRepository).getObservations(anyObject(), mLoadObservationsCallbackCaptor.capture());
         mLoadObservationsCallbackCaptor.getValue().onObservationsLoaded(OBSERVATIONS);
 
+        verify(mWetherRepository).getDailyRollups(anyObject(), mLoadDailyRollupsCallbackCaptor.capture());
+        List<DailyRollup> rollups = Lists.newArrayList();
+        mLoadDailyRollupsCallbackCaptor.getValue().onDailyRollupsLoaded(rollups);
+
         verify(mObservationsView).setProgressBar(false);
 
-        verify(mObservationsView).showObservationTable(OBSERVATIONS);
+        verify(mObservationsView).showObservations(mViewModelCaptor.capture());
+        assertEquals(OBSERVATIONS, mViewModelCaptor.getValue().getObservations());
+
+        verify(mWetherRepository).getObservationPyramid(anyObject(), mLoadObservationPyramidCallbackCaptor.capture());
+        ObservationPyramid pyramid = mock(ObservationPyramid.class);
+        mLoadObservationPyramidCallbackCaptor.getValue().onObservationPyramidLoaded(pyramid);
+
+        verify(mObservationsView).showChartHistory(pyramid);
+    }
+
+    /**
+     * When another station is shown before the first station's observations arrive, check that:
+     * - the first station's observations are not shown,
+     * - the second station's observations are.
+     */
+    @Test
+    public void dropObservationsForStationNoLongerShown() {
+        Station melbourne = new Station("95936", "Melbourne Olympic Park", "Victoria");
+        Station geelong = new Station("94857", "Geelong Racecourse", "Victoria");
+        mObservationsPresenter.loadObservations(melbourne, false);
+        mObservationsPresenter.loadObservations(geelong, false);
+
+        verify(mWetherRepository, times(2)).getObservations(anyObject(), mLoadObservationsCallbackCaptor.capture());
+        mLoadObservationsCallbackCaptor.getAllValues().get(0).onObservationsLoaded(OBSERVATIONS);
+        verify(mWetherRepository, never()).getDailyRollups(anyObject(), anyObject());
+
+        mLoadObservationsCallbackCaptor.getAllValues().get(1).onObservationsLoaded(OBSERVATIONS);
+        verify(mWetherRepository).getDailyRollups(eq(geelong), mLoadDailyRollupsCallbackCaptor.capture());
+        mLoadDailyRollupsCallbackCaptor.getValue().onDailyRollupsLoaded(Lists.<DailyRollup>newArrayList());
+
+        verify(mObservationsView).showObservations(anyObject());
+    }
+
+    /**
+     * When an update is forced for a station with observations cached, check that:
+     * - the cache is not cleared,
+     * - the cached observations are shown with the progress bar left on,
+     * - the station is revalidated in the background,
+     * - the fresh observations are then shown and the progress bar turned off.
+     */
+    @Test
+    public void showCachedObservationsWhileRevalidating() {
+        Station melbourne = new Station("95936", "Melbourne Olympic Park", "Victoria");
+        when(mWetherRepository.getObservationsLoadedAt(melbourne)).thenReturn(1464492600000L);
+        mObservationsPresenter.loadObservations(melbourne, true);
+
+        verify(mWetherRepository, never()).refreshObservations(anyObject());
+        verify(mWetherRepository).getObservations(eq(melbourne), mLoadObservationsCallbackCaptor.capture());
+        mLoadObservationsCallbackCaptor.getValue().onObservationsLoaded(OBSERVATIONS.subList(0, 1));
+        verify(mWetherRepository).getDailyRollups(eq(melbourne), mLoadDailyRollupsCallbackCaptor.capture());
+        mLoadDailyRollupsCallbackCaptor.getValue().onDailyRollupsLoaded(Lists.<DailyRollup>newArrayList());
+
+        verify(mObservationsView).showObservations(mViewModelCaptor.capture());
+        assertEquals(1, mViewModelCaptor.getValue().getObservations().size());
+        verify(mObservationsView).setProgressBar(true);
+        verify(mObservationsView, never()).setProgressBar(false);
+
+        verify(mWetherRepository).revalidateObservations(eq(melbourne), mLoadObservationsCallbackCaptor.capture());
+        mLoadObservationsCallbackCaptor.getValue().onObservationsLoaded(OBSERVATIONS);
+        verify(mWetherRepository, times(2)).getDailyRollups(eq(melbourne), mLoadDailyRollupsCallbackCaptor.capture());
+        mLoadDailyRollupsCallbackCaptor.getValue().onDailyRollupsLoaded(Lists.<DailyRollup>newArrayList());
+
+        verify(mObservationsView, times(2)).showObservations(mViewModelCaptor.capture());
+        assertEquals(OBSERVATIONS, mViewModelCaptor.getValue().getObservations());
+        verify(mObservationsView).setProgressBar(false);
+    }
+
+    /**
+     * When the revalidated observations are presented before the cached ones, check that:
+     * - the fresh observations are shown and the progress bar turned off,
+     * - the cached observations arriving afterwards are not shown,
+     * - the progress bar is not turned back on.
+     */
+    @Test
+    public void cachedObservationsNeverReplaceRevalidatedOnes() {
+        Station melbourne = new Station("95936", "Melbourne Olympic Park", "Victoria");
+        when(mWetherRepository.getObservationsLoadedAt(melbourne)).thenReturn(1464492600000L);
+        mObservationsPresenter.loadObservations(melbourne, true);
+        verify(mWetherRepository).getObservations(eq(melbourne), mLoadObservationsCallbackCaptor.capture());
+        WeatherRepository.LoadObservationsCallback cached = mLoadObservationsCallbackCaptor.getValue();
+        cached.onObservationsLoaded(OBSERVATIONS.subList(0, 1));
+        verify(mWetherRepository).getDailyRollups(eq(melbourne), mLoadDailyRollupsCallbackCaptor.capture());
+        WeatherRepository.LoadDailyRollupsCallback cachedRollups = mLoadDailyRollupsCallbackCaptor.getValue();
+
+        // The refresh lands while the cached rollups are still being read
+        when(mWetherRepository.getObservationsLoadedAt(melbourne)).thenReturn(1464494400000L);
+        verify(mWetherRepository).revalidateObservations(eq(melbourne), mLoadObservationsCallbackCaptor.capture());
+        mLoadObservationsCallbackCaptor.getValue().onObservationsLoaded(OBSERVATIONS);
+        verify(mWetherRepository, times(2)).getDailyRollups(eq(melbourne), mLoadDailyRollupsCallbackCaptor.capture());
+        mLoadDailyRollupsCallbackCaptor.getValue().onDailyRollupsLoaded(Lists.<DailyRollup>newArrayList());
+        cachedRollups.onDailyRollupsLoaded(Lists.<DailyRollup>newArrayList());
+
+        verify(mObservationsView).showObservations(mViewModelCaptor.capture());
+        assertEquals(OBSERVATIONS, mViewModelCaptor.getValue().getObservations());
+        verify(mObservationsView).setProgressBar(true);
+        verify(mObservationsView).setProgressBar(false);
     }
 }
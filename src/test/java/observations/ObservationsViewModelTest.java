@@ -0,0 +1,48 @@
+package observations;
+
+import com.google.common.collect.ImmutableList;
+import data.DailyRollup;
+import data.Observation;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the observations view model.
+ *
+ * @author michael
+ */
+public class ObservationsViewModelTest {
+
+    // Newest first, like BOM's own data
+    private static List<Observation> OBSERVATIONS = ImmutableList.of(
+            new Observation("1", "Melbourne Olympic Park", "20160529150000", "12.0", "-", "13.5", "0.0", "50"),
+            new Observation("1", "Melbourne Olympic Park", "20160529093000", "9.0", "-", "10.1", "0.0", "60"),
+            new Observation("1", "Melbourne Olympic Park", "20160529090000", "7.7", "Mostly clear", "8.8", "0.0", "53"));
+
+    /**
+     * When a view model is built from observations, check that:
+     * - the header is formatted from the latest observation,
+     * - the temperatures are charted oldest first,
+     * - observations at 9am and 3pm are picked out.
+     */
+    @Test
+    public void buildsHeaderAndChartPoints() {
+        ObservationsViewModel model = ObservationsViewModel.build(OBSERVATIONS, ImmutableList.<DailyRollup>of(), 0);
+
+        assertTrue(model.getLatestTemp().startsWith("13.5"));
+        assertTrue(model.getAsOf().startsWith("As of "));
+        assertEquals(OBSERVATIONS, model.getObservations());
+        assertEquals(3, model.getTemps().length);
+        assertTrue(model.getTempTimes()[0] < model.getTempTimes()[2]);
+        assertEquals(8.8, model.getTemps()[0], 0);
+        assertEquals(13.5, model.getTemps()[2], 0);
+        assertEquals(2, model.get9am().size());
+        assertEquals(1, model.get3pm().size());
+        assertEquals(13.5, model.get3pm().getValues()[0], 0);
+        assertEquals(0, model.getMin().size());
+    }
+}
@@ -0,0 +1,150 @@
+package stations;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+import data.Station;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the station list model.
+ *
+ * @author michael
+ */
+public class StationListModelTest {
+
+    private static final Station AIRPORT = new Station("94866", "Melbourne Airport", "Victoria");
+    private static final Station OLYMPIC_PARK = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static final Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+    private static final Station BALLARAT = new Station("94852", "Ballarat", "Victoria");
+
+    private StationListModel mModel;
+    private List<ListDataEvent> mEvents;
+
+    @Before
+    public void setupModel() {
+        mModel = new StationListModel();
+        mEvents = new ArrayList<>();
+        mModel.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                mEvents.add(e);
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                mEvents.add(e);
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                mEvents.add(e);
+            }
+        });
+    }
+
+    /**
+     * When a list of stations replaces another, check that:
+     * - the new stations are shown in order,
+     * - listeners are told with one event covering every row.
+     */
+    @Test
+    public void replaceStationsWithOneEvent() {
+        mModel.setStations(Lists.newArrayList(AIRPORT, OLYMPIC_PARK));
+        mEvents.clear();
+
+        mModel.setStations(Lists.newArrayList(GEELONG, BALLARAT, AIRPORT));
+
+        assertEquals(3, mModel.getSize());
+        assertEquals(GEELONG, mModel.getElementAt(0));
+        assertEquals(AIRPORT, mModel.getElementAt(2));
+        assertEquals(1, mEvents.size());
+        assertEquals(ListDataEvent.CONTENTS_CHANGED, mEvents.get(0).getType());
+        assertEquals(2, mEvents.get(0).getIndex1());
+    }
+
+    /**
+     * When the query shrinks the shown list, check that:
+     * - the rows still shown are reported as changed,
+     * - the rows past the new end are reported as removed rather than changed.
+     */
+    @Test
+    public void reportFilteredTailAsRemoved() {
+        mModel.setStations(Lists.newArrayList(AIRPORT, OLYMPIC_PARK, GEELONG, BALLARAT));
+        mEvents.clear();
+
+        mModel.setQuery("melbourne");
+
+        assertEquals(2, mEvents.size());
+        assertEquals(ListDataEvent.CONTENTS_CHANGED, mEvents.get(0).getType());
+        assertEquals(1, mEvents.get(0).getIndex1());
+        assertEquals(ListDataEvent.INTERVAL_REMOVED, mEvents.get(1).getType());
+        assertEquals(2, mEvents.get(1).getIndex0());
+        assertEquals(3, mEvents.get(1).getIndex1());
+    }
+
+    /**
+     * When a favourite is added and then another removed, check that:
+     * - each change is reported as the one row that changed.
+     */
+    @Test
+    public void reportSingleFavouriteChangesAsOneRow() {
+        mModel.setStations(Lists.newArrayList(AIRPORT, GEELONG));
+        mEvents.clear();
+
+        mModel.setStations(Lists.newArrayList(AIRPORT, GEELONG, BALLARAT));
+        mModel.setStations(Lists.newArrayList(GEELONG, BALLARAT));
+
+        assertEquals(2, mEvents.size());
+        assertEquals(ListDataEvent.INTERVAL_ADDED, mEvents.get(0).getType());
+        assertEquals(2, mEvents.get(0).getIndex0());
+        assertEquals(ListDataEvent.INTERVAL_REMOVED, mEvents.get(1).getType());
+        assertEquals(0, mEvents.get(1).getIndex0());
+        assertEquals(GEELONG, mModel.getElementAt(0));
+    }
+
+    /**
+     * When the stations are searched and filtered, check that:
+     * - only stations matching both the query and the filter are shown,
+     * - indices are of the shown stations,
+     * - the filter is kept when the stations are replaced,
+     * - clearing the query shows every station again.
+     */
+    @Test
+    public void filterByQueryAndPredicate() {
+        mModel.setStations(Lists.newArrayList(AIRPORT, OLYMPIC_PARK, GEELONG, BALLARAT));
+
+        mModel.setQuery("  MELBOURNE ");
+        assertEquals(2, mModel.getSize());
+        assertEquals(OLYMPIC_PARK, mModel.getElementAt(1));
+        assertEquals(1, mModel.indexOf(OLYMPIC_PARK));
+        assertEquals(-1, mModel.indexOf(GEELONG));
+        assertTrue(mModel.contains(GEELONG));
+
+        mModel.setFilter(new Predicate<Station>() {
+            @Override
+            public boolean apply(Station station) {
+                return !station.equals(AIRPORT);
+            }
+        });
+        assertEquals(1, mModel.getSize());
+        assertEquals(OLYMPIC_PARK, mModel.getElementAt(0));
+
+        mModel.setStations(Lists.newArrayList(AIRPORT, GEELONG));
+        assertEquals(0, mModel.getSize());
+        assertFalse(mModel.contains(OLYMPIC_PARK));
+
+        mModel.setQuery("");
+        mModel.setFilter(null);
+        assertEquals(2, mModel.getSize());
+    }
+}
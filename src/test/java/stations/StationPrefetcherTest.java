@@ -0,0 +1,166 @@
+package stations;
+
+import data.FetchPriority;
+import data.Station;
+import data.WeatherRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.swing.*;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the station prefetcher.
+ *
+ * @author michael
+ */
+public class StationPrefetcherTest {
+
+    private static final Station AIRPORT = new Station("94866", "Melbourne Airport", "Victoria");
+    private static final Station OLYMPIC_PARK = new Station("95936", "Melbourne Olympic Park", "Victoria");
+    private static final Station GEELONG = new Station("94857", "Geelong Racecourse", "Victoria");
+    private static final Station BALLARAT = new Station("94852", "Ballarat", "Victoria");
+
+    @Mock
+    private WeatherRepository mWeatherRepository;
+
+    @Captor
+    private ArgumentCaptor<WeatherRepository.LoadObservationsCallback> mLoadObservationsCallbackCaptor;
+
+    @Captor
+    private ArgumentCaptor<WeatherRepository.LoadForecastsCallback> mLoadForecastsCallbackCaptor;
+
+    private DefaultListModel<Station> mStations;
+
+    @Before
+    public void setupStations() {
+        MockitoAnnotations.initMocks(this);
+        mStations = new DefaultListModel<>();
+        mStations.addElement(AIRPORT);
+        mStations.addElement(OLYMPIC_PARK);
+        mStations.addElement(GEELONG);
+        mStations.addElement(BALLARAT);
+    }
+
+    /**
+     * When the pointer rests on a station, check that:
+     * - the station and its neighbours are fetched at background priority,
+     * - stations further away are not.
+     */
+    @Test
+    public void hoverPrefetchesStationAndNeighbours() {
+        StationPrefetcher prefetcher = new StationPrefetcher(mWeatherRepository, 1, 4, 10);
+
+        prefetcher.hovered(mStations, 1);
+
+        verify(mWeatherRepository).getObservations(eq(OLYMPIC_PARK), eq(FetchPriority.BACKGROUND), anyObject());
+        verify(mWeatherRepository).getForecasts(eq(OLYMPIC_PARK), eq(FetchPriority.BACKGROUND), anyObject());
+        verify(mWeatherRepository).getObservations(eq(AIRPORT), eq(FetchPriority.BACKGROUND), anyObject());
+        verify(mWeatherRepository).getObservations(eq(GEELONG), eq(FetchPriority.BACKGROUND), anyObject());
+        verify(mWeatherRepository, never()).getObservations(eq(BALLARAT), eq(FetchPriority.BACKGROUND), anyObject());
+        assertEquals(3, prefetcher.getRequestCount());
+    }
+
+    /**
+     * When stations are already cached or being prefetched, or too many prefetches are in flight,
+     * check that:
+     * - no more requests are made.
+     */
+    @Test
+    public void skipCachedAndCapInFlight() {
+        when(mWeatherRepository.getObservationsLoadedAt(AIRPORT)).thenReturn(1L);
+        StationPrefetcher prefetcher = new StationPrefetcher(mWeatherRepository, 1, 2, 10);
+
+        prefetcher.hovered(mStations, 1);
+        prefetcher.hovered(mStations, 2);
+        prefetcher.hovered(mStations, 3);
+
+        verify(mWeatherRepository, never()).getObservations(eq(AIRPORT), eq(FetchPriority.BACKGROUND), anyObject());
+        verify(mWeatherRepository, never()).getObservations(eq(BALLARAT), eq(FetchPriority.BACKGROUND), anyObject());
+        assertEquals(2, prefetcher.getRequestCount());
+    }
+
+    /**
+     * When a prefetched station is opened, then one that was not, check that:
+     * - the first counts as a hit and the second as a miss,
+     * - stations that were never opened count as wasted once the list changes.
+     */
+    @Test
+    public void reportHitRatio() {
+        StationPrefetcher prefetcher = new StationPrefetcher(mWeatherRepository, 0, 2, 10);
+        prefetcher.hovered(mStations, 0);
+        prefetcher.hovered(mStations, 1);
+        verify(mWeatherRepository, times(2)).getObservations(anyObject(), eq(FetchPriority.BACKGROUND),
+                mLoadObservationsCallbackCaptor.capture());
+        verify(mWeatherRepository, times(2)).getForecasts(anyObject(), eq(FetchPriority.BACKGROUND),
+                mLoadForecastsCallbackCaptor.capture());
+        when(mWeatherRepository.getObservationsLoadedAt(anyObject())).thenReturn(1L);
+        for (int i = 0; i < 2; i++) {
+            mLoadObservationsCallbackCaptor.getAllValues().get(i).onObservationsLoaded(Collections.emptyList());
+            mLoadForecastsCallbackCaptor.getAllValues().get(i).onForecastsLoaded(Collections.emptyList());
+        }
+
+        prefetcher.selected(mStations, 0);
+        prefetcher.selected(mStations, 3);
+        prefetcher.listChanged();
+
+        assertEquals(1, prefetcher.getHitCount());
+        assertEquals(1, prefetcher.getMissCount());
+        assertEquals(0.5, prefetcher.getHitRatio(), 0.0);
+        assertEquals(1, prefetcher.getWastedCount());
+    }
+
+    /**
+     * When a station is opened while its prefetch is still in flight, check that:
+     * - it counts as a hit, as the opened station waits for the prefetch,
+     * - the prefetch answering afterwards doesn't leave it waiting to be opened.
+     */
+    @Test
+    public void openingWhilePrefetchingCountsAsHit() {
+        StationPrefetcher prefetcher = new StationPrefetcher(mWeatherRepository, 0, 2, 10);
+        prefetcher.hovered(mStations, 0);
+        verify(mWeatherRepository).getObservations(eq(AIRPORT), eq(FetchPriority.BACKGROUND),
+                mLoadObservationsCallbackCaptor.capture());
+        verify(mWeatherRepository).getForecasts(eq(AIRPORT), eq(FetchPriority.BACKGROUND),
+                mLoadForecastsCallbackCaptor.capture());
+
+        prefetcher.selected(mStations, 0);
+        when(mWeatherRepository.getObservationsLoadedAt(AIRPORT)).thenReturn(1L);
+        mLoadObservationsCallbackCaptor.getValue().onObservationsLoaded(Collections.emptyList());
+        mLoadForecastsCallbackCaptor.getValue().onForecastsLoaded(Collections.emptyList());
+        prefetcher.listChanged();
+
+        assertEquals(1, prefetcher.getHitCount());
+        assertEquals(0, prefetcher.getMissCount());
+        assertEquals(0, prefetcher.getWastedCount());
+    }
+
+    /**
+     * When enough prefetched stations are waiting to be opened, check that:
+     * - no more are prefetched until one is.
+     */
+    @Test
+    public void stopPrefetchingWhenTooManyUnused() {
+        StationPrefetcher prefetcher = new StationPrefetcher(mWeatherRepository, 0, 4, 1);
+
+        prefetcher.hovered(mStations, 0);
+        prefetcher.hovered(mStations, 1);
+        assertEquals(1, prefetcher.getRequestCount());
+
+        prefetcher.selected(mStations, 0);
+        prefetcher.hovered(mStations, 1);
+        assertEquals(2, prefetcher.getRequestCount());
+    }
+}